@@ -0,0 +1,39 @@
+package org.infinispan.protostream.benchmarks;
+
+import java.io.IOException;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks selected by the usual JMH command line options, always with the GC profiler enabled so the
+ * allocation rate is reported along with the timings. Usage: {@code java -jar target/benchmarks.jar [JMH options]
+ * [benchmark regexps]}.
+ *
+ * @since 4.4
+ */
+public final class BenchmarkRunner {
+
+   private BenchmarkRunner() {
+   }
+
+   public static void main(String[] args) throws CommandLineOptionException, RunnerException, IOException {
+      CommandLineOptions cmdOptions = new CommandLineOptions(args);
+      if (cmdOptions.shouldHelp() || cmdOptions.shouldList() || cmdOptions.shouldListProfilers()
+            || cmdOptions.shouldListResultFormats()) {
+         // let the JMH launcher handle the informative options
+         org.openjdk.jmh.Main.main(args);
+         return;
+      }
+      Options options = new OptionsBuilder()
+            .parent(cmdOptions)
+            .addProfiler(GCProfiler.class)
+            .build();
+      new Runner(options).run();
+   }
+}
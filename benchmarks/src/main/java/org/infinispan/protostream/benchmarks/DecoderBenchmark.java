@@ -0,0 +1,79 @@
+package org.infinispan.protostream.benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import org.infinispan.protostream.ProtobufUtil;
+import org.infinispan.protostream.SerializationContext;
+import org.infinispan.protostream.sampledomain.User;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Reads the same message with every kind of decoder.
+ *
+ * @since 4.4
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class DecoderBenchmark {
+
+   public enum Input {
+      BYTE_ARRAY, HEAP_BYTE_BUFFER, DIRECT_BYTE_BUFFER, INPUT_STREAM
+   }
+
+   @Param
+   public Input input;
+
+   private SerializationContext ctx;
+
+   private byte[] bytes;
+
+   private ByteBuffer heapBuffer;
+
+   private ByteBuffer directBuffer;
+
+   private ByteArrayInputStream stream;
+
+   @Setup
+   public void setup() throws IOException {
+      ctx = SampleDomain.newContext(SampleDomain.configuration("default"));
+      bytes = ProtobufUtil.toByteArray(ctx, SampleDomain.newUser());
+      heapBuffer = ByteBuffer.wrap(bytes);
+      directBuffer = ByteBuffer.allocateDirect(bytes.length);
+      directBuffer.put(bytes).flip();
+      stream = new ByteArrayInputStream(bytes);
+   }
+
+   @Benchmark
+   public User read() throws IOException {
+      switch (input) {
+         case BYTE_ARRAY:
+            return ProtobufUtil.fromByteArray(ctx, bytes, User.class);
+         case HEAP_BYTE_BUFFER:
+            return ProtobufUtil.fromByteBuffer(ctx, heapBuffer.duplicate(), User.class);
+         case DIRECT_BYTE_BUFFER:
+            return ProtobufUtil.fromByteBuffer(ctx, directBuffer.duplicate(), User.class);
+         case INPUT_STREAM:
+            stream.reset();
+            return ProtobufUtil.readFrom(ctx, stream, User.class);
+         default:
+            throw new IllegalStateException("Unexpected input : " + input);
+      }
+   }
+}
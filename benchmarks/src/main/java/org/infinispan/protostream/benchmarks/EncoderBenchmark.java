@@ -0,0 +1,109 @@
+package org.infinispan.protostream.benchmarks;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import org.infinispan.protostream.DirectByteBufferPool;
+import org.infinispan.protostream.ProtobufUtil;
+import org.infinispan.protostream.SerializationContext;
+import org.infinispan.protostream.impl.BaseMarshallerDelegate;
+import org.infinispan.protostream.impl.ByteArrayOutputStreamEx;
+import org.infinispan.protostream.impl.ByteBufferChunks;
+import org.infinispan.protostream.impl.SerializationContextImpl;
+import org.infinispan.protostream.impl.TagWriterImpl;
+import org.infinispan.protostream.sampledomain.User;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Writes the same message with every kind of encoder. The output is preallocated, so this measures the encoders and
+ * the marshallers rather than the allocation of the output.
+ *
+ * @since 4.4
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class EncoderBenchmark {
+
+   public enum Output {
+      BYTE_ARRAY, HEAP_BYTE_BUFFER, DIRECT_BYTE_BUFFER, OUTPUT_STREAM, BYTE_BUFFER_CHUNKS
+   }
+
+   @Param
+   public Output output;
+
+   private SerializationContext ctx;
+
+   private BaseMarshallerDelegate<User> marshallerDelegate;
+
+   private User user;
+
+   private byte[] array;
+
+   private ByteBuffer heapBuffer;
+
+   private ByteBuffer directBuffer;
+
+   private ByteArrayOutputStreamEx stream;
+
+   private ByteBufferChunks chunks;
+
+   @Setup
+   public void setup() throws IOException {
+      ctx = SampleDomain.newContext(SampleDomain.configuration("default"));
+      marshallerDelegate = ((SerializationContextImpl) ctx).getMarshallerDelegate(User.class);
+      user = SampleDomain.newUser();
+      int size = ProtobufUtil.computeMessageSize(ctx, user);
+      array = new byte[size];
+      heapBuffer = ByteBuffer.allocate(size);
+      directBuffer = ByteBuffer.allocateDirect(size);
+      stream = new ByteArrayOutputStreamEx(size);
+      // small chunks, so the message spans several of them
+      chunks = new ByteBufferChunks(new DirectByteBufferPool(64, 64));
+   }
+
+   @Benchmark
+   public int write() throws IOException {
+      TagWriterImpl out;
+      switch (output) {
+         case BYTE_ARRAY:
+            out = TagWriterImpl.newInstance(ctx, array);
+            break;
+         case HEAP_BYTE_BUFFER:
+            heapBuffer.clear();
+            out = TagWriterImpl.newInstance(ctx, heapBuffer);
+            break;
+         case DIRECT_BYTE_BUFFER:
+            directBuffer.clear();
+            out = TagWriterImpl.newInstance(ctx, directBuffer);
+            break;
+         case OUTPUT_STREAM:
+            stream.reset();
+            out = TagWriterImpl.newInstance(ctx, stream);
+            break;
+         case BYTE_BUFFER_CHUNKS:
+            chunks.release();
+            out = TagWriterImpl.newInstance(ctx, chunks);
+            break;
+         default:
+            throw new IllegalStateException("Unexpected output : " + output);
+      }
+      marshallerDelegate.marshall(out, null, user);
+      out.flush();
+      return out.getWrittenBytes();
+   }
+}
@@ -0,0 +1,60 @@
+package org.infinispan.protostream.benchmarks;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.concurrent.TimeUnit;
+
+import org.infinispan.protostream.ProtobufUtil;
+import org.infinispan.protostream.SerializationContext;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Conversion of wrapped messages to and from canonical JSON.
+ *
+ * @since 4.4
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class JsonBenchmark {
+
+   private SerializationContext ctx;
+
+   private byte[] wrappedBytes;
+
+   private String json;
+
+   @Setup
+   public void setup() throws IOException {
+      ctx = SampleDomain.newContext(SampleDomain.configuration("default"));
+      wrappedBytes = ProtobufUtil.toWrappedByteArray(ctx, SampleDomain.newUser());
+      json = ProtobufUtil.toCanonicalJSON(ctx, wrappedBytes, false);
+   }
+
+   @Benchmark
+   public String toCanonicalJSON() throws IOException {
+      return ProtobufUtil.toCanonicalJSON(ctx, wrappedBytes, false);
+   }
+
+   @Benchmark
+   public String toCanonicalJSONPrettyPrint() throws IOException {
+      return ProtobufUtil.toCanonicalJSON(ctx, wrappedBytes, true);
+   }
+
+   @Benchmark
+   public byte[] fromCanonicalJSON() throws IOException {
+      return ProtobufUtil.fromCanonicalJSON(ctx, new StringReader(json));
+   }
+}
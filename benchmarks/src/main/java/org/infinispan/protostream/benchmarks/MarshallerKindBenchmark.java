@@ -0,0 +1,69 @@
+package org.infinispan.protostream.benchmarks;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.infinispan.protostream.ProtobufUtil;
+import org.infinispan.protostream.SerializationContext;
+import org.infinispan.protostream.sampledomain.Note;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * A hand written {@link org.infinispan.protostream.MessageMarshaller} versus the {@link
+ * org.infinispan.protostream.ProtobufTagMarshaller} generated from annotations, for the same type and schema.
+ *
+ * @since 4.4
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class MarshallerKindBenchmark {
+
+   @Param({"MessageMarshaller", "generated"})
+   public String marshaller;
+
+   private SerializationContext ctx;
+
+   private Note note;
+
+   private byte[] bytes;
+
+   @Setup
+   public void setup() throws IOException {
+      switch (marshaller) {
+         case "MessageMarshaller":
+            ctx = SampleDomain.newMessageMarshallerNoteContext(SampleDomain.configuration("default"));
+            break;
+         case "generated":
+            ctx = SampleDomain.newGeneratedNoteContext(SampleDomain.configuration("default"));
+            break;
+         default:
+            throw new IllegalArgumentException("Unknown marshaller kind : " + marshaller);
+      }
+      note = SampleDomain.newNote();
+      bytes = ProtobufUtil.toByteArray(ctx, note);
+   }
+
+   @Benchmark
+   public byte[] write() throws IOException {
+      return ProtobufUtil.toByteArray(ctx, note);
+   }
+
+   @Benchmark
+   public Note read() throws IOException {
+      return ProtobufUtil.fromByteArray(ctx, bytes, Note.class);
+   }
+}
@@ -0,0 +1,78 @@
+package org.infinispan.protostream.benchmarks;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.infinispan.protostream.ProtobufUtil;
+import org.infinispan.protostream.SerializationContext;
+import org.infinispan.protostream.sampledomain.User;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The {@link ProtobufUtil} entry points for plain and wrapped messages, with and without reuse of readers and
+ * writers.
+ *
+ * @since 4.4
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class ProtobufUtilBenchmark {
+
+   @Param({"default", "reuse"})
+   public String config;
+
+   private SerializationContext ctx;
+
+   private User user;
+
+   private byte[] bytes;
+
+   private byte[] wrappedBytes;
+
+   @Setup
+   public void setup() throws IOException {
+      ctx = SampleDomain.newContext(SampleDomain.configuration(config));
+      user = SampleDomain.newUser();
+      bytes = ProtobufUtil.toByteArray(ctx, user);
+      wrappedBytes = ProtobufUtil.toWrappedByteArray(ctx, user);
+   }
+
+   @Benchmark
+   public byte[] toByteArray() throws IOException {
+      return ProtobufUtil.toByteArray(ctx, user);
+   }
+
+   @Benchmark
+   public User fromByteArray() throws IOException {
+      return ProtobufUtil.fromByteArray(ctx, bytes, User.class);
+   }
+
+   @Benchmark
+   public int computeMessageSize() throws IOException {
+      return ProtobufUtil.computeMessageSize(ctx, user);
+   }
+
+   @Benchmark
+   public byte[] toWrappedByteArray() throws IOException {
+      return ProtobufUtil.toWrappedByteArray(ctx, user);
+   }
+
+   @Benchmark
+   public Object fromWrappedByteArray() throws IOException {
+      return ProtobufUtil.fromWrappedByteArray(ctx, wrappedBytes);
+   }
+}
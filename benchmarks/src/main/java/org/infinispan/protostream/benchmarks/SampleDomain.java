@@ -0,0 +1,144 @@
+package org.infinispan.protostream.benchmarks;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+
+import org.infinispan.protostream.FileDescriptorSource;
+import org.infinispan.protostream.MessageMarshaller;
+import org.infinispan.protostream.ProtobufUtil;
+import org.infinispan.protostream.SerializationContext;
+import org.infinispan.protostream.annotations.ProtoSchemaBuilder;
+import org.infinispan.protostream.config.Configuration;
+import org.infinispan.protostream.sampledomain.Address;
+import org.infinispan.protostream.sampledomain.Note;
+import org.infinispan.protostream.sampledomain.User;
+import org.infinispan.protostream.sampledomain.marshallers.MarshallerRegistration;
+
+/**
+ * The sample data and serialization contexts shared by all benchmarks.
+ *
+ * @since 4.4
+ */
+final class SampleDomain {
+
+   static final String NOTE_PROTO = "sample_notes.proto";
+
+   static final String NOTE_PACKAGE = "sample_notes";
+
+   private SampleDomain() {
+   }
+
+   static Configuration configuration(String config) {
+      Configuration.Builder builder = Configuration.builder()
+            .setLogOutOfSequenceReads(false)
+            .setLogOutOfSequenceWrites(false);
+      switch (config) {
+         case "default":
+            break;
+         case "reuse":
+            builder.setReuseReadersAndWriters(true);
+            break;
+         default:
+            throw new IllegalArgumentException("Unknown configuration : " + config);
+      }
+      return builder.build();
+   }
+
+   /**
+    * A context having the hand written {@link MessageMarshaller}s of the sample domain.
+    */
+   static SerializationContext newContext(Configuration configuration) throws IOException {
+      SerializationContext ctx = ProtobufUtil.newSerializationContext(configuration);
+      MarshallerRegistration.registerMarshallers(ctx);
+      return ctx;
+   }
+
+   /**
+    * A context where {@link Note} is handled by a {@code ProtobufTagMarshaller} generated by the {@link
+    * ProtoSchemaBuilder}.
+    */
+   static SerializationContext newGeneratedNoteContext(Configuration configuration) throws IOException {
+      SerializationContext ctx = newContext(configuration);
+      generateNoteSchema(ctx);
+      return ctx;
+   }
+
+   /**
+    * A context where {@link Note} is handled by the hand written {@link NoteMarshaller}, using the very same schema as
+    * the generated one.
+    */
+   static SerializationContext newMessageMarshallerNoteContext(Configuration configuration) throws IOException {
+      String schema = generateNoteSchema(newContext(configuration));
+      SerializationContext ctx = newContext(configuration);
+      ctx.registerProtoFiles(FileDescriptorSource.fromString(NOTE_PROTO, schema));
+      ctx.registerMarshaller(new NoteMarshaller());
+      return ctx;
+   }
+
+   static String generateNoteSchema(SerializationContext ctx) throws IOException {
+      return new ProtoSchemaBuilder()
+            .fileName(NOTE_PROTO)
+            .packageName(NOTE_PACKAGE)
+            .addClass(Note.class)
+            .build(ctx);
+   }
+
+   static User newUser() {
+      User user = new User();
+      user.setId(1);
+      user.setName("John");
+      user.setSurname("Batman");
+      user.setSalutation("Sir");
+      user.setGender(User.Gender.MALE);
+      user.setAge(42);
+      user.setNotes("Lorem ipsum dolor sit amet, consectetur adipiscing elit");
+      user.setCreationDate(Instant.ofEpochMilli(1500000000000L));
+      user.setAccountIds(new HashSet<>(Arrays.asList(1, 3, 7, 12)));
+      List<Address> addresses = new ArrayList<>();
+      addresses.add(new Address("Old Street", "XYZ42", -12));
+      addresses.add(new Address("Bond Street", "QQ42", 312, true));
+      user.setAddresses(addresses);
+      return user;
+   }
+
+   static Note newNote() {
+      Note note = new Note();
+      note.setText("Lorem ipsum dolor sit amet, consectetur adipiscing elit, sed do eiusmod tempor incididunt");
+      note.setAuthor(newUser());
+      return note;
+   }
+
+   /**
+    * A hand written equivalent of the marshaller generated for {@link Note}.
+    */
+   static final class NoteMarshaller implements MessageMarshaller<Note> {
+
+      @Override
+      public String getTypeName() {
+         return NOTE_PACKAGE + ".Note";
+      }
+
+      @Override
+      public Class<Note> getJavaClass() {
+         return Note.class;
+      }
+
+      @Override
+      public Note readFrom(ProtoStreamReader reader) throws IOException {
+         Note note = new Note();
+         note.setText(reader.readString("text"));
+         note.setAuthor(reader.readObject("author", User.class));
+         return note;
+      }
+
+      @Override
+      public void writeTo(ProtoStreamWriter writer, Note note) throws IOException {
+         writer.writeString("text", note.getText());
+         writer.writeObject("author", note.getAuthor(), User.class);
+      }
+   }
+}
@@ -0,0 +1,62 @@
+package org.infinispan.protostream.benchmarks;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.infinispan.protostream.FileDescriptorSource;
+import org.infinispan.protostream.ProtobufUtil;
+import org.infinispan.protostream.SerializationContext;
+import org.infinispan.protostream.config.Configuration;
+import org.infinispan.protostream.sampledomain.marshallers.MarshallerRegistration;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Parsing and registration of schemas and marshallers into a new context, and generation of marshallers from
+ * annotations.
+ *
+ * @since 4.4
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class SchemaRegistrationBenchmark {
+
+   private Configuration configuration;
+
+   private FileDescriptorSource bankSchema;
+
+   @Setup
+   public void setup() throws IOException {
+      configuration = SampleDomain.configuration("default");
+      bankSchema = FileDescriptorSource.fromResources(MarshallerRegistration.PROTOBUF_RES);
+   }
+
+   @Benchmark
+   public SerializationContext registerProtoFiles() {
+      SerializationContext ctx = ProtobufUtil.newSerializationContext(configuration);
+      ctx.registerProtoFiles(bankSchema);
+      return ctx;
+   }
+
+   @Benchmark
+   public SerializationContext registerMarshallers() throws IOException {
+      return SampleDomain.newContext(configuration);
+   }
+
+   @Benchmark
+   public SerializationContext generateMarshallers() throws IOException {
+      return SampleDomain.newGeneratedNoteContext(configuration);
+   }
+}
@@ -0,0 +1,25 @@
+package org.infinispan.protostream;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A source of fixed size {@link ByteBuffer} chunks, usually off-heap, for writing messages with {@link
+ * ProtobufUtil#toByteBuffers} without holding them in a single contiguous array. Implementations must be
+ * thread-safe.
+ *
+ * @since 4.4
+ * @see DirectByteBufferPool
+ */
+public interface ByteBufferPool {
+
+   /**
+    * Obtains a chunk that is cleared and ready to be written to. Its capacity must be greater than zero.
+    */
+   ByteBuffer acquire();
+
+   /**
+    * Gives back a chunk obtained by {@link #acquire()} once its contents are no longer needed. The chunk must not be
+    * used afterwards.
+    */
+   void release(ByteBuffer chunk);
+}
@@ -0,0 +1,71 @@
+package org.infinispan.protostream;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+
+/**
+ * A {@link ByteBufferPool} of direct buffers having the same capacity. Released chunks are kept for reuse, up to a
+ * maximum count, the rest are left to the garbage collector.
+ *
+ * @since 4.4
+ */
+public final class DirectByteBufferPool implements ByteBufferPool {
+
+   public static final int DEFAULT_CHUNK_SIZE = 8192;
+
+   private final int chunkSize;
+
+   private final int maxPooledChunks;
+
+   private final ArrayDeque<ByteBuffer> pooledChunks = new ArrayDeque<>();
+
+   public DirectByteBufferPool() {
+      this(DEFAULT_CHUNK_SIZE, 64);
+   }
+
+   public DirectByteBufferPool(int chunkSize, int maxPooledChunks) {
+      if (chunkSize <= 0) {
+         throw new IllegalArgumentException("chunkSize must be greater than 0");
+      }
+      if (maxPooledChunks < 0) {
+         throw new IllegalArgumentException("maxPooledChunks cannot be negative");
+      }
+      this.chunkSize = chunkSize;
+      this.maxPooledChunks = maxPooledChunks;
+   }
+
+   public int getChunkSize() {
+      return chunkSize;
+   }
+
+   /**
+    * The number of released chunks that are currently available for reuse.
+    */
+   public synchronized int getPooledChunks() {
+      return pooledChunks.size();
+   }
+
+   @Override
+   public ByteBuffer acquire() {
+      ByteBuffer chunk;
+      synchronized (this) {
+         chunk = pooledChunks.pollLast();
+      }
+      if (chunk == null) {
+         return ByteBuffer.allocateDirect(chunkSize);
+      }
+      chunk.clear();
+      return chunk;
+   }
+
+   @Override
+   public void release(ByteBuffer chunk) {
+      if (chunk.isDirect() && !chunk.isReadOnly() && chunk.capacity() == chunkSize) {
+         synchronized (this) {
+            if (pooledChunks.size() < maxPooledChunks) {
+               pooledChunks.addLast(chunk);
+            }
+         }
+      }
+   }
+}
@@ -6,9 +6,12 @@ import java.io.InputStream;
 import java.io.Reader;
 import java.io.UncheckedIOException;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.function.Supplier;
 
+import org.infinispan.protostream.descriptors.FileDescriptor;
 import org.infinispan.protostream.impl.ResourceUtils;
 
 /**
@@ -27,6 +30,11 @@ public final class FileDescriptorSource {
     */
    private final Map<String, String> files = new LinkedHashMap<>();
 
+   /**
+    * Factories of the {@link FileDescriptor}s of some of the files, which allow them to be registered without parsing.
+    */
+   private final Map<String, Supplier<FileDescriptor>> precompiledFiles = new HashMap<>(2);
+
    /**
     * Optional progress callback. If non-null it will be invoked based on the status of each parsed file.
     */
@@ -107,7 +115,22 @@ public final class FileDescriptorSource {
       }
       // discard the leading slash
       String path = name.startsWith("/") ? name.substring(1) : name;
-      files.put(path, fileContents);
+      putFile(path, fileContents);
+      return this;
+   }
+
+   /**
+    * Add a proto file, given a name, the file contents as a {@link String} and a factory of the equivalent unresolved
+    * {@link FileDescriptor}, such as the one generated by the annotation processor. The factory is used instead of
+    * parsing the contents and must return a new instance on each invocation. The contents are still parsed if the
+    * factory fails.
+    */
+   public FileDescriptorSource addProtoFile(String name, String fileContents, Supplier<FileDescriptor> precompiledFile) {
+      if (precompiledFile == null) {
+         throw new IllegalArgumentException("precompiledFile argument cannot be null");
+      }
+      addProtoFile(name, fileContents);
+      precompiledFiles.put(name.startsWith("/") ? name.substring(1) : name, precompiledFile);
       return this;
    }
 
@@ -123,7 +146,7 @@ public final class FileDescriptorSource {
       }
       // discard the leading slash
       String path = name.startsWith("/") ? name.substring(1) : name;
-      files.put(path, ResourceUtils.getContentsAsString(fileContents));
+      putFile(path, ResourceUtils.getContentsAsString(fileContents));
       return this;
    }
 
@@ -139,7 +162,7 @@ public final class FileDescriptorSource {
       }
       // discard the leading slash
       String path = name.startsWith("/") ? name.substring(1) : name;
-      files.put(path, ResourceUtils.getContentsAsString(fileContents));
+      putFile(path, ResourceUtils.getContentsAsString(fileContents));
       return this;
    }
 
@@ -155,10 +178,16 @@ public final class FileDescriptorSource {
       }
       // discard the leading slash
       String path = name.startsWith("/") ? name.substring(1) : name;
-      files.put(path, ResourceUtils.getContentsAsString(protoFile));
+      putFile(path, ResourceUtils.getContentsAsString(protoFile));
       return this;
    }
 
+   private void putFile(String path, String fileContents) {
+      files.put(path, fileContents);
+      // a precompiled form of the previous contents is no longer valid
+      precompiledFiles.remove(path);
+   }
+
    public static FileDescriptorSource fromResources(ClassLoader userClassLoader, String... classPathResources) throws IOException {
       return new FileDescriptorSource().addProtoFiles(userClassLoader, classPathResources);
    }
@@ -188,6 +217,16 @@ public final class FileDescriptorSource {
       return Collections.unmodifiableMap(files);
    }
 
+   /**
+    * Returns the factory of the {@link FileDescriptor} of a file, if one was supplied along with its contents.
+    *
+    * @param name the name of the file
+    * @return the factory or {@code null}
+    */
+   public Supplier<FileDescriptor> getPrecompiledFile(String name) {
+      return precompiledFiles.get(name);
+   }
+
    public ProgressCallback getProgressCallback() {
       return progressCallback;
    }
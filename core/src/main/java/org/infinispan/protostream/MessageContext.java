@@ -1,7 +1,7 @@
 package org.infinispan.protostream;
 
 import java.io.IOException;
-import java.util.BitSet;
+import java.util.Arrays;
 
 import org.infinispan.protostream.descriptors.Descriptor;
 import org.infinispan.protostream.descriptors.FieldDescriptor;
@@ -34,7 +34,18 @@ public class MessageContext<E extends MessageContext<E>> {
     */
    private final Descriptor messageDescriptor;
 
-   private final BitSet seenFields;      //todo [anistor] need a sparse bitset here to avoid memory waste
+   /**
+    * The seen fields, one bit per field ordinal (see {@link Descriptor#getFieldOrdinal}). The first 64 fields are
+    * tracked in {@link #seenFields}, the others (if any) in {@link #moreSeenFields}, which is allocated on demand.
+    */
+   private long seenFields = 0L;
+
+   private long[] moreSeenFields;
+
+   /**
+    * Seen field numbers that are not declared by the message type. These are not expected in practice.
+    */
+   private int[] undeclaredSeenFields;
 
    private int maxSeenFieldNumber = 0;
 
@@ -52,8 +63,6 @@ public class MessageContext<E extends MessageContext<E>> {
       this.parentContext = parentContext;
       this.fieldDescriptor = fieldDescriptor;
       this.messageDescriptor = messageDescriptor;
-
-      seenFields = new BitSet(messageDescriptor.getFields().size() + messageDescriptor.getOneOfs().size());
    }
 
    public E getParentContext() {
@@ -101,7 +110,15 @@ public class MessageContext<E extends MessageContext<E>> {
    }
 
    public boolean isFieldMarked(int fieldNumber) {
-      return seenFields.get(fieldNumber);
+      int ordinal = messageDescriptor.getFieldOrdinal(fieldNumber);
+      if (ordinal < 0) {
+         return undeclaredSeenFields != null && Arrays.binarySearch(undeclaredSeenFields, fieldNumber) >= 0;
+      }
+      if (ordinal < 64) {
+         return (seenFields & (1L << ordinal)) != 0;
+      }
+      int word = (ordinal >> 6) - 1;
+      return moreSeenFields != null && (moreSeenFields[word] & (1L << ordinal)) != 0;
    }
 
    /**
@@ -111,16 +128,52 @@ public class MessageContext<E extends MessageContext<E>> {
     * @return true if it was added, false if it was already there
     */
    public boolean markField(int fieldNumber) {
-      if (seenFields.get(fieldNumber)) {
-         return false;
+      int ordinal = messageDescriptor.getFieldOrdinal(fieldNumber);
+      if (ordinal < 0) {
+         if (!markUndeclaredField(fieldNumber)) {
+            return false;
+         }
+      } else if (ordinal < 64) {
+         long mask = 1L << ordinal;
+         if ((seenFields & mask) != 0) {
+            return false;
+         }
+         seenFields |= mask;
+      } else {
+         if (moreSeenFields == null) {
+            moreSeenFields = new long[(messageDescriptor.getFieldCount() - 1) >> 6];
+         }
+         int word = (ordinal >> 6) - 1;
+         long mask = 1L << ordinal;
+         if ((moreSeenFields[word] & mask) != 0) {
+            return false;
+         }
+         moreSeenFields[word] |= mask;
       }
-      seenFields.set(fieldNumber); //todo [anistor] this can cause the bitset grow dangerously
       if (maxSeenFieldNumber < fieldNumber) {
          maxSeenFieldNumber = fieldNumber;
       }
       return true;
    }
 
+   private boolean markUndeclaredField(int fieldNumber) {
+      if (undeclaredSeenFields == null) {
+         undeclaredSeenFields = new int[]{fieldNumber};
+         return true;
+      }
+      int pos = Arrays.binarySearch(undeclaredSeenFields, fieldNumber);
+      if (pos >= 0) {
+         return false;
+      }
+      pos = -pos - 1;
+      int[] newSeenFields = new int[undeclaredSeenFields.length + 1];
+      System.arraycopy(undeclaredSeenFields, 0, newSeenFields, 0, pos);
+      newSeenFields[pos] = fieldNumber;
+      System.arraycopy(undeclaredSeenFields, pos, newSeenFields, pos + 1, undeclaredSeenFields.length - pos);
+      undeclaredSeenFields = newSeenFields;
+      return true;
+   }
+
    public int getMaxSeenFieldNumber() {
       return maxSeenFieldNumber;
    }
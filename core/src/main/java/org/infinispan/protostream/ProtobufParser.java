@@ -8,6 +8,7 @@ import org.infinispan.protostream.descriptors.FieldDescriptor;
 import org.infinispan.protostream.descriptors.Type;
 import org.infinispan.protostream.descriptors.WireType;
 import org.infinispan.protostream.impl.TagReaderImpl;
+import org.infinispan.protostream.impl.TypedProtobufParser;
 
 /**
  * @author anistor@redhat.com
@@ -52,6 +53,36 @@ public final class ProtobufParser {
       parseInternal(tagHandler, messageDescriptor, in);
    }
 
+   /**
+    * Parses a message from a stream, reporting its fields to a {@link TypedTagHandler}. Length delimited values that
+    * fit in the internal buffer are not copied.
+    *
+    * @since 4.4
+    */
+   public void parse(TypedTagHandler tagHandler, Descriptor messageDescriptor, InputStream input) throws IOException {
+      TypedProtobufParser.parse(tagHandler, messageDescriptor, TagReaderImpl.newInstance(null, input));
+   }
+
+   /**
+    * Parses a message from a byte array, reporting its fields to a {@link TypedTagHandler}. This does not allocate,
+    * except for the reader.
+    *
+    * @since 4.4
+    */
+   public void parse(TypedTagHandler tagHandler, Descriptor messageDescriptor, byte[] buf, int off, int len) throws IOException {
+      TypedProtobufParser.parse(tagHandler, messageDescriptor, TagReaderImpl.newInstance(null, buf, off, len));
+   }
+
+   /**
+    * Parses a message from a byte array, reporting its fields to a {@link TypedTagHandler}. This does not allocate,
+    * except for the reader.
+    *
+    * @since 4.4
+    */
+   public void parse(TypedTagHandler tagHandler, Descriptor messageDescriptor, byte[] buf) throws IOException {
+      TypedProtobufParser.parse(tagHandler, messageDescriptor, TagReaderImpl.newInstance(null, buf));
+   }
+
    private void parseInternal(TagHandler tagHandler, Descriptor messageDescriptor, TagReader in) throws IOException {
       tagHandler.onStart(messageDescriptor);
       parseMessage(tagHandler, messageDescriptor, in);
@@ -84,6 +115,14 @@ public final class ProtobufParser {
                   tagHandler.onEndNested(fieldNumber, fd);
                   in.checkLastTagWas(0);
                   in.popLimit(oldLimit);
+               } else if (fd.isRepeated() && fd.getType().isPackable()) {
+                  // packed repeated field, each element is reported separately as if it was not packed
+                  int length = in.readUInt32();
+                  int oldLimit = in.pushLimit(length);
+                  while (!in.isAtEnd()) {
+                     tagHandler.onTag(fieldNumber, fd, readScalar(fd, in));
+                  }
+                  in.popLimit(oldLimit);
                }
                break;
             }
@@ -115,54 +154,7 @@ public final class ProtobufParser {
                      tagHandler.onTag(fieldNumber, null, in.readUInt64());
                   }
                } else {
-                  Object value;
-                  switch (fd.getType()) {
-                     case DOUBLE:
-                        value = in.readDouble();
-                        break;
-                     case FLOAT:
-                        value = in.readFloat();
-                        break;
-                     case BOOL:
-                        value = in.readBool();
-                        break;
-                     case INT32:
-                        value = in.readInt32();
-                        break;
-                     case SFIXED32:
-                        value = in.readSFixed32();
-                        break;
-                     case FIXED32:
-                        value = in.readFixed32();
-                        break;
-                     case UINT32:
-                        value = in.readUInt32();
-                        break;
-                     case SINT32:
-                        value = in.readSInt32();
-                        break;
-                     case INT64:
-                        value = in.readInt64();
-                        break;
-                     case UINT64:
-                        value = in.readUInt64();
-                        break;
-                     case FIXED64:
-                        value = in.readFixed64();
-                        break;
-                     case SFIXED64:
-                        value = in.readSFixed64();
-                        break;
-                     case SINT64:
-                        value = in.readSInt64();
-                        break;
-                     case ENUM:
-                        value = in.readEnum();
-                        break;
-                     default:
-                        throw new IOException("Unexpected field type " + fd.getType() + " for field " + fieldNumber);
-                  }
-                  tagHandler.onTag(fieldNumber, fd, value);
+                  tagHandler.onTag(fieldNumber, fd, readScalar(fd, in));
                }
                break;
             }
@@ -172,4 +164,39 @@ public final class ProtobufParser {
          }
       }
    }
+
+   private static Object readScalar(FieldDescriptor fd, TagReader in) throws IOException {
+      switch (fd.getType()) {
+         case DOUBLE:
+            return in.readDouble();
+         case FLOAT:
+            return in.readFloat();
+         case BOOL:
+            return in.readBool();
+         case INT32:
+            return in.readInt32();
+         case SFIXED32:
+            return in.readSFixed32();
+         case FIXED32:
+            return in.readFixed32();
+         case UINT32:
+            return in.readUInt32();
+         case SINT32:
+            return in.readSInt32();
+         case INT64:
+            return in.readInt64();
+         case UINT64:
+            return in.readUInt64();
+         case FIXED64:
+            return in.readFixed64();
+         case SFIXED64:
+            return in.readSFixed64();
+         case SINT64:
+            return in.readSInt64();
+         case ENUM:
+            return in.readEnum();
+         default:
+            throw new IOException("Unexpected field type " + fd.getType() + " for field " + fd.getNumber());
+      }
+   }
 }
@@ -9,8 +9,9 @@ import java.nio.ByteBuffer;
 
 import org.infinispan.protostream.config.Configuration;
 import org.infinispan.protostream.impl.BaseMarshallerDelegate;
-import org.infinispan.protostream.impl.ByteArrayOutputStreamEx;
+import org.infinispan.protostream.impl.ByteBufferChunks;
 import org.infinispan.protostream.impl.JsonUtils;
+import org.infinispan.protostream.impl.ReaderWriterPool;
 import org.infinispan.protostream.impl.SerializationContextImpl;
 import org.infinispan.protostream.impl.TagReaderImpl;
 import org.infinispan.protostream.impl.TagWriterImpl;
@@ -51,15 +52,23 @@ public final class ProtobufUtil {
    }
 
    public static <A> int computeMessageSize(ImmutableSerializationContext ctx, A t) throws IOException {
-      TagWriterImpl out = TagWriterImpl.newInstance(ctx);
-      write(ctx, out, t);
-      return out.getWrittenBytes();
+      TagWriterImpl out = ReaderWriterPool.acquireWriter(ctx);
+      try {
+         write(ctx, out, t);
+         return out.getWrittenBytes();
+      } finally {
+         ReaderWriterPool.release(out);
+      }
    }
 
    public static <A> int computeWrappedMessageSize(ImmutableSerializationContext ctx, A t) throws IOException {
-      TagWriterImpl out = TagWriterImpl.newInstance(ctx);
-      WrappedMessage.write(ctx, out, t);
-      return out.getWrittenBytes();
+      TagWriterImpl out = ReaderWriterPool.acquireWriter(ctx);
+      try {
+         WrappedMessage.write(ctx, out, t);
+         return out.getWrittenBytes();
+      } finally {
+         ReaderWriterPool.release(out);
+      }
    }
 
    private static <A> void write(ImmutableSerializationContext ctx, TagWriterImpl out, A t) throws IOException {
@@ -72,19 +81,50 @@ public final class ProtobufUtil {
    }
 
    public static void writeTo(ImmutableSerializationContext ctx, OutputStream out, Object t) throws IOException {
-      write(ctx, TagWriterImpl.newInstance(ctx, out), t);
+      TagWriterImpl writer = ReaderWriterPool.acquireWriter(ctx, out, DEFAULT_STREAM_BUFFER_SIZE);
+      try {
+         write(ctx, writer, t);
+      } finally {
+         ReaderWriterPool.release(writer);
+      }
    }
 
    public static byte[] toByteArray(ImmutableSerializationContext ctx, Object t) throws IOException {
-      ByteArrayOutputStream baos = new ByteArrayOutputStream(DEFAULT_ARRAY_BUFFER_SIZE);
-      writeTo(ctx, baos, t);
-      return baos.toByteArray();
+      // the message is written in a single pass, only its nested messages need to be sized before being written
+      TagWriterImpl out = ReaderWriterPool.acquireGrowableWriter(ctx, DEFAULT_ARRAY_BUFFER_SIZE);
+      try {
+         write(ctx, out, t);
+         return out.toByteArray();
+      } finally {
+         ReaderWriterPool.release(out);
+      }
    }
 
    public static ByteBuffer toByteBuffer(ImmutableSerializationContext ctx, Object t) throws IOException {
-      ByteArrayOutputStreamEx baos = new ByteArrayOutputStreamEx(DEFAULT_ARRAY_BUFFER_SIZE);
-      writeTo(ctx, baos, t);
-      return baos.getByteBuffer();
+      return ByteBuffer.wrap(toByteArray(ctx, t));
+   }
+
+   /**
+    * Writes a message to a chain of buffers acquired from the pool as needed, so a large message never has to be held
+    * in a single contiguous array. The returned buffers are positioned at the beginning of the written bytes, ready for
+    * {@link java.nio.channels.GatheringByteChannel#write(ByteBuffer[])}, and must each be given back with {@link
+    * ByteBufferPool#release} once consumed.
+    *
+    * @param ctx  the serialization context
+    * @param t    the message to write
+    * @param pool the source of the buffers, for example a {@link DirectByteBufferPool}
+    * @return the buffers holding the message, in order
+    * @throws IOException if the marshaller fails
+    */
+   public static ByteBuffer[] toByteBuffers(ImmutableSerializationContext ctx, Object t, ByteBufferPool pool) throws IOException {
+      ByteBufferChunks chunks = new ByteBufferChunks(pool);
+      try {
+         write(ctx, TagWriterImpl.newInstance(ctx, chunks), t);
+         return chunks.detach();
+      } finally {
+         // gives back the chunks if the write failed, nothing otherwise
+         chunks.release();
+      }
    }
 
    private static <A> A readFrom(TagReaderImpl in, Class<A> clazz) throws IOException {
@@ -96,20 +136,35 @@ public final class ProtobufUtil {
    }
 
    public static <A> A readFrom(ImmutableSerializationContext ctx, InputStream in, Class<A> clazz) throws IOException {
-      return readFrom(TagReaderImpl.newInstance(ctx, in), clazz);
+      TagReaderImpl reader = ReaderWriterPool.acquireReader(ctx, in);
+      try {
+         return readFrom(reader, clazz);
+      } finally {
+         ReaderWriterPool.release(reader);
+      }
    }
 
    public static <A> A fromByteArray(ImmutableSerializationContext ctx, byte[] bytes, Class<A> clazz) throws IOException {
-      return readFrom(TagReaderImpl.newInstance(ctx, bytes), clazz);
+      return fromByteArray(ctx, bytes, 0, bytes.length, clazz);
    }
 
    //todo [anistor] what happens with remaining unconsumed trailing bytes after offset+length, here and in general? signal an error, a warning, or ignore?
    public static <A> A fromByteArray(ImmutableSerializationContext ctx, byte[] bytes, int offset, int length, Class<A> clazz) throws IOException {
-      return readFrom(TagReaderImpl.newInstance(ctx, bytes, offset, length), clazz);
+      TagReaderImpl reader = ReaderWriterPool.acquireReader(ctx, bytes, offset, length);
+      try {
+         return readFrom(reader, clazz);
+      } finally {
+         ReaderWriterPool.release(reader);
+      }
    }
 
    public static <A> A fromByteBuffer(ImmutableSerializationContext ctx, ByteBuffer byteBuffer, Class<A> clazz) throws IOException {
-      return readFrom(TagReaderImpl.newInstance(ctx, byteBuffer), clazz);
+      TagReaderImpl reader = ReaderWriterPool.acquireReader(ctx, byteBuffer);
+      try {
+         return readFrom(reader, clazz);
+      } finally {
+         ReaderWriterPool.release(reader);
+      }
    }
 
    /**
@@ -126,20 +181,43 @@ public final class ProtobufUtil {
    }
 
    public static <A> A fromWrappedByteArray(ImmutableSerializationContext ctx, byte[] bytes, int offset, int length) throws IOException {
-      return WrappedMessage.read(ctx, TagReaderImpl.newInstance(ctx, bytes, offset, length));
+      TagReaderImpl reader = ReaderWriterPool.acquireReader(ctx, bytes, offset, length);
+      try {
+         return WrappedMessage.read(ctx, reader);
+      } finally {
+         ReaderWriterPool.release(reader);
+      }
    }
 
    public static <A> A fromWrappedByteBuffer(ImmutableSerializationContext ctx, ByteBuffer byteBuffer) throws IOException {
-      return WrappedMessage.read(ctx, TagReaderImpl.newInstance(ctx, byteBuffer));
+      TagReaderImpl reader = ReaderWriterPool.acquireReader(ctx, byteBuffer);
+      try {
+         return WrappedMessage.read(ctx, reader);
+      } finally {
+         ReaderWriterPool.release(reader);
+      }
    }
 
    public static <A> A fromWrappedStream(ImmutableSerializationContext ctx, InputStream in) throws IOException {
-      return WrappedMessage.read(ctx, TagReaderImpl.newInstance(ctx, in));
+      TagReaderImpl reader = ReaderWriterPool.acquireReader(ctx, in);
+      try {
+         return WrappedMessage.read(ctx, reader);
+      } finally {
+         ReaderWriterPool.release(reader);
+      }
    }
 
    //todo [anistor] should make it possible to plug in a custom wrapping strategy instead of the default one
    public static byte[] toWrappedByteArray(ImmutableSerializationContext ctx, Object t) throws IOException {
-      return toWrappedByteArray(ctx, t, DEFAULT_ARRAY_BUFFER_SIZE);
+      // the message is written in a single pass, only the wrapped message needs to be sized before being written
+      TagWriterImpl out = ReaderWriterPool.acquireGrowableWriter(ctx, DEFAULT_ARRAY_BUFFER_SIZE);
+      try {
+         WrappedMessage.write(ctx, out, t);
+         out.flush();
+         return out.toByteArray();
+      } finally {
+         ReaderWriterPool.release(out);
+      }
    }
 
    public static byte[] toWrappedByteArray(ImmutableSerializationContext ctx, Object t, int bufferSize) throws IOException {
@@ -149,9 +227,23 @@ public final class ProtobufUtil {
    }
 
    public static ByteBuffer toWrappedByteBuffer(ImmutableSerializationContext ctx, Object t) throws IOException {
-      ByteArrayOutputStreamEx baos = new ByteArrayOutputStreamEx(DEFAULT_ARRAY_BUFFER_SIZE);
-      WrappedMessage.write(ctx, TagWriterImpl.newInstance(ctx, baos), t);
-      return baos.getByteBuffer();
+      return ByteBuffer.wrap(toWrappedByteArray(ctx, t));
+   }
+
+   /**
+    * Same as {@link #toByteBuffers}, for a {@link WrappedMessage}.
+    */
+   public static ByteBuffer[] toWrappedByteBuffers(ImmutableSerializationContext ctx, Object t, ByteBufferPool pool) throws IOException {
+      ByteBufferChunks chunks = new ByteBufferChunks(pool);
+      try {
+         TagWriterImpl out = TagWriterImpl.newInstance(ctx, chunks);
+         WrappedMessage.write(ctx, out, t);
+         out.flush();
+         return chunks.detach();
+      } finally {
+         // gives back the chunks if the write failed, nothing otherwise
+         chunks.release();
+      }
    }
 
    public static void toWrappedStream(ImmutableSerializationContext ctx, OutputStream out, Object t) throws IOException {
@@ -159,7 +251,12 @@ public final class ProtobufUtil {
    }
 
    public static void toWrappedStream(ImmutableSerializationContext ctx, OutputStream out, Object t, int bufferSize) throws IOException {
-      WrappedMessage.write(ctx, TagWriterImpl.newInstance(ctx, out, bufferSize), t);
+      TagWriterImpl writer = ReaderWriterPool.acquireWriter(ctx, out, bufferSize);
+      try {
+         WrappedMessage.write(ctx, writer, t);
+      } finally {
+         ReaderWriterPool.release(writer);
+      }
    }
 
    /**
@@ -189,6 +286,36 @@ public final class ProtobufUtil {
       return JsonUtils.toCanonicalJSON(ctx, bytes, prettyPrint);
    }
 
+   /**
+    * Converts a Protobuf encoded message to its <a href="https://developers.google.com/protocol-buffers/docs/proto3#json">
+    * canonical JSON representation</a>, writing it to an {@link Appendable} (usually a {@link java.io.Writer}) as it is
+    * produced, without building the whole document in memory. The output is not flushed or closed.
+    *
+    * @param ctx         the serialization context
+    * @param bytes       the Protobuf encoded message bytes to parse
+    * @param out         the destination of the JSON text
+    * @param prettyPrint indicates if the JSON output should use a 'pretty' human-readable format or a compact format
+    * @throws IOException if I/O operations fail
+    */
+   public static void toCanonicalJSON(ImmutableSerializationContext ctx, byte[] bytes, Appendable out, boolean prettyPrint) throws IOException {
+      JsonUtils.toCanonicalJSON(ctx, bytes, out, prettyPrint);
+   }
+
+   /**
+    * Converts a Protobuf encoded message to its <a href="https://developers.google.com/protocol-buffers/docs/proto3#json">
+    * canonical JSON representation</a>, writing it to an {@link OutputStream} using UTF-8 encoding as it is produced.
+    * The stream is flushed but not closed.
+    *
+    * @param ctx         the serialization context
+    * @param bytes       the Protobuf encoded message bytes to parse
+    * @param out         the destination stream
+    * @param prettyPrint indicates if the JSON output should use a 'pretty' human-readable format or a compact format
+    * @throws IOException if I/O operations fail
+    */
+   public static void toCanonicalJSON(ImmutableSerializationContext ctx, byte[] bytes, OutputStream out, boolean prettyPrint) throws IOException {
+      JsonUtils.toCanonicalJSON(ctx, bytes, out, prettyPrint);
+   }
+
    public static byte[] fromCanonicalJSON(ImmutableSerializationContext ctx, Reader reader) throws IOException {
       return JsonUtils.fromCanonicalJSON(ctx, reader);
    }
@@ -3,6 +3,7 @@ package org.infinispan.protostream;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 
+import org.infinispan.protostream.descriptors.Type;
 import org.infinispan.protostream.descriptors.WireType;
 
 /**
@@ -61,5 +62,173 @@ public interface TagWriter extends RawProtoStreamWriter {
    void writeBytes(int number, byte[] value) throws IOException;
 
    void writeBytes(int number, byte[] value, int offset, int length) throws IOException;
+
+   /**
+    * Writes a repeated field having a 32 bit integral type (INT32, UINT32, SINT32, FIXED32, SFIXED32 or ENUM) in packed
+    * form, ie. a single length delimited record containing all values without tags. Nothing is written if there are no
+    * values.
+    * <p>
+    * The default implementation encodes the values with the low level ops of this writer. Implementations having
+    * direct access to their output should override it.
+    */
+   default void writePackedInts(int number, Type type, int[] values, int offset, int length) throws IOException {
+      if (length == 0) {
+         return;
+      }
+      final int end = offset + length;
+      int size = 0;
+      switch (type) {
+         case INT32:
+         case ENUM:
+            for (int i = offset; i < end; i++) {
+               int value = values[i];
+               // negative values are always sign extended to 64 bits
+               size += value >= 0 ? (38 - Integer.numberOfLeadingZeros(value | 1)) / 7 : WireType.MAX_VARINT_SIZE;
+            }
+            break;
+         case UINT32:
+            for (int i = offset; i < end; i++) {
+               size += (38 - Integer.numberOfLeadingZeros(values[i] | 1)) / 7;
+            }
+            break;
+         case SINT32:
+            for (int i = offset; i < end; i++) {
+               int value = values[i];
+               size += (38 - Integer.numberOfLeadingZeros((value << 1) ^ (value >> 31) | 1)) / 7;
+            }
+            break;
+         case FIXED32:
+         case SFIXED32:
+            size = length * WireType.FIXED_32_SIZE;
+            break;
+         default:
+            throw new IllegalArgumentException("Type " + type + " cannot be written as a packed 32 bit integral field");
+      }
+      writeTag(number, WireType.WIRETYPE_LENGTH_DELIMITED);
+      writeVarint32(size);
+      for (int i = offset; i < end; i++) {
+         int value = values[i];
+         switch (type) {
+            case INT32:
+            case ENUM:
+               if (value >= 0) {
+                  writeVarint32(value);
+               } else {
+                  writeVarint64(value);
+               }
+               break;
+            case UINT32:
+               writeVarint32(value);
+               break;
+            case SINT32:
+               writeVarint32((value << 1) ^ (value >> 31));
+               break;
+            default:
+               writeRawByte((byte) value);
+               writeRawByte((byte) (value >> 8));
+               writeRawByte((byte) (value >> 16));
+               writeRawByte((byte) (value >> 24));
+         }
+      }
+   }
+
+   /**
+    * Writes a repeated field having a 64 bit integral type (INT64, UINT64, SINT64, FIXED64 or SFIXED64) in packed form.
+    * Nothing is written if there are no values.
+    */
+   default void writePackedLongs(int number, Type type, long[] values, int offset, int length) throws IOException {
+      if (length == 0) {
+         return;
+      }
+      final int end = offset + length;
+      int size = 0;
+      switch (type) {
+         case INT64:
+         case UINT64:
+            for (int i = offset; i < end; i++) {
+               size += (70 - Long.numberOfLeadingZeros(values[i] | 1)) / 7;
+            }
+            break;
+         case SINT64:
+            for (int i = offset; i < end; i++) {
+               long value = values[i];
+               size += (70 - Long.numberOfLeadingZeros((value << 1) ^ (value >> 63) | 1)) / 7;
+            }
+            break;
+         case FIXED64:
+         case SFIXED64:
+            size = length * WireType.FIXED_64_SIZE;
+            break;
+         default:
+            throw new IllegalArgumentException("Type " + type + " cannot be written as a packed 64 bit integral field");
+      }
+      writeTag(number, WireType.WIRETYPE_LENGTH_DELIMITED);
+      writeVarint32(size);
+      for (int i = offset; i < end; i++) {
+         long value = values[i];
+         switch (type) {
+            case INT64:
+            case UINT64:
+               writeVarint64(value);
+               break;
+            case SINT64:
+               writeVarint64((value << 1) ^ (value >> 63));
+               break;
+            default:
+               for (int shift = 0; shift < 64; shift += 8) {
+                  writeRawByte((byte) (value >> shift));
+               }
+         }
+      }
+   }
+
+   /**
+    * Writes a repeated DOUBLE field in packed form. Nothing is written if there are no values.
+    */
+   default void writePackedDoubles(int number, double[] values, int offset, int length) throws IOException {
+      if (length == 0) {
+         return;
+      }
+      writeTag(number, WireType.WIRETYPE_LENGTH_DELIMITED);
+      writeVarint32(length * WireType.FIXED_64_SIZE);
+      for (int i = offset, end = offset + length; i < end; i++) {
+         long value = Double.doubleToRawLongBits(values[i]);
+         for (int shift = 0; shift < 64; shift += 8) {
+            writeRawByte((byte) (value >> shift));
+         }
+      }
+   }
+
+   /**
+    * Writes a repeated FLOAT field in packed form. Nothing is written if there are no values.
+    */
+   default void writePackedFloats(int number, float[] values, int offset, int length) throws IOException {
+      if (length == 0) {
+         return;
+      }
+      writeTag(number, WireType.WIRETYPE_LENGTH_DELIMITED);
+      writeVarint32(length * WireType.FIXED_32_SIZE);
+      for (int i = offset, end = offset + length; i < end; i++) {
+         int value = Float.floatToRawIntBits(values[i]);
+         writeRawByte((byte) value);
+         writeRawByte((byte) (value >> 8));
+         writeRawByte((byte) (value >> 16));
+         writeRawByte((byte) (value >> 24));
+      }
+   }
+
+   /**
+    * Writes a repeated BOOL field in packed form. Nothing is written if there are no values.
+    */
+   default void writePackedBools(int number, boolean[] values, int offset, int length) throws IOException {
+      if (length == 0) {
+         return;
+      }
+      writeTag(number, WireType.WIRETYPE_LENGTH_DELIMITED);
+      writeVarint32(length);
+      for (int i = offset, end = offset + length; i < end; i++) {
+         writeRawByte((byte) (values[i] ? 1 : 0));
+      }
+   }
    // end high level ops
 }
@@ -0,0 +1,132 @@
+package org.infinispan.protostream;
+
+import org.infinispan.protostream.descriptors.Descriptor;
+import org.infinispan.protostream.descriptors.FieldDescriptor;
+
+/**
+ * An event based interface for consuming a Protobuf stream containing exactly one top level message, similar to
+ * {@link TagHandler}, but with a callback for each kind of value so primitives are never boxed. Strings and byte
+ * arrays are not decoded or copied unless requested, they are presented as a {@link BytesView} of the input. Visiting
+ * a message stored in a byte array does not allocate.
+ * <p>
+ * Unknown fields are reported with a {@code null} field descriptor: varints to {@link #onInt64}, fixed 32 bits values
+ * to {@link #onFixed32}, fixed 64 bits values to {@link #onFixed64} and length delimited values to {@link #onBytes}.
+ *
+ * @since 4.4
+ */
+public interface TypedTagHandler {
+
+   /**
+    * A view of a length delimited value. It is only valid during the callback that receives it.
+    */
+   interface BytesView {
+
+      /**
+       * The number of bytes.
+       */
+      int length();
+
+      byte byteAt(int index);
+
+      /**
+       * Copies the bytes to a new array.
+       */
+      byte[] toByteArray();
+
+      /**
+       * Copies the bytes to the given array.
+       */
+      void copyTo(byte[] dest, int offset);
+
+      /**
+       * Decodes the bytes as an UTF-8 string.
+       */
+      String toUtf8String();
+   }
+
+   /**
+    * Start of the top level message.
+    *
+    * @param descriptor the message type
+    */
+   default void onStart(Descriptor descriptor) {
+   }
+
+   /**
+    * A value of type {@code int32}, {@code uint32} or {@code sint32}.
+    */
+   default void onInt32(int fieldNumber, FieldDescriptor fieldDescriptor, int value) {
+   }
+
+   /**
+    * A value of type {@code int64}, {@code uint64} or {@code sint64}, or an unknown varint field.
+    */
+   default void onInt64(int fieldNumber, FieldDescriptor fieldDescriptor, long value) {
+   }
+
+   /**
+    * A value of type {@code fixed32} or {@code sfixed32}, or an unknown fixed 32 bits field.
+    */
+   default void onFixed32(int fieldNumber, FieldDescriptor fieldDescriptor, int value) {
+   }
+
+   /**
+    * A value of type {@code fixed64} or {@code sfixed64}, or an unknown fixed 64 bits field.
+    */
+   default void onFixed64(int fieldNumber, FieldDescriptor fieldDescriptor, long value) {
+   }
+
+   default void onFloat(int fieldNumber, FieldDescriptor fieldDescriptor, float value) {
+   }
+
+   default void onDouble(int fieldNumber, FieldDescriptor fieldDescriptor, double value) {
+   }
+
+   default void onBool(int fieldNumber, FieldDescriptor fieldDescriptor, boolean value) {
+   }
+
+   /**
+    * An enum value, which is the number of the enum constant, not necessarily a known one.
+    */
+   default void onEnum(int fieldNumber, FieldDescriptor fieldDescriptor, int value) {
+   }
+
+   /**
+    * A value of type {@code string}, not decoded yet.
+    */
+   default void onString(int fieldNumber, FieldDescriptor fieldDescriptor, BytesView value) {
+   }
+
+   /**
+    * A value of type {@code bytes}, or an unknown length delimited field.
+    */
+   default void onBytes(int fieldNumber, FieldDescriptor fieldDescriptor, BytesView value) {
+   }
+
+   /**
+    * Start of a nested message or group.
+    *
+    * @param fieldNumber     the field number
+    * @param fieldDescriptor a field of message type, or {@code null} if this is an unknown group
+    * @return {@code true} to visit the fields of the nested message, or {@code false} to skip it entirely, in which case
+    * {@link #onEndNested} is not invoked either
+    */
+   default boolean onStartNested(int fieldNumber, FieldDescriptor fieldDescriptor) {
+      return true;
+   }
+
+   /**
+    * End of a nested message or group.
+    *
+    * @param fieldNumber     the field number
+    * @param fieldDescriptor a field of message type, or {@code null} if this is an unknown group
+    */
+   default void onEndNested(int fieldNumber, FieldDescriptor fieldDescriptor) {
+   }
+
+   /**
+    * End of the top level message.
+    */
+   default void onEnd() {
+   }
+}
@@ -1,6 +1,7 @@
 package org.infinispan.protostream;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.time.Instant;
 import java.util.Date;
 import java.util.Iterator;
@@ -8,10 +9,13 @@ import java.util.Iterator;
 import org.infinispan.protostream.containers.ElementContainerAdapter;
 import org.infinispan.protostream.containers.IndexedElementContainerAdapter;
 import org.infinispan.protostream.containers.IterableElementContainerAdapter;
+import org.infinispan.protostream.containers.PackedElementContainerAdapter;
+import org.infinispan.protostream.descriptors.GenericDescriptor;
 import org.infinispan.protostream.descriptors.WireType;
 import org.infinispan.protostream.impl.BaseMarshallerDelegate;
 import org.infinispan.protostream.impl.ByteArrayOutputStreamEx;
 import org.infinispan.protostream.impl.EnumMarshallerDelegate;
+import org.infinispan.protostream.impl.PinnedSerializationContext;
 import org.infinispan.protostream.impl.SerializationContextImpl;
 import org.infinispan.protostream.impl.TagReaderImpl;
 import org.infinispan.protostream.impl.TagWriterImpl;
@@ -220,6 +224,28 @@ public final class WrappedMessage {
 
    public static final int WRAPPED_CONTAINER_MESSAGE = 30;
 
+   /**
+    * All elements of a container of primitives, as a single packed field. See {@link PackedElementContainerAdapter}.
+    */
+   public static final int WRAPPED_CONTAINER_ELEMENTS = 31;
+
+   /**
+    * The type name of all elements of a container, if they are messages of the same type.
+    */
+   public static final int WRAPPED_CONTAINER_ELEMENT_TYPE_NAME = 32;
+
+   /**
+    * The type id of all elements of a container, if they are messages of the same type. This is an alternative to
+    * {@link #WRAPPED_CONTAINER_ELEMENT_TYPE_NAME}.
+    */
+   public static final int WRAPPED_CONTAINER_ELEMENT_TYPE_ID = 33;
+
+   /**
+    * An encoded element of a container having a {@link #WRAPPED_CONTAINER_ELEMENT_TYPE_NAME} or {@link
+    * #WRAPPED_CONTAINER_ELEMENT_TYPE_ID}.
+    */
+   public static final int WRAPPED_CONTAINER_ELEMENT = 34;
+
    public static final String CONTAINER_SIZE_CONTEXT_PARAM = "containerSize";
 
    /**
@@ -278,7 +304,7 @@ public final class WrappedMessage {
          out.writeBytes(WRAPPED_BYTES, (byte[]) t);
       } else {
          // This is either a message type or an enum. Try to lookup a marshaller.
-         BaseMarshallerDelegate marshallerDelegate = ((SerializationContextImpl) ctx).getMarshallerDelegate(t);
+         BaseMarshallerDelegate<Object> marshallerDelegate = ((SerializationContextImpl) ctx).getMarshallerDelegate(t);
          BaseMarshaller marshaller = marshallerDelegate.getMarshaller();
 
          if (marshaller instanceof ElementContainerAdapter) {
@@ -286,7 +312,7 @@ public final class WrappedMessage {
          } else {
             // Write the type discriminator, either the fully qualified name or a numeric type id.
             String typeName = marshaller.getTypeName();
-            int typeId = mapTypeIdOut(typeName, ctx);
+            int typeId = mapTypeIdOut(typeName, ctx, out);
             if (typeId < 0) {
                out.writeString(WRAPPED_TYPE_NAME, typeName);
             } else {
@@ -296,21 +322,17 @@ public final class WrappedMessage {
             if (t.getClass().isEnum()) {
                ((EnumMarshallerDelegate) marshallerDelegate).encode(WRAPPED_ENUM, (Enum) t, out);
             } else {
-               ByteArrayOutputStreamEx buffer = new ByteArrayOutputStreamEx();
-               TagWriterImpl nestedCtx = TagWriterImpl.newInstance(ctx, buffer);
-               marshallerDelegate.marshall(nestedCtx, null, t);
-               nestedCtx.flush();
-               out.writeBytes(WRAPPED_MESSAGE, buffer.getByteBuffer());
+               writeEmbeddedMessage(ctx, out, WRAPPED_MESSAGE, marshallerDelegate, t);
             }
          }
       }
       out.flush();
    }
 
-   private static void writeContainer(ImmutableSerializationContext ctx, TagWriter out, BaseMarshallerDelegate marshallerDelegate, Object container) throws IOException {
+   private static void writeContainer(ImmutableSerializationContext ctx, TagWriter out, BaseMarshallerDelegate<Object> marshallerDelegate, Object container) throws IOException {
       BaseMarshaller containerMarshaller = marshallerDelegate.getMarshaller();
       String typeName = containerMarshaller.getTypeName();
-      int typeId = mapTypeIdOut(typeName, ctx);
+      int typeId = mapTypeIdOut(typeName, ctx, out);
 
       if (typeId < 0) {
          out.writeString(WRAPPED_CONTAINER_TYPE_NAME, typeName);
@@ -321,17 +343,44 @@ public final class WrappedMessage {
       int containerSize = ((ElementContainerAdapter) containerMarshaller).getNumElements(container);
       out.writeUInt32(WRAPPED_CONTAINER_SIZE, containerSize);
 
-      ByteArrayOutputStreamEx buffer = new ByteArrayOutputStreamEx();
-      TagWriterImpl nestedCtx = TagWriterImpl.newInstance(ctx, buffer);
-      marshallerDelegate.marshall(nestedCtx, null, container);
-      nestedCtx.flush();
-      out.writeBytes(WRAPPED_CONTAINER_MESSAGE, buffer.getByteBuffer());
+      if (containerMarshaller instanceof PackedElementContainerAdapter && ctx.getConfiguration().wrappingConfig().packedContainers()) {
+         // the elements precede the container message, so the reader knows about them when it finishes the header
+         @SuppressWarnings("unchecked")
+         PackedElementContainerAdapter<Object, ?> packedAdapter = (PackedElementContainerAdapter<Object, ?>) containerMarshaller;
+         packedAdapter.writePackedElements(out, WRAPPED_CONTAINER_ELEMENTS, container);
+         writeEmbeddedMessage(ctx, out, WRAPPED_CONTAINER_MESSAGE, marshallerDelegate, container);
+         return;
+      }
+
+      Class<?> elementClass = null;
+      BaseMarshallerDelegate<Object> elementMarshallerDelegate = null;
+      if (containerSize > 0 && ctx.getConfiguration().wrappingConfig().homogeneousContainers()) {
+         // the elements are assumed to have the type of the first one, so they are not scanned in advance
+         @SuppressWarnings("unchecked")
+         Object firstElement = containerMarshaller instanceof IterableElementContainerAdapter
+               ? ((IterableElementContainerAdapter<Object, ?>) containerMarshaller).getElements(container).next()
+               : ((IndexedElementContainerAdapter<Object, ?>) containerMarshaller).getElement(container, 0);
+         elementMarshallerDelegate = getElementMarshallerDelegate(ctx, firstElement);
+         if (elementMarshallerDelegate != null) {
+            elementClass = firstElement.getClass();
+            // the element type precedes the container message, so the reader knows about it when it finishes the header
+            String elementTypeName = elementMarshallerDelegate.getMarshaller().getTypeName();
+            int elementTypeId = mapTypeIdOut(elementTypeName, ctx, out);
+            if (elementTypeId < 0) {
+               out.writeString(WRAPPED_CONTAINER_ELEMENT_TYPE_NAME, elementTypeName);
+            } else {
+               out.writeUInt32(WRAPPED_CONTAINER_ELEMENT_TYPE_ID, elementTypeId);
+            }
+         }
+      }
+
+      writeEmbeddedMessage(ctx, out, WRAPPED_CONTAINER_MESSAGE, marshallerDelegate, container);
 
       if (containerMarshaller instanceof IterableElementContainerAdapter) {
          Iterator elements = ((IterableElementContainerAdapter) containerMarshaller).getElements(container);
          for (int i = 0; i < containerSize; i++) {
             Object e = elements.next();
-            writeMessage(ctx, out, e, true);
+            writeElement(ctx, out, elementClass, elementMarshallerDelegate, e);
          }
          if (elements.hasNext()) {
             throw new IllegalStateException("Container number of elements mismatch");
@@ -340,35 +389,86 @@ public final class WrappedMessage {
          IndexedElementContainerAdapter adapter = (IndexedElementContainerAdapter) containerMarshaller;
          for (int i = 0; i < containerSize; i++) {
             Object e = adapter.getElement(container, i);
-            writeMessage(ctx, out, e, true);
+            writeElement(ctx, out, elementClass, elementMarshallerDelegate, e);
          }
       } else {
          throw new IllegalStateException("Unknown container adapter kind : " + containerMarshaller.getJavaClass().getName());
       }
    }
 
+   /**
+    * Writes an element of a container, without a type discriminator if it has the element type that was written ahead
+    * of the container, or else as an individual wrapped message.
+    */
+   private static void writeElement(ImmutableSerializationContext ctx, TagWriter out, Class<?> elementClass, BaseMarshallerDelegate<Object> elementMarshallerDelegate, Object e) throws IOException {
+      if (e != null && e.getClass() == elementClass) {
+         writeEmbeddedMessage(ctx, out, WRAPPED_CONTAINER_ELEMENT, elementMarshallerDelegate, e);
+      } else {
+         writeMessage(ctx, out, e, true);
+      }
+   }
+
+   /**
+    * Returns the marshaller delegate of an element if it is a message, which can be written without a type
+    * discriminator, or {@code null} otherwise.
+    */
+   private static BaseMarshallerDelegate<Object> getElementMarshallerDelegate(ImmutableSerializationContext ctx, Object element) {
+      if (element == null) {
+         return null;
+      }
+      Class<?> elementClass = element.getClass();
+      if (elementClass.isEnum() || isScalar(elementClass) || !ctx.canMarshall(elementClass)) {
+         return null;
+      }
+      @SuppressWarnings("unchecked")
+      BaseMarshallerDelegate<Object> elementMarshallerDelegate = (BaseMarshallerDelegate<Object>) ((SerializationContextImpl) ctx).getMarshallerDelegate(elementClass);
+      BaseMarshaller<Object> elementMarshaller = elementMarshallerDelegate.getMarshaller();
+      if (elementMarshaller instanceof ElementContainerAdapter || elementMarshaller instanceof EnumMarshaller) {
+         return null;
+      }
+      return elementMarshallerDelegate;
+   }
+
+   /**
+    * Types that are written by {@link #writeMessage} as a single scalar field rather than as a message.
+    */
+   private static boolean isScalar(Class<?> c) {
+      return c == String.class || c == Character.class || c == Byte.class || c == Short.class
+            || c == Instant.class || c == Long.class || c == Integer.class || c == Double.class || c == Float.class
+            || c == Boolean.class || c == byte[].class || Date.class.isAssignableFrom(c);
+   }
+
    static <T> T read(ImmutableSerializationContext ctx, TagReader in) throws IOException {
       return readMessage(ctx, in, false);
    }
 
    private static <T> T readMessage(ImmutableSerializationContext ctx, TagReader in, boolean nulls) throws IOException {
+      return readMessage(ctx, in, in.readTag(), nulls);
+   }
+
+   /**
+    * Reads a wrapped message whose first tag was already read.
+    */
+   private static <T> T readMessage(ImmutableSerializationContext ctx, TagReader in, int firstTag, boolean nulls) throws IOException {
       String typeName = null;
       Integer typeId = null;
       int enumValue = -1;
-      byte[] messageBytes = null;
+      ByteBuffer messageBytes = null;
       Object value = null;
       int fieldCount = 0;
       int expectedFieldCount = 1;
 
-      int tag;
       out:
-      while ((tag = in.readTag()) != 0) {
+      for (int tag = firstTag; tag != 0; tag = in.readTag()) {
          fieldCount++;
          switch (tag) {
             case WRAPPED_CONTAINER_SIZE << WireType.TAG_TYPE_NUM_BITS | WireType.WIRETYPE_VARINT:
             case WRAPPED_CONTAINER_TYPE_ID << WireType.TAG_TYPE_NUM_BITS | WireType.WIRETYPE_VARINT:
             case WRAPPED_CONTAINER_TYPE_NAME << WireType.TAG_TYPE_NUM_BITS | WireType.WIRETYPE_LENGTH_DELIMITED:
-            case WRAPPED_CONTAINER_MESSAGE << WireType.TAG_TYPE_NUM_BITS | WireType.WIRETYPE_LENGTH_DELIMITED: {
+            case WRAPPED_CONTAINER_MESSAGE << WireType.TAG_TYPE_NUM_BITS | WireType.WIRETYPE_LENGTH_DELIMITED:
+            case WRAPPED_CONTAINER_ELEMENTS << WireType.TAG_TYPE_NUM_BITS | WireType.WIRETYPE_LENGTH_DELIMITED:
+            case WRAPPED_CONTAINER_ELEMENT_TYPE_NAME << WireType.TAG_TYPE_NUM_BITS | WireType.WIRETYPE_LENGTH_DELIMITED:
+            case WRAPPED_CONTAINER_ELEMENT_TYPE_ID << WireType.TAG_TYPE_NUM_BITS | WireType.WIRETYPE_VARINT: {
                expectedFieldCount = 1;
                value = readContainer(ctx, in, tag);
                break out;
@@ -388,7 +488,7 @@ public final class WrappedMessage {
             }
             case WRAPPED_TYPE_ID << WireType.TAG_TYPE_NUM_BITS | WireType.WIRETYPE_VARINT: {
                expectedFieldCount = 2;
-               typeId = mapTypeIdIn(in.readInt32(), ctx);
+               typeId = mapTypeIdIn(in.readInt32(), ctx, in);
                break;
             }
             case WRAPPED_ENUM << WireType.TAG_TYPE_NUM_BITS | WireType.WIRETYPE_VARINT: {
@@ -398,7 +498,8 @@ public final class WrappedMessage {
             }
             case WRAPPED_MESSAGE << WireType.TAG_TYPE_NUM_BITS | WireType.WIRETYPE_LENGTH_DELIMITED: {
                expectedFieldCount = 2;
-               messageBytes = in.readByteArray();
+               // a slice of the input rather than a copy, it is consumed right away
+               messageBytes = in.readByteBuffer();
                break;
             }
             case WRAPPED_STRING << WireType.TAG_TYPE_NUM_BITS | WireType.WIRETYPE_LENGTH_DELIMITED: {
@@ -512,6 +613,11 @@ public final class WrappedMessage {
                throw new IllegalStateException("Unexpected tag : " + tag + " (Field number : "
                      + WireType.getTagFieldNumber(tag) + ", Wire type : " + WireType.getTagWireType(tag) + ")");
          }
+
+         if (nulls && fieldCount == expectedFieldCount) {
+            // a container element is complete, the fields of the next element follow in the same stream
+            break;
+         }
       }
 
       if (value == null && typeName == null && typeId == null && messageBytes == null) {
@@ -530,12 +636,12 @@ public final class WrappedMessage {
       }
 
       if (typeId != null) {
-         typeName = ctx.getDescriptorByTypeId(typeId).getFullName();
+         typeName = getDescriptorByTypeId(ctx, in, typeId).getFullName();
       }
       BaseMarshallerDelegate marshallerDelegate = ((SerializationContextImpl) ctx).getMarshallerDelegate(typeName);
       if (messageBytes != null) {
          // it's a Message type
-         TagReaderImpl nestedInput = TagReaderImpl.newInstance(ctx, messageBytes);
+         TagReaderImpl nestedInput = TagReaderImpl.newEmbeddedInstance(ctx, in, messageBytes);
          return (T) marshallerDelegate.unmarshall(nestedInput, null);
       } else {
          // it's an Enum
@@ -553,11 +659,29 @@ public final class WrappedMessage {
       int containerSize = -1;
       String containerTypeName = null;
       Integer containerTypeId = null;
-      byte[] containerMessage = null;
+      ByteBuffer containerMessage = null;
+      ByteBuffer packedElements = null;
+      String elementTypeName = null;
+      Integer elementTypeId = null;
 
       int fieldCount = 0;
       while (tag != 0) {
          switch (tag) {
+            case WRAPPED_CONTAINER_ELEMENTS << WireType.TAG_TYPE_NUM_BITS | WireType.WIRETYPE_LENGTH_DELIMITED:
+               // not counted, it is optional
+               packedElements = in.readByteBuffer();
+               tag = in.readTag();
+               continue;
+            case WRAPPED_CONTAINER_ELEMENT_TYPE_NAME << WireType.TAG_TYPE_NUM_BITS | WireType.WIRETYPE_LENGTH_DELIMITED:
+               // not counted, it is optional
+               elementTypeName = in.readString();
+               tag = in.readTag();
+               continue;
+            case WRAPPED_CONTAINER_ELEMENT_TYPE_ID << WireType.TAG_TYPE_NUM_BITS | WireType.WIRETYPE_VARINT:
+               // not counted, it is optional
+               elementTypeId = mapTypeIdIn(in.readInt32(), ctx, in);
+               tag = in.readTag();
+               continue;
             case WRAPPED_CONTAINER_SIZE << WireType.TAG_TYPE_NUM_BITS | WireType.WIRETYPE_VARINT:
                containerSize = in.readInt32();
                break;
@@ -566,11 +690,11 @@ public final class WrappedMessage {
                break;
             }
             case WRAPPED_CONTAINER_TYPE_ID << WireType.TAG_TYPE_NUM_BITS | WireType.WIRETYPE_VARINT: {
-               containerTypeId = mapTypeIdIn(in.readInt32(), ctx);
+               containerTypeId = mapTypeIdIn(in.readInt32(), ctx, in);
                break;
             }
             case WRAPPED_CONTAINER_MESSAGE << WireType.TAG_TYPE_NUM_BITS | WireType.WIRETYPE_LENGTH_DELIMITED:
-               containerMessage = in.readByteArray();
+               containerMessage = in.readByteBuffer();
                break;
             default:
                throw new IllegalStateException("Unexpected tag : " + tag + " (Field number : "
@@ -586,12 +710,14 @@ public final class WrappedMessage {
 
       if (fieldCount != 3 || containerSize < 0 || containerMessage == null
             || containerTypeId == null && containerTypeName == null
-            || containerTypeId != null && containerTypeName != null) {
+            || containerTypeId != null && containerTypeName != null
+            || elementTypeId != null && elementTypeName != null
+            || packedElements != null && (elementTypeId != null || elementTypeName != null)) {
          throw new IOException("Invalid WrappedMessage encoding.");
       }
 
       if (containerTypeId != null) {
-         containerTypeName = ctx.getDescriptorByTypeId(containerTypeId).getFullName();
+         containerTypeName = getDescriptorByTypeId(ctx, in, containerTypeId).getFullName();
       }
       BaseMarshallerDelegate<?> marshallerDelegate = ((SerializationContextImpl) ctx).getMarshallerDelegate(containerTypeName);
 
@@ -610,16 +736,36 @@ public final class WrappedMessage {
       containerMessage = null;
       nestedInput = null;
 
-      if (containerMarshaller instanceof IterableElementContainerAdapter) {
+      // resolve the marshaller of the elements only once if they are all of the same type
+      BaseMarshallerDelegate<?> elementMarshallerDelegate = null;
+      if (elementTypeId != null) {
+         elementTypeName = getDescriptorByTypeId(ctx, in, elementTypeId).getFullName();
+      }
+      if (elementTypeName != null) {
+         elementMarshallerDelegate = ((SerializationContextImpl) ctx).getMarshallerDelegate(elementTypeName);
+      }
+
+      if (packedElements != null) {
+         if (!(containerMarshaller instanceof PackedElementContainerAdapter)) {
+            throw new IllegalStateException("The unmarshaller is not a packed container adapter : " + containerMarshaller.getJavaClass().getName());
+         }
+         TagReaderImpl packedInput = TagReaderImpl.newNestedInstance((ProtobufTagMarshaller.ReadContext) in, packedElements);
+         @SuppressWarnings("unchecked")
+         PackedElementContainerAdapter<Object, ?> packedAdapter = (PackedElementContainerAdapter<Object, ?>) containerMarshaller;
+         packedAdapter.readPackedElements(packedInput, container);
+         if (!packedInput.isAtEnd()) {
+            throw new IllegalStateException("Container number of elements mismatch");
+         }
+      } else if (containerMarshaller instanceof IterableElementContainerAdapter) {
          IterableElementContainerAdapter adapter = (IterableElementContainerAdapter) containerMarshaller;
          for (int i = 0; i < containerSize; i++) {
-            Object e = readMessage(ctx, in, true);
+            Object e = readElement(ctx, in, elementMarshallerDelegate);
             adapter.appendElement(container, e);
          }
       } else if (containerMarshaller instanceof IndexedElementContainerAdapter) {
          IndexedElementContainerAdapter adapter = (IndexedElementContainerAdapter) containerMarshaller;
          for (int i = 0; i < containerSize; i++) {
-            Object e = readMessage(ctx, in, true);
+            Object e = readElement(ctx, in, elementMarshallerDelegate);
             adapter.setElement(container, i, e);
          }
       } else {
@@ -629,24 +775,66 @@ public final class WrappedMessage {
       return container;
    }
 
+   private static Object readElement(ImmutableSerializationContext ctx, TagReader in, BaseMarshallerDelegate<?> elementMarshallerDelegate) throws IOException {
+      if (elementMarshallerDelegate == null) {
+         return readMessage(ctx, in, true);
+      }
+      int tag = in.readTag();
+      if (tag == 0) {
+         throw new IOException("Invalid WrappedMessage encoding.");
+      }
+      if (tag != (WRAPPED_CONTAINER_ELEMENT << WireType.TAG_TYPE_NUM_BITS | WireType.WIRETYPE_LENGTH_DELIMITED)) {
+         // an element not having the element type of the container is wrapped individually
+         return readMessage(ctx, in, tag, true);
+      }
+      TagReaderImpl nestedInput = TagReaderImpl.newNestedInstance((ProtobufTagMarshaller.ReadContext) in, in.readByteBuffer());
+      return elementMarshallerDelegate.unmarshall(nestedInput, null);
+   }
+
+   /**
+    * Writes a message as a length delimited field. A {@link TagWriterImpl} writes it in place, other writers get it
+    * marshalled into a temporary buffer first.
+    */
+   private static <T> void writeEmbeddedMessage(ImmutableSerializationContext ctx, TagWriter out, int fieldNumber, BaseMarshallerDelegate<T> marshallerDelegate, T message) throws IOException {
+      if (out instanceof TagWriterImpl) {
+         ((TagWriterImpl) out).writeEmbeddedMessage(fieldNumber, marshallerDelegate, message);
+      } else {
+         ByteArrayOutputStreamEx buffer = new ByteArrayOutputStreamEx();
+         TagWriterImpl nestedCtx = TagWriterImpl.newInstance(ctx, buffer);
+         marshallerDelegate.marshall(nestedCtx, null, message);
+         nestedCtx.flush();
+         out.writeBytes(fieldNumber, buffer.getByteBuffer());
+      }
+   }
+
+   /**
+    * Looks up a type id in the descriptors pinned by the reader, so all lookups of a read see the same ones.
+    */
+   private static GenericDescriptor getDescriptorByTypeId(ImmutableSerializationContext ctx, TagReader in, int typeId) {
+      return PinnedSerializationContext.of(ctx, in).getDescriptorByTypeId(typeId);
+   }
+
    /**
-    * Map type id to new value during reading, to support schema evolution.
+    * Map type id to new value during reading, to support schema evolution. The mapper sees the descriptors pinned by
+    * the reader.
     */
-   private static int mapTypeIdIn(int typeId, ImmutableSerializationContext ctx) {
+   private static int mapTypeIdIn(int typeId, ImmutableSerializationContext ctx, TagReader in) {
       WrappedMessageTypeIdMapper mapper = ctx.getConfiguration().wrappingConfig().wrappedMessageTypeIdMapper();
-      return mapper == null ? typeId : mapper.mapTypeIdIn(typeId, ctx);
+      return mapper == null ? typeId : mapper.mapTypeIdIn(typeId, PinnedSerializationContext.of(ctx, in));
    }
 
    /**
-    * Map type id to old value, during writing, to support schema evolution.
+    * Map type id to old value, during writing, to support schema evolution. The lookup and the mapper use the
+    * descriptors pinned by the writer, so all lookups of a write see the same ones.
     */
-   private static int mapTypeIdOut(String typeName, ImmutableSerializationContext ctx) {
-      Integer typeId = ctx.getDescriptorByName(typeName).getTypeId();
+   private static int mapTypeIdOut(String typeName, ImmutableSerializationContext ctx, TagWriter out) {
+      ImmutableSerializationContext pinnedCtx = PinnedSerializationContext.of(ctx, out);
+      Integer typeId = pinnedCtx.getDescriptorByName(typeName).getTypeId();
       if (typeId == null) {
          return -1;
       }
       WrappedMessageTypeIdMapper mapper = ctx.getConfiguration().wrappingConfig().wrappedMessageTypeIdMapper();
-      return mapper == null ? typeId : mapper.mapTypeIdOut(typeId, ctx);
+      return mapper == null ? typeId : mapper.mapTypeIdOut(typeId, pinnedCtx);
    }
 
    @Override
@@ -42,6 +42,13 @@ public @interface ProtoField {
     */
    boolean required() default false;
 
+   /**
+    * Marks a repeated field of a scalar numeric, boolean or enum type to be written using the packed encoding, ie. all
+    * elements in a single length delimited record, without a tag for each element. Both packed and unpacked forms are
+    * accepted when reading, regardless of this setting.
+    */
+   boolean packed() default false;
+
    /**
     * The name of the field. If not specified, then the name of the Java property is used instead.
     */
@@ -86,6 +86,10 @@ public final class ProtoSchemaBuilder {
 
    private boolean autoImportClasses = true;
 
+   private File marshallerCacheDir;
+
+   private File marshallerCacheSecretFile;
+
    public static void main(String[] args) throws Exception {
       CommandLine cmd = parseCommandLine(args);
       if (cmd == null) {
@@ -270,6 +274,40 @@ public final class ProtoSchemaBuilder {
       return this;
    }
 
+   /**
+    * Sets a directory where the bytecode of the generated marshaller classes is saved, so that later builds (usually
+    * after a restart) of the same classes can load the classes from there instead of generating them again. The
+    * bytecode is looked up by a hash of the generated code, of the bytecode of the marshalled classes and of the
+    * ProtoStream jar, so a change of the classes or of ProtoStream never picks up outdated marshallers. This is disabled
+    * (the argument is {@code null}) by default.
+    * <p>
+    * The classes loaded from the directory run with the privileges of the application, so it must be a trusted
+    * directory. It is created if needed, accessible by its owner only, and can be shared by several processes of the
+    * same user. The cache is only used on a POSIX file system, and not if the directory is owned by another user or if
+    * other users can write to it. The entries are authenticated with a secret kept outside of the directory (see {@link
+    * #marshallerCacheSecretFile}), so the ones not written by a process of the same user are ignored.
+    *
+    * @param marshallerCacheDir the cache directory, or {@code null} to disable caching
+    * @return itself, to help chaining calls
+    */
+   public ProtoSchemaBuilder marshallerCacheDir(File marshallerCacheDir) {
+      this.marshallerCacheDir = marshallerCacheDir;
+      return this;
+   }
+
+   /**
+    * Sets the file holding the secret that authenticates the entries of the directory set by {@link
+    * #marshallerCacheDir}. It is created if needed, readable by its owner only, and must not be inside the cache
+    * directory. Defaults to {@code .protostream/marshaller-cache.secret} in the home directory of the user.
+    *
+    * @param marshallerCacheSecretFile the secret file, or {@code null} to use the default one
+    * @return itself, to help chaining calls
+    */
+   public ProtoSchemaBuilder marshallerCacheSecretFile(File marshallerCacheSecretFile) {
+      this.marshallerCacheSecretFile = marshallerCacheSecretFile;
+      return this;
+   }
+
    /**
     * Builds the Protocol Buffers schema file defining the types and generates marshaller implementations for these
     * types and registers everything with the given {@link SerializationContext}. The generated classes are defined in
@@ -300,7 +338,7 @@ public final class ProtoSchemaBuilder {
       ReflectionTypeFactory typeFactory = new ReflectionTypeFactory();
       Set<XClass> xclasses = classes.stream().map(typeFactory::fromClass).collect(Collectors.toCollection(LinkedHashSet::new));
       BaseProtoSchemaGenerator.generateSchemaDebugComments = generateSchemaDebugComments;
-      return new RuntimeProtoSchemaGenerator(typeFactory, serializationContext, generator, fileName, packageName, xclasses, autoImportClasses, classLoader)
+      return new RuntimeProtoSchemaGenerator(typeFactory, serializationContext, generator, fileName, packageName, xclasses, autoImportClasses, classLoader, marshallerCacheDir, marshallerCacheSecretFile)
             .generateAndRegister();
    }
 }
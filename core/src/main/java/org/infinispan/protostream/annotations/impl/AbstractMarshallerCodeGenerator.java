@@ -164,6 +164,20 @@ public abstract class AbstractMarshallerCodeGenerator {
       return "__a$" + field.getNumber();
    }
 
+   /**
+    * The number of elements read so far into the array local variable of a primitive array field.
+    */
+   private String makeArrayCountLocalVar(ProtoFieldMetadata field) {
+      return "__n$" + field.getNumber();
+   }
+
+   /**
+    * Repeated fields backed by an array of primitives are decoded directly into a growable array, without boxing.
+    */
+   private static boolean isPrimitiveArray(ProtoFieldMetadata field) {
+      return field.isArray() && field.getJavaType().isPrimitive();
+   }
+
    /**
     * Make field name for caching a marshaller delegate for a related message.
     */
@@ -234,7 +248,11 @@ public abstract class AbstractMarshallerCodeGenerator {
       }
 
       for (ProtoFieldMetadata fieldMetadata : messageTypeMetadata.getFields().values()) {
-         if (fieldMetadata.isRepeated()) {
+         if (isPrimitiveArray(fieldMetadata)) {
+            // a growable array local variable and its element count, the array is trimmed at the end
+            iw.append(fieldMetadata.getJavaTypeName()).append("[] ").append(makeArrayLocalVar(fieldMetadata)).append(" = null;\n");
+            iw.append("int ").append(makeArrayCountLocalVar(fieldMetadata)).append(" = 0;\n");
+         } else if (fieldMetadata.isRepeated()) {
             // a collection local variable
             iw.append(fieldMetadata.getCollectionImplementation().getCanonicalName()).append(' ').append(makeCollectionLocalVar(fieldMetadata)).append(" = ");
             if (noDefaults || fieldMetadata.isArray()) {
@@ -293,84 +311,42 @@ public abstract class AbstractMarshallerCodeGenerator {
       iw.dec();
       iw.append("}\n");
       for (ProtoFieldMetadata fieldMetadata : messageTypeMetadata.getFields().values()) {
-         final String v = makeFieldLocalVar(fieldMetadata);
          iw.append("case ").append(makeFieldTag(fieldMetadata.getNumber(), fieldMetadata.getProtobufType().getWireType())).append(": {\n");
          iw.inc();
          if (BaseProtoSchemaGenerator.generateMarshallerDebugComments) {
             iw.append("// type = ").append(fieldMetadata.getProtobufType().toString()).append(", name = ").append(fieldMetadata.getName()).append('\n');
          }
-         switch (fieldMetadata.getProtobufType()) {
-            case DOUBLE:
-            case FLOAT:
-            case INT64:
-            case UINT64:
-            case INT32:
-            case FIXED64:
-            case FIXED32:
-            case BOOL:
-            case STRING:
-            case BYTES:
-            case UINT32:
-            case SFIXED32:
-            case SFIXED64:
-            case SINT32:
-            case SINT64: {
-               if (noFactory || fieldMetadata.isRepeated()) {
-                  iw.append(fieldMetadata.getJavaTypeName()).append(' ');
-               }
-               iw.append(v).append(" = ").append(box(convert("$in." + makeStreamIOMethodName(fieldMetadata, false) + "()", fieldMetadata), fieldMetadata.getJavaType())).append(";\n");
-               genSetField(iw, fieldMetadata, trackedFields, messageTypeMetadata);
-               break;
-            }
-            case GROUP: {
-               String mdField = initMarshallerDelegateField(iw, fieldMetadata);
-               if (noFactory || fieldMetadata.isRepeated()) {
-                  iw.append(fieldMetadata.getJavaTypeName()).append(' ');
-               }
-               iw.append(v).append(" = (").append(fieldMetadata.getJavaTypeName()).append(") readMessage(").append(mdField).append(", $1);\n");
-               iw.append("$in.checkLastTagWas(").append(makeFieldTag(fieldMetadata.getNumber(), WireType.END_GROUP)).append(");\n");
-               genSetField(iw, fieldMetadata, trackedFields, messageTypeMetadata);
-               break;
-            }
-            case MESSAGE: {
-               String mdField = initMarshallerDelegateField(iw, fieldMetadata);
-               iw.append("int length = $in.readUInt32();\n");
-               iw.append("int oldLimit = $in.pushLimit(length);\n");
-               if (noFactory || fieldMetadata.isRepeated()) {
-                  iw.append(fieldMetadata.getJavaTypeName()).append(' ');
-               }
-               iw.append(v).append(" = (").append(fieldMetadata.getJavaTypeName()).append(") readMessage(").append(mdField).append(", $1);\n");
-               iw.append("$in.checkLastTagWas(0);\n");
-               iw.append("$in.popLimit(oldLimit);\n");
-               genSetField(iw, fieldMetadata, trackedFields, messageTypeMetadata);
-               break;
+         genReadField(iw, fieldMetadata, trackedFields, messageTypeMetadata, getUnknownFieldSetFieldStatement, setUnknownFieldSetFieldStatement);
+         iw.append("break;\n");
+         iw.dec();
+         iw.append("}\n");
+         if (fieldMetadata.isRepeated() && fieldMetadata.getProtobufType().isPackable()) {
+            // readers must accept the packed form too, regardless of how the field is declared
+            iw.append("case ").append(makeFieldTag(fieldMetadata.getNumber(), WireType.LENGTH_DELIMITED)).append(": {\n");
+            iw.inc();
+            if (BaseProtoSchemaGenerator.generateMarshallerDebugComments) {
+               iw.append("// packed, type = ").append(fieldMetadata.getProtobufType().toString()).append(", name = ").append(fieldMetadata.getName()).append('\n');
             }
-            case ENUM: {
-               String mdField = initMarshallerDelegateField(iw, fieldMetadata);
-               iw.append("int enumVal = $in.readEnum();\n");
-               if (noFactory || fieldMetadata.isRepeated()) {
-                  iw.append(fieldMetadata.getJavaTypeName()).append(' ');
+            iw.append("int length = $in.readUInt32();\n");
+            iw.append("int oldLimit = $in.pushLimit(length);\n");
+            if (isPrimitiveArray(fieldMetadata)) {
+               // the exact number of fixed size elements is known, so make room for them at once if the length can be trusted
+               WireType wireType = fieldMetadata.getProtobufType().getWireType();
+               if (wireType == WireType.FIXED32 || wireType == WireType.FIXED64) {
+                  iw.append("int count = getPackedElementCount($1, length, ").append(wireType == WireType.FIXED32 ? "4" : "8").append(");\n");
+                  genEnsureArrayCapacity(iw, fieldMetadata, "count");
                }
-               iw.append(v).append(" = (").append(fieldMetadata.getJavaTypeName()).append(") ").append(mdField).append(".getMarshaller().decode(enumVal);\n");
-               iw.append("if (").append(v).append(" == null) {\n");
-               if (getUnknownFieldSetFieldStatement != null) {
-                  iw.inc();
-                  iw.append(PROTOSTREAM_PACKAGE).append(".UnknownFieldSet u = ").append(getUnknownFieldSetFieldStatement).append(";\n");
-                  iw.append("if (u == null) { u = new ").append(PROTOSTREAM_PACKAGE).append(".impl.UnknownFieldSetImpl(); ").append(setUnknownFieldSetFieldStatement).append("; }\n");
-                  iw.append("u.putVarintField(").append(String.valueOf(fieldMetadata.getNumber())).append(", enumVal);\n");
-                  iw.dec();
-               }
-               iw.append("} else {\n").inc();
-               genSetField(iw, fieldMetadata, trackedFields, messageTypeMetadata);
-               iw.dec().append("}\n");
-               break;
             }
-            default:
-               throw new IllegalStateException("Unknown field type : " + fieldMetadata.getProtobufType());
+            iw.append("while (!$in.isAtEnd()) {\n");
+            iw.inc();
+            genReadField(iw, fieldMetadata, trackedFields, messageTypeMetadata, getUnknownFieldSetFieldStatement, setUnknownFieldSetFieldStatement);
+            iw.dec();
+            iw.append("}\n");
+            iw.append("$in.popLimit(oldLimit);\n");
+            iw.append("break;\n");
+            iw.dec();
+            iw.append("}\n");
          }
-         iw.append("break;\n");
-         iw.dec();
-         iw.append("}\n");
       }
       iw.append("default: {\n");
       iw.inc();
@@ -396,7 +372,9 @@ public abstract class AbstractMarshallerCodeGenerator {
             iw.append("if ").append(makeTestFieldWasNotSet(fieldMetadata, trackedFields)).append(" {\n");
             iw.inc();
             String val = toJavaLiteral(defaultValue, fieldMetadata.getJavaType());
-            if (fieldMetadata.isRepeated()) {
+            if (isPrimitiveArray(fieldMetadata)) {
+               genAppendToArray(iw, fieldMetadata, val);
+            } else if (fieldMetadata.isRepeated()) {
                String c = makeCollectionLocalVar(fieldMetadata);
                if (noDefaults || fieldMetadata.isArray()) {
                   iw.append("if (").append(c).append(" == null) ").append(c).append(" = new ").append(fieldMetadata.getCollectionImplementation().getCanonicalName()).append("();\n");
@@ -416,7 +394,7 @@ public abstract class AbstractMarshallerCodeGenerator {
 
       for (ProtoFieldMetadata fieldMetadata : messageTypeMetadata.getFields().values()) {
          if (fieldMetadata.isRepeated()) {
-            String c = makeCollectionLocalVar(fieldMetadata);
+            String c = isPrimitiveArray(fieldMetadata) ? makeArrayLocalVar(fieldMetadata) : makeCollectionLocalVar(fieldMetadata);
             if (fieldMetadata.isArray()) {
                if (fieldMetadata.getDefaultValue() == null) {
                   iw.append("if (").append(c).append(" != null) ");
@@ -424,13 +402,10 @@ public abstract class AbstractMarshallerCodeGenerator {
                iw.append("{\n").inc();
                String a = makeArrayLocalVar(fieldMetadata);
                if (fieldMetadata.getJavaType().isPrimitive()) {
-                  if (noFactory) {
-                     iw.append(fieldMetadata.getJavaTypeName()).append("[] ");
-                  }
-                  iw.append(a).append(" = new ").append(fieldMetadata.getJavaTypeName()).append("[").append(c).append(".size()];\n");
-                  XClass boxedType = box(fieldMetadata.getJavaType());
-                  iw.append("int _j = 0;\nfor (java.util.Iterator _it = ").append(c).append(".iterator(); _it.hasNext();) ").append(a).append("[_j++] = ").append(unbox("((" + boxedType.getName() + ") _it.next())", boxedType)).append(";\n");
-                  c = a;
+                  // trim the array to the number of elements actually read
+                  String n = makeArrayCountLocalVar(fieldMetadata);
+                  iw.append("if (").append(a).append(".length != ").append(n).append(") ")
+                        .append(a).append(" = java.util.Arrays.copyOf(").append(a).append(", ").append(n).append(");\n");
                } else {
                   c = "(" + fieldMetadata.getJavaTypeName() + "[])" + c + ".toArray(new " + fieldMetadata.getJavaTypeName() + "[0])";
                }
@@ -538,6 +513,85 @@ public abstract class AbstractMarshallerCodeGenerator {
       return iw.toString();
    }
 
+   /**
+    * Generates the code that reads the value of a field (or a single element of a repeated field) after its tag was
+    * read.
+    */
+   private void genReadField(IndentWriter iw, ProtoFieldMetadata fieldMetadata, Map<String, Integer> trackedFields, ProtoMessageTypeMetadata messageTypeMetadata,
+                             String getUnknownFieldSetFieldStatement, String setUnknownFieldSetFieldStatement) {
+      final boolean noFactory = messageTypeMetadata.getFactory() == null;
+      final String v = makeFieldLocalVar(fieldMetadata);
+      switch (fieldMetadata.getProtobufType()) {
+         case DOUBLE:
+         case FLOAT:
+         case INT64:
+         case UINT64:
+         case INT32:
+         case FIXED64:
+         case FIXED32:
+         case BOOL:
+         case STRING:
+         case BYTES:
+         case UINT32:
+         case SFIXED32:
+         case SFIXED64:
+         case SINT32:
+         case SINT64: {
+            if (noFactory || fieldMetadata.isRepeated()) {
+               iw.append(fieldMetadata.getJavaTypeName()).append(' ');
+            }
+            iw.append(v).append(" = ").append(box(convert("$in." + makeStreamIOMethodName(fieldMetadata, false) + "()", fieldMetadata), fieldMetadata.getJavaType())).append(";\n");
+            genSetField(iw, fieldMetadata, trackedFields, messageTypeMetadata);
+            break;
+         }
+         case GROUP: {
+            String mdField = initMarshallerDelegateField(iw, fieldMetadata);
+            if (noFactory || fieldMetadata.isRepeated()) {
+               iw.append(fieldMetadata.getJavaTypeName()).append(' ');
+            }
+            iw.append(v).append(" = (").append(fieldMetadata.getJavaTypeName()).append(") readMessage(").append(mdField).append(", $1);\n");
+            iw.append("$in.checkLastTagWas(").append(makeFieldTag(fieldMetadata.getNumber(), WireType.END_GROUP)).append(");\n");
+            genSetField(iw, fieldMetadata, trackedFields, messageTypeMetadata);
+            break;
+         }
+         case MESSAGE: {
+            String mdField = initMarshallerDelegateField(iw, fieldMetadata);
+            iw.append("int length = $in.readUInt32();\n");
+            iw.append("int oldLimit = $in.pushLimit(length);\n");
+            if (noFactory || fieldMetadata.isRepeated()) {
+               iw.append(fieldMetadata.getJavaTypeName()).append(' ');
+            }
+            iw.append(v).append(" = (").append(fieldMetadata.getJavaTypeName()).append(") readMessage(").append(mdField).append(", $1);\n");
+            iw.append("$in.checkLastTagWas(0);\n");
+            iw.append("$in.popLimit(oldLimit);\n");
+            genSetField(iw, fieldMetadata, trackedFields, messageTypeMetadata);
+            break;
+         }
+         case ENUM: {
+            String mdField = initMarshallerDelegateField(iw, fieldMetadata);
+            iw.append("int enumVal = $in.readEnum();\n");
+            if (noFactory || fieldMetadata.isRepeated()) {
+               iw.append(fieldMetadata.getJavaTypeName()).append(' ');
+            }
+            iw.append(v).append(" = (").append(fieldMetadata.getJavaTypeName()).append(") ").append(mdField).append(".getMarshaller().decode(enumVal);\n");
+            iw.append("if (").append(v).append(" == null) {\n");
+            if (getUnknownFieldSetFieldStatement != null) {
+               iw.inc();
+               iw.append(PROTOSTREAM_PACKAGE).append(".UnknownFieldSet u = ").append(getUnknownFieldSetFieldStatement).append(";\n");
+               iw.append("if (u == null) { u = new ").append(PROTOSTREAM_PACKAGE).append(".impl.UnknownFieldSetImpl(); ").append(setUnknownFieldSetFieldStatement).append("; }\n");
+               iw.append("u.putVarintField(").append(String.valueOf(fieldMetadata.getNumber())).append(", enumVal);\n");
+               iw.dec();
+            }
+            iw.append("} else {\n").inc();
+            genSetField(iw, fieldMetadata, trackedFields, messageTypeMetadata);
+            iw.dec().append("}\n");
+            break;
+         }
+         default:
+            throw new IllegalStateException("Unknown field type : " + fieldMetadata.getProtobufType());
+      }
+   }
+
    private static String makeFieldTag(int fieldNumber, WireType wireType) {
       return "(" + fieldNumber + " << "
             + PROTOSTREAM_PACKAGE + ".descriptors.WireType.TAG_TYPE_NUM_BITS | "
@@ -590,7 +644,9 @@ public abstract class AbstractMarshallerCodeGenerator {
 
    private void genSetField(IndentWriter iw, ProtoFieldMetadata fieldMetadata, Map<String, Integer> trackedFields, ProtoMessageTypeMetadata messageTypeMetadata) {
       final String v = makeFieldLocalVar(fieldMetadata);
-      if (fieldMetadata.isRepeated()) {
+      if (isPrimitiveArray(fieldMetadata)) {
+         genAppendToArray(iw, fieldMetadata, v);
+      } else if (fieldMetadata.isRepeated()) {
          String c = makeCollectionLocalVar(fieldMetadata);
          if (noDefaults || fieldMetadata.isArray()) {
             iw.append("if (").append(c).append(" == null) ").append(c).append(" = new ").append(fieldMetadata.getCollectionImplementation().getCanonicalName()).append("();\n");
@@ -606,6 +662,36 @@ public abstract class AbstractMarshallerCodeGenerator {
       }
    }
 
+   /**
+    * Generates the code that makes room in the growable array of a primitive array field for the given number of
+    * additional elements.
+    */
+   private void genEnsureArrayCapacity(IndentWriter iw, ProtoFieldMetadata fieldMetadata, String additionalElements) {
+      String a = makeArrayLocalVar(fieldMetadata);
+      String n = makeArrayCountLocalVar(fieldMetadata);
+      iw.append("if (").append(additionalElements).append(" > 0) {\n");
+      iw.inc();
+      iw.append("if (").append(a).append(" == null) ").append(a).append(" = new ").append(fieldMetadata.getJavaTypeName())
+            .append("[").append(additionalElements).append("];\n");
+      iw.append("else if (").append(a).append(".length - ").append(n).append(" < ").append(additionalElements).append(") ")
+            .append(a).append(" = java.util.Arrays.copyOf(").append(a).append(", ").append(n).append(" + ").append(additionalElements).append(");\n");
+      iw.dec();
+      iw.append("}\n");
+   }
+
+   /**
+    * Generates the code that appends a value to the growable array of a primitive array field, doubling its capacity
+    * when full.
+    */
+   private void genAppendToArray(IndentWriter iw, ProtoFieldMetadata fieldMetadata, String value) {
+      String a = makeArrayLocalVar(fieldMetadata);
+      String n = makeArrayCountLocalVar(fieldMetadata);
+      iw.append("if (").append(a).append(" == null) ").append(a).append(" = new ").append(fieldMetadata.getJavaTypeName()).append("[8];\n");
+      iw.append("else if (").append(n).append(" == ").append(a).append(".length) ")
+            .append(a).append(" = java.util.Arrays.copyOf(").append(a).append(", java.lang.Math.max(").append(n).append(" << 1, 8));\n");
+      iw.append(a).append("[").append(n).append("++] = ").append(value).append(";\n");
+   }
+
    /**
     * Signature of generated method is:
     * <code>
@@ -665,6 +751,12 @@ public abstract class AbstractMarshallerCodeGenerator {
                   iw.append("if (").append(f).append(" != null) ");
                }
             }
+            if (fieldMetadata.isPacked()) {
+               genWritePackedField(iw, fieldMetadata, f, v);
+               iw.dec();
+               iw.append("}\n");
+               continue;
+            }
             if (fieldMetadata.isRepeated()) {
                iw.append('\n');
                iw.inc();
@@ -752,6 +844,85 @@ public abstract class AbstractMarshallerCodeGenerator {
       return iw.toString();
    }
 
+   /**
+    * Generates the code that writes all elements of a packed repeated field in a single length delimited record. The
+    * elements are unboxed into a primitive array first, unless they already are in one of the exact type.
+    */
+   private void genWritePackedField(IndentWriter iw, ProtoFieldMetadata fieldMetadata, String f, String v) {
+      Class<?> elementType;
+      String method;
+      switch (fieldMetadata.getProtobufType().getJavaType()) {
+         case INT:
+         case ENUM:
+            elementType = int.class;
+            method = "writePackedInts";
+            break;
+         case LONG:
+            elementType = long.class;
+            method = "writePackedLongs";
+            break;
+         case DOUBLE:
+            elementType = double.class;
+            method = "writePackedDoubles";
+            break;
+         case FLOAT:
+            elementType = float.class;
+            method = "writePackedFloats";
+            break;
+         case BOOLEAN:
+            elementType = boolean.class;
+            method = "writePackedBools";
+            break;
+         default:
+            throw new IllegalStateException("Field type cannot be packed : " + fieldMetadata.getProtobufType());
+      }
+      String typeArg = "";
+      if (elementType == int.class || elementType == long.class) {
+         typeArg = PROTOSTREAM_PACKAGE + ".descriptors.Type." + fieldMetadata.getProtobufType().name() + ", ";
+      }
+      iw.append("{\n");
+      iw.inc();
+      String a;
+      String n;
+      if (fieldMetadata.isArray() && fieldMetadata.getJavaType() == typeFactory.fromClass(elementType)) {
+         a = f;
+         n = f + ".length";
+      } else {
+         a = "__p$";
+         n = "__n$";
+         String mdField = fieldMetadata.getProtobufType() == Type.ENUM ? initMarshallerDelegateField(iw, fieldMetadata) : null;
+         iw.append("final ").append(elementType.getName()).append("[] ").append(a).append(" = new ").append(elementType.getName())
+               .append('[').append(f).append(fieldMetadata.isArray() ? ".length" : ".size()").append("];\n");
+         iw.append("int ").append(n).append(" = 0;\n");
+         if (fieldMetadata.isArray()) {
+            iw.append("for (int i = 0; i < ").append(f).append(".length; i++) {\n");
+            iw.inc();
+            iw.append("final ").append(fieldMetadata.getJavaTypeName()).append(' ').append(v).append(" = ").append(f).append("[i];\n");
+         } else {
+            iw.append("for (java.util.Iterator it = ").append(f).append(".iterator(); it.hasNext(); ) {\n");
+            iw.inc();
+            iw.append("final ").append(fieldMetadata.getJavaTypeName()).append(' ').append(v).append(" = (").append(fieldMetadata.getJavaTypeName()).append(") it.next();\n");
+         }
+         if (!fieldMetadata.getJavaType().isPrimitive()) {
+            // a null element cannot be unboxed and packed fields have no way to skip it
+            iw.append("if (").append(v).append(" == null) throw new IllegalStateException(\"Packed repeated field must not contain null elements : ").append(fieldMetadata.getName()).append("\");\n");
+         }
+         iw.append(a).append('[').append(n).append("++] = ");
+         if (mdField != null) {
+            iw.append(mdField).append(".getMarshaller().encode(").append(v).append(");\n");
+         } else {
+            iw.append(unbox(v, fieldMetadata.getJavaType())).append(";\n");
+         }
+         iw.dec();
+         iw.append("}\n");
+      }
+      iw.append("$out.").append(method).append('(')
+            .append(String.valueOf(fieldMetadata.getNumber())).append(", ").append(typeArg)
+            .append(a).append(", 0, ").append(n).append(");\n");
+      iw.dec();
+      iw.append("}\n");
+   }
+
    private String initMarshallerDelegateField(IndentWriter iw, ProtoFieldMetadata fieldMetadata) {
       String fieldName = makeMarshallerDelegateFieldName(fieldMetadata);
       iw.append("if (").append(fieldName).append(" == null) ").append(fieldName).append(" = ");
@@ -4,7 +4,7 @@ import java.io.IOException;
 
 import org.infinispan.protostream.ProtobufTagMarshaller;
 import org.infinispan.protostream.impl.BaseMarshallerDelegate;
-import org.infinispan.protostream.impl.ByteArrayOutputStreamEx;
+import org.infinispan.protostream.impl.TagReaderImpl;
 import org.infinispan.protostream.impl.TagWriterImpl;
 
 /**
@@ -23,6 +23,30 @@ public class GeneratedMarshallerBase {
       return marshallerDelegate.unmarshall(ctx, null);
    }
 
+   /**
+    * The maximum number of elements of a packed field that are allocated before reading them from a stream.
+    */
+   private static final int MAX_PACKED_ELEMENT_RESERVATION = 8192;
+
+   /**
+    * Invoked by generated code. Returns the number of elements of a packed field of fixed size elements that can be
+    * allocated before reading them. The length of the field was already checked against the end of byte array and
+    * ByteBuffer input by {@link org.infinispan.protostream.TagReader#pushLimit}, so all elements are allocated at once.
+    * A stream accepts any length, so at most {@link #MAX_PACKED_ELEMENT_RESERVATION} elements are allocated ahead and
+    * the array grows as the rest are decoded.
+    *
+    * @param ctx         the context of the reader
+    * @param length      the length in bytes of the packed field
+    * @param elementSize the size in bytes of an element
+    */
+   protected final int getPackedElementCount(ProtobufTagMarshaller.ReadContext ctx, int length, int elementSize) {
+      int count = length / elementSize;
+      if (ctx instanceof TagReaderImpl && ((TagReaderImpl) ctx).isInputSizeKnown()) {
+         return count;
+      }
+      return Math.min(count, MAX_PACKED_ELEMENT_RESERVATION);
+   }
+
    /**
     * Invoked by generated code.
     */
@@ -38,9 +62,9 @@ public class GeneratedMarshallerBase {
     * Invoked by generated code.
     */
    protected final <T> void writeNestedMessage(BaseMarshallerDelegate<T> marshallerDelegate, ProtobufTagMarshaller.WriteContext ctx, int fieldNumber, T message) throws IOException {
-      ByteArrayOutputStreamEx baos = new ByteArrayOutputStreamEx();
-      TagWriterImpl nested = TagWriterImpl.newNestedInstance(ctx, baos);
-      writeMessage(marshallerDelegate, nested, message);
-      ctx.getWriter().writeBytes(fieldNumber, baos.getByteBuffer());
+      if (message == null) {
+         throw new IllegalArgumentException("Object to marshall cannot be null");
+      }
+      ((TagWriterImpl) ctx).writeNestedMessage(fieldNumber, marshallerDelegate, null, message);
    }
 }
@@ -0,0 +1,401 @@
+package org.infinispan.protostream.annotations.impl;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.nio.file.attribute.UserPrincipal;
+import java.security.CodeSource;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.infinispan.protostream.impl.Log;
+
+import javassist.ClassPool;
+import javassist.CtClass;
+
+/**
+ * A directory holding the bytecode of previously generated marshaller classes, so that later runs can load them
+ * instead of compiling them again. Each class is stored in a file named after a key that is a hash of everything the
+ * class is generated from: the generated source code, the bytecode of the classes it marshalls, the ProtoStream build
+ * (the content of its jar) and the version of Javassist. A change to any of these yields a different key, so stale
+ * entries are never used, just left behind. Failures to read or write the cache are not fatal, the marshaller is then
+ * generated as usual.
+ * <p>
+ * The loaded classes run with the privileges of the application, so the directory must be trusted. The cache is only
+ * used on a POSIX file system, by the user owning the directory, and not at all if other users can write to the
+ * directory. Each entry is authenticated with a MAC computed with a secret that is kept outside of the directory, in a
+ * file readable by its owner only, so an entry cannot be forged by someone who can write to the directory but cannot
+ * read the secret. Entries failing the check are ignored and replaced.
+ *
+ * @since 4.4
+ */
+final class GeneratedMarshallerCache {
+
+   private static final Log log = Log.LogFactory.getLog(GeneratedMarshallerCache.class);
+
+   private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+   /**
+    * The number of bytes of the hash used for the keys.
+    */
+   private static final int KEY_LENGTH = 16;
+
+   private static final String MAC_ALGORITHM = "HmacSHA256";
+
+   /**
+    * The number of bytes of the MAC that precedes the bytecode in each file.
+    */
+   private static final int MAC_LENGTH = 32;
+
+   private static final int SECRET_LENGTH = 32;
+
+   private static final Set<PosixFilePermission> OTHERS_WRITE = EnumSet.of(PosixFilePermission.GROUP_WRITE, PosixFilePermission.OTHERS_WRITE);
+
+   private static final Set<PosixFilePermission> OTHERS_ACCESS = EnumSet.of(
+         PosixFilePermission.GROUP_READ, PosixFilePermission.GROUP_WRITE, PosixFilePermission.GROUP_EXECUTE,
+         PosixFilePermission.OTHERS_READ, PosixFilePermission.OTHERS_WRITE, PosixFilePermission.OTHERS_EXECUTE);
+
+   /**
+    * The hash of the ProtoStream build, or {@code null} if not computed yet. It is empty if the build cannot be
+    * identified.
+    */
+   private static volatile byte[] buildHash;
+
+   private final File dir;
+
+   private final File secretFile;
+
+   // lazily initialized by the first load or store that finds or creates it
+   private SecretKeySpec secret;
+
+   // set after the first check that fails, to stop trying to use the directory
+   private boolean disabled;
+
+   /**
+    * @param dir        the cache directory
+    * @param secretFile the file holding the secret of the MACs, which must be outside of the directory, or {@code null}
+    *                   to use the default one, in the home directory of the user
+    */
+   GeneratedMarshallerCache(File dir, File secretFile) {
+      this.dir = dir;
+      this.secretFile = secretFile != null ? secretFile
+            : new File(System.getProperty("user.home"), ".protostream" + File.separator + "marshaller-cache.secret");
+   }
+
+   /**
+    * Computes the key of a marshaller class.
+    *
+    * @param cp          the class pool used to find the bytecode of the classes
+    * @param classNames  the names of the classes the marshaller depends on
+    * @param sourceParts the pieces of source code and any other data the marshaller class is generated from
+    * @return the key, or {@code null} if the bytecode of some class cannot be found, so the marshaller must not be
+    * cached
+    */
+   String makeKey(ClassPool cp, String[] classNames, String... sourceParts) {
+      MessageDigest digest;
+      try {
+         digest = MessageDigest.getInstance("SHA-256");
+      } catch (NoSuchAlgorithmException e) {
+         throw new IllegalStateException(e);
+      }
+      // a SNAPSHOT version does not identify the build, so use the content of the jar
+      byte[] buildHash = getBuildHash();
+      if (buildHash.length == 0) {
+         return null;
+      }
+      digest.update(buildHash);
+      // the bytecode produced for the same source may differ between versions of Javassist
+      update(digest, CtClass.version);
+      for (String sourcePart : sourceParts) {
+         update(digest, sourcePart);
+      }
+      for (String className : classNames) {
+         update(digest, className);
+         URL classFile = cp.find(className);
+         if (classFile == null) {
+            return null;
+         }
+         try (InputStream in = classFile.openStream()) {
+            digest.update(readFully(in));
+         } catch (IOException e) {
+            log.debugf(e, "Cannot read the bytecode of %s", className);
+            return null;
+         }
+      }
+      byte[] hash = digest.digest();
+      char[] key = new char[KEY_LENGTH * 2];
+      for (int i = 0; i < KEY_LENGTH; i++) {
+         key[2 * i] = HEX_DIGITS[(hash[i] >> 4) & 0xF];
+         key[2 * i + 1] = HEX_DIGITS[hash[i] & 0xF];
+      }
+      return new String(key);
+   }
+
+   /**
+    * Returns the hash of the jar, or of the class files in the directory, the ProtoStream classes are loaded from, or an
+    * empty array if it cannot be computed.
+    */
+   private static byte[] getBuildHash() {
+      byte[] hash = buildHash;
+      if (hash == null) {
+         hash = new byte[0];
+         try {
+            CodeSource codeSource = GeneratedMarshallerCache.class.getProtectionDomain().getCodeSource();
+            if (codeSource != null && codeSource.getLocation() != null) {
+               Path location = Paths.get(codeSource.getLocation().toURI());
+               MessageDigest digest = MessageDigest.getInstance("SHA-256");
+               if (Files.isDirectory(location)) {
+                  List<Path> classFiles;
+                  try (Stream<Path> files = Files.walk(location)) {
+                     classFiles = files.filter(f -> f.toString().endsWith(".class")).sorted().collect(Collectors.toList());
+                  }
+                  for (Path classFile : classFiles) {
+                     update(digest, location.relativize(classFile).toString());
+                     digest.update(Files.readAllBytes(classFile));
+                  }
+               } else {
+                  try (InputStream in = Files.newInputStream(location)) {
+                     byte[] buf = new byte[8192];
+                     int len;
+                     while ((len = in.read(buf)) != -1) {
+                        digest.update(buf, 0, len);
+                     }
+                  }
+               }
+               hash = digest.digest();
+            }
+         } catch (IOException | URISyntaxException | NoSuchAlgorithmException | RuntimeException e) {
+            log.debugf(e, "Cannot compute the hash of the ProtoStream build, marshallers will not be cached");
+         }
+         buildHash = hash;
+      }
+      return hash;
+   }
+
+   private static void update(MessageDigest digest, String s) {
+      byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+      // the length prevents ambiguities when concatenating
+      digest.update((byte) (bytes.length >>> 24));
+      digest.update((byte) (bytes.length >>> 16));
+      digest.update((byte) (bytes.length >>> 8));
+      digest.update((byte) bytes.length);
+      digest.update(bytes);
+   }
+
+   private static byte[] readFully(InputStream in) throws IOException {
+      ByteArrayOutputStream out = new ByteArrayOutputStream(4096);
+      byte[] buf = new byte[4096];
+      int len;
+      while ((len = in.read(buf)) != -1) {
+         out.write(buf, 0, len);
+      }
+      return out.toByteArray();
+   }
+
+   /**
+    * Returns the bytecode stored under the given key, or {@code null} if there is none or if it cannot be trusted.
+    */
+   byte[] load(String key) {
+      try {
+         SecretKeySpec secret = getSecret(false);
+         if (secret == null) {
+            return null;
+         }
+         byte[] content = Files.readAllBytes(getFile(key));
+         if (content.length <= MAC_LENGTH
+               || !MessageDigest.isEqual(Arrays.copyOf(content, MAC_LENGTH), computeMac(secret, key, content, MAC_LENGTH))) {
+            log.debugf("Ignoring cached marshaller %s, its MAC does not match", key);
+            return null;
+         }
+         return Arrays.copyOfRange(content, MAC_LENGTH, content.length);
+      } catch (NoSuchFileException e) {
+         return null;
+      } catch (IOException e) {
+         log.debugf(e, "Cannot read cached marshaller %s", key);
+         return null;
+      }
+   }
+
+   /**
+    * Stores the bytecode under the given key. The file is written under a temporary name and then renamed, so other
+    * processes sharing the directory never see a partially written file.
+    */
+   void store(String key, String className, byte[] bytecode) {
+      try {
+         SecretKeySpec secret = getSecret(true);
+         if (secret == null) {
+            return;
+         }
+         byte[] content = new byte[MAC_LENGTH + bytecode.length];
+         System.arraycopy(bytecode, 0, content, MAC_LENGTH, bytecode.length);
+         System.arraycopy(computeMac(secret, key, content, MAC_LENGTH), 0, content, 0, MAC_LENGTH);
+         writeFile(getFile(key), content, true);
+      } catch (IOException e) {
+         log.failedToCacheMarshaller(className, dir, e);
+      }
+   }
+
+   private Path getFile(String key) {
+      return new File(dir, key + ".class").toPath();
+   }
+
+   /**
+    * Computes the MAC of an entry, which covers its key too, so an entry cannot be passed off as another one.
+    */
+   private static byte[] computeMac(SecretKeySpec secret, String key, byte[] content, int offset) throws IOException {
+      try {
+         Mac mac = Mac.getInstance(MAC_ALGORITHM);
+         mac.init(secret);
+         mac.update(key.getBytes(StandardCharsets.UTF_8));
+         mac.update(content, offset, content.length - offset);
+         return mac.doFinal();
+      } catch (GeneralSecurityException e) {
+         throw new IOException(e);
+      }
+   }
+
+   /**
+    * Returns the secret of the MACs, reading it from its file or creating it (and the directories) if missing and
+    * {@code create} is {@code true}. Returns {@code null} if it does not exist yet and {@code create} is {@code false},
+    * or if the cache is disabled because the directory or the secret cannot be used safely.
+    */
+   private synchronized SecretKeySpec getSecret(boolean create) throws IOException {
+      if (secret == null && !disabled) {
+         try {
+            secret = readSecret(create);
+         } catch (UnsafeCacheException e) {
+            disabled = true;
+            log.marshallerCacheDisabled(dir, e.getMessage());
+         }
+      }
+      return secret;
+   }
+
+   private SecretKeySpec readSecret(boolean create) throws IOException {
+      Path dirPath = dir.toPath().toAbsolutePath().normalize();
+      Path secretPath = secretFile.toPath().toAbsolutePath().normalize();
+      if (secretPath.startsWith(dirPath)) {
+         throw new UnsafeCacheException("the secret file " + secretPath + " must not be in the cache directory");
+      }
+      if (!dirPath.getFileSystem().supportedFileAttributeViews().contains("posix")
+            || !secretPath.getFileSystem().supportedFileAttributeViews().contains("posix")) {
+         throw new UnsafeCacheException("the file system does not support POSIX file permissions");
+      }
+      if (!create && (!Files.isDirectory(dirPath) || !Files.exists(secretPath))) {
+         return null;
+      }
+      createPrivateDirectory(dirPath);
+      Path secretDir = secretPath.getParent();
+      createPrivateDirectory(secretDir);
+
+      UserPrincipal user = getCurrentUser(dirPath);
+      checkPrivateDirectory(dirPath, user);
+      checkPrivateDirectory(secretDir, user);
+
+      byte[] bytes;
+      try {
+         bytes = Files.readAllBytes(secretPath);
+      } catch (NoSuchFileException e) {
+         if (!create) {
+            return null;
+         }
+         bytes = new byte[SECRET_LENGTH];
+         new SecureRandom().nextBytes(bytes);
+         try {
+            writeFile(secretPath, bytes, false);
+         } catch (FileAlreadyExistsException e1) {
+            // another process created it meanwhile
+            bytes = Files.readAllBytes(secretPath);
+         }
+      }
+      if (!user.equals(Files.getOwner(secretPath))) {
+         throw new UnsafeCacheException("the file " + secretPath + " is not owned by " + user.getName());
+      }
+      if (!Collections.disjoint(Files.getPosixFilePermissions(secretPath), OTHERS_ACCESS)) {
+         throw new UnsafeCacheException("the file " + secretPath + " is accessible by other users");
+      }
+      if (bytes.length != SECRET_LENGTH) {
+         throw new UnsafeCacheException("the file " + secretPath + " is corrupt");
+      }
+      return new SecretKeySpec(bytes, MAC_ALGORITHM);
+   }
+
+   private static void createPrivateDirectory(Path dirPath) throws IOException {
+      if (!Files.isDirectory(dirPath)) {
+         Files.createDirectories(dirPath, PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rwx------")));
+      }
+   }
+
+   private static void checkPrivateDirectory(Path dirPath, UserPrincipal user) throws IOException {
+      if (!user.equals(Files.getOwner(dirPath))) {
+         throw new UnsafeCacheException("the directory " + dirPath + " is not owned by " + user.getName());
+      }
+      if (!Collections.disjoint(Files.getPosixFilePermissions(dirPath), OTHERS_WRITE)) {
+         throw new UnsafeCacheException("the directory " + dirPath + " is writable by other users");
+      }
+   }
+
+   /**
+    * Returns the user running this process, as the owner of a file it creates. Unlike the {@code user.name} system
+    * property, this is the identity the file system checks.
+    */
+   private static UserPrincipal getCurrentUser(Path dirPath) throws IOException {
+      Path probe = Files.createTempFile(dirPath, "owner", ".tmp");
+      try {
+         return Files.getOwner(probe);
+      } finally {
+         Files.deleteIfExists(probe);
+      }
+   }
+
+   /**
+    * Signals that the cache cannot be used safely, as opposed to an I/O failure.
+    */
+   private static final class UnsafeCacheException extends IOException {
+
+      UnsafeCacheException(String message) {
+         super(message);
+      }
+   }
+
+   /**
+    * Writes a file under a temporary name, which is accessible by its owner only, and then renames it.
+    */
+   private static void writeFile(Path file, byte[] content, boolean replace) throws IOException {
+      Path tmp = Files.createTempFile(file.getParent(), file.getFileName().toString(), ".tmp");
+      try {
+         Files.write(tmp, content);
+         if (replace) {
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+         } else {
+            Files.move(tmp, file);
+         }
+      } finally {
+         Files.deleteIfExists(tmp);
+      }
+   }
+}
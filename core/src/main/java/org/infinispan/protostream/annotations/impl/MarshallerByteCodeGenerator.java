@@ -1,5 +1,6 @@
 package org.infinispan.protostream.annotations.impl;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.lang.reflect.Modifier;
 import java.util.HashSet;
@@ -9,9 +10,12 @@ import org.infinispan.protostream.BaseMarshaller;
 import org.infinispan.protostream.EnumMarshaller;
 import org.infinispan.protostream.ProtobufTagMarshaller;
 import org.infinispan.protostream.SerializationContext;
+import org.infinispan.protostream.TagReader;
+import org.infinispan.protostream.TagWriter;
 import org.infinispan.protostream.annotations.impl.types.XTypeFactory;
 import org.infinispan.protostream.containers.IndexedElementContainerAdapter;
 import org.infinispan.protostream.containers.IterableElementContainerAdapter;
+import org.infinispan.protostream.containers.PackedElementContainerAdapter;
 import org.infinispan.protostream.impl.BaseMarshallerDelegate;
 import org.infinispan.protostream.impl.EnumMarshallerDelegate;
 import org.infinispan.protostream.impl.Log;
@@ -51,12 +55,24 @@ final class MarshallerByteCodeGenerator extends AbstractMarshallerCodeGenerator
     */
    private static long nextId = 0;
 
+   /**
+    * The prefix of class names of generated marshallers that are cached. The hash key is appended to it, so the name of
+    * a cached class is the same in all runs.
+    */
+   private static final String CACHED_MARSHALLER_CLASS_NAME_PREFIX = "___ProtostreamCachedMarshaller_";
+
    private final ClassPool cp;
+
+   /**
+    * The cache of generated classes, or {@code null} if caching is disabled.
+    */
+   private final GeneratedMarshallerCache cache;
    private final CtClass ioExceptionClass;
    private final CtClass enumMarshallerInterface;
    private final CtClass protoStreamMarshallerInterface;
    private final CtClass indexedContainerAdapterInterface;
    private final CtClass iterableContainerAdapterInterface;
+   private final CtClass packedContainerAdapterInterface;
    private final CtClass generatedMarshallerBaseClass;
    private final CtClass baseMarshallerDelegateClass;
    private final CtClass enumMarshallerDelegateClass;
@@ -65,14 +81,16 @@ final class MarshallerByteCodeGenerator extends AbstractMarshallerCodeGenerator
    private final CtMethod decodeMethod;
    private final CtMethod encodeMethod;
 
-   MarshallerByteCodeGenerator(XTypeFactory typeFactory, String protobufSchemaPackage, ClassPool cp) throws NotFoundException {
+   MarshallerByteCodeGenerator(XTypeFactory typeFactory, String protobufSchemaPackage, ClassPool cp, GeneratedMarshallerCache cache) throws NotFoundException {
       super(typeFactory, protobufSchemaPackage);
       this.cp = cp;
+      this.cache = cache;
       ioExceptionClass = cp.getCtClass(IOException.class.getName());
       enumMarshallerInterface = cp.getCtClass(EnumMarshaller.class.getName());
       protoStreamMarshallerInterface = cp.getCtClass(ProtobufTagMarshaller.class.getName());
       indexedContainerAdapterInterface = cp.getCtClass(IndexedElementContainerAdapter.class.getName());
       iterableContainerAdapterInterface = cp.getCtClass(IterableElementContainerAdapter.class.getName());
+      packedContainerAdapterInterface = cp.getCtClass(PackedElementContainerAdapter.class.getName());
       generatedMarshallerBaseClass = cp.getCtClass(GeneratedMarshallerBase.class.getName());
       baseMarshallerDelegateClass = cp.getCtClass(BaseMarshallerDelegate.class.getName());
       enumMarshallerDelegateClass = cp.getCtClass(EnumMarshallerDelegate.class.getName());
@@ -91,8 +109,100 @@ final class MarshallerByteCodeGenerator extends AbstractMarshallerCodeGenerator
       return nextId++;
    }
 
-   private static String makeUniqueMarshallerClassName() {
-      return MARSHALLER_CLASS_NAME_PREFIX + nextMarshallerClassId();
+   private static String makeMarshallerClassName(String cacheKey) {
+      return cacheKey != null ? CACHED_MARSHALLER_CLASS_NAME_PREFIX + cacheKey : MARSHALLER_CLASS_NAME_PREFIX + nextMarshallerClassId();
+   }
+
+   /**
+    * Computes the key of the marshaller in the cache, or returns {@code null} if it must not be cached.
+    *
+    * @param sourceParts everything the marshaller class is generated from, besides the marshalled classes
+    */
+   private String makeCacheKey(ProtoTypeMetadata ptm, String... sourceParts) {
+      if (cache == null) {
+         return null;
+      }
+      String[] classNames = {ptm.getAnnotatedClass().getName(), ptm.getJavaClass().getName()};
+      return cache.makeKey(cp, classNames, sourceParts);
+   }
+
+   /**
+    * Returns the marshaller class having the given cache key if it was already defined in the target ClassLoader by a
+    * previous build or if it can be loaded from the cache, otherwise returns {@code null}.
+    */
+   private Class<?> loadCachedMarshaller(CtClass annotatedClass, String marshallerClassName, String cacheKey) {
+      if (cacheKey == null) {
+         return null;
+      }
+      String className = annotatedClass.getName() + '$' + marshallerClassName;
+      Class<?> marshallerClass = findDefinedClass(className);
+      if (marshallerClass != null) {
+         return marshallerClass;
+      }
+      byte[] bytecode = cache.load(cacheKey);
+      if (bytecode == null) {
+         return null;
+      }
+      if (log.isTraceEnabled()) {
+         log.tracef("Loading cached marshaller %s", className);
+      }
+      try {
+         return defineClass(className, bytecode);
+      } catch (Exception | LinkageError e) {
+         // the cached file is unusable, the marshaller gets generated again and replaces it
+         log.debugf(e, "Cannot load cached marshaller %s", className);
+         return null;
+      }
+   }
+
+   /**
+    * Defines the class in the target ClassLoader and detaches it from the class pool. The bytecode is also saved in the
+    * cache if a cache key is given.
+    */
+   private Class<?> defineMarshallerClass(CtClass marshallerImpl, String cacheKey) throws CannotCompileException {
+      if (cacheKey == null) {
+         Class<?> marshallerClass = marshallerImpl.toClass();
+         marshallerImpl.detach();
+         return marshallerClass;
+      }
+      byte[] bytecode;
+      try {
+         bytecode = marshallerImpl.toBytecode();
+      } catch (IOException e) {
+         throw new CannotCompileException(e);
+      }
+      marshallerImpl.detach();
+      cache.store(cacheKey, marshallerImpl.getName(), bytecode);
+      return defineClass(marshallerImpl.getName(), bytecode);
+   }
+
+   private Class<?> defineClass(String className, byte[] bytecode) throws CannotCompileException {
+      CtClass ctClass;
+      try {
+         ctClass = cp.makeClass(new ByteArrayInputStream(bytecode));
+      } catch (IOException e) {
+         throw new CannotCompileException(e);
+      }
+      try {
+         return ctClass.toClass();
+      } catch (CannotCompileException | LinkageError e) {
+         // another thread may have defined the same class meanwhile
+         Class<?> marshallerClass = findDefinedClass(className);
+         if (marshallerClass != null) {
+            return marshallerClass;
+         }
+         throw e;
+      } finally {
+         ctClass.detach();
+      }
+   }
+
+   private Class<?> findDefinedClass(String className) {
+      try {
+         return Class.forName(className, false, cp.getClassLoader());
+      } catch (ClassNotFoundException e) {
+         return null;
+      }
    }
 
    @Override
@@ -114,8 +224,16 @@ final class MarshallerByteCodeGenerator extends AbstractMarshallerCodeGenerator
     * InnerClasses attribute of the outer class is not altered, so this is not officially considered a nested class.
     */
    private Class<EnumMarshaller> generateEnumMarshaller(ProtoEnumTypeMetadata petm) throws NotFoundException, CannotCompileException {
-      String marshallerClassName = makeUniqueMarshallerClassName();
+      String typeName = makeQualifiedTypeName(petm.getFullName());
+      String decodeSrc = generateEnumDecodeMethodBody(petm);
+      String encodeSrc = generateEnumEncodeMethodBody(petm);
+      String cacheKey = makeCacheKey(petm, "enum", petm.getJavaClassName(), typeName, decodeSrc, encodeSrc);
+      String marshallerClassName = makeMarshallerClassName(cacheKey);
       CtClass annotatedClass = cp.get(petm.getAnnotatedClass().getName());
+      Class<?> cachedMarshallerClass = loadCachedMarshaller(annotatedClass, marshallerClassName, cacheKey);
+      if (cachedMarshallerClass != null) {
+         return (Class<EnumMarshaller>) cachedMarshallerClass;
+      }
       CtClass marshallerImpl = annotatedClass.makeNestedClass(marshallerClassName, true);
       if (log.isTraceEnabled()) {
          log.tracef("Generating enum marshaller %s for %s", marshallerImpl.getName(), petm.getJavaClass().getName());
@@ -124,11 +242,10 @@ final class MarshallerByteCodeGenerator extends AbstractMarshallerCodeGenerator
       marshallerImpl.setModifiers(marshallerImpl.getModifiers() & ~Modifier.ABSTRACT | Modifier.FINAL);
 
       marshallerImpl.addMethod(CtNewMethod.make("public final Class getJavaClass() { return " + petm.getJavaClassName() + ".class; }", marshallerImpl));
-      marshallerImpl.addMethod(CtNewMethod.make("public final String getTypeName() { return \"" + makeQualifiedTypeName(petm.getFullName()) + "\"; }", marshallerImpl));
+      marshallerImpl.addMethod(CtNewMethod.make("public final String getTypeName() { return \"" + typeName + "\"; }", marshallerImpl));
 
       CtMethod ctDecodeMethod = new CtMethod(decodeMethod, marshallerImpl, null);
       ctDecodeMethod.setModifiers(ctDecodeMethod.getModifiers() | Modifier.FINAL);
-      String decodeSrc = generateEnumDecodeMethodBody(petm);
       if (log.isTraceEnabled()) {
          log.tracef("%s %s", ctDecodeMethod.getLongName(), decodeSrc);
       }
@@ -137,17 +254,13 @@ final class MarshallerByteCodeGenerator extends AbstractMarshallerCodeGenerator
 
       CtMethod ctEncodeMethod = new CtMethod(encodeMethod, marshallerImpl, null);
       ctEncodeMethod.setModifiers(ctEncodeMethod.getModifiers() | Modifier.FINAL);
-      String encodeSrc = generateEnumEncodeMethodBody(petm);
       if (log.isTraceEnabled()) {
          log.tracef("%s %s", ctEncodeMethod.getLongName(), encodeSrc);
       }
       ctEncodeMethod.setBody(encodeSrc);
       marshallerImpl.addMethod(ctEncodeMethod);
 
-      Class<EnumMarshaller> generatedMarshallerClass = (Class<EnumMarshaller>) marshallerImpl.toClass();
-      marshallerImpl.detach();
-
-      return generatedMarshallerClass;
+      return (Class<EnumMarshaller>) defineMarshallerClass(marshallerImpl, cacheKey);
    }
 
    /**
@@ -156,8 +269,18 @@ final class MarshallerByteCodeGenerator extends AbstractMarshallerCodeGenerator
     * nested class.
     */
    private Class<ProtobufTagMarshaller> generateMessageMarshaller(ProtoMessageTypeMetadata pmtm) throws NotFoundException, CannotCompileException {
-      String marshallerClassName = makeUniqueMarshallerClassName();
+      String typeName = makeQualifiedTypeName(pmtm.getFullName());
+      String readBody = generateReadMethodBody(pmtm);
+      String writeBody = generateWriteMethodBody(pmtm);
+      String cacheKey = makeCacheKey(pmtm, "message", pmtm.getJavaClass().getCanonicalName(), typeName,
+            String.valueOf(pmtm.isAdapter()), String.valueOf(pmtm.isIndexedContainer()),
+            String.valueOf(pmtm.isPackedContainer()), String.valueOf(pmtm.isIterableContainer()), readBody, writeBody);
+      String marshallerClassName = makeMarshallerClassName(cacheKey);
       CtClass annotatedClass = cp.get(pmtm.getAnnotatedClass().getName());
+      Class<?> cachedMarshallerClass = loadCachedMarshaller(annotatedClass, marshallerClassName, cacheKey);
+      if (cachedMarshallerClass != null) {
+         return (Class<ProtobufTagMarshaller>) cachedMarshallerClass;
+      }
       CtClass marshallerImpl = annotatedClass.makeNestedClass(marshallerClassName, true);
       if (log.isTraceEnabled()) {
          log.tracef("Generating message marshaller %s for %s", marshallerImpl.getName(), pmtm.getJavaClass().getName());
@@ -171,11 +294,15 @@ final class MarshallerByteCodeGenerator extends AbstractMarshallerCodeGenerator
       }
 
       if (pmtm.isIndexedContainer()) {
-         marshallerImpl.addInterface(indexedContainerAdapterInterface);
+         marshallerImpl.addInterface(pmtm.isPackedContainer() ? packedContainerAdapterInterface : indexedContainerAdapterInterface);
          if (pmtm.isAdapter()) {
             marshallerImpl.addMethod(CtNewMethod.make("public final int getNumElements(java.lang.Object container) { return " + ADAPTER_FIELD_NAME + ".getNumElements(container); }", marshallerImpl));
             marshallerImpl.addMethod(CtNewMethod.make("public final java.lang.Object getElement(java.lang.Object container, int index) { return " + ADAPTER_FIELD_NAME + ".getElement(container, index); }", marshallerImpl));
             marshallerImpl.addMethod(CtNewMethod.make("public final void setElement(java.lang.Object container, int index, java.lang.Object element) { " + ADAPTER_FIELD_NAME + ".setElement(container, index, element); }", marshallerImpl));
+            if (pmtm.isPackedContainer()) {
+               marshallerImpl.addMethod(CtNewMethod.make("public final void writePackedElements(" + TagWriter.class.getName() + " out, int fieldNumber, java.lang.Object container) throws java.io.IOException { " + ADAPTER_FIELD_NAME + ".writePackedElements(out, fieldNumber, container); }", marshallerImpl));
+               marshallerImpl.addMethod(CtNewMethod.make("public final void readPackedElements(" + TagReader.class.getName() + " in, java.lang.Object container) throws java.io.IOException { " + ADAPTER_FIELD_NAME + ".readPackedElements(in, container); }", marshallerImpl));
+            }
          } else {
             marshallerImpl.addMethod(CtNewMethod.make("public final int getNumElements(java.lang.Object container) { return ((" + indexedContainerAdapterInterface.getName() + ") container).getNumElements(); }", marshallerImpl));
             marshallerImpl.addMethod(CtNewMethod.make("public final java.lang.Object getElement(java.lang.Object container, int index) { return ((" + indexedContainerAdapterInterface.getName() + ") container).getElement(index); }", marshallerImpl));
@@ -197,12 +324,11 @@ final class MarshallerByteCodeGenerator extends AbstractMarshallerCodeGenerator
       addMarshallerDelegateFields(marshallerImpl, pmtm);
 
       marshallerImpl.addMethod(CtNewMethod.make("public final Class getJavaClass() { return " + pmtm.getJavaClass().getCanonicalName() + ".class; }", marshallerImpl));
-      marshallerImpl.addMethod(CtNewMethod.make("public final String getTypeName() { return \"" + makeQualifiedTypeName(pmtm.getFullName()) + "\"; }", marshallerImpl));
+      marshallerImpl.addMethod(CtNewMethod.make("public final String getTypeName() { return \"" + typeName + "\"; }", marshallerImpl));
 
       CtMethod ctReadMethod = new CtMethod(readMethod, marshallerImpl, null);
       ctReadMethod.setExceptionTypes(new CtClass[]{ioExceptionClass});
       ctReadMethod.setModifiers(ctReadMethod.getModifiers() | Modifier.FINAL);
-      String readBody = generateReadMethodBody(pmtm);
       if (log.isTraceEnabled()) {
          log.tracef("%s %s", ctReadMethod.getLongName(), readBody);
       }
@@ -212,17 +338,13 @@ final class MarshallerByteCodeGenerator extends AbstractMarshallerCodeGenerator
       CtMethod ctWriteMethod = new CtMethod(writeMethod, marshallerImpl, null);
       ctWriteMethod.setExceptionTypes(new CtClass[]{ioExceptionClass});
       ctWriteMethod.setModifiers(ctWriteMethod.getModifiers() | Modifier.FINAL);
-      String writeBody = generateWriteMethodBody(pmtm);
       if (log.isTraceEnabled()) {
          log.tracef("%s %s", ctWriteMethod.getLongName(), writeBody);
       }
       ctWriteMethod.setBody(writeBody);
       marshallerImpl.addMethod(ctWriteMethod);
 
-      Class<ProtobufTagMarshaller> generatedMarshallerClass = (Class<ProtobufTagMarshaller>) marshallerImpl.toClass();
-      marshallerImpl.detach();
-
-      return generatedMarshallerClass;
+      return (Class<ProtobufTagMarshaller>) defineMarshallerClass(marshallerImpl, cacheKey);
    }
 
    private void addAdapterField(CtClass marshallerImpl, ProtoMessageTypeMetadata messageTypeMetadata) throws CannotCompileException, NotFoundException {
@@ -28,6 +28,7 @@ public final class ProtoFieldMetadata implements HasProtoSchema {
    private final boolean isRequired;
    private final boolean isRepeated;
    private final boolean isArray;
+   private final boolean isPacked;
    private final Object defaultValue;
 
    private final String propertyName;
@@ -38,7 +39,7 @@ public final class ProtoFieldMetadata implements HasProtoSchema {
 
    ProtoFieldMetadata(int number, String name, XClass javaType,
                       XClass collectionImplementation, Type protobufType, ProtoTypeMetadata protoTypeMetadata,
-                      boolean isRequired, boolean isRepeated, boolean isArray, Object defaultValue,
+                      boolean isRequired, boolean isRepeated, boolean isArray, boolean isPacked, Object defaultValue,
                       XField field) {
       this.number = number;
       this.name = name;
@@ -48,6 +49,7 @@ public final class ProtoFieldMetadata implements HasProtoSchema {
       this.isRequired = isRequired;
       this.isRepeated = isRepeated;
       this.isArray = isArray;
+      this.isPacked = isPacked;
       this.defaultValue = defaultValue;
       this.protobufType = protobufType;
       this.declaringMember = field;
@@ -60,7 +62,7 @@ public final class ProtoFieldMetadata implements HasProtoSchema {
 
    ProtoFieldMetadata(int number, String name, XClass javaType,
                       XClass collectionImplementation, Type protobufType, ProtoTypeMetadata protoTypeMetadata,
-                      boolean isRequired, boolean isRepeated, boolean isArray, Object defaultValue,
+                      boolean isRequired, boolean isRepeated, boolean isArray, boolean isPacked, Object defaultValue,
                       String propertyName, XMethod definingMethod, XMethod getter, XMethod setter) {
       this.number = number;
       this.name = name;
@@ -70,6 +72,7 @@ public final class ProtoFieldMetadata implements HasProtoSchema {
       this.isRequired = isRequired;
       this.isRepeated = isRepeated;
       this.isArray = isArray;
+      this.isPacked = isPacked;
       this.defaultValue = defaultValue;
       this.protobufType = protobufType;
       this.field = null;
@@ -132,6 +135,10 @@ public final class ProtoFieldMetadata implements HasProtoSchema {
       return isArray;
    }
 
+   public boolean isPacked() {
+      return isPacked;
+   }
+
    public Object getDefaultValue() {
       return defaultValue;
    }
@@ -233,7 +240,13 @@ public final class ProtoFieldMetadata implements HasProtoSchema {
          } else {
             v = defaultValue.toString();
          }
-         iw.append(" [default = ").append(v).append(']');
+         iw.append(" [default = ").append(v);
+         if (isPacked) {
+            iw.append(", packed = true");
+         }
+         iw.append(']');
+      } else if (isPacked) {
+         iw.append(" [packed = true]");
       }
 
       if (BaseProtoSchemaGenerator.generateSchemaDebugComments) {
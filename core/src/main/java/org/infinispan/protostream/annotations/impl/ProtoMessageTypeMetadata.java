@@ -32,6 +32,7 @@ import org.infinispan.protostream.containers.IndexedElementContainer;
 import org.infinispan.protostream.containers.IndexedElementContainerAdapter;
 import org.infinispan.protostream.containers.IterableElementContainer;
 import org.infinispan.protostream.containers.IterableElementContainerAdapter;
+import org.infinispan.protostream.containers.PackedElementContainerAdapter;
 import org.infinispan.protostream.descriptors.JavaType;
 import org.infinispan.protostream.descriptors.Type;
 import org.infinispan.protostream.impl.Log;
@@ -63,6 +64,11 @@ public class ProtoMessageTypeMetadata extends ProtoTypeMetadata {
 
    private final boolean isIterableContainer;
 
+   /**
+    * Only adapters can be packed containers.
+    */
+   private final boolean isPackedContainer;
+
    private XExecutable factory;
 
    private XField unknownFieldSetField;
@@ -81,6 +87,7 @@ public class ProtoMessageTypeMetadata extends ProtoTypeMetadata {
       this.isAdapter = javaClass != annotatedClass;
       this.isIndexedContainer = annotatedClass.isAssignableTo(isAdapter ? IndexedElementContainerAdapter.class : IndexedElementContainer.class);
       this.isIterableContainer = annotatedClass.isAssignableTo(isAdapter ? IterableElementContainerAdapter.class : IterableElementContainer.class);
+      this.isPackedContainer = isAdapter && annotatedClass.isAssignableTo(PackedElementContainerAdapter.class);
 
       checkInstantiability();
 
@@ -117,6 +124,10 @@ public class ProtoMessageTypeMetadata extends ProtoTypeMetadata {
       return isIterableContainer;
    }
 
+   public boolean isPackedContainer() {
+      return isPackedContainer;
+   }
+
    public boolean isContainer() {
       return isIterableContainer || isIndexedContainer;
    }
@@ -409,6 +420,11 @@ public class ProtoMessageTypeMetadata extends ProtoTypeMetadata {
 
                protobufType = getProtobufType(javaType, protobufType);
 
+               boolean isPacked = annotation.packed();
+               if (isPacked && (!isRepeated || !protobufType.isPackable())) {
+                  throw new ProtoSchemaBuilderException("Field '" + fieldName + "' of " + clazz.getCanonicalName() + " cannot be marked packed. Only repeated fields of scalar numeric, boolean or enum types can be packed.");
+               }
+
                Object defaultValue = getDefaultValue(clazz, fieldName, javaType, protobufType, annotation.defaultValue());
 
                if (!isRequired && !isRepeated && javaType.isPrimitive() && defaultValue == null) {
@@ -425,7 +441,7 @@ public class ProtoMessageTypeMetadata extends ProtoTypeMetadata {
                   protoTypeMetadata = protoSchemaGenerator.scanAnnotations(javaType);
                }
                ProtoFieldMetadata fieldMetadata = new ProtoFieldMetadata(number, fieldName, javaType, collectionImplementation,
-                     protobufType, protoTypeMetadata, isRequired, isRepeated, isArray, defaultValue, field);
+                     protobufType, protoTypeMetadata, isRequired, isRepeated, isArray, isPacked, defaultValue, field);
 
                ProtoFieldMetadata existing = fieldsByNumber.get(number);
                if (existing != null) {
@@ -566,6 +582,11 @@ public class ProtoMessageTypeMetadata extends ProtoTypeMetadata {
 
                protobufType = getProtobufType(javaType, protobufType);
 
+               boolean isPacked = annotation.packed();
+               if (isPacked && (!isRepeated || !protobufType.isPackable())) {
+                  throw new ProtoSchemaBuilderException("Field '" + fieldName + "' of " + clazz.getCanonicalName() + " cannot be marked packed. Only repeated fields of scalar numeric, boolean or enum types can be packed.");
+               }
+
                Object defaultValue = getDefaultValue(clazz, fieldName, javaType, protobufType, annotation.defaultValue());
 
                if (!isRequired && !isRepeated && javaType.isPrimitive() && defaultValue == null) {
@@ -583,7 +604,7 @@ public class ProtoMessageTypeMetadata extends ProtoTypeMetadata {
                }
 
                ProtoFieldMetadata fieldMetadata = new ProtoFieldMetadata(number, fieldName, javaType, collectionImplementation,
-                     protobufType, protoTypeMetadata, isRequired, isRepeated, isArray, defaultValue,
+                     protobufType, protoTypeMetadata, isRequired, isRepeated, isArray, isPacked, defaultValue,
                      propertyName, method, getter, setter);
 
                ProtoFieldMetadata existing = fieldsByNumber.get(number);
@@ -1,5 +1,6 @@
 package org.infinispan.protostream.annotations.impl;
 
+import java.io.File;
 import java.util.Set;
 
 import org.infinispan.protostream.BaseMarshaller;
@@ -25,14 +26,33 @@ public final class RuntimeProtoSchemaGenerator extends BaseProtoSchemaGenerator
 
    private final ClassPool classPool;
 
+   private final File marshallerCacheDir;
+
+   private final File marshallerCacheSecretFile;
+
    public RuntimeProtoSchemaGenerator(XTypeFactory typeFactory, SerializationContext serializationContext,
                                       String generator, String fileName, String packageName,
                                       Set<XClass> classes, boolean autoImportClasses, ClassLoader classLoader) {
+      this(typeFactory, serializationContext, generator, fileName, packageName, classes, autoImportClasses, classLoader, null, null);
+   }
+
+   /**
+    * @param marshallerCacheDir        the directory where generated marshaller classes are cached, or {@code null} to
+    *                                  always generate them
+    * @param marshallerCacheSecretFile the file holding the secret that authenticates the cached classes, or {@code
+    *                                  null} to use the default one
+    */
+   public RuntimeProtoSchemaGenerator(XTypeFactory typeFactory, SerializationContext serializationContext,
+                                      String generator, String fileName, String packageName,
+                                      Set<XClass> classes, boolean autoImportClasses, ClassLoader classLoader,
+                                      File marshallerCacheDir, File marshallerCacheSecretFile) {
       super(typeFactory, serializationContext, generator, fileName, packageName, classes, autoImportClasses);
       if (classes.isEmpty()) {
          throw new ProtoSchemaBuilderException("At least one class must be specified");
       }
       classPool = getClassPool(classes, classLoader);
+      this.marshallerCacheDir = marshallerCacheDir;
+      this.marshallerCacheSecretFile = marshallerCacheSecretFile;
    }
 
    /**
@@ -57,7 +77,8 @@ public final class RuntimeProtoSchemaGenerator extends BaseProtoSchemaGenerator
    @Override
    protected AbstractMarshallerCodeGenerator makeMarshallerCodeGenerator() {
       try {
-         return new MarshallerByteCodeGenerator(typeFactory, packageName, classPool);
+         return new MarshallerByteCodeGenerator(typeFactory, packageName, classPool,
+               marshallerCacheDir == null ? null : new GeneratedMarshallerCache(marshallerCacheDir, marshallerCacheSecretFile));
       } catch (NotFoundException e) {
          throw new ProtoSchemaBuilderException(e);
       }
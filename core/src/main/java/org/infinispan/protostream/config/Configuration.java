@@ -35,16 +35,81 @@ public interface Configuration {
     */
    boolean logOutOfSequenceWrites();
 
+   /**
+    * Flag that indicates if the readers and writers used by {@link org.infinispan.protostream.ProtobufUtil}, together
+    * with their buffers, should be cached per thread and reused by subsequent calls instead of being allocated every
+    * time. Marshallers must not keep references to the reader or writer after they return if this is enabled. This is
+    * {@code false} by default. Implementations not supporting it inherit a method returning {@code false}.
+    */
+   default boolean reuseReadersAndWriters() {
+      return false;
+   }
+
+   /**
+    * Flag that indicates if length delimited fields should be read without copying when the input is a byte array or
+    * a {@link java.nio.ByteBuffer}. {@link org.infinispan.protostream.TagReader#readByteBuffer()} then returns read-only
+    * slices of the input. The input must not be modified while the unmarshalled objects are in use. This does not
+    * apply to {@link org.infinispan.protostream.TagReader#readByteArray()} nor to fields that were read out of order
+    * and returned through {@link org.infinispan.protostream.UnknownFieldSet#consumeTag(int)}, which are always copies.
+    * This is {@code false} by default. Implementations not supporting it inherit a method returning {@code false}.
+    */
+   default boolean zeroCopyReads() {
+      return false;
+   }
+
    WrappingConfig wrappingConfig();
 
    interface WrappingConfig {
 
       WrappedMessageTypeIdMapper wrappedMessageTypeIdMapper();
 
+      /**
+       * Should the elements of containers having a {@link org.infinispan.protostream.containers.PackedElementContainerAdapter}
+       * (arrays of primitives) be written as a single packed field instead of one wrapped message per element? The
+       * packed form is always accepted when reading, but it cannot be read by versions prior to 4.4.2. This is {@code
+       * false} by default. Implementations not supporting it inherit a method returning {@code false}.
+       */
+      default boolean packedContainers() {
+         return false;
+      }
+
+      /**
+       * Should the type of the elements of containers be written only once if the first element is a message? The
+       * elements of the same Java class then follow as length delimited messages without an individual type
+       * discriminator, and only the other ones (including nulls) are wrapped individually. This form is always accepted
+       * when reading, but it cannot be read by versions prior to 4.4.2. This is {@code false} by default.
+       * Implementations not supporting it inherit a method returning {@code false}.
+       */
+      default boolean homogeneousContainers() {
+         return false;
+      }
+
       interface Builder {
 
          Builder wrappedMessageTypeIdMapper(WrappedMessageTypeIdMapper wrappedMessageTypeIdMapper);
 
+         /**
+          * Enables {@link WrappingConfig#packedContainers()}. Builders not supporting it inherit a method that only
+          * accepts {@code false}.
+          */
+         default Builder packedContainers(boolean packedContainers) {
+            if (packedContainers) {
+               throw new UnsupportedOperationException(getClass().getName() + " does not support packed containers");
+            }
+            return this;
+         }
+
+         /**
+          * Enables {@link WrappingConfig#homogeneousContainers()}. Builders not supporting it inherit a method that
+          * only accepts {@code false}.
+          */
+         default Builder homogeneousContainers(boolean homogeneousContainers) {
+            if (homogeneousContainers) {
+               throw new UnsupportedOperationException(getClass().getName() + " does not support homogeneous containers");
+            }
+            return this;
+         }
+
          Configuration build();
       }
    }
@@ -84,6 +149,28 @@ public interface Configuration {
 
       Builder setLogOutOfSequenceWrites(boolean logOutOfSequenceWrites);
 
+      /**
+       * Enables {@link Configuration#reuseReadersAndWriters()}. Builders not supporting it inherit a method that only
+       * accepts {@code false}.
+       */
+      default Builder setReuseReadersAndWriters(boolean reuseReadersAndWriters) {
+         if (reuseReadersAndWriters) {
+            throw new UnsupportedOperationException(getClass().getName() + " does not support reusing readers and writers");
+         }
+         return this;
+      }
+
+      /**
+       * Enables {@link Configuration#zeroCopyReads()}. Builders not supporting it inherit a method that only accepts
+       * {@code false}.
+       */
+      default Builder setZeroCopyReads(boolean zeroCopyReads) {
+         if (zeroCopyReads) {
+            throw new UnsupportedOperationException(getClass().getName() + " does not support zero copy reads");
+         }
+         return this;
+      }
+
       /**
        * Should we log a warning every time we encounter an undefined documentation annotation? This is {@code true} by
        * default.
@@ -19,16 +19,23 @@ public final class ConfigurationImpl implements Configuration {
 
    private final boolean logOutOfSequenceWrites;
 
+   private final boolean reuseReadersAndWriters;
+
+   private final boolean zeroCopyReads;
+
    private final WrappingConfigImpl wrappingConfig;
 
    private final AnnotationsConfigImpl annotationsConfig;
 
-   private ConfigurationImpl(boolean logOutOfSequenceReads, boolean logOutOfSequenceWrites,
-                             WrappedMessageTypeIdMapper wrappedMessageTypeIdMapper,
+   private ConfigurationImpl(boolean logOutOfSequenceReads, boolean logOutOfSequenceWrites, boolean reuseReadersAndWriters,
+                             boolean zeroCopyReads,
+                             WrappedMessageTypeIdMapper wrappedMessageTypeIdMapper, boolean packedContainers, boolean homogeneousContainers,
                              Map<String, AnnotationConfigurationImpl> annotations, boolean logUndefinedAnnotations) {
       this.logOutOfSequenceReads = logOutOfSequenceReads;
       this.logOutOfSequenceWrites = logOutOfSequenceWrites;
-      this.wrappingConfig = new WrappingConfigImpl(wrappedMessageTypeIdMapper);
+      this.reuseReadersAndWriters = reuseReadersAndWriters;
+      this.zeroCopyReads = zeroCopyReads;
+      this.wrappingConfig = new WrappingConfigImpl(wrappedMessageTypeIdMapper, packedContainers, homogeneousContainers);
       this.annotationsConfig = new AnnotationsConfigImpl(annotations, logUndefinedAnnotations);
    }
 
@@ -42,6 +49,16 @@ public final class ConfigurationImpl implements Configuration {
       return logOutOfSequenceWrites;
    }
 
+   @Override
+   public boolean reuseReadersAndWriters() {
+      return reuseReadersAndWriters;
+   }
+
+   @Override
+   public boolean zeroCopyReads() {
+      return zeroCopyReads;
+   }
+
    @Override
    public WrappingConfig wrappingConfig() {
       return wrappingConfig;
@@ -57,6 +74,8 @@ public final class ConfigurationImpl implements Configuration {
       return "Configuration{" +
             "logOutOfSequenceReads=" + logOutOfSequenceReads +
             ", logOutOfSequenceWrites=" + logOutOfSequenceWrites +
+            ", reuseReadersAndWriters=" + reuseReadersAndWriters +
+            ", zeroCopyReads=" + zeroCopyReads +
             ", wrappingConfig=" + wrappingConfig +
             ", annotationsConfig=" + annotationsConfig +
             '}';
@@ -66,8 +85,14 @@ public final class ConfigurationImpl implements Configuration {
 
       private final WrappedMessageTypeIdMapper wrappedMessageTypeIdMapper;
 
-      private WrappingConfigImpl(WrappedMessageTypeIdMapper wrappedMessageTypeIdMapper) {
+      private final boolean packedContainers;
+
+      private final boolean homogeneousContainers;
+
+      private WrappingConfigImpl(WrappedMessageTypeIdMapper wrappedMessageTypeIdMapper, boolean packedContainers, boolean homogeneousContainers) {
          this.wrappedMessageTypeIdMapper = wrappedMessageTypeIdMapper;
+         this.packedContainers = packedContainers;
+         this.homogeneousContainers = homogeneousContainers;
       }
 
       @Override
@@ -75,9 +100,21 @@ public final class ConfigurationImpl implements Configuration {
          return wrappedMessageTypeIdMapper;
       }
 
+      @Override
+      public boolean packedContainers() {
+         return packedContainers;
+      }
+
+      @Override
+      public boolean homogeneousContainers() {
+         return homogeneousContainers;
+      }
+
       @Override
       public String toString() {
-         return "WrappingConfigImpl{wrappedMessageTypeIdMapper=" + wrappedMessageTypeIdMapper + '}';
+         return "WrappingConfigImpl{wrappedMessageTypeIdMapper=" + wrappedMessageTypeIdMapper +
+               ", packedContainers=" + packedContainers +
+               ", homogeneousContainers=" + homogeneousContainers + '}';
       }
    }
 
@@ -114,6 +151,10 @@ public final class ConfigurationImpl implements Configuration {
 
       private boolean logOutOfSequenceWrites = true;
 
+      private boolean reuseReadersAndWriters = false;
+
+      private boolean zeroCopyReads = false;
+
       private WrappingConfigBuilderImpl wrappingConfigBuilder = null;
 
       private AnnotationsConfigBuilderImpl annotationsConfigBuilder = null;
@@ -122,12 +163,28 @@ public final class ConfigurationImpl implements Configuration {
 
          private WrappedMessageTypeIdMapper wrappedMessageTypeIdMapper;
 
+         private boolean packedContainers = false;
+
+         private boolean homogeneousContainers = false;
+
          @Override
          public WrappingConfig.Builder wrappedMessageTypeIdMapper(WrappedMessageTypeIdMapper wrappedMessageTypeIdMapper) {
             this.wrappedMessageTypeIdMapper = wrappedMessageTypeIdMapper;
             return this;
          }
 
+         @Override
+         public WrappingConfig.Builder packedContainers(boolean packedContainers) {
+            this.packedContainers = packedContainers;
+            return this;
+         }
+
+         @Override
+         public WrappingConfig.Builder homogeneousContainers(boolean homogeneousContainers) {
+            this.homogeneousContainers = homogeneousContainers;
+            return this;
+         }
+
          @Override
          public Configuration build() {
             return BuilderImpl.this.build();
@@ -180,6 +237,18 @@ public final class ConfigurationImpl implements Configuration {
          return this;
       }
 
+      @Override
+      public Builder setReuseReadersAndWriters(boolean reuseReadersAndWriters) {
+         this.reuseReadersAndWriters = reuseReadersAndWriters;
+         return this;
+      }
+
+      @Override
+      public Builder setZeroCopyReads(boolean zeroCopyReads) {
+         this.zeroCopyReads = zeroCopyReads;
+         return this;
+      }
+
       @Override
       public WrappingConfigBuilderImpl wrappingConfig() {
          if (wrappingConfigBuilder == null) {
@@ -228,8 +297,8 @@ public final class ConfigurationImpl implements Configuration {
 
          // TypeId is the only predefined annotation. If there are more than one then we know we have at least one user defined.
          boolean logUndefinedAnnotations = annotationsConfig().logUndefinedAnnotations == null ? annotations.size() > 1 : annotationsConfig().logUndefinedAnnotations;
-         return new ConfigurationImpl(logOutOfSequenceReads, logOutOfSequenceWrites,
-               wrappingConfig().wrappedMessageTypeIdMapper,
+         return new ConfigurationImpl(logOutOfSequenceReads, logOutOfSequenceWrites, reuseReadersAndWriters, zeroCopyReads,
+               wrappingConfig().wrappedMessageTypeIdMapper, wrappingConfig().packedContainers, wrappingConfig().homogeneousContainers,
                annotations, logUndefinedAnnotations);
       }
    }
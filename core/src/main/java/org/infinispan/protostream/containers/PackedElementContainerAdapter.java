@@ -0,0 +1,36 @@
+package org.infinispan.protostream.containers;
+
+import java.io.IOException;
+
+import org.infinispan.protostream.TagReader;
+import org.infinispan.protostream.TagWriter;
+
+/**
+ * An indexed container adapter for containers of primitive values (arrays of primitives) that are able to write all
+ * their elements at once as a single packed field and to read them back directly into the container, without boxing
+ * each element. This is used by {@link org.infinispan.protostream.WrappedMessage} if {@link
+ * org.infinispan.protostream.config.Configuration.WrappingConfig#packedContainers()} is enabled.
+ *
+ * @since 4.4
+ */
+public interface PackedElementContainerAdapter<C, E> extends IndexedElementContainerAdapter<C, E> {
+
+   /**
+    * Writes all elements of the container as a single packed field, using one of the {@code writePacked} methods of
+    * the {@link TagWriter}.
+    *
+    * @param out         the writer
+    * @param fieldNumber the number of the packed field
+    * @param container   the container
+    */
+   void writePackedElements(TagWriter out, int fieldNumber, C container) throws IOException;
+
+   /**
+    * Reads the contents of the packed field, which are all elements of the container. The container was already
+    * created having the right size. The reader is limited to the contents of the packed field.
+    *
+    * @param in        the reader
+    * @param container the container
+    */
+   void readPackedElements(TagReader in, C container) throws IOException;
+}
@@ -2,9 +2,11 @@ package org.infinispan.protostream.descriptors;
 
 import static java.util.Collections.unmodifiableList;
 
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.stream.Collectors;
 
 import org.infinispan.protostream.DescriptorParserException;
 import org.infinispan.protostream.config.AnnotationConfiguration;
@@ -26,8 +28,24 @@ public final class Descriptor extends AnnotatedDescriptorImpl implements Generic
    private final List<OneOfDescriptor> oneofs;
    private final List<Descriptor> nestedMessageTypes;
    private final List<EnumDescriptor> nestedEnumTypes;
-   private final Map<Integer, FieldDescriptor> fieldsByNumber = new HashMap<>();
    private final Map<String, FieldDescriptor> fieldsByName = new HashMap<>();
+
+   /**
+    * The numbers of all fields, including the ones of oneofs, sorted ascending. The position of a number in this array
+    * is the ordinal of the field.
+    */
+   private final int[] fieldNumbers;
+
+   /**
+    * All fields, indexed by ordinal.
+    */
+   private final FieldDescriptor[] fieldsByOrdinal;
+
+   /**
+    * All fields, indexed by number, if the numbering is compact enough. Otherwise this is {@code null} and lookups by
+    * number use a binary search in {@link #fieldNumbers}.
+    */
+   private final FieldDescriptor[] fieldsByNumber;
    private FileDescriptor fileDescriptor;
    private Descriptor containingType;
 
@@ -35,12 +53,33 @@ public final class Descriptor extends AnnotatedDescriptorImpl implements Generic
       super(builder.name, builder.fullName, builder.documentation);
       this.options = unmodifiableList(builder.options);
       this.fields = unmodifiableList(builder.fields);
-      addFields(builder.fields);
+      Map<Integer, FieldDescriptor> fieldMap = new HashMap<>();
+      addFields(fieldMap, builder.fields);
       this.oneofs = unmodifiableList(builder.oneofs);
       for (OneOfDescriptor oneOf : oneofs) {
-         addFields(oneOf.getFields());
+         addFields(fieldMap, oneOf.getFields());
          oneOf.setContainingMessage(this);
       }
+      int numFields = fieldMap.size();
+      fieldNumbers = new int[numFields];
+      int i = 0;
+      for (Integer number : fieldMap.keySet()) {
+         fieldNumbers[i++] = number;
+      }
+      Arrays.sort(fieldNumbers);
+      fieldsByOrdinal = new FieldDescriptor[numFields];
+      for (i = 0; i < numFields; i++) {
+         fieldsByOrdinal[i] = fieldMap.get(fieldNumbers[i]);
+      }
+      int maxNumber = numFields > 0 ? fieldNumbers[numFields - 1] : 0;
+      if (maxNumber <= 2 * numFields + 16) {
+         fieldsByNumber = new FieldDescriptor[maxNumber + 1];
+         for (FieldDescriptor fd : fieldsByOrdinal) {
+            fieldsByNumber[fd.getNumber()] = fd;
+         }
+      } else {
+         fieldsByNumber = null;
+      }
       this.nestedMessageTypes = unmodifiableList(builder.nestedMessageTypes);
       this.nestedEnumTypes = unmodifiableList(builder.nestedEnumTypes);
       for (Descriptor nested : nestedMessageTypes) {
@@ -51,7 +90,7 @@ public final class Descriptor extends AnnotatedDescriptorImpl implements Generic
       }
    }
 
-   private void addFields(List<FieldDescriptor> fields) {
+   private void addFields(Map<Integer, FieldDescriptor> fieldsByNumber, List<FieldDescriptor> fields) {
       for (FieldDescriptor fieldDescriptor : fields) {
          FieldDescriptor existing = fieldsByNumber.put(fieldDescriptor.getNumber(), fieldDescriptor);
          if (existing != null) {
@@ -103,7 +142,41 @@ public final class Descriptor extends AnnotatedDescriptorImpl implements Generic
    }
 
    public FieldDescriptor findFieldByNumber(int number) {
-      return fieldsByNumber.get(number);
+      if (fieldsByNumber != null) {
+         return number >= 0 && number < fieldsByNumber.length ? fieldsByNumber[number] : null;
+      }
+      int ordinal = Arrays.binarySearch(fieldNumbers, number);
+      return ordinal >= 0 ? fieldsByOrdinal[ordinal] : null;
+   }
+
+   /**
+    * Gets the total number of fields, including the fields of oneofs.
+    */
+   public int getFieldCount() {
+      return fieldNumbers.length;
+   }
+
+   /**
+    * Gets the ordinal of a field, which is its position among all fields of this message type (including the fields of
+    * oneofs) sorted by number. Ordinals are dense, starting from 0, so they can be used to index compact per-message
+    * data structures.
+    *
+    * @param number the field number
+    * @return the ordinal or -1 if there is no field with this number
+    */
+   public int getFieldOrdinal(int number) {
+      int numFields = fieldNumbers.length;
+      if (numFields == 0) {
+         return -1;
+      }
+      int first = fieldNumbers[0];
+      if (fieldNumbers[numFields - 1] - first == numFields - 1) {
+         // the usual case, no gaps in numbering
+         int ordinal = number - first;
+         return ordinal >= 0 && ordinal < numFields ? ordinal : -1;
+      }
+      int ordinal = Arrays.binarySearch(fieldNumbers, number);
+      return ordinal >= 0 ? ordinal : -1;
    }
 
    public FieldDescriptor findFieldByName(String name) {
@@ -181,6 +254,22 @@ public final class Descriptor extends AnnotatedDescriptorImpl implements Generic
       return "Descriptor{fullName=" + getFullName() + '}';
    }
 
+   /**
+    * Creates an unresolved copy of this message type, having new instances of all its fields and nested types.
+    */
+   Descriptor copy() {
+      return new Builder()
+            .withName(name)
+            .withFullName(fullName)
+            .withOptions(options)
+            .withFields(fields.stream().map(FieldDescriptor::copy).collect(Collectors.toList()))
+            .withOneOfs(oneofs.stream().map(OneOfDescriptor::copy).collect(Collectors.toList()))
+            .withNestedTypes(nestedMessageTypes.stream().map(Descriptor::copy).collect(Collectors.toList()))
+            .withEnumTypes(nestedEnumTypes.stream().map(EnumDescriptor::copy).collect(Collectors.toList()))
+            .withDocumentation(documentation)
+            .build();
+   }
+
    public static final class Builder {
       private String name, fullName;
       private List<Option> options;
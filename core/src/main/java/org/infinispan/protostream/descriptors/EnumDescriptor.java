@@ -4,6 +4,7 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.stream.Collectors;
 
 import org.infinispan.protostream.DescriptorParserException;
 import org.infinispan.protostream.config.AnnotationConfiguration;
@@ -124,6 +125,19 @@ public final class EnumDescriptor extends AnnotatedDescriptorImpl implements Gen
       return "EnumDescriptor{fullName=" + getFullName() + '}';
    }
 
+   /**
+    * Creates an unresolved copy of this enum, having new instances of its values.
+    */
+   EnumDescriptor copy() {
+      return new Builder()
+            .withName(name)
+            .withFullName(fullName)
+            .withOptions(options)
+            .withValues(values.stream().map(EnumValueDescriptor::copy).collect(Collectors.toList()))
+            .withDocumentation(documentation)
+            .build();
+   }
+
    public static final class Builder {
       private String name;
       private String fullName;
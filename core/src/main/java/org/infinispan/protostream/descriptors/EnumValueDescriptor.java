@@ -86,6 +86,15 @@ public final class EnumValueDescriptor {
       return "EnumValueDescriptor{fullName=" + fullName + '}';
    }
 
+   EnumValueDescriptor copy() {
+      return new Builder()
+            .withName(name)
+            .withTag(number)
+            .withDocumentation(documentation)
+            .withOptions(options)
+            .build();
+   }
+
    public static final class Builder {
       private String name;
       private int number;
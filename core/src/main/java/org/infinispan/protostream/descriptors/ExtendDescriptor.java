@@ -1,6 +1,7 @@
 package org.infinispan.protostream.descriptors;
 
 import java.util.List;
+import java.util.stream.Collectors;
 
 /**
  * Represents a extend in a proto file.
@@ -50,6 +51,14 @@ public final class ExtendDescriptor {
       return fileDescriptor;
    }
 
+   ExtendDescriptor copy() {
+      return new Builder()
+            .withName(name)
+            .withFullName(fullName)
+            .withFields(fields.stream().map(FieldDescriptor::copy).collect(Collectors.toList()))
+            .build();
+   }
+
    public static final class Builder {
       private List<FieldDescriptor> fields;
       private String fullName;
@@ -92,8 +92,13 @@ public final class FieldDescriptor extends AnnotatedDescriptorImpl implements An
       return label == Label.REPEATED;
    }
 
+   /**
+    * Indicates the {@code packed} option is set to true. The option is acted upon only for repeated fields of scalar
+    * numeric, boolean or enum types (see {@link Type#isPackable()}), it is ignored for all others.
+    */
    public boolean isPacked() {
-      return optionByName.containsKey(PACKED);
+      Object packed = optionByName.get(PACKED);
+      return packed != null && Boolean.parseBoolean(packed.toString());
    }
 
    public Object getDefaultValue() {
@@ -178,6 +183,22 @@ public final class FieldDescriptor extends AnnotatedDescriptorImpl implements An
             '}';
    }
 
+   /**
+    * Creates an unresolved copy of this field, to be added to a copy of the containing message.
+    */
+   FieldDescriptor copy() {
+      return new Builder()
+            .withName(name)
+            .withNumber(number)
+            .withTypeName(typeName)
+            .withLabel(label)
+            .withOptions(options)
+            .withDefaultValue(defaultValue)
+            .withIsExtension(isExtension)
+            .withDocumentation(documentation)
+            .build();
+   }
+
    public static final class Builder {
       private String typeName;
       private int number;
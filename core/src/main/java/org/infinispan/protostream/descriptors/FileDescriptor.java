@@ -7,6 +7,7 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.stream.Collectors;
 
 import org.infinispan.protostream.DescriptorParserException;
 import org.infinispan.protostream.config.Configuration;
@@ -78,11 +79,6 @@ public final class FileDescriptor {
 
    private final Map<String, ExtendDescriptor> extendDescriptors = new HashMap<>();
 
-   /**
-    * Files that directly depend on this one.
-    */
-   private final Map<String, FileDescriptor> dependants = new HashMap<>();
-
    /**
     * The types defined in this file or in the imported files.
     */
@@ -157,8 +153,32 @@ public final class FileDescriptor {
       this.configuration = configuration;
    }
 
+   /**
+    * The names of the imported files, excluding the public imports.
+    */
+   public List<String> getDependencies() {
+      return dependencies;
+   }
+
+   /**
+    * The names of the publicly imported files.
+    */
+   public List<String> getPublicDependencies() {
+      return publicDependencies;
+   }
+
+   /**
+    * Files that directly depend on this one.
+    *
+    * @throws UnsupportedOperationException always
+    * @deprecated since 4.4. This is no longer supported. A resolved file is not changed when other files importing it
+    * get resolved, so it can be shared safely by readers. The files depending on it are the registered files having it
+    * among their {@link #getDependencies() dependencies} or {@link #getPublicDependencies() public dependencies}.
+    */
+   @Deprecated
    public Map<String, FileDescriptor> getDependants() {
-      return dependants;
+      throw new UnsupportedOperationException("FileDescriptor.getDependants() is no longer supported: the files depending on '"
+            + name + "' are the files of SerializationContext.getFileDescriptors() having it among their dependencies");
    }
 
    public boolean isResolved() {
@@ -178,22 +198,38 @@ public final class FileDescriptor {
 
    /**
     * Clear resolving errors of unresolved files. Parsing errors are not cleared. Transitions from ERROR status back to
-    * UNRESOLVED and propagates this recursively to all dependant FileDescriptors. All internal state acquired during
-    * type reference resolution is cleared for this file and dependants (recursively).
+    * UNRESOLVED. All internal state acquired during type reference resolution is cleared for this file. The files
+    * depending on it must be cleared too, if they are to be resolved again.
     */
    public void clearErrors() {
       if (status != Status.RESOLVED && status != Status.PARSING_ERROR) {
          markUnresolved();
          fileNamespace = null;
          extendDescriptors.clear();
-
-         for (FileDescriptor fd : dependants.values()) {
-            fd.clearErrors();
-         }
-         dependants.clear();
       }
    }
 
+   /**
+    * Creates an unresolved copy of this file, having new instances of all the descriptors defined in it. The copy can
+    * be resolved again without changing this file, which may be in use by other threads.
+    */
+   FileDescriptor copyUnresolved() {
+      FileDescriptor copy = new Builder()
+            .withSyntax(syntax)
+            .withName(name)
+            .withPackageName(packageName)
+            .withDependencies(dependencies)
+            .withPublicDependencies(publicDependencies)
+            .withOptions(options)
+            .withMessageTypes(messageTypes.stream().map(Descriptor::copy).collect(Collectors.toList()))
+            .withEnumTypes(enumTypes.stream().map(EnumDescriptor::copy).collect(Collectors.toList()))
+            .withExtendDescriptors(extendTypes.stream().map(ExtendDescriptor::copy).collect(Collectors.toList()))
+            .withParsingException(parsingException)
+            .build();
+      copy.configuration = configuration;
+      return copy;
+   }
+
    public Namespace getExportedNamespace() {
       if (status != Status.RESOLVED) {
          throw new IllegalStateException("File '" + name + "' is not resolved yet");
@@ -234,13 +270,6 @@ public final class FileDescriptor {
 
          fileNamespace = new FileNamespace(this, pubDeps, deps);
 
-         for (FileDescriptor fd : pubDeps) {
-            fd.dependants.put(name, this);
-         }
-         for (FileDescriptor fd : deps) {
-            fd.dependants.put(name, this);
-         }
-
          for (Descriptor desc : messageTypes) {
             collectDescriptors(desc, resolutionContext);
          }
@@ -1,6 +1,7 @@
 package org.infinispan.protostream.descriptors;
 
 import java.util.List;
+import java.util.stream.Collectors;
 
 /**
  * @author anistor@redhat.com
@@ -44,6 +45,14 @@ public final class OneOfDescriptor {
       return "OneOfDescriptor{name='" + name + '}';
    }
 
+   OneOfDescriptor copy() {
+      return new Builder()
+            .withName(name)
+            .withDocumentation(documentation)
+            .withFields(fields.stream().map(FieldDescriptor::copy).collect(Collectors.toList()))
+            .build();
+   }
+
    public static final class Builder {
 
       private String name;
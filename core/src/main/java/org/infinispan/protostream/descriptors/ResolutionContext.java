@@ -1,6 +1,7 @@
 package org.infinispan.protostream.descriptors;
 
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
@@ -46,19 +47,39 @@ public class ResolutionContext {
       this.allEnumValueDescriptors = allEnumValueDescriptors;
    }
 
+   /**
+    * Creates an unresolved copy of a file, having new instances of all the descriptors defined in it, to be resolved
+    * again without changing the given file, which may be in use by other threads. This method is not part of the public
+    * API. May be removed in future versions.
+    */
+   public static FileDescriptor copyUnresolved(FileDescriptor fileDescriptor) {
+      return fileDescriptor.copyUnresolved();
+   }
+
    public void resolve() {
+      resolve(fileDescriptorMap.values());
+   }
+
+   /**
+    * Resolves only the given files, and the unresolved files they import. This gives the same outcome as {@link
+    * #resolve()} if the given files include all files of the map that are not resolved yet, because resolved files are
+    * not processed again anyway.
+    *
+    * @param fileDescriptors the files to resolve, which must belong to the map of this context
+    */
+   public void resolve(Collection<FileDescriptor> fileDescriptors) {
       // clear errors and put in unresolved state whatever is not already resolved
-      for (FileDescriptor fileDescriptor : fileDescriptorMap.values()) {
+      for (FileDescriptor fileDescriptor : fileDescriptors) {
          fileDescriptor.clearErrors();
       }
 
       // resolve imports and types for all files
-      for (FileDescriptor fileDescriptor : fileDescriptorMap.values()) {
+      for (FileDescriptor fileDescriptor : fileDescriptors) {
          fileDescriptor.resolveDependencies(this);
       }
 
       // clear errors and leave in unresolved state whatever could not be resolved
-      for (FileDescriptor fileDescriptor : fileDescriptorMap.values()) {
+      for (FileDescriptor fileDescriptor : fileDescriptors) {
          fileDescriptor.clearErrors();
       }
    }
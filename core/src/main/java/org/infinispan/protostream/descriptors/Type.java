@@ -113,6 +113,14 @@ public enum Type {
             this == FIXED64;
    }
 
+   /**
+    * Returns {@code true} only if repeated fields of this type can use the packed encoding, ie. the scalar numeric,
+    * boolean and enum types.
+    */
+   public boolean isPackable() {
+      return wireType == WireType.VARINT || wireType == WireType.FIXED32 || wireType == WireType.FIXED64;
+   }
+
    @Override
    public String toString() {
       return name().toLowerCase();
@@ -0,0 +1,121 @@
+package org.infinispan.protostream.impl;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.infinispan.protostream.ByteBufferPool;
+import org.infinispan.protostream.ImmutableSerializationContext;
+
+/**
+ * A growable output made of a chain of {@link ByteBuffer} chunks acquired from a {@link ByteBufferPool} as needed, so
+ * large messages never have to be held in a single contiguous array. The result is exposed as a {@code ByteBuffer[]}
+ * suitable for {@link java.nio.channels.GatheringByteChannel#write(ByteBuffer[])}. To be written to with a {@link
+ * TagWriterImpl#newInstance(ImmutableSerializationContext, ByteBufferChunks)}. This is not part of the public API, see
+ * {@link org.infinispan.protostream.ProtobufUtil#toByteBuffers}.
+ * <p>
+ * The chunks must be given back to the pool with {@link #release()} once the contents are no longer needed, unless
+ * they were handed over by {@link #detach()}. This class is not thread-safe.
+ *
+ * @since 4.4
+ */
+public final class ByteBufferChunks implements AutoCloseable {
+
+   private final ByteBufferPool pool;
+
+   private final List<ByteBuffer> chunks = new ArrayList<>();
+
+   public ByteBufferChunks(ByteBufferPool pool) {
+      if (pool == null) {
+         throw new IllegalArgumentException("pool cannot be null");
+      }
+      this.pool = pool;
+   }
+
+   /**
+    * Acquires a new chunk from the pool and appends it to the chain. The previous chunks are not written to anymore.
+    */
+   ByteBuffer nextChunk() {
+      ByteBuffer chunk = pool.acquire();
+      if (!chunk.hasRemaining()) {
+         throw new IllegalStateException("The ByteBufferPool provided a chunk with no space remaining");
+      }
+      chunks.add(chunk);
+      return chunk;
+   }
+
+   /**
+    * Removes the last chunk from the chain and gives it back to the pool. The previous chunk becomes the current one
+    * and is returned.
+    */
+   ByteBuffer discardLastChunk() {
+      if (chunks.size() < 2) {
+         throw new IllegalStateException("The first chunk cannot be discarded");
+      }
+      pool.release(chunks.remove(chunks.size() - 1));
+      return currentChunk();
+   }
+
+   /**
+    * The last chunk, which is being written to, or {@code null} if no chunk was acquired yet.
+    */
+   ByteBuffer currentChunk() {
+      return chunks.isEmpty() ? null : chunks.get(chunks.size() - 1);
+   }
+
+   /**
+    * The total number of bytes written to all chunks.
+    */
+   public int size() {
+      int size = 0;
+      for (ByteBuffer chunk : chunks) {
+         size += chunk.position();
+      }
+      return size;
+   }
+
+   /**
+    * Returns views of the written bytes of each chunk, positioned at their beginning. The views can be consumed
+    * independently of the chunks; the chunks themselves remain owned by this object until {@link #release()} is
+    * called.
+    */
+   public ByteBuffer[] getByteBuffers() {
+      ByteBuffer[] buffers = new ByteBuffer[chunks.size()];
+      for (int i = 0; i < buffers.length; i++) {
+         ByteBuffer buffer = chunks.get(i).duplicate();
+         buffer.flip();
+         buffers[i] = buffer;
+      }
+      return buffers;
+   }
+
+   /**
+    * Returns the chunks themselves, flipped so they are positioned at the beginning of the written bytes, and forgets
+    * them. The caller becomes responsible for giving them back to the pool.
+    */
+   public ByteBuffer[] detach() {
+      ByteBuffer[] buffers = new ByteBuffer[chunks.size()];
+      for (int i = 0; i < buffers.length; i++) {
+         ByteBuffer buffer = chunks.get(i);
+         buffer.flip();
+         buffers[i] = buffer;
+      }
+      chunks.clear();
+      return buffers;
+   }
+
+   /**
+    * Gives back all chunks to the pool. This object can be written to again afterwards, starting from scratch.
+    */
+   public void release() {
+      for (ByteBuffer chunk : chunks) {
+         pool.release(chunk);
+      }
+      chunks.clear();
+   }
+
+   @Override
+   public void close() {
+      release();
+   }
+}
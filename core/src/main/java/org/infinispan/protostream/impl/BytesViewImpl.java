@@ -0,0 +1,68 @@
+package org.infinispan.protostream.impl;
+
+import java.nio.charset.StandardCharsets;
+
+import org.infinispan.protostream.TypedTagHandler;
+
+/**
+ * A reusable view of a range of a byte array, which is usually the input array itself.
+ *
+ * @since 4.4
+ */
+final class BytesViewImpl implements TypedTagHandler.BytesView {
+
+   private byte[] array;
+
+   private int offset;
+
+   private int length;
+
+   void set(byte[] array, int offset, int length) {
+      this.array = array;
+      this.offset = offset;
+      this.length = length;
+   }
+
+   /**
+    * Drops the reference to the input.
+    */
+   void clear() {
+      array = null;
+      offset = length = 0;
+   }
+
+   @Override
+   public int length() {
+      return length;
+   }
+
+   @Override
+   public byte byteAt(int index) {
+      if (index < 0 || index >= length) {
+         throw new IndexOutOfBoundsException("Index: " + index + ", length: " + length);
+      }
+      return array[offset + index];
+   }
+
+   @Override
+   public byte[] toByteArray() {
+      byte[] bytes = new byte[length];
+      System.arraycopy(array, offset, bytes, 0, length);
+      return bytes;
+   }
+
+   @Override
+   public void copyTo(byte[] dest, int offset) {
+      System.arraycopy(array, this.offset, dest, offset, length);
+   }
+
+   @Override
+   public String toUtf8String() {
+      return new String(array, offset, length, StandardCharsets.UTF_8);
+   }
+
+   @Override
+   public String toString() {
+      return "BytesView{length=" + length + '}';
+   }
+}
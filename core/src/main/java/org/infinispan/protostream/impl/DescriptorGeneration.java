@@ -0,0 +1,104 @@
+package org.infinispan.protostream.impl;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+
+import org.infinispan.protostream.descriptors.Descriptor;
+import org.infinispan.protostream.descriptors.EnumDescriptor;
+import org.infinispan.protostream.descriptors.EnumValueDescriptor;
+import org.infinispan.protostream.descriptors.FileDescriptor;
+import org.infinispan.protostream.descriptors.GenericDescriptor;
+
+/**
+ * An immutable generation of the files registered in a {@link SerializationContextImpl} and of the lookup maps of their
+ * types. Each successful change of the registered files publishes a new generation, and the descriptors of a published
+ * generation are never modified, so a reader can use a generation without locking. The maps are unmodifiable copies
+ * made by the writer. A marshalling operation pins the generation that was current when it started and uses it for
+ * all its lookups, so it never mixes two generations.
+ *
+ * @since 4.4
+ */
+final class DescriptorGeneration {
+
+   static final DescriptorGeneration EMPTY = new DescriptorGeneration(Collections.emptyMap(), Collections.emptyMap(),
+         Collections.emptyMap(), Collections.emptyMap(), Collections.emptySet(), Collections.emptyMap());
+
+   final Map<String, FileDescriptor> fileDescriptors;
+
+   final Map<String, GenericDescriptor> genericDescriptors;
+
+   final Map<Integer, GenericDescriptor> typeIds;
+
+   /**
+    * The enum values, by scoped name. Only needed for registering files.
+    */
+   final Map<String, EnumValueDescriptor> enumValueDescriptors;
+
+   /**
+    * The names of the registered files that are not resolved, either because of errors or because a file they depend
+    * on was replaced or removed. Besides the new files, these are the only ones a registration resolves. Only needed
+    * for registering files.
+    */
+   final Set<String> unresolvedFiles;
+
+   /**
+    * The names of the registered files importing each file, by name of the imported file, which need not be
+    * registered. Only needed for registering files.
+    */
+   final Map<String, Set<String>> importers;
+
+   DescriptorGeneration(Map<String, FileDescriptor> fileDescriptors,
+                        Map<String, GenericDescriptor> genericDescriptors,
+                        Map<Integer, GenericDescriptor> typeIds,
+                        Map<String, EnumValueDescriptor> enumValueDescriptors,
+                        Set<String> unresolvedFiles,
+                        Map<String, Set<String>> importers) {
+      this.fileDescriptors = Collections.unmodifiableMap(fileDescriptors);
+      this.genericDescriptors = Collections.unmodifiableMap(genericDescriptors);
+      this.typeIds = Collections.unmodifiableMap(typeIds);
+      this.enumValueDescriptors = Collections.unmodifiableMap(enumValueDescriptors);
+      this.unresolvedFiles = Collections.unmodifiableSet(unresolvedFiles);
+      this.importers = Collections.unmodifiableMap(importers);
+   }
+
+   GenericDescriptor getDescriptorByName(String fullTypeName) {
+      if (fullTypeName == null) {
+         throw new IllegalArgumentException("Type name argument cannot be null");
+      }
+
+      GenericDescriptor descriptor = genericDescriptors.get(fullTypeName);
+      if (descriptor == null) {
+         throw new IllegalArgumentException("Unknown type name : " + fullTypeName);
+      }
+      return descriptor;
+   }
+
+   GenericDescriptor getDescriptorByTypeId(Integer typeId) {
+      if (typeId == null) {
+         throw new IllegalArgumentException("Type id argument cannot be null");
+      }
+
+      GenericDescriptor descriptor = typeIds.get(typeId);
+      if (descriptor == null) {
+         throw new IllegalArgumentException("Unknown type id : " + typeId);
+      }
+      return descriptor;
+   }
+
+   Descriptor getMessageDescriptor(String fullTypeName) {
+      GenericDescriptor descriptor = getDescriptorByName(fullTypeName);
+      if (!(descriptor instanceof Descriptor)) {
+         throw new IllegalArgumentException(fullTypeName + " is not a message type");
+      }
+      return (Descriptor) descriptor;
+   }
+
+   EnumDescriptor getEnumDescriptor(String fullTypeName) {
+      GenericDescriptor descriptor = getDescriptorByName(fullTypeName);
+      if (!(descriptor instanceof EnumDescriptor)) {
+         throw new IllegalArgumentException(fullTypeName + " is not an enum type");
+      }
+      return (EnumDescriptor) descriptor;
+   }
+}
@@ -42,11 +42,18 @@ public final class EnumMarshallerDelegate<T extends Enum<T>> extends BaseMarshal
    }
 
    public void encode(int fieldNumber, T value, TagWriter out) throws IOException {
+      out.writeEnum(fieldNumber, encode(value));
+   }
+
+   /**
+    * Returns the number of the enum value, after checking it is defined by the enum type.
+    */
+   public int encode(T value) {
       int enumValue = enumMarshaller.encode(value);
       if (!definedValues.contains(enumValue)) {
          throw new IllegalStateException("Undefined enum value " + enumValue + " for " + enumMarshaller.getTypeName());
       }
-      out.writeEnum(fieldNumber, enumValue);
+      return enumValue;
    }
 
    @Override
@@ -0,0 +1,69 @@
+package org.infinispan.protostream.impl;
+
+import java.util.Arrays;
+
+import org.infinispan.protostream.descriptors.Descriptor;
+import org.infinispan.protostream.descriptors.FieldDescriptor;
+
+/**
+ * Resolves the field names used by a {@link org.infinispan.protostream.MessageMarshaller} to field descriptors without
+ * a hash lookup in the common case. A marshaller usually accesses the fields in the same order on every invocation, so
+ * the sequence of fields seen previously predicts the field accessed at each position (call site). A mismatch falls
+ * back to {@link Descriptor#findFieldByName} and updates the sequence. Instances are shared by all threads using the
+ * marshaller, one for reading and one for writing, so the updates (a copy and a volatile write) stop after a number of
+ * mismatches. Learning the sequence takes one mismatch per field, a marshaller accessing the fields in a varying order
+ * would otherwise keep rewriting it forever.
+ *
+ * @since 4.4
+ */
+final class FieldLookupCache {
+
+   private static final FieldDescriptor[] EMPTY = new FieldDescriptor[0];
+
+   private final int maxLength;
+
+   private final int maxMismatches;
+
+   // approximate, lost increments only delay giving up
+   private int mismatches;
+
+   // copy on write
+   private volatile FieldDescriptor[] sequence = EMPTY;
+
+   FieldLookupCache(Descriptor messageDescriptor) {
+      maxLength = messageDescriptor.getFieldCount();
+      maxMismatches = 4 * maxLength;
+   }
+
+   /**
+    * Returns the field expected at the given position if its name matches, or {@code null}.
+    */
+   FieldDescriptor predict(int position, String fieldName) {
+      FieldDescriptor[] sequence = this.sequence;
+      if (position < sequence.length) {
+         FieldDescriptor fd = sequence[position];
+         if (fd.getName().equals(fieldName)) {
+            return fd;
+         }
+      }
+      return null;
+   }
+
+   /**
+    * Records the field actually accessed at the given position, after a failed prediction, unless there were too many
+    * failed predictions already.
+    */
+   void record(int position, FieldDescriptor fd) {
+      if (position < maxLength && mismatches < maxMismatches) {
+         mismatches++;
+         FieldDescriptor[] sequence = this.sequence;
+         FieldDescriptor[] newSequence = Arrays.copyOf(sequence, Math.max(sequence.length, position + 1));
+         newSequence[position] = fd;
+         if (position > sequence.length) {
+            // the gap can only be left by a concurrent update, fill it with anything valid
+            Arrays.fill(newSequence, sequence.length, position, fd);
+         }
+         this.sequence = newSequence;
+      }
+   }
+}
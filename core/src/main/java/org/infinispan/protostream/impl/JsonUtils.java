@@ -1,8 +1,13 @@
 package org.infinispan.protostream.impl;
 
-import java.io.ByteArrayOutputStream;
+import java.io.BufferedWriter;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
 import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
 import java.util.Base64;
@@ -74,8 +79,10 @@ public final class JsonUtils {
    }
 
    public static byte[] fromCanonicalJSON(ImmutableSerializationContext ctx, Reader reader) throws IOException {
-      ByteArrayOutputStream baos = new ByteArrayOutputStream(ProtobufUtil.DEFAULT_ARRAY_BUFFER_SIZE);
-      TagWriter writer = TagWriterImpl.newInstance(ctx, baos);
+      // all nested messages are written in place, in a single buffer
+      TagWriterImpl writer = TagWriterImpl.newGrowableInstance(ctx, ProtobufUtil.DEFAULT_ARRAY_BUFFER_SIZE);
+      // all lookups see the descriptors pinned by the writer
+      ctx = PinnedSerializationContext.of(ctx, writer);
 
       JsonParser parser = jsonFactory.createParser(reader);
 
@@ -97,16 +104,15 @@ public final class JsonUtils {
             }
          }
          writer.flush();
-         return baos.toByteArray();
+         return writer.toByteArray();
       } catch (JsonProcessingException e) {
          throw new IllegalStateException("Invalid JSON", e);
       } finally {
-         baos.close();
          reader.close();
       }
    }
 
-   private static void processDocument(ImmutableSerializationContext ctx, JsonParser parser, TagWriter writer) throws IOException {
+   private static void processDocument(ImmutableSerializationContext ctx, JsonParser parser, TagWriterImpl writer) throws IOException {
       while (true) {
          JsonToken token = parser.nextToken();
          if (token == null) {
@@ -181,7 +187,7 @@ public final class JsonUtils {
                      processEnum(parser, writer, (EnumDescriptor) descriptorByName);
                      break;
                   case MESSAGE:
-                     processObject(ctx, parser, writer, (Descriptor) descriptorByName, null, true);
+                     processObject(ctx, parser, writer, (Descriptor) descriptorByName, WRAPPED_MESSAGE, true);
                      break;
                   default:
                      processPrimitive(parser, writer, fieldType);
@@ -246,14 +252,21 @@ public final class JsonUtils {
       }
    }
 
-   private static void processObject(ImmutableSerializationContext ctx, JsonParser parser, TagWriter writer, Descriptor messageDescriptor, Integer fieldNumber, boolean topLevel) throws IOException {
+   private static void processObject(ImmutableSerializationContext ctx, JsonParser parser, TagWriterImpl writer, Descriptor messageDescriptor, int fieldNumber, boolean topLevel) throws IOException {
       Set<String> requiredFields = messageDescriptor.getFields().stream()
             .filter(FieldDescriptor::isRequired)
             .map(FieldDescriptor::getName)
             .collect(Collectors.toCollection(HashSet::new));
 
-      ByteArrayOutputStream baos = new ByteArrayOutputStream(ProtobufUtil.DEFAULT_ARRAY_BUFFER_SIZE);
-      TagWriter nestedWriter = TagWriterImpl.newInstance(ctx, baos);
+      if (topLevel) {
+         Integer topLevelTypeId = messageDescriptor.getTypeId();
+         if (topLevelTypeId == null) {
+            writer.writeString(WRAPPED_TYPE_NAME, messageDescriptor.getFullName());
+         } else {
+            writer.writeUInt32(WRAPPED_TYPE_ID, topLevelTypeId);
+         }
+      }
+      int handle = writer.startLengthDelimitedField(fieldNumber);
 
       String currentField = null;
 
@@ -267,7 +280,7 @@ public final class JsonUtils {
             case END_OBJECT:
                break out;
             case START_ARRAY:
-               processArray(ctx, messageDescriptor.getFullName(), currentField, parser, nestedWriter);
+               processArray(ctx, messageDescriptor.getFullName(), currentField, parser, writer);
                break;
             case START_OBJECT: {
                FieldDescriptor fd = messageDescriptor.findFieldByName(currentField);
@@ -275,7 +288,7 @@ public final class JsonUtils {
                if (messageType == null) {
                   throw new IllegalStateException("Field '" + currentField + "' is not an object");
                }
-               processObject(ctx, parser, nestedWriter, messageType, fd.getNumber(), false);
+               processObject(ctx, parser, writer, messageType, fd.getNumber(), false);
                requiredFields.remove(currentField);
                break;
             }
@@ -293,9 +306,9 @@ public final class JsonUtils {
                }
 
                if (fd.getType() == Type.ENUM) {
-                  writeEnumField(parser, nestedWriter, fd);
+                  writeEnumField(parser, writer, fd);
                } else {
-                  writeField(parser, nestedWriter, fd.getType(), fd.getNumber());
+                  writeField(parser, writer, fd.getType(), fd.getNumber());
                }
                requiredFields.remove(currentField);
                break;
@@ -311,21 +324,7 @@ public final class JsonUtils {
          throw new IllegalStateException("Required field '" + missing + "' missing");
       }
 
-      if (topLevel) {
-         Integer topLevelTypeId = messageDescriptor.getTypeId();
-         if (topLevelTypeId == null) {
-            writer.writeString(WRAPPED_TYPE_NAME, messageDescriptor.getFullName());
-         } else {
-            writer.writeUInt32(WRAPPED_TYPE_ID, topLevelTypeId);
-         }
-         nestedWriter.flush();
-         writer.writeBytes(WRAPPED_MESSAGE, baos.toByteArray());
-      } else {
-         nestedWriter.flush();
-         writer.writeBytes(fieldNumber, baos.toByteArray());
-      }
-
-      writer.flush();
+      writer.endLengthDelimitedField(handle);
    }
 
    private static void processPrimitive(JsonParser parser, TagWriter writer, Type fieldType) throws IOException {
@@ -394,7 +393,7 @@ public final class JsonUtils {
       }
    }
 
-   private static void processArray(ImmutableSerializationContext ctx, String type, String field, JsonParser parser, TagWriter writer) throws IOException {
+   private static void processArray(ImmutableSerializationContext ctx, String type, String field, JsonParser parser, TagWriterImpl writer) throws IOException {
       while (true) {
          JsonToken token = parser.nextToken();
          if (token == null) {
@@ -461,11 +460,48 @@ public final class JsonUtils {
     */
    public static String toCanonicalJSON(ImmutableSerializationContext ctx, byte[] bytes, boolean prettyPrint) throws IOException {
       StringBuilder jsonOut = new StringBuilder();
-      toCanonicalJSON(ctx, bytes, jsonOut, prettyPrint ? 0 : -1);
+      toCanonicalJSON(ctx, bytes, jsonOut, prettyPrint);
       return jsonOut.toString();
    }
 
-   private static void toCanonicalJSON(ImmutableSerializationContext ctx, byte[] bytes, StringBuilder jsonOut, int initNestingLevel) throws IOException {
+   /**
+    * Converts a Protobuf encoded message to its <a href="https://developers.google.com/protocol-buffers/docs/proto3#json">
+    * canonical JSON representation</a> and writes it to an {@link Appendable} (usually a {@link Writer}) as it is
+    * produced, without building the whole document in memory. The output is not flushed or closed.
+    *
+    * @param ctx         the serialization context
+    * @param bytes       the Protobuf encoded message bytes to parse
+    * @param out         the destination of the JSON text
+    * @param prettyPrint indicates if the JSON output should use a 'pretty' human-readable format or a compact format
+    * @throws IOException if I/O operations fail
+    */
+   public static void toCanonicalJSON(ImmutableSerializationContext ctx, byte[] bytes, Appendable out, boolean prettyPrint) throws IOException {
+      try {
+         // all lookups see the same descriptors
+         toCanonicalJSON(PinnedSerializationContext.of(ctx), bytes, new JsonOutput(out), prettyPrint ? 0 : -1);
+      } catch (UncheckedIOException e) {
+         throw e.getCause();
+      }
+   }
+
+   /**
+    * Converts a Protobuf encoded message to its <a href="https://developers.google.com/protocol-buffers/docs/proto3#json">
+    * canonical JSON representation</a> and writes it to an {@link OutputStream} using UTF-8 encoding. The stream is
+    * flushed but not closed.
+    *
+    * @param ctx         the serialization context
+    * @param bytes       the Protobuf encoded message bytes to parse
+    * @param out         the destination stream
+    * @param prettyPrint indicates if the JSON output should use a 'pretty' human-readable format or a compact format
+    * @throws IOException if I/O operations fail
+    */
+   public static void toCanonicalJSON(ImmutableSerializationContext ctx, byte[] bytes, OutputStream out, boolean prettyPrint) throws IOException {
+      Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+      toCanonicalJSON(ctx, bytes, writer, prettyPrint);
+      writer.flush();
+   }
+
+   private static void toCanonicalJSON(ImmutableSerializationContext ctx, byte[] bytes, JsonOutput jsonOut, int initNestingLevel) throws IOException {
       if (bytes.length == 0) {
          // only null values get to be encoded to an empty byte array
          jsonOut.append("null");
@@ -733,6 +769,8 @@ public final class JsonUtils {
                try {
                   Descriptor messageDescriptor = (Descriptor) getDescriptor();
                   ProtobufParser.INSTANCE.parse(messageHandler, messageDescriptor, wrappedMessage);
+               } catch (UncheckedIOException e) {
+                  throw e;
                } catch (IOException e) {
                   throw new RuntimeException(e);
                }
@@ -818,7 +856,7 @@ public final class JsonUtils {
    /**
     * Escapes a string literal in order to have a valid JSON representation. Optionally it can also escape some html chars.
     */
-   private static void escapeJson(String value, StringBuilder out, boolean htmlSafe) {
+   private static void escapeJson(String value, JsonOutput out, boolean htmlSafe) {
       out.append('"');
       int prev = 0;
       int len = value.length();
@@ -890,6 +928,64 @@ public final class JsonUtils {
       out.append('"');
    }
 
+   /**
+    * Adapts an {@link Appendable} to the {@link TagHandler} callbacks, which cannot throw checked exceptions. I/O
+    * failures are wrapped in an {@link UncheckedIOException}.
+    */
+   private static final class JsonOutput {
+
+      private final Appendable out;
+
+      /**
+       * Same as {@link #out} if it is a Writer, which can write a range of a string without creating a substring.
+       */
+      private final Writer writer;
+
+      JsonOutput(Appendable out) {
+         this.out = out;
+         this.writer = out instanceof Writer ? (Writer) out : null;
+      }
+
+      JsonOutput append(char c) {
+         try {
+            out.append(c);
+         } catch (IOException e) {
+            throw new UncheckedIOException(e);
+         }
+         return this;
+      }
+
+      JsonOutput append(Object o) {
+         return append(String.valueOf(o));
+      }
+
+      JsonOutput append(String s) {
+         try {
+            if (writer != null) {
+               writer.write(s);
+            } else {
+               out.append(s);
+            }
+         } catch (IOException e) {
+            throw new UncheckedIOException(e);
+         }
+         return this;
+      }
+
+      JsonOutput append(String s, int start, int end) {
+         try {
+            if (writer != null) {
+               writer.write(s, start, end - start);
+            } else {
+               out.append(s, start, end);
+            }
+         } catch (IOException e) {
+            throw new UncheckedIOException(e);
+         }
+         return this;
+      }
+   }
+
    private static String formatDate(Date date) {
       return timestampFormat.get().format(date);
    }
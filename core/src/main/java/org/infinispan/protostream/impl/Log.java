@@ -1,5 +1,6 @@
 package org.infinispan.protostream.impl;
 
+import java.io.File;
 import java.io.IOException;
 
 import org.infinispan.protostream.MalformedProtobufException;
@@ -45,6 +46,14 @@ public interface Log extends BasicLogger {
    @Message(value = "Ran out of buffer space", id = 7)
    IOException outOfWriteBufferSpace(@Cause Throwable cause);
 
+   @LogMessage(level = WARN)
+   @Message(value = "Failed to save the generated marshaller class %s in cache directory %s", id = 8)
+   void failedToCacheMarshaller(String className, File cacheDir, @Cause Throwable cause);
+
+   @LogMessage(level = WARN)
+   @Message(value = "The generated marshaller cache directory %s is not used: %s", id = 9)
+   void marshallerCacheDisabled(File cacheDir, String reason);
+
    class LogFactory {
       public static Log getLog(Class<?> clazz) {
          return Logger.getMessageLogger(Log.class, clazz.getName());
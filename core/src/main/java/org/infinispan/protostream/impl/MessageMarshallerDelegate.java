@@ -24,6 +24,10 @@ final class MessageMarshallerDelegate<T> extends BaseMarshallerDelegate<T> {
 
    private final UnknownFieldSetHandler<T> unknownFieldSetHandler;
 
+   private final FieldLookupCache readFieldLookupCache;
+
+   private final FieldLookupCache writeFieldLookupCache;
+
    private static final UnknownFieldSetHandler<Message> legacyUnknownFieldSetHandler = new UnknownFieldSetHandler<Message>() {
       @Override
       public UnknownFieldSet getUnknownFieldSet(Message message) {
@@ -40,6 +44,8 @@ final class MessageMarshallerDelegate<T> extends BaseMarshallerDelegate<T> {
       this.marshaller = marshaller;
       this.messageDescriptor = messageDescriptor;
       this.fieldDescriptors = messageDescriptor.getFields().toArray(new FieldDescriptor[0]);
+      this.readFieldLookupCache = new FieldLookupCache(messageDescriptor);
+      this.writeFieldLookupCache = new FieldLookupCache(messageDescriptor);
 
       if (marshaller instanceof UnknownFieldSetHandler) {
          unknownFieldSetHandler = (UnknownFieldSetHandler<T>) marshaller;
@@ -58,7 +64,7 @@ final class MessageMarshallerDelegate<T> extends BaseMarshallerDelegate<T> {
    @Override
    public void marshall(ProtobufTagMarshaller.WriteContext ctx, FieldDescriptor fieldDescriptor, T message) throws IOException {
       ProtoStreamWriterImpl writer = ((TagWriterImpl) ctx).getProtoStreamWriter();
-      ProtoStreamWriterImpl.WriteMessageContext messageContext = writer.enterContext(fieldDescriptor, messageDescriptor, (TagWriterImpl) ctx);
+      ProtoStreamWriterImpl.WriteMessageContext messageContext = writer.enterContext(fieldDescriptor, messageDescriptor, (TagWriterImpl) ctx, writeFieldLookupCache);
 
       marshaller.writeTo(writer, message);
 
@@ -91,12 +97,12 @@ final class MessageMarshallerDelegate<T> extends BaseMarshallerDelegate<T> {
    @Override
    public T unmarshall(ProtobufTagMarshaller.ReadContext ctx, FieldDescriptor fieldDescriptor) throws IOException {
       ProtoStreamReaderImpl reader = ((TagReaderImpl) ctx).getProtoStreamReader();
-      ProtoStreamReaderImpl.ReadMessageContext messageContext = reader.enterContext(fieldDescriptor, messageDescriptor, (TagReaderImpl) ctx);
+      ProtoStreamReaderImpl.ReadMessageContext messageContext = reader.enterContext(fieldDescriptor, messageDescriptor, (TagReaderImpl) ctx, readFieldLookupCache);
 
       T message = marshaller.readFrom(reader);
 
+      reader.readRemainingFields();
       UnknownFieldSet unknownFieldSet = messageContext.unknownFieldSet;
-      unknownFieldSet.readAllFields(ctx.getReader());
 
       if (unknownFieldSetHandler != null && !unknownFieldSet.isEmpty()) {
          unknownFieldSetHandler.setUnknownFieldSet(message, unknownFieldSet);
@@ -0,0 +1,136 @@
+package org.infinispan.protostream.impl;
+
+import java.util.Map;
+
+import org.infinispan.protostream.BaseMarshaller;
+import org.infinispan.protostream.ImmutableSerializationContext;
+import org.infinispan.protostream.TagReader;
+import org.infinispan.protostream.TagWriter;
+import org.infinispan.protostream.config.Configuration;
+import org.infinispan.protostream.descriptors.Descriptor;
+import org.infinispan.protostream.descriptors.EnumDescriptor;
+import org.infinispan.protostream.descriptors.FileDescriptor;
+import org.infinispan.protostream.descriptors.GenericDescriptor;
+
+/**
+ * A view of a {@link SerializationContextImpl} that looks up descriptors in a single {@link DescriptorGeneration}, the
+ * one pinned by a marshalling operation, so that all the lookups of the operation see the same descriptors even if
+ * files are registered or unregistered concurrently. Marshaller lookups go to the context.
+ *
+ * @since 4.4
+ */
+public final class PinnedSerializationContext implements ImmutableSerializationContext {
+
+   private final SerializationContextImpl serCtx;
+
+   private final DescriptorGeneration descriptors;
+
+   PinnedSerializationContext(SerializationContextImpl serCtx, DescriptorGeneration descriptors) {
+      this.serCtx = serCtx;
+      this.descriptors = descriptors;
+   }
+
+   /**
+    * Returns the view used by the operation of the given reader, or the context itself if the reader does not pin
+    * descriptors.
+    */
+   public static ImmutableSerializationContext of(ImmutableSerializationContext ctx, TagReader in) {
+      return in instanceof TagReaderImpl ? ((TagReaderImpl) in).getPinnedSerializationContext() : ctx;
+   }
+
+   /**
+    * Returns the view used by the operation of the given writer, or the context itself if the writer does not pin
+    * descriptors.
+    */
+   public static ImmutableSerializationContext of(ImmutableSerializationContext ctx, TagWriter out) {
+      return out instanceof TagWriterImpl ? ((TagWriterImpl) out).getPinnedSerializationContext() : ctx;
+   }
+
+   /**
+    * Returns a view pinning the current descriptors of the context, for an operation not having a reader or writer.
+    */
+   public static ImmutableSerializationContext of(ImmutableSerializationContext ctx) {
+      if (ctx instanceof SerializationContextImpl) {
+         SerializationContextImpl serCtx = (SerializationContextImpl) ctx;
+         return new PinnedSerializationContext(serCtx, serCtx.getDescriptorGeneration());
+      }
+      return ctx;
+   }
+
+   @Override
+   public Configuration getConfiguration() {
+      return serCtx.getConfiguration();
+   }
+
+   @Override
+   public Map<String, FileDescriptor> getFileDescriptors() {
+      return descriptors.fileDescriptors;
+   }
+
+   @Override
+   public Map<String, GenericDescriptor> getGenericDescriptors() {
+      return descriptors.genericDescriptors;
+   }
+
+   @Override
+   public Descriptor getMessageDescriptor(String fullTypeName) {
+      return descriptors.getMessageDescriptor(fullTypeName);
+   }
+
+   @Override
+   public EnumDescriptor getEnumDescriptor(String fullTypeName) {
+      return descriptors.getEnumDescriptor(fullTypeName);
+   }
+
+   @Override
+   public boolean canMarshall(Class<?> javaClass) {
+      return serCtx.canMarshall(javaClass);
+   }
+
+   @Override
+   public boolean canMarshall(String fullTypeName) {
+      return serCtx.canMarshall(fullTypeName);
+   }
+
+   @Override
+   public boolean canMarshall(Object object) {
+      return serCtx.canMarshall(object);
+   }
+
+   @Override
+   public <T> BaseMarshaller<T> getMarshaller(T object) {
+      return serCtx.getMarshaller(object);
+   }
+
+   @Override
+   public <T> BaseMarshaller<T> getMarshaller(String fullTypeName) {
+      return serCtx.getMarshaller(fullTypeName);
+   }
+
+   @Override
+   public <T> BaseMarshaller<T> getMarshaller(Class<T> clazz) {
+      return serCtx.getMarshaller(clazz);
+   }
+
+   @Deprecated
+   @Override
+   public String getTypeNameById(Integer typeId) {
+      return getDescriptorByTypeId(typeId).getFullName();
+   }
+
+   @Deprecated
+   @Override
+   public Integer getTypeIdByName(String fullTypeName) {
+      return getDescriptorByName(fullTypeName).getTypeId();
+   }
+
+   @Override
+   public GenericDescriptor getDescriptorByTypeId(Integer typeId) {
+      return descriptors.getDescriptorByTypeId(typeId);
+   }
+
+   @Override
+   public GenericDescriptor getDescriptorByName(String fullTypeName) {
+      return descriptors.getDescriptorByName(fullTypeName);
+   }
+}
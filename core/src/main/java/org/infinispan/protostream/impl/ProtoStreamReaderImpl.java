@@ -4,15 +4,18 @@ import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.lang.reflect.Array;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 import java.time.Instant;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Date;
 import java.util.EnumSet;
 import java.util.List;
 
 import org.infinispan.protostream.ImmutableSerializationContext;
+import org.infinispan.protostream.MalformedProtobufException;
 import org.infinispan.protostream.MessageContext;
 import org.infinispan.protostream.MessageMarshaller;
 import org.infinispan.protostream.ProtobufTagMarshaller;
@@ -58,15 +61,127 @@ final class ProtoStreamReaderImpl implements MessageMarshaller.ProtoStreamReader
 
    private ReadMessageContext messageContext;
 
+   // field indexes that can be reused
+   private FieldIndex freeFieldIndexes;
+
    static final class ReadMessageContext extends MessageContext<ReadMessageContext> {
 
       final TagReaderImpl in;
 
-      final UnknownFieldSet unknownFieldSet = new UnknownFieldSetImpl();
+      final UnknownFieldSetImpl unknownFieldSet = new UnknownFieldSetImpl();
+
+      /**
+       * Can the fields be read in any order using a {@link FieldIndex}? This requires an array input and a message
+       * whose end is known in advance, so not a group.
+       */
+      final boolean seekable;
+
+      /**
+       * Created by the first read that does not find the expected field next, if seekable.
+       */
+      FieldIndex fieldIndex;
+
+      private final FieldLookupCache fieldLookupCache;
 
-      ReadMessageContext(ReadMessageContext parent, FieldDescriptor fieldDescriptor, Descriptor messageDescriptor, TagReaderImpl in) {
+      // number of fields looked up so far
+      private int fieldPosition;
+
+      ReadMessageContext(ReadMessageContext parent, FieldDescriptor fieldDescriptor, Descriptor messageDescriptor, TagReaderImpl in, FieldLookupCache fieldLookupCache) {
          super(parent, fieldDescriptor, messageDescriptor);
          this.in = in;
+         this.seekable = in.isSeekable() && (fieldDescriptor == null || fieldDescriptor.getType() == Type.MESSAGE);
+         this.fieldLookupCache = fieldLookupCache;
+      }
+
+      @Override
+      public FieldDescriptor getFieldByName(String fieldName) throws IOException {
+         FieldDescriptor fd = fieldLookupCache.predict(fieldPosition, fieldName);
+         if (fd == null) {
+            fd = super.getFieldByName(fieldName);
+            fieldLookupCache.record(fieldPosition, fd);
+         }
+         fieldPosition++;
+         return fd;
+      }
+   }
+
+   /**
+    * The positions of the fields of a message, obtained by a single scan of an array input. Fields can then be read in
+    * any order by seeking directly to them, instead of moving the ones that are skipped to the {@link
+    * UnknownFieldSet}.
+    */
+   private static final class FieldIndex {
+
+      // (tag, position of tag) pairs, in the order of the input; the tag is 0 after the field was read
+      private int[] entries = new int[32];
+
+      private int size;
+
+      // all fields before this entry were read
+      private int first;
+
+      // the position of the end of the message
+      private int end;
+
+      // the next free index
+      private FieldIndex next;
+
+      void scan(TagReaderImpl in) throws IOException {
+         size = 0;
+         first = 0;
+         while (true) {
+            int position = in.getPosition();
+            int tag = in.readTag();
+            if (tag == 0) {
+               break;
+            }
+            if (!in.skipField(tag)) {
+               throw new MalformedProtobufException("Unexpected end group tag : " + tag);
+            }
+            if (size == entries.length) {
+               entries = Arrays.copyOf(entries, size * 2);
+            }
+            entries[size++] = tag;
+            entries[size++] = position;
+         }
+         end = in.getPosition();
+      }
+
+      /**
+       * Positions the reader at the tag of the first unread field having one of the given tags and marks the field
+       * read.
+       *
+       * @return the tag of the field or 0 if there is none left
+       */
+      int seek(TagReaderImpl in, int tag1, int tag2) {
+         for (int i = first; i < size; i += 2) {
+            int tag = entries[i];
+            if (tag != 0 && (tag == tag1 || tag == tag2)) {
+               entries[i] = 0;
+               while (first < size && entries[first] == 0) {
+                  first += 2;
+               }
+               in.seek(entries[i + 1]);
+               return tag;
+            }
+         }
+         return 0;
+      }
+
+      /**
+       * Moves the unread fields to the {@link UnknownFieldSet}, in their original order, and leaves the reader at the
+       * end of the message.
+       */
+      void readUnreadFields(TagReaderImpl in, UnknownFieldSet unknownFieldSet) throws IOException {
+         for (int i = first; i < size; i += 2) {
+            if (entries[i] != 0) {
+               in.seek(entries[i + 1]);
+               unknownFieldSet.readSingleField(in.readTag(), in);
+            }
+         }
+         in.seek(end);
+         // reading the end of the message, as a sequential read would
+         in.readTag();
       }
    }
 
@@ -76,15 +191,61 @@ final class ProtoStreamReaderImpl implements MessageMarshaller.ProtoStreamReader
       logOutOfSequenceReads = serCtx.getConfiguration().logOutOfSequenceReads();
    }
 
-   ReadMessageContext enterContext(FieldDescriptor fd, Descriptor messageDescriptor, TagReaderImpl in) {
-      messageContext = new ReadMessageContext(messageContext, fd, messageDescriptor, in);
+   ReadMessageContext enterContext(FieldDescriptor fd, Descriptor messageDescriptor, TagReaderImpl in, FieldLookupCache fieldLookupCache) {
+      messageContext = new ReadMessageContext(messageContext, fd, messageDescriptor, in, fieldLookupCache);
       return messageContext;
    }
 
    void exitContext() {
+      FieldIndex fieldIndex = messageContext.fieldIndex;
+      if (fieldIndex != null) {
+         fieldIndex.next = freeFieldIndexes;
+         freeFieldIndexes = fieldIndex;
+      }
       messageContext = messageContext.getParentContext();
    }
 
+   /**
+    * Reads the fields of the current message that were not read by the marshaller into its {@link UnknownFieldSet}.
+    */
+   void readRemainingFields() throws IOException {
+      if (messageContext.fieldIndex != null) {
+         messageContext.fieldIndex.readUnreadFields(messageContext.in, messageContext.unknownFieldSet);
+      } else {
+         messageContext.unknownFieldSet.readAllFields(messageContext.in);
+      }
+   }
+
+   /**
+    * Returns the field index of the current message, or {@code null} if the fields must be read sequentially. The index
+    * is created when reading a repeated field or when the next field is not the expected one, if the input is seekable.
+    */
+   private FieldIndex getFieldIndex(int expectedTag, boolean repeated) throws IOException {
+      ReadMessageContext mc = messageContext;
+      if (mc.fieldIndex == null && mc.seekable) {
+         TagReaderImpl in = mc.in;
+         if (!repeated) {
+            // peek at the next field, reading sequentially is cheaper if fields are read in order
+            int position = in.getPosition();
+            int tag = in.readTag();
+            in.seek(position);
+            if (tag == expectedTag || tag == 0) {
+               return null;
+            }
+         }
+         FieldIndex fieldIndex = freeFieldIndexes;
+         if (fieldIndex == null) {
+            fieldIndex = new FieldIndex();
+         } else {
+            freeFieldIndexes = fieldIndex.next;
+            fieldIndex.next = null;
+         }
+         fieldIndex.scan(in);
+         mc.fieldIndex = fieldIndex;
+      }
+      return mc.fieldIndex;
+   }
+
    UnknownFieldSet getUnknownFieldSet() {
       return messageContext.unknownFieldSet;
    }
@@ -108,49 +269,24 @@ final class ProtoStreamReaderImpl implements MessageMarshaller.ProtoStreamReader
          return convertWireTypeToJavaType(type, o);
       }
 
-      TagReader in = messageContext.in;
-      while (true) {
-         int tag = in.readTag();
-         if (tag == 0) {
-            break;
+      TagReaderImpl in = messageContext.in;
+      FieldIndex fieldIndex = getFieldIndex(expectedTag, false);
+      if (fieldIndex != null) {
+         if (fieldIndex.seek(in, expectedTag, 0) != 0) {
+            in.readTag();
+            return readPrimitiveValue(in, type);
          }
-         if (tag == expectedTag) {
-            switch (type) {
-               case DOUBLE:
-                  return in.readDouble();
-               case FLOAT:
-                  return in.readFloat();
-               case BOOL:
-                  return in.readBool();
-               case STRING:
-                  return in.readString();
-               case BYTES:
-                  return in.readByteArray();
-               case INT32:
-                  return in.readInt32();
-               case SFIXED32:
-                  return in.readSFixed32();
-               case FIXED32:
-                  return in.readFixed32();
-               case UINT32:
-                  return in.readUInt32();
-               case SINT32:
-                  return in.readSInt32();
-               case INT64:
-                  return in.readInt64();
-               case UINT64:
-                  return in.readUInt64();
-               case FIXED64:
-                  return in.readFixed64();
-               case SFIXED64:
-                  return in.readSFixed64();
-               case SINT64:
-                  return in.readSInt64();
-               default:
-                  throw new IOException("Unexpected field type : " + type);
+      } else {
+         while (true) {
+            int tag = in.readTag();
+            if (tag == 0) {
+               break;
+            }
+            if (tag == expectedTag) {
+               return readPrimitiveValue(in, type);
             }
+            messageContext.unknownFieldSet.readSingleField(tag, in);
          }
-         messageContext.unknownFieldSet.readSingleField(tag, in);
       }
 
       if (fd.hasDefaultValue()) {
@@ -203,7 +339,7 @@ final class ProtoStreamReaderImpl implements MessageMarshaller.ProtoStreamReader
 
    @Override
    public ImmutableSerializationContext getSerializationContext() {
-      return serCtx;
+      return ctx.getPinnedSerializationContext();
    }
 
    @Override
@@ -319,17 +455,38 @@ final class ProtoStreamReaderImpl implements MessageMarshaller.ProtoStreamReader
       final FieldDescriptor fd = messageContext.getFieldByName(fieldName);
       checkFieldRead(fd, false);
 
+      final int expectedTag = fd.getWireTag();
+
       if (fd.getType() == Type.ENUM) {
-         return serCtx.getMarshallerDelegate(clazz).unmarshall(ctx, fd);
+         if (messageContext.unknownFieldSet.hasTag(expectedTag)) {
+            return serCtx.getMarshallerDelegate(clazz).unmarshall(ctx, fd);
+         }
+         FieldIndex fieldIndex = getFieldIndex(expectedTag, false);
+         if (fieldIndex == null) {
+            return serCtx.getMarshallerDelegate(clazz).unmarshall(ctx, fd);
+         }
+         if (fieldIndex.seek(messageContext.in, expectedTag, 0) == 0) {
+            return null;
+         }
+         // the enum delegate reads the field right away
+         return serCtx.getMarshallerDelegate(clazz).unmarshall(messageContext.in, fd);
       }
 
       //todo validate type is compatible with readObject
-      final int expectedTag = fd.getWireTag();
-      Object o = messageContext.unknownFieldSet.consumeTag(expectedTag);
-      if (o != null) {
-         byte[] byteArray = (byte[]) o;
-         TagReaderImpl nested = TagReaderImpl.newNestedInstance(messageContext.in, byteArray);
-         return readNestedObject(fd, clazz, nested, byteArray.length);
+      ByteBuffer nestedMessage = messageContext.unknownFieldSet.consumeLengthDelimited(expectedTag);
+      if (nestedMessage != null) {
+         int length = nestedMessage.remaining();
+         TagReaderImpl nested = TagReaderImpl.newNestedInstance(messageContext.in, nestedMessage);
+         return readNestedObject(fd, clazz, nested, length);
+      }
+
+      FieldIndex fieldIndex = getFieldIndex(expectedTag, false);
+      if (fieldIndex != null) {
+         if (fieldIndex.seek(messageContext.in, expectedTag, 0) == 0) {
+            return null;
+         }
+         messageContext.in.readTag();
+         return readNestedObject(fd, clazz, messageContext.in, -1);
       }
 
       while (true) {
@@ -393,25 +550,50 @@ final class ProtoStreamReaderImpl implements MessageMarshaller.ProtoStreamReader
       }
 
       while (true) {
-         Object o = messageContext.unknownFieldSet.consumeTag(expectedTag);
-         if (o == null) {
-            break;
-         }
-
          E e;
 
          if (enumMarshallerDelegate != null) {
+            Object o = messageContext.unknownFieldSet.consumeTag(expectedTag);
+            if (o == null) {
+               break;
+            }
             int enumValue = ((Number) o).intValue();
             e = (E) enumMarshallerDelegate.decode(expectedTag, enumValue, messageContext.unknownFieldSet);
          } else {
-            byte[] nestedMessageBytes = (byte[]) o;
-            TagReaderImpl in = TagReaderImpl.newNestedInstance(messageContext.in, nestedMessageBytes);
-            e = readNestedObject(fd, elementClass, in, nestedMessageBytes.length);
+            ByteBuffer nestedMessage = messageContext.unknownFieldSet.consumeLengthDelimited(expectedTag);
+            if (nestedMessage == null) {
+               break;
+            }
+            int length = nestedMessage.remaining();
+            TagReaderImpl in = TagReaderImpl.newNestedInstance(messageContext.in, nestedMessage);
+            e = readNestedObject(fd, elementClass, in, length);
          }
 
          collection.add(e);
       }
 
+      final int packedTag = enumMarshallerDelegate != null ? WireType.makeTag(fd.getNumber(), WireType.WIRETYPE_LENGTH_DELIMITED) : -1;
+
+      FieldIndex fieldIndex = getFieldIndex(expectedTag, true);
+      if (fieldIndex != null) {
+         TagReaderImpl in = messageContext.in;
+         int tag;
+         while ((tag = fieldIndex.seek(in, expectedTag, packedTag)) != 0) {
+            in.readTag();
+            if (tag == packedTag) {
+               readPackedEnums(in, expectedTag, enumMarshallerDelegate, collection);
+            } else if (enumMarshallerDelegate != null) {
+               E e = (E) enumMarshallerDelegate.decode(expectedTag, in.readEnum(), messageContext.unknownFieldSet);
+               if (e != null) {
+                  collection.add(e);
+               }
+            } else {
+               collection.add(readNestedObject(fd, elementClass, in, -1));
+            }
+         }
+         return collection;
+      }
+
       while (true) {
          int tag = messageContext.in.readTag();
          if (tag == 0) {
@@ -419,6 +601,8 @@ final class ProtoStreamReaderImpl implements MessageMarshaller.ProtoStreamReader
          }
          if (tag == expectedTag) {
             collection.add(readNestedObject(fd, elementClass, messageContext.in, -1));
+         } else if (tag == packedTag) {
+            readPackedEnums(messageContext.in, expectedTag, enumMarshallerDelegate, collection);
          } else {
             messageContext.unknownFieldSet.readSingleField(tag, messageContext.in);
          }
@@ -426,10 +610,25 @@ final class ProtoStreamReaderImpl implements MessageMarshaller.ProtoStreamReader
       return collection;
    }
 
+   private <E> void readPackedEnums(TagReader in, int expectedTag, EnumMarshallerDelegate<?> enumMarshallerDelegate, Collection<? super E> collection) throws IOException {
+      int oldLimit = in.pushLimit(in.readUInt32());
+      while (!in.isAtEnd()) {
+         int enumValue = in.readEnum();
+         E e = (E) enumMarshallerDelegate.decode(expectedTag, enumValue, messageContext.unknownFieldSet);
+         if (e != null) {
+            collection.add(e);
+         }
+      }
+      in.popLimit(oldLimit);
+   }
+
    private void readPrimitiveCollection(FieldDescriptor fd, Collection<? super Object> collection, Class<?> elementClass) throws IOException {
       final int expectedTag = fd.getWireTag();
       Type type = fd.getType();
 
+      // parsers must accept both packed and unpacked encodings for packable types, regardless of the packed option
+      final int packedTag = type.isPackable() ? WireType.makeTag(fd.getNumber(), WireType.WIRETYPE_LENGTH_DELIMITED) : -1;
+
       while (true) {
          Object o = messageContext.unknownFieldSet.consumeTag(expectedTag);
          if (o == null) {
@@ -438,69 +637,94 @@ final class ProtoStreamReaderImpl implements MessageMarshaller.ProtoStreamReader
          collection.add(convertWireTypeToJavaType(type, o));   //todo check that (o.getClass() == elementClass)
       }
 
+      if (packedTag != -1) {
+         while (true) {
+            ByteBuffer packedValues = messageContext.unknownFieldSet.consumeLengthDelimited(packedTag);
+            if (packedValues == null) {
+               break;
+            }
+            TagReaderImpl in = TagReaderImpl.newNestedInstance(messageContext.in, packedValues);
+            while (!in.isAtEnd()) {
+               collection.add(readPrimitiveValue(in, type));
+            }
+         }
+      }
+
+      final TagReaderImpl in = messageContext.in;
+      FieldIndex fieldIndex = getFieldIndex(expectedTag, true);
+      if (fieldIndex != null) {
+         int tag;
+         while ((tag = fieldIndex.seek(in, expectedTag, packedTag)) != 0) {
+            in.readTag();
+            if (tag == expectedTag) {
+               collection.add(readPrimitiveValue(in, type));
+            } else {
+               int oldLimit = in.pushLimit(in.readUInt32());
+               while (!in.isAtEnd()) {
+                  collection.add(readPrimitiveValue(in, type));
+               }
+               in.popLimit(oldLimit);
+            }
+         }
+         return;
+      }
+
       while (true) {
-         int tag = messageContext.in.readTag();
+         int tag = in.readTag();
          if (tag == 0) {
             break;
          }
          if (tag == expectedTag) {
-            Object value;
-            switch (type) {
-               case DOUBLE:
-                  value = messageContext.in.readDouble();
-                  break;
-               case FLOAT:
-                  value = messageContext.in.readFloat();
-                  break;
-               case BOOL:
-                  value = messageContext.in.readBool();
-                  break;
-               case STRING:
-                  value = messageContext.in.readString();
-                  break;
-               case BYTES:
-                  value = messageContext.in.readByteArray();
-                  break;
-               case INT64:
-                  value = messageContext.in.readInt64();
-                  break;
-               case UINT64:
-                  value = messageContext.in.readUInt64();
-                  break;
-               case FIXED64:
-                  value = messageContext.in.readFixed64();
-                  break;
-               case SFIXED64:
-                  value = messageContext.in.readSFixed64();
-                  break;
-               case SINT64:
-                  value = messageContext.in.readSInt64();
-                  break;
-               case INT32:
-                  value = messageContext.in.readInt32();
-                  break;
-               case FIXED32:
-                  value = messageContext.in.readFixed32();
-                  break;
-               case UINT32:
-                  value = messageContext.in.readUInt32();
-                  break;
-               case SFIXED32:
-                  value = messageContext.in.readSFixed32();
-                  break;
-               case SINT32:
-                  value = messageContext.in.readSInt32();
-                  break;
-               default:
-                  throw new IllegalStateException("Unexpected field type : " + type);
+            collection.add(readPrimitiveValue(in, type));
+         } else if (tag == packedTag) {
+            int oldLimit = in.pushLimit(in.readUInt32());
+            while (!in.isAtEnd()) {
+               collection.add(readPrimitiveValue(in, type));
             }
-            collection.add(value);
+            in.popLimit(oldLimit);
          } else {
-            messageContext.unknownFieldSet.readSingleField(tag, messageContext.in);
+            messageContext.unknownFieldSet.readSingleField(tag, in);
          }
       }
    }
 
+   private static Object readPrimitiveValue(TagReader in, Type type) throws IOException {
+      switch (type) {
+         case DOUBLE:
+            return in.readDouble();
+         case FLOAT:
+            return in.readFloat();
+         case BOOL:
+            return in.readBool();
+         case STRING:
+            return in.readString();
+         case BYTES:
+            return in.readByteArray();
+         case INT64:
+            return in.readInt64();
+         case UINT64:
+            return in.readUInt64();
+         case FIXED64:
+            return in.readFixed64();
+         case SFIXED64:
+            return in.readSFixed64();
+         case SINT64:
+            return in.readSInt64();
+         case INT32:
+            return in.readInt32();
+         case FIXED32:
+            return in.readFixed32();
+         case UINT32:
+            return in.readUInt32();
+         case SFIXED32:
+            return in.readSFixed32();
+         case SINT32:
+            return in.readSInt32();
+         default:
+            throw new IllegalStateException("Unexpected field type : " + type);
+      }
+   }
+
    @Override
    public <E> E[] readArray(String fieldName, Class<? extends E> elementClass) throws IOException {
       // the number of repeated elements is not known in advance
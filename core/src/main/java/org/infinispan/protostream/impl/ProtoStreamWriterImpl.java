@@ -3,6 +3,7 @@ package org.infinispan.protostream.impl;
 import java.io.IOException;
 import java.io.InputStream;
 import java.time.Instant;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Date;
 import java.util.LinkedList;
@@ -14,6 +15,7 @@ import org.infinispan.protostream.MessageMarshaller;
 import org.infinispan.protostream.TagWriter;
 import org.infinispan.protostream.descriptors.Descriptor;
 import org.infinispan.protostream.descriptors.FieldDescriptor;
+import org.infinispan.protostream.descriptors.JavaType;
 import org.infinispan.protostream.descriptors.Type;
 import org.infinispan.protostream.descriptors.WireType;
 import org.jboss.logging.Logger;
@@ -40,9 +42,26 @@ final class ProtoStreamWriterImpl implements MessageMarshaller.ProtoStreamWriter
 
       final TagWriterImpl out;
 
-      WriteMessageContext(WriteMessageContext parent, FieldDescriptor fieldDescriptor, Descriptor messageDescriptor, TagWriterImpl out) {
+      private final FieldLookupCache fieldLookupCache;
+
+      // number of fields looked up so far
+      private int fieldPosition;
+
+      WriteMessageContext(WriteMessageContext parent, FieldDescriptor fieldDescriptor, Descriptor messageDescriptor, TagWriterImpl out, FieldLookupCache fieldLookupCache) {
          super(parent, fieldDescriptor, messageDescriptor);
          this.out = out;
+         this.fieldLookupCache = fieldLookupCache;
+      }
+
+      @Override
+      public FieldDescriptor getFieldByName(String fieldName) throws IOException {
+         FieldDescriptor fd = fieldLookupCache.predict(fieldPosition, fieldName);
+         if (fd == null) {
+            fd = super.getFieldByName(fieldName);
+            fieldLookupCache.record(fieldPosition, fd);
+         }
+         fieldPosition++;
+         return fd;
       }
    }
 
@@ -51,8 +70,8 @@ final class ProtoStreamWriterImpl implements MessageMarshaller.ProtoStreamWriter
       this.serCtx = serCtx;
    }
 
-   WriteMessageContext enterContext(FieldDescriptor fd, Descriptor messageDescriptor, TagWriterImpl out) {
-      messageContext = new WriteMessageContext(messageContext, fd, messageDescriptor, out);
+   WriteMessageContext enterContext(FieldDescriptor fd, Descriptor messageDescriptor, TagWriterImpl out, FieldLookupCache fieldLookupCache) {
+      messageContext = new WriteMessageContext(messageContext, fd, messageDescriptor, out, fieldLookupCache);
       return messageContext;
    }
 
@@ -62,7 +81,7 @@ final class ProtoStreamWriterImpl implements MessageMarshaller.ProtoStreamWriter
 
    @Override
    public ImmutableSerializationContext getSerializationContext() {
-      return serCtx;
+      return ctx.getPinnedSerializationContext();
    }
 
    @Override
@@ -131,6 +150,10 @@ final class ProtoStreamWriterImpl implements MessageMarshaller.ProtoStreamWriter
       }
       final TagWriter out = messageContext.out;
       final int fieldNumber = fd.getNumber();
+      if (fd.isPacked() && fd.getJavaType() == JavaType.INT) {
+         messageContext.out.writePackedInts(fieldNumber, fd.getType(), array, 0, array.length);
+         return;
+      }
       switch (fd.getType()) {
          case INT32:
             for (int value : array) {
@@ -228,6 +251,10 @@ final class ProtoStreamWriterImpl implements MessageMarshaller.ProtoStreamWriter
       }
       final TagWriter out = messageContext.out;
       final int fieldNumber = fd.getNumber();
+      if (fd.isPacked() && fd.getJavaType() == JavaType.LONG) {
+         messageContext.out.writePackedLongs(fieldNumber, fd.getType(), array, 0, array.length);
+         return;
+      }
       switch (fd.getType()) {
          case INT64:
             for (long value : array) {
@@ -310,8 +337,12 @@ final class ProtoStreamWriterImpl implements MessageMarshaller.ProtoStreamWriter
          // a repeated field can never be flagged as required
          return;
       }
-      final TagWriter out = messageContext.out;
       final int fieldNumber = fd.getNumber();
+      if (fd.isPacked()) {
+         messageContext.out.writePackedDoubles(fieldNumber, array, 0, array.length);
+         return;
+      }
+      final TagWriter out = messageContext.out;
       for (double value : array) {
          out.writeDouble(fieldNumber, value);
       }
@@ -354,8 +385,12 @@ final class ProtoStreamWriterImpl implements MessageMarshaller.ProtoStreamWriter
          // a repeated field can never be flagged as required
          return;
       }
-      final TagWriter out = messageContext.out;
       final int fieldNumber = fd.getNumber();
+      if (fd.isPacked()) {
+         messageContext.out.writePackedFloats(fieldNumber, array, 0, array.length);
+         return;
+      }
+      final TagWriter out = messageContext.out;
       for (float value : array) {
          out.writeFloat(fieldNumber, value);
       }
@@ -398,8 +433,12 @@ final class ProtoStreamWriterImpl implements MessageMarshaller.ProtoStreamWriter
          // a repeated field can never be flagged as required
          return;
       }
-      final TagWriter out = messageContext.out;
       final int fieldNumber = fd.getNumber();
+      if (fd.isPacked()) {
+         messageContext.out.writePackedBools(fieldNumber, array, 0, array.length);
+         return;
+      }
+      final TagWriter out = messageContext.out;
       for (boolean value : array) {
          out.writeBool(fieldNumber, value);
       }
@@ -511,11 +550,7 @@ final class ProtoStreamWriterImpl implements MessageMarshaller.ProtoStreamWriter
 
    private void writeMessage(FieldDescriptor fd, Object value, Class<?> clazz) throws IOException {
       BaseMarshallerDelegate marshallerDelegate = serCtx.getMarshallerDelegate(clazz);
-      ByteArrayOutputStreamEx nestedBaos = new ByteArrayOutputStreamEx();
-      TagWriterImpl nestedOut = TagWriterImpl.newNestedInstance(messageContext.out, nestedBaos);
-      marshallerDelegate.marshall(nestedOut, fd, value);
-      nestedOut.flush();
-      messageContext.out.writeBytes(fd.getNumber(), nestedBaos.getByteBuffer());
+      messageContext.out.writeNestedMessage(fd.getNumber(), marshallerDelegate, fd, value);
    }
 
    private void writeGroup(FieldDescriptor fd, Object value, Class<?> clazz) throws IOException {
@@ -538,6 +573,9 @@ final class ProtoStreamWriterImpl implements MessageMarshaller.ProtoStreamWriter
          // a repeated field can never be flagged as required
          return;
       }
+      if (fd.isPacked() && writePacked(fd, collection, collection.size(), elementClass)) {
+         return;
+      }
 
       final TagWriter out = messageContext.out;
       final int fieldNumber = fd.getNumber();
@@ -678,6 +716,9 @@ final class ProtoStreamWriterImpl implements MessageMarshaller.ProtoStreamWriter
          // a repeated field can never be flagged as required
          return;
       }
+      if (fd.isPacked() && writePacked(fd, Arrays.asList(array), array.length, elementClass)) {
+         return;
+      }
 
       final TagWriter out = messageContext.out;
       final int fieldNumber = fd.getNumber();
@@ -810,6 +851,80 @@ final class ProtoStreamWriterImpl implements MessageMarshaller.ProtoStreamWriter
       }
    }
 
+   /**
+    * Writes a collection of boxed primitives or enums in packed form, after converting them into a primitive array.
+    * Returns {@code false} for the types that cannot be packed, which are left to the caller.
+    */
+   private boolean writePacked(FieldDescriptor fd, Iterable<?> values, int count, Class<?> elementClass) throws IOException {
+      final TagWriterImpl out = messageContext.out;
+      final int fieldNumber = fd.getNumber();
+      int i = 0;
+      switch (fd.getJavaType()) {
+         case INT: {
+            validateElementClass(elementClass, Integer.class);
+            int[] array = new int[count];
+            for (Object value : values) {
+               validateElement(value, elementClass);
+               array[i++] = (Integer) value;
+            }
+            out.writePackedInts(fieldNumber, fd.getType(), array, 0, i);
+            return true;
+         }
+         case LONG: {
+            validateElementClass(elementClass, Long.class);
+            long[] array = new long[count];
+            for (Object value : values) {
+               validateElement(value, elementClass);
+               array[i++] = (Long) value;
+            }
+            out.writePackedLongs(fieldNumber, fd.getType(), array, 0, i);
+            return true;
+         }
+         case DOUBLE: {
+            validateElementClass(elementClass, Double.class);
+            double[] array = new double[count];
+            for (Object value : values) {
+               validateElement(value, elementClass);
+               array[i++] = (Double) value;
+            }
+            out.writePackedDoubles(fieldNumber, array, 0, i);
+            return true;
+         }
+         case FLOAT: {
+            validateElementClass(elementClass, Float.class);
+            float[] array = new float[count];
+            for (Object value : values) {
+               validateElement(value, elementClass);
+               array[i++] = (Float) value;
+            }
+            out.writePackedFloats(fieldNumber, array, 0, i);
+            return true;
+         }
+         case BOOLEAN: {
+            validateElementClass(elementClass, Boolean.class);
+            boolean[] array = new boolean[count];
+            for (Object value : values) {
+               validateElement(value, elementClass);
+               array[i++] = (Boolean) value;
+            }
+            out.writePackedBools(fieldNumber, array, 0, i);
+            return true;
+         }
+         case ENUM: {
+            EnumMarshallerDelegate marshallerDelegate = (EnumMarshallerDelegate) serCtx.getMarshallerDelegate(elementClass);
+            int[] array = new int[count];
+            for (Object value : values) {
+               validateElement(value, elementClass);
+               array[i++] = marshallerDelegate.encode((Enum) value);
+            }
+            out.writePackedInts(fieldNumber, Type.ENUM, array, 0, i);
+            return true;
+         }
+         default:
+            return false;
+      }
+   }
+
    private void validateElementClass(Class<?> elementClass, Class<?> expectedElementClass) {
       if (elementClass != expectedElementClass) {
          throw new IllegalArgumentException("elementClass argument should be " + expectedElementClass.getCanonicalName());
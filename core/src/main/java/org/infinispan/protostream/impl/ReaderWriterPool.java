@@ -0,0 +1,161 @@
+package org.infinispan.protostream.impl;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+import org.infinispan.protostream.ImmutableSerializationContext;
+
+/**
+ * Caches one top-level {@link TagWriterImpl} and one top-level {@link TagReaderImpl} per thread, to be reset and reused
+ * by subsequent operations instead of allocating new ones, together with their encoders, decoders and stream buffers.
+ * This is enabled by {@link org.infinispan.protostream.config.Configuration#reuseReadersAndWriters()}, otherwise new
+ * instances are created as usual.
+ * <p>
+ * Every instance acquired from here must be given back with {@link #release}. An instance that is acquired while the
+ * cached one is still in use, as it happens when a marshaller performs a nested {@link
+ * org.infinispan.protostream.ProtobufUtil} call, is a new one that is not cached.
+ *
+ * @since 4.4
+ */
+public final class ReaderWriterPool {
+
+   private static final ThreadLocal<ReaderWriterPool> POOL = ThreadLocal.withInitial(ReaderWriterPool::new);
+
+   private TagWriterImpl writer;
+
+   private boolean writerInUse;
+
+   private TagReaderImpl reader;
+
+   private boolean readerInUse;
+
+   private ReaderWriterPool() {
+   }
+
+   private static ReaderWriterPool get(ImmutableSerializationContext serCtx) {
+      return serCtx != null && serCtx.getConfiguration().reuseReadersAndWriters() ? POOL.get() : null;
+   }
+
+   /**
+    * Acquires a writer that performs a sizing pass. See {@link TagWriterImpl#newInstance(ImmutableSerializationContext)}.
+    */
+   public static TagWriterImpl acquireWriter(ImmutableSerializationContext serCtx) {
+      ReaderWriterPool pool = get(serCtx);
+      if (pool == null || pool.writerInUse) {
+         return TagWriterImpl.newInstance(serCtx);
+      }
+      pool.writerInUse = true;
+      if (pool.writer == null) {
+         pool.writer = TagWriterImpl.newInstance(serCtx);
+      } else {
+         pool.writer.reset(serCtx);
+      }
+      return pool.writer;
+   }
+
+   /**
+    * Acquires a writer for a stream. See {@link TagWriterImpl#newInstance(ImmutableSerializationContext, OutputStream,
+    * int)}.
+    */
+   public static TagWriterImpl acquireWriter(ImmutableSerializationContext serCtx, OutputStream output, int bufferSize) {
+      ReaderWriterPool pool = get(serCtx);
+      if (pool == null || pool.writerInUse) {
+         return TagWriterImpl.newInstance(serCtx, output, bufferSize);
+      }
+      pool.writerInUse = true;
+      if (pool.writer == null) {
+         pool.writer = TagWriterImpl.newInstance(serCtx, output, bufferSize);
+      } else {
+         pool.writer.reset(serCtx, output, bufferSize);
+      }
+      return pool.writer;
+   }
+
+   /**
+    * Acquires a writer for a byte array that grows as needed. See {@link
+    * TagWriterImpl#newGrowableInstance(ImmutableSerializationContext, int)}.
+    */
+   public static TagWriterImpl acquireGrowableWriter(ImmutableSerializationContext serCtx, int initialCapacity) {
+      ReaderWriterPool pool = get(serCtx);
+      if (pool == null || pool.writerInUse) {
+         return TagWriterImpl.newGrowableInstance(serCtx, initialCapacity);
+      }
+      pool.writerInUse = true;
+      if (pool.writer == null) {
+         pool.writer = TagWriterImpl.newGrowableInstance(serCtx, initialCapacity);
+      } else {
+         pool.writer.resetGrowable(serCtx, initialCapacity);
+      }
+      return pool.writer;
+   }
+
+   public static void release(TagWriterImpl writer) {
+      ReaderWriterPool pool = get(writer.getSerializationContext());
+      if (pool != null && pool.writer == writer) {
+         writer.release();
+         pool.writerInUse = false;
+      }
+   }
+
+   /**
+    * Acquires a reader for a byte array. See {@link TagReaderImpl#newInstance(ImmutableSerializationContext, byte[],
+    * int, int)}.
+    */
+   public static TagReaderImpl acquireReader(ImmutableSerializationContext serCtx, byte[] buf, int offset, int length) {
+      ReaderWriterPool pool = get(serCtx);
+      if (pool == null || pool.readerInUse) {
+         return TagReaderImpl.newInstance(serCtx, buf, offset, length);
+      }
+      pool.readerInUse = true;
+      if (pool.reader == null) {
+         pool.reader = TagReaderImpl.newInstance(serCtx, buf, offset, length);
+      } else {
+         pool.reader.reset(serCtx, buf, offset, length);
+      }
+      return pool.reader;
+   }
+
+   /**
+    * Acquires a reader for a {@link ByteBuffer}. See {@link TagReaderImpl#newInstance(ImmutableSerializationContext,
+    * ByteBuffer)}.
+    */
+   public static TagReaderImpl acquireReader(ImmutableSerializationContext serCtx, ByteBuffer buf) {
+      ReaderWriterPool pool = get(serCtx);
+      if (pool == null || pool.readerInUse) {
+         return TagReaderImpl.newInstance(serCtx, buf);
+      }
+      pool.readerInUse = true;
+      if (pool.reader == null) {
+         pool.reader = TagReaderImpl.newInstance(serCtx, buf);
+      } else {
+         pool.reader.reset(serCtx, buf);
+      }
+      return pool.reader;
+   }
+
+   /**
+    * Acquires a reader for a stream. See {@link TagReaderImpl#newInstance(ImmutableSerializationContext, InputStream)}.
+    */
+   public static TagReaderImpl acquireReader(ImmutableSerializationContext serCtx, InputStream input) {
+      ReaderWriterPool pool = get(serCtx);
+      if (pool == null || pool.readerInUse) {
+         return TagReaderImpl.newInstance(serCtx, input);
+      }
+      pool.readerInUse = true;
+      if (pool.reader == null) {
+         pool.reader = TagReaderImpl.newInstance(serCtx, input);
+      } else {
+         pool.reader.reset(serCtx, input);
+      }
+      return pool.reader;
+   }
+
+   public static void release(TagReaderImpl reader) {
+      ReaderWriterPool pool = get(reader.getSerializationContext());
+      if (pool != null && pool.reader == reader) {
+         reader.release();
+         pool.readerInUse = false;
+      }
+   }
+}
@@ -3,12 +3,17 @@ package org.infinispan.protostream.impl;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.concurrent.locks.ReentrantLock;
 
 import org.infinispan.protostream.BaseMarshaller;
 import org.infinispan.protostream.DescriptorParserException;
@@ -37,40 +42,27 @@ public final class SerializationContextImpl implements SerializationContext {
    private static final Log log = Log.LogFactory.getLog(SerializationContextImpl.class);
 
    /**
-    * All descriptor related mutable internal state is protected by this RW lock.
+    * Serializes all changes to the descriptor related internal state. Lookups do not take this lock, they read the
+    * current {@link #descriptors} generation, which is immutable and is replaced all at once after each successful
+    * change.
     */
-   private final ReentrantReadWriteLock dReadWriteLock = new ReentrantReadWriteLock();
-
-   private final Lock dReadLock = dReadWriteLock.readLock();
-
-   private final Lock dWriteLock = dReadWriteLock.writeLock();
+   private final Lock dWriteLock = new ReentrantLock();
 
    private final Configuration configuration;
 
    private final SquareProtoParser parser;
 
-   private final Map<String, FileDescriptor> fileDescriptors = new LinkedHashMap<>();
-
-   private final Map<Integer, GenericDescriptor> typeIds = new HashMap<>();
-
-   private final Map<String, GenericDescriptor> genericDescriptors = new HashMap<>();
-
-   private final Map<String, EnumValueDescriptor> enumValueDescriptors = new HashMap<>();
+   private volatile DescriptorGeneration descriptors = DescriptorGeneration.EMPTY;
 
    /**
-    * All marshaller related mutable internal state is protected by this RW lock.
+    * Serializes all changes to the marshaller registrations. Lookups do not take this lock, they read the immutable
+    * {@link #marshallers} snapshot which is replaced after each change.
     */
-   private final ReentrantReadWriteLock mReadWriteLock = new ReentrantReadWriteLock();
-
-   private final Lock mReadLock = mReadWriteLock.readLock();
+   private final Lock mWriteLock = new ReentrantLock();
 
-   private final Lock mWriteLock = mReadWriteLock.writeLock();
+   private volatile Registrations marshallers = new Registrations(Collections.emptyMap(), Collections.emptyMap());
 
-   private final Map<String, Registration> marshallersByName = new HashMap<>();
-
-   private final Map<Class<?>, Registration> marshallersByClass = new HashMap<>();
-
-   private final List<MarshallerProvider> legacyMarshallerProviders = new ArrayList<>();
+   private final List<MarshallerProvider> legacyMarshallerProviders = new CopyOnWriteArrayList<>();
 
    public SerializationContextImpl(Configuration configuration) {
       if (configuration == null) {
@@ -87,22 +79,19 @@ public final class SerializationContextImpl implements SerializationContext {
 
    @Override
    public Map<String, FileDescriptor> getFileDescriptors() {
-      dReadLock.lock();
-      try {
-         return Collections.unmodifiableMap(new HashMap<>(fileDescriptors));
-      } finally {
-         dReadLock.unlock();
-      }
+      return descriptors.fileDescriptors;
    }
 
    @Override
    public Map<String, GenericDescriptor> getGenericDescriptors() {
-      dReadLock.lock();
-      try {
-         return Collections.unmodifiableMap(new HashMap<>(genericDescriptors));
-      } finally {
-         dReadLock.unlock();
-      }
+      return descriptors.genericDescriptors;
+   }
+
+   /**
+    * Returns the current generation of the registered files, to be used by a marshalling operation for all its lookups.
+    */
+   DescriptorGeneration getDescriptorGeneration() {
+      return descriptors;
    }
 
    @Override
@@ -113,18 +102,38 @@ public final class SerializationContextImpl implements SerializationContext {
       Map<String, FileDescriptor> fileDescriptorMap = parser.parse(source);
       dWriteLock.lock();
       try {
+         DescriptorChanges changes = new DescriptorChanges();
+         for (FileDescriptor fileDescriptor : fileDescriptorMap.values()) {
+            changes.putFile(fileDescriptor);
+         }
          // unregister all types from the files that are being overwritten
          for (String fileName : fileDescriptorMap.keySet()) {
-            FileDescriptor oldFileDescriptor = fileDescriptors.get(fileName);
+            FileDescriptor oldFileDescriptor = changes.base.fileDescriptors.get(fileName);
             if (oldFileDescriptor != null) {
-               unregisterFileDescriptorTypes(oldFileDescriptor);
+               changes.unregisterFileDescriptorTypes(oldFileDescriptor);
             }
          }
-         fileDescriptors.putAll(fileDescriptorMap);
+         changes.unresolvedFiles.addAll(fileDescriptorMap.keySet());
 
-         // resolve imports and types for all files
-         ResolutionContext resolutionContext = new ResolutionContext(source.getProgressCallback(), fileDescriptors, genericDescriptors, typeIds, enumValueDescriptors);
-         resolutionContext.resolve();
+         // resolve imports and types for the new files and all other files that are not resolved yet
+         List<FileDescriptor> filesToResolve = new ArrayList<>(changes.unresolvedFiles.size());
+         for (String fileName : changes.unresolvedFiles) {
+            filesToResolve.add(changes.getUnpublishedFile(fileName));
+         }
+         ResolutionContext resolutionContext = new ResolutionContext(source.getProgressCallback(), changes.fileDescriptors,
+               changes.genericDescriptors, changes.typeIds, changes.enumValueDescriptors);
+         DescriptorParserException semanticError = null;
+         try {
+            resolutionContext.resolve(filesToResolve);
+         } catch (DescriptorParserException e) {
+            // semantic errors are not fatal, the files are registered anyway, in unresolved state
+            semanticError = e;
+         }
+         changes.unresolvedFiles.removeIf(fileName -> changes.fileDescriptors.get(fileName).isResolved());
+         changes.publish();
+         if (semanticError != null) {
+            throw semanticError;
+         }
       } finally {
          dWriteLock.unlock();
       }
@@ -133,17 +142,7 @@ public final class SerializationContextImpl implements SerializationContext {
    @Override
    public void unregisterProtoFile(String fileName) {
       log.debugf("Unregistering proto file : %s", fileName);
-      dWriteLock.lock();
-      try {
-         FileDescriptor fileDescriptor = fileDescriptors.remove(fileName);
-         if (fileDescriptor != null) {
-            unregisterFileDescriptorTypes(fileDescriptor);
-         } else {
-            throw new IllegalArgumentException("File " + fileName + " does not exist");
-         }
-      } finally {
-         dWriteLock.unlock();
-      }
+      unregisterProtoFiles(Collections.singleton(fileName));
    }
 
    @Override
@@ -151,57 +150,294 @@ public final class SerializationContextImpl implements SerializationContext {
       log.debugf("Unregistering proto files : %s", fileNames);
       dWriteLock.lock();
       try {
+         DescriptorChanges changes = new DescriptorChanges();
          for (String fileName : fileNames) {
-            FileDescriptor fileDescriptor = fileDescriptors.remove(fileName);
-            if (fileDescriptor != null) {
-               unregisterFileDescriptorTypes(fileDescriptor);
-            } else {
+            FileDescriptor fileDescriptor = changes.removeFile(fileName);
+            if (fileDescriptor == null) {
                throw new IllegalArgumentException("File " + fileName + " does not exist");
             }
+            changes.unresolvedFiles.remove(fileName);
+            changes.unregisterFileDescriptorTypes(fileDescriptor);
          }
+         changes.publish();
       } finally {
          dWriteLock.unlock();
       }
    }
 
-   @GuardedBy("dWriteLock")
-   private void unregisterFileDescriptorTypes(FileDescriptor fileDescriptor) {
-      if (fileDescriptor.isResolved()) {
-         for (GenericDescriptor d : fileDescriptor.getTypes().values()) {
-            Integer typeId = d.getTypeId();
-            if (typeId != null) {
-               typeIds.remove(typeId);
+   /**
+    * The changes to the current generation, to be made by a writer holding {@link #dWriteLock} and then published all
+    * at once as the next generation. Nothing is published if the change fails. The descriptors of the current
+    * generation are not modified, the files that must be resolved again are replaced by unresolved copies.
+    * <p>
+    * The maps of the current generation are copied and the copies are published, unmodifiable, by {@link #publish}.
+    * The importers of a file are looked up in an index that is kept up to date along with the files, so finding the
+    * files that must be resolved again does not scan all registered files.
+    */
+   private final class DescriptorChanges {
+
+      final DescriptorGeneration base = descriptors;
+
+      final Map<String, FileDescriptor> fileDescriptors = new LinkedHashMap<>(base.fileDescriptors);
+
+      final Map<String, GenericDescriptor> genericDescriptors = new HashMap<>(base.genericDescriptors);
+
+      final Map<Integer, GenericDescriptor> typeIds = new HashMap<>(base.typeIds);
+
+      final Map<String, EnumValueDescriptor> enumValueDescriptors = new HashMap<>(base.enumValueDescriptors);
+
+      final Set<String> unresolvedFiles = new LinkedHashSet<>(base.unresolvedFiles);
+
+      /**
+       * The sets of the base generation are shared, a set is copied before changing it.
+       */
+      final Map<String, Set<String>> importers = new HashMap<>(base.importers);
+
+      /**
+       * Adds or replaces a file.
+       */
+      void putFile(FileDescriptor fileDescriptor) {
+         FileDescriptor old = fileDescriptors.put(fileDescriptor.getName(), fileDescriptor);
+         if (old != null) {
+            updateImporters(old, false);
+         }
+         updateImporters(fileDescriptor, true);
+      }
+
+      /**
+       * Removes a file, returning it, or {@code null} if it is not registered.
+       */
+      FileDescriptor removeFile(String fileName) {
+         FileDescriptor old = fileDescriptors.remove(fileName);
+         if (old != null) {
+            updateImporters(old, false);
+         }
+         return old;
+      }
+
+      private void updateImporters(FileDescriptor fileDescriptor, boolean add) {
+         updateImporters(fileDescriptor.getName(), fileDescriptor.getDependencies(), add);
+         updateImporters(fileDescriptor.getName(), fileDescriptor.getPublicDependencies(), add);
+      }
+
+      private void updateImporters(String fileName, List<String> dependencies, boolean add) {
+         for (String dependency : dependencies) {
+            Set<String> names = importers.get(dependency);
+            names = names == null ? new HashSet<>() : new HashSet<>(names);
+            if (add) {
+               names.add(fileName);
+            } else {
+               names.remove(fileName);
             }
-            if (d instanceof EnumDescriptor) {
-               for (EnumValueDescriptor ev : ((EnumDescriptor) d).getValues()) {
-                  enumValueDescriptors.remove(ev.getScopedName());
+            if (names.isEmpty()) {
+               importers.remove(dependency);
+            } else {
+               importers.put(dependency, Collections.unmodifiableSet(names));
+            }
+         }
+      }
+
+      /**
+       * Returns the file having the given name, replacing it first by an unresolved copy if it belongs to the base
+       * generation, so it can be resolved.
+       */
+      FileDescriptor getUnpublishedFile(String fileName) {
+         FileDescriptor fileDescriptor = fileDescriptors.get(fileName);
+         if (fileDescriptor == base.fileDescriptors.get(fileName)) {
+            fileDescriptor = ResolutionContext.copyUnresolved(fileDescriptor);
+            fileDescriptors.put(fileName, fileDescriptor);
+         }
+         return fileDescriptor;
+      }
+
+      /**
+       * Removes the types of a file that is being replaced or removed from the lookup maps. The files of the base
+       * generation depending on it (recursively) lose their types too, and are replaced by unresolved copies to be
+       * resolved again.
+       */
+      void unregisterFileDescriptorTypes(FileDescriptor fileDescriptor) {
+         if (fileDescriptor.isResolved()) {
+            for (GenericDescriptor d : fileDescriptor.getTypes().values()) {
+               Integer typeId = d.getTypeId();
+               if (typeId != null) {
+                  typeIds.remove(typeId);
                }
+               if (d instanceof EnumDescriptor) {
+                  for (EnumValueDescriptor ev : ((EnumDescriptor) d).getValues()) {
+                     enumValueDescriptors.remove(ev.getScopedName());
+                  }
+               }
+            }
+            for (String typeName : fileDescriptor.getTypes().keySet()) {
+               genericDescriptors.remove(typeName);
+            }
+         }
+         Set<String> importerNames = base.importers.get(fileDescriptor.getName());
+         if (importerNames == null) {
+            return;
+         }
+         for (String importerName : importerNames) {
+            FileDescriptor fd = base.fileDescriptors.get(importerName);
+            // skip the dependants that were already handled or are no longer registered
+            if (fd != null && fileDescriptors.get(importerName) == fd) {
+               fileDescriptors.put(fd.getName(), ResolutionContext.copyUnresolved(fd));
+               unresolvedFiles.add(fd.getName());
+               unregisterFileDescriptorTypes(fd);
             }
          }
-         genericDescriptors.keySet().removeAll(fileDescriptor.getTypes().keySet());
-         fileDescriptor.markUnresolved();
       }
-      for (FileDescriptor fd : fileDescriptor.getDependants().values()) {
-         unregisterFileDescriptorTypes(fd);
+
+      void publish() {
+         descriptors = new DescriptorGeneration(fileDescriptors, genericDescriptors, typeIds, enumValueDescriptors,
+               unresolvedFiles, importers);
       }
    }
 
    @Override
    public Descriptor getMessageDescriptor(String fullTypeName) {
-      GenericDescriptor descriptor = getDescriptorByName(fullTypeName);
-      if (!(descriptor instanceof Descriptor)) {
-         throw new IllegalArgumentException(fullTypeName + " is not a message type");
-      }
-      return (Descriptor) descriptor;
+      return descriptors.getMessageDescriptor(fullTypeName);
    }
 
    @Override
    public EnumDescriptor getEnumDescriptor(String fullTypeName) {
-      GenericDescriptor descriptor = getDescriptorByName(fullTypeName);
-      if (!(descriptor instanceof EnumDescriptor)) {
-         throw new IllegalArgumentException(fullTypeName + " is not an enum type");
+      return descriptors.getEnumDescriptor(fullTypeName);
+   }
+
+   /**
+    * Marks the absence of a registration in the lookup caches.
+    */
+   private static final Registration NO_REGISTRATION = new Registration((BaseMarshallerDelegate<?>) null);
+
+   /**
+    * An immutable snapshot of the marshaller registrations, by protobuf type name and by Java class. A new snapshot is
+    * published after each change, including a change of the legacy {@link MarshallerProvider}s, so each snapshot has
+    * its own lookup caches and replacing it is all it takes to invalidate them. The maps are unmodifiable copies made by
+    * the writer holding {@link #mWriteLock}.
+    */
+   private final class Registrations {
+
+      final Map<String, Registration> byName;
+      final Map<Class<?>, Registration> byClass;
+
+      /**
+       * Caches the result of looking up a Java class in {@link #byClass}, including misses.
+       */
+      private final ClassValue<Registration> byClassCache = new ClassValue<Registration>() {
+         @Override
+         protected Registration computeValue(Class<?> javaClass) {
+            Registration registration = byClass.get(javaClass);
+            return registration != null ? registration : NO_REGISTRATION;
+         }
+      };
+
+      /**
+       * The marshallers found by the legacy providers, created lazily for the first lookup that needs them.
+       */
+      private volatile LegacyLookups legacyLookups;
+
+      Registrations(Map<String, Registration> byName, Map<Class<?>, Registration> byClass) {
+         this.byName = byName;
+         this.byClass = byClass;
+      }
+
+      Registration getByClass(Class<?> javaClass) {
+         Registration registration = byClassCache.get(javaClass);
+         return registration != NO_REGISTRATION ? registration : null;
+      }
+
+      /**
+       * Looks up a Java class in the legacy providers.
+       */
+      LegacyRegistration getLegacyByClass(Class<?> javaClass) {
+         LegacyLookups lookups = getLegacyLookups();
+         if (lookups == null) {
+            return null;
+         }
+         LegacyRegistration registration = lookups.byClassCache.get(javaClass);
+         return registration != NO_LEGACY_REGISTRATION ? registration : null;
+      }
+
+      /**
+       * Looks up a protobuf type name in the legacy providers.
+       */
+      LegacyRegistration getLegacyByName(String fullTypeName) {
+         LegacyLookups lookups = getLegacyLookups();
+         if (lookups == null) {
+            return null;
+         }
+         LegacyRegistration registration = lookups.byNameCache.computeIfAbsent(fullTypeName, name -> {
+            BaseMarshaller<?> marshaller = getMarshallerFromLegacyProvider(name);
+            return marshaller != null ? new LegacyRegistration(marshaller) : NO_LEGACY_REGISTRATION;
+         });
+         return registration != NO_LEGACY_REGISTRATION ? registration : null;
+      }
+
+      private LegacyLookups getLegacyLookups() {
+         if (legacyMarshallerProviders.isEmpty()) {
+            return null;
+         }
+         // the delegates hold descriptors, so they are not reused once the descriptors change
+         DescriptorGeneration generation = descriptors;
+         LegacyLookups lookups = legacyLookups;
+         if (lookups == null || lookups.generation != generation) {
+            lookups = new LegacyLookups(generation);
+            legacyLookups = lookups;
+         }
+         return lookups;
+      }
+   }
+
+   /**
+    * Marks the absence of a marshaller in the caches of {@link LegacyLookups}.
+    */
+   private static final LegacyRegistration NO_LEGACY_REGISTRATION = new LegacyRegistration(null);
+
+   /**
+    * Caches the results of asking the legacy providers for a marshaller, including misses, for one generation of
+    * descriptors.
+    */
+   private final class LegacyLookups {
+
+      final DescriptorGeneration generation;
+
+      final ClassValue<LegacyRegistration> byClassCache = new ClassValue<LegacyRegistration>() {
+         @Override
+         protected LegacyRegistration computeValue(Class<?> javaClass) {
+            BaseMarshaller<?> marshaller = getMarshallerFromLegacyProvider(javaClass);
+            return marshaller != null ? new LegacyRegistration(marshaller) : NO_LEGACY_REGISTRATION;
+         }
+      };
+
+      final ConcurrentMap<String, LegacyRegistration> byNameCache = new ConcurrentHashMap<>();
+
+      LegacyLookups(DescriptorGeneration generation) {
+         this.generation = generation;
+      }
+   }
+
+   /**
+    * A marshaller found by a legacy provider. Its delegate is created by the first lookup that needs it, so that
+    * {@link #canMarshall} does not fail for a marshaller whose descriptor is missing.
+    */
+   private static final class LegacyRegistration {
+
+      final BaseMarshaller<?> marshaller;
+
+      private volatile BaseMarshallerDelegate<?> marshallerDelegate;
+
+      LegacyRegistration(BaseMarshaller<?> marshaller) {
+         this.marshaller = marshaller;
+      }
+
+      <T> BaseMarshallerDelegate<T> getMarshallerDelegate(SerializationContextImpl ctx) {
+         BaseMarshallerDelegate<?> delegate = marshallerDelegate;
+         if (delegate == null) {
+            // racing lookups may create it more than once, which is harmless
+            delegate = ctx.makeMarshallerDelegate(marshaller);
+            marshallerDelegate = delegate;
+         }
+         return (BaseMarshallerDelegate<T>) delegate;
       }
-      return (EnumDescriptor) descriptor;
    }
 
    private static final class Registration {
@@ -236,6 +472,8 @@ public final class SerializationContextImpl implements SerializationContext {
 
       mWriteLock.lock();
       try {
+         Map<String, Registration> marshallersByName = new HashMap<>(marshallers.byName);
+         Map<Class<?>, Registration> marshallersByClass = new HashMap<>(marshallers.byClass);
          Registration existingByName = marshallersByName.get(marshaller.getTypeName());
          Registration existingByClass = marshallersByClass.get(marshaller.getJavaClass());
          if (existingByName != null && existingByName.marshallerProvider != null ||
@@ -263,11 +501,17 @@ public final class SerializationContextImpl implements SerializationContext {
          Registration registration = new Registration(makeMarshallerDelegate(marshaller));
          marshallersByClass.put(marshaller.getJavaClass(), registration);
          marshallersByName.put(marshaller.getTypeName(), registration);
+         publishMarshallers(marshallersByName, marshallersByClass);
       } finally {
          mWriteLock.unlock();
       }
    }
 
+   @GuardedBy("mWriteLock")
+   private void publishMarshallers(Map<String, Registration> marshallersByName, Map<Class<?>, Registration> marshallersByClass) {
+      marshallers = new Registrations(Collections.unmodifiableMap(marshallersByName), Collections.unmodifiableMap(marshallersByClass));
+   }
+
    private <T> BaseMarshallerDelegate<T> makeMarshallerDelegate(BaseMarshaller<T> marshaller) {
       if (marshaller.getJavaClass().isEnum() && !(marshaller instanceof EnumMarshaller)) {
          throw new IllegalArgumentException("Invalid marshaller (the produced class is a Java Enum, but the marshaller is not an EnumMarshaller) : " + marshaller.getClass().getName());
@@ -294,6 +538,8 @@ public final class SerializationContextImpl implements SerializationContext {
 
       mWriteLock.lock();
       try {
+         Map<String, Registration> marshallersByName = new HashMap<>(marshallers.byName);
+         Map<Class<?>, Registration> marshallersByClass = new HashMap<>(marshallers.byClass);
          Registration existingByName = marshallersByName.get(marshaller.getTypeName());
          if (existingByName == null || existingByName.marshallerDelegate.getMarshaller() != marshaller) {
             throw new IllegalArgumentException("The given marshaller was not previously registered with this SerializationContext");
@@ -303,6 +549,7 @@ public final class SerializationContextImpl implements SerializationContext {
          }
          marshallersByName.remove(marshaller.getTypeName());
          marshallersByClass.remove(marshaller.getJavaClass());
+         publishMarshallers(marshallersByName, marshallersByClass);
       } finally {
          mWriteLock.unlock();
       }
@@ -318,6 +565,8 @@ public final class SerializationContextImpl implements SerializationContext {
       mWriteLock.lock();
       try {
          legacyMarshallerProviders.add(marshallerProvider);
+         // a fresh snapshot, to drop the lookups cached with the previous providers
+         marshallers = new Registrations(marshallers.byName, marshallers.byClass);
       } finally {
          mWriteLock.unlock();
       }
@@ -333,6 +582,8 @@ public final class SerializationContextImpl implements SerializationContext {
       mWriteLock.lock();
       try {
          legacyMarshallerProviders.remove(marshallerProvider);
+         // a fresh snapshot, to drop the lookups cached with the previous providers
+         marshallers = new Registrations(marshallers.byName, marshallers.byClass);
       } finally {
          mWriteLock.unlock();
       }
@@ -346,6 +597,8 @@ public final class SerializationContextImpl implements SerializationContext {
 
       mWriteLock.lock();
       try {
+         Map<String, Registration> marshallersByName = new HashMap<>(marshallers.byName);
+         Map<Class<?>, Registration> marshallersByClass = new HashMap<>(marshallers.byClass);
          Registration byClass = marshallersByClass.get(marshallerProvider.getJavaClass());
          if (byClass != null) {
             if (byClass.marshallerProvider == null) {
@@ -361,6 +614,7 @@ public final class SerializationContextImpl implements SerializationContext {
             BaseMarshaller<?> marshaller = marshallerProvider.getMarshaller(typeName);
             marshallersByName.put(typeName, new Registration(makeMarshallerDelegate(marshaller), marshallerProvider));
          }
+         publishMarshallers(marshallersByName, marshallersByClass);
       } finally {
          mWriteLock.unlock();
       }
@@ -374,12 +628,17 @@ public final class SerializationContextImpl implements SerializationContext {
 
       mWriteLock.lock();
       try {
+         Map<String, Registration> marshallersByName = new HashMap<>(marshallers.byName);
+         Map<Class<?>, Registration> marshallersByClass = new HashMap<>(marshallers.byClass);
          Registration byClass = marshallersByClass.get(marshallerProvider.getJavaClass());
          if (byClass == null || byClass.marshallerProvider != marshallerProvider) {
             throw new IllegalArgumentException("The given InstanceMarshallerProvider was not previously registered with this SerializationContext");
          }
          marshallersByClass.remove(marshallerProvider.getJavaClass());
-         marshallersByName.keySet().removeAll(marshallerProvider.getTypeNames());
+         for (String typeName : marshallerProvider.getTypeNames()) {
+            marshallersByName.remove(typeName);
+         }
+         publishMarshallers(marshallersByName, marshallersByClass);
       } finally {
          mWriteLock.unlock();
       }
@@ -387,48 +646,36 @@ public final class SerializationContextImpl implements SerializationContext {
 
    @Override
    public boolean canMarshall(Class<?> javaClass) {
-      mReadLock.lock();
-      try {
-         return marshallersByClass.containsKey(javaClass) || getMarshallerFromLegacyProvider(javaClass) != null;
-      } finally {
-         mReadLock.unlock();
-      }
+      Registrations registrations = marshallers;
+      return registrations.getByClass(javaClass) != null || registrations.getLegacyByClass(javaClass) != null;
    }
 
    @Override
    public boolean canMarshall(String fullTypeName) {
-      mReadLock.lock();
-      try {
-         return marshallersByName.containsKey(fullTypeName) || getMarshallerFromLegacyProvider(fullTypeName) != null;
-      } finally {
-         mReadLock.unlock();
-      }
+      Registrations registrations = marshallers;
+      return registrations.byName.containsKey(fullTypeName) || registrations.getLegacyByName(fullTypeName) != null;
    }
 
    @Override
    public boolean canMarshall(Object object) {
       Class<?> javaClass = object.getClass();
-      mReadLock.lock();
-      try {
-         Registration registration = marshallersByClass.get(javaClass);
-         if (registration != null) {
-            if (registration.marshallerProvider != null) {
-               String typeName = ((InstanceMarshallerProvider<Object>)registration.marshallerProvider).getTypeName(object);
-               if (typeName == null) {
-                  throw new IllegalArgumentException("No marshaller registered for object of Java type " + javaClass.getName() + " : " + object);
-               }
-               registration = marshallersByName.get(typeName);
-            }
-            if (registration != null) {
-               return true;
+      // read the snapshot once, so both lookups see the same registrations
+      Registrations registrations = marshallers;
+      Registration registration = registrations.getByClass(javaClass);
+      if (registration != null) {
+         if (registration.marshallerProvider != null) {
+            String typeName = ((InstanceMarshallerProvider<Object>)registration.marshallerProvider).getTypeName(object);
+            if (typeName == null) {
+               throw new IllegalArgumentException("No marshaller registered for object of Java type " + javaClass.getName() + " : " + object);
             }
+            registration = registrations.byName.get(typeName);
+         }
+         if (registration != null) {
+            return true;
          }
-
-         BaseMarshaller<?> marshaller = getMarshallerFromLegacyProvider(javaClass);
-         return marshaller != null;
-      } finally {
-         mReadLock.unlock();
       }
+
+      return registrations.getLegacyByClass(javaClass) != null;
    }
 
    @Override
@@ -447,78 +694,63 @@ public final class SerializationContextImpl implements SerializationContext {
    }
 
    public <T> BaseMarshallerDelegate<T> getMarshallerDelegate(String typeName) {
-      mReadLock.lock();
-      try {
-         Registration registration = marshallersByName.get(typeName);
-         if (registration != null) {
-            return (BaseMarshallerDelegate<T>) registration.marshallerDelegate;
-         }
+      Registrations registrations = marshallers;
+      Registration registration = registrations.byName.get(typeName);
+      if (registration != null) {
+         return (BaseMarshallerDelegate<T>) registration.marshallerDelegate;
+      }
 
-         BaseMarshaller<T> marshaller = getMarshallerFromLegacyProvider(typeName);
-         if (marshaller == null) {
-            throw new IllegalArgumentException("No marshaller registered for Protobuf type " + typeName);
-         }
-         //todo [anistor] A marshaller delegate is created per call and cannot be cached! This is just legacy.
-         return makeMarshallerDelegate(marshaller);
-      } finally {
-         mReadLock.unlock();
+      LegacyRegistration legacyRegistration = registrations.getLegacyByName(typeName);
+      if (legacyRegistration == null) {
+         throw new IllegalArgumentException("No marshaller registered for Protobuf type " + typeName);
       }
+      return legacyRegistration.getMarshallerDelegate(this);
    }
 
    public <T> BaseMarshallerDelegate<T> getMarshallerDelegate(Class<T> javaClass) {
-      mReadLock.lock();
-      try {
-         Registration registration = marshallersByClass.get(javaClass);
-         if (registration != null) {
-            if (registration.marshallerProvider != null) {
-               throw new IllegalArgumentException("Java type " + javaClass.getName()
-                     + " is mapped to multiple protobuf types : " + registration.marshallerProvider.getTypeNames()
-                     + ". Object instance needed for disambiguation.");
-            }
-            return (BaseMarshallerDelegate<T>) registration.marshallerDelegate;
+      Registrations registrations = marshallers;
+      Registration registration = registrations.getByClass(javaClass);
+      if (registration != null) {
+         if (registration.marshallerProvider != null) {
+            throw new IllegalArgumentException("Java type " + javaClass.getName()
+                  + " is mapped to multiple protobuf types : " + registration.marshallerProvider.getTypeNames()
+                  + ". Object instance needed for disambiguation.");
          }
+         return (BaseMarshallerDelegate<T>) registration.marshallerDelegate;
+      }
 
-         BaseMarshaller<T> marshaller = getMarshallerFromLegacyProvider(javaClass);
-         if (marshaller == null) {
-            throw new IllegalArgumentException("No marshaller registered for Java type " + javaClass.getName());
-         }
-         //todo [anistor] A marshaller delegate is created per call and cannot be cached! This is just legacy.
-         return makeMarshallerDelegate(marshaller);
-      } finally {
-         mReadLock.unlock();
+      LegacyRegistration legacyRegistration = registrations.getLegacyByClass(javaClass);
+      if (legacyRegistration == null) {
+         throw new IllegalArgumentException("No marshaller registered for Java type " + javaClass.getName());
       }
+      return legacyRegistration.getMarshallerDelegate(this);
    }
 
    public <T> BaseMarshallerDelegate<T> getMarshallerDelegate(T object) {
       Class<T> javaClass = (Class<T>) object.getClass();
-      mReadLock.lock();
-      try {
-         Registration registration = marshallersByClass.get(javaClass);
-         if (registration != null) {
-            if (registration.marshallerProvider != null) {
-               String typeName = ((InstanceMarshallerProvider<T>) registration.marshallerProvider).getTypeName(object);
-               if (typeName == null) {
-                  throw new IllegalArgumentException("No marshaller registered for object of Java type " + javaClass.getName() + " : " + object);
-               }
-               registration = marshallersByName.get(typeName);
-            }
-            if (registration != null) {
-               return (BaseMarshallerDelegate<T>) registration.marshallerDelegate;
+      // read the snapshot once, so both lookups see the same registrations
+      Registrations registrations = marshallers;
+      Registration registration = registrations.getByClass(javaClass);
+      if (registration != null) {
+         if (registration.marshallerProvider != null) {
+            String typeName = ((InstanceMarshallerProvider<T>) registration.marshallerProvider).getTypeName(object);
+            if (typeName == null) {
+               throw new IllegalArgumentException("No marshaller registered for object of Java type " + javaClass.getName() + " : " + object);
             }
+            registration = registrations.byName.get(typeName);
          }
-
-         BaseMarshaller<T> marshaller = getMarshallerFromLegacyProvider(javaClass);
-         if (marshaller == null) {
-            throw new IllegalArgumentException("No marshaller registered for object of Java type " + javaClass.getName() + " : " + object);
+         if (registration != null) {
+            return (BaseMarshallerDelegate<T>) registration.marshallerDelegate;
          }
-         //todo [anistor] A marshaller delegate is created per call and cannot be cached! This is just legacy.
-         return makeMarshallerDelegate(marshaller);
-      } finally {
-         mReadLock.unlock();
       }
+
+      LegacyRegistration legacyRegistration = registrations.getLegacyByClass(javaClass);
+      if (legacyRegistration == null) {
+         throw new IllegalArgumentException("No marshaller registered for object of Java type " + javaClass.getName() + " : " + object);
+      }
+      return legacyRegistration.getMarshallerDelegate(this);
    }
 
-   @GuardedBy("mReadLock")
    private <T> BaseMarshaller<T> getMarshallerFromLegacyProvider(Class<T> javaClass) {
       if (!legacyMarshallerProviders.isEmpty()) {
          for (MarshallerProvider mp : legacyMarshallerProviders) {
@@ -531,7 +763,6 @@ public final class SerializationContextImpl implements SerializationContext {
       return null;
    }
 
-   @GuardedBy("mReadLock")
    private <T> BaseMarshaller<T> getMarshallerFromLegacyProvider(String fullTypeName) {
       if (!legacyMarshallerProviders.isEmpty()) {
          for (MarshallerProvider mp : legacyMarshallerProviders) {
@@ -558,37 +789,11 @@ public final class SerializationContextImpl implements SerializationContext {
 
    @Override
    public GenericDescriptor getDescriptorByName(String fullTypeName) {
-      if (fullTypeName == null) {
-         throw new IllegalArgumentException("Type name argument cannot be null");
-      }
-
-      dReadLock.lock();
-      try {
-         GenericDescriptor descriptor = genericDescriptors.get(fullTypeName);
-         if (descriptor == null) {
-            throw new IllegalArgumentException("Unknown type name : " + fullTypeName);
-         }
-         return descriptor;
-      } finally {
-         dReadLock.unlock();
-      }
+      return descriptors.getDescriptorByName(fullTypeName);
    }
 
    @Override
    public GenericDescriptor getDescriptorByTypeId(Integer typeId) {
-      if (typeId == null) {
-         throw new IllegalArgumentException("Type id argument cannot be null");
-      }
-
-      dReadLock.lock();
-      try {
-         GenericDescriptor descriptor = typeIds.get(typeId);
-         if (descriptor == null) {
-            throw new IllegalArgumentException("Unknown type id : " + typeId);
-         }
-         return descriptor;
-      } finally {
-         dReadLock.unlock();
-      }
+      return descriptors.getDescriptorByTypeId(typeId);
    }
 }
@@ -35,13 +35,16 @@ public final class TagReaderImpl implements TagReader, ProtobufTagMarshaller.Rea
    private static final byte[] EMPTY = new byte[0];
    private static final ByteBuffer EMPTY_BUFFER = ByteBuffer.wrap(EMPTY);
 
-   private final SerializationContextImpl serCtx;
+   private SerializationContextImpl serCtx;
 
    // all reads are delegated to a lower level protocol decoder
-   private final Decoder decoder;
+   private Decoder decoder;
 
    private final TagReaderImpl parent;
 
+   // read length delimited fields as read-only slices of the input rather than copies, see Configuration.zeroCopyReads
+   private boolean zeroCopy;
+
    // lazily initialized
    private Map<Object, Object> params = null;
 
@@ -49,18 +52,34 @@ public final class TagReaderImpl implements TagReader, ProtobufTagMarshaller.Rea
    @Deprecated
    private ProtoStreamReaderImpl reader = null;
 
+   // the descriptors used by this top-level reader, pinned by the first lookup
+   private DescriptorGeneration descriptors = null;
+
+   // the view of serCtx using the pinned descriptors, created on demand
+   private PinnedSerializationContext pinnedContext = null;
+
+   // the decoders of a top-level reader that is being reset, kept for reuse
+   private ByteArrayDecoder byteArrayDecoder = null;
+   private InputStreamDecoder inputStreamDecoder = null;
+
    private TagReaderImpl(TagReaderImpl parent, Decoder decoder) {
       this.parent = parent;
       this.serCtx = parent.serCtx;
+      this.zeroCopy = parent.zeroCopy;
       this.decoder = decoder;
    }
 
    private TagReaderImpl(SerializationContextImpl serCtx, Decoder decoder) {
       this.parent = null;
       this.serCtx = serCtx;
+      this.zeroCopy = isZeroCopy(serCtx);
       this.decoder = decoder;
    }
 
+   private static boolean isZeroCopy(ImmutableSerializationContext serCtx) {
+      return serCtx != null && serCtx.getConfiguration().zeroCopyReads();
+   }
+
    public static TagReaderImpl newNestedInstance(ProtobufTagMarshaller.ReadContext parent, InputStream input) {
       return new TagReaderImpl((TagReaderImpl) parent, new InputStreamDecoder(input, ProtobufUtil.DEFAULT_STREAM_BUFFER_SIZE));
    }
@@ -69,15 +88,35 @@ public final class TagReaderImpl implements TagReader, ProtobufTagMarshaller.Rea
       return new TagReaderImpl((TagReaderImpl) parent, new ByteArrayDecoder(buf, 0, buf.length));
    }
 
+   public static TagReaderImpl newNestedInstance(ProtobufTagMarshaller.ReadContext parent, ByteBuffer buf) {
+      return new TagReaderImpl((TagReaderImpl) parent, newDecoder(buf));
+   }
+
+   private static Decoder newDecoder(ByteBuffer buf) {
+      return buf.hasArray()
+            ? new ByteArrayDecoder(buf.array(), buf.arrayOffset() + buf.position(), buf.remaining())
+            : new ByteBufferDecoder(buf);
+   }
+
    public static TagReaderImpl newInstance(ImmutableSerializationContext serCtx, InputStream input) {
       return new TagReaderImpl((SerializationContextImpl) serCtx, new InputStreamDecoder(input, ProtobufUtil.DEFAULT_STREAM_BUFFER_SIZE));
    }
 
    public static TagReaderImpl newInstance(ImmutableSerializationContext serCtx, ByteBuffer buf) {
-      Decoder decoder = buf.hasArray()
-            ? new ByteArrayDecoder(buf.array(), buf.arrayOffset() + buf.position(), buf.remaining())
-            : new ByteBufferDecoder(buf);
-      return new TagReaderImpl((SerializationContextImpl) serCtx, decoder);
+      return new TagReaderImpl((SerializationContextImpl) serCtx, newDecoder(buf));
+   }
+
+   /**
+    * Creates a top-level reader, having its own params, for a message that is embedded as opaque payload in the
+    * message read by another reader, like the ones wrapped in a {@link org.infinispan.protostream.WrappedMessage}. It
+    * uses the same descriptors as the other reader.
+    */
+   public static TagReaderImpl newEmbeddedInstance(ImmutableSerializationContext serCtx, TagReader outer, ByteBuffer buf) {
+      TagReaderImpl reader = newInstance(serCtx, buf);
+      if (outer instanceof TagReaderImpl) {
+         reader.descriptors = ((TagReaderImpl) outer).getDescriptorGeneration();
+      }
+      return reader;
    }
 
    public static TagReaderImpl newInstance(ImmutableSerializationContext serCtx, byte[] buf) {
@@ -88,6 +127,76 @@ public final class TagReaderImpl implements TagReader, ProtobufTagMarshaller.Rea
       return new TagReaderImpl((SerializationContextImpl) serCtx, new ByteArrayDecoder(buf, offset, length));
    }
 
+   /**
+    * Resets this top-level reader so it can be reused to read from a byte array, as if it was just created by {@link
+    * #newInstance(ImmutableSerializationContext, byte[], int, int)}. Any params are discarded. Decoders are reused.
+    */
+   public void reset(ImmutableSerializationContext serCtx, byte[] buf, int offset, int length) {
+      resetState(serCtx);
+      decoder = resetByteArrayDecoder(buf, offset, length);
+   }
+
+   /**
+    * Resets this top-level reader so it can be reused to read from a {@link ByteBuffer}, as if it was just created by
+    * {@link #newInstance(ImmutableSerializationContext, ByteBuffer)}.
+    */
+   public void reset(ImmutableSerializationContext serCtx, ByteBuffer buf) {
+      resetState(serCtx);
+      decoder = buf.hasArray()
+            ? resetByteArrayDecoder(buf.array(), buf.arrayOffset() + buf.position(), buf.remaining())
+            : new ByteBufferDecoder(buf);
+   }
+
+   /**
+    * Resets this top-level reader so it can be reused to read from a stream, as if it was just created by {@link
+    * #newInstance(ImmutableSerializationContext, InputStream)}. The buffer of the previous stream is reused.
+    */
+   public void reset(ImmutableSerializationContext serCtx, InputStream input) {
+      resetState(serCtx);
+      if (inputStreamDecoder == null) {
+         inputStreamDecoder = new InputStreamDecoder(input, ProtobufUtil.DEFAULT_STREAM_BUFFER_SIZE);
+      } else {
+         inputStreamDecoder.reset(input);
+      }
+      decoder = inputStreamDecoder;
+   }
+
+   private void resetState(ImmutableSerializationContext serCtx) {
+      if (parent != null) {
+         throw new IllegalStateException("Only top-level readers can be reset");
+      }
+      this.serCtx = (SerializationContextImpl) serCtx;
+      zeroCopy = isZeroCopy(serCtx);
+      if (params != null) {
+         params.clear();
+      }
+      reader = null;
+      descriptors = null;
+      pinnedContext = null;
+   }
+
+   private ByteArrayDecoder resetByteArrayDecoder(byte[] buf, int offset, int length) {
+      if (byteArrayDecoder == null) {
+         byteArrayDecoder = new ByteArrayDecoder(buf, offset, length);
+      } else {
+         byteArrayDecoder.reset(buf, offset, length);
+      }
+      return byteArrayDecoder;
+   }
+
+   /**
+    * Drops all references to the serialization context and to the user's arrays, buffers and streams, but keeps the
+    * decoders and buffers for a future reset.
+    */
+   void release() {
+      resetState(null);
+      params = null;
+      decoder = resetByteArrayDecoder(EMPTY, 0, 0);
+      if (inputStreamDecoder != null) {
+         inputStreamDecoder.in = null;
+      }
+   }
+
    @Override
    public boolean isAtEnd() throws IOException {
       return decoder.isAtEnd();
@@ -162,7 +271,47 @@ public final class TagReaderImpl implements TagReader, ProtobufTagMarshaller.Rea
    @Override
    public ByteBuffer readByteBuffer() throws IOException {
       int length = decoder.readVarint32();
-      return decoder.readRawByteBuffer(length);
+      ByteBuffer value = decoder.readRawByteBuffer(length);
+      return zeroCopy ? value.asReadOnlyBuffer() : value;
+   }
+
+   /**
+    * Reads a length delimited field into a view, avoiding a copy whenever the input allows it. The view is only valid
+    * until the next read.
+    */
+   void readBytesView(BytesViewImpl view) throws IOException {
+      int length = decoder.readVarint32();
+      decoder.readRawBytes(length, view);
+   }
+
+   /**
+    * Indicates if length delimited fields are read as slices of the input, see {@link
+    * org.infinispan.protostream.config.Configuration#zeroCopyReads()}.
+    */
+   boolean isZeroCopy() {
+      return zeroCopy;
+   }
+
+   /**
+    * Indicates if the input is an array, allowing random access using {@link #getPosition} and {@link #seek}.
+    */
+   boolean isSeekable() {
+      return decoder.isSeekable();
+   }
+
+   /**
+    * The current (absolute) position in the input. Can only be used if the input is seekable.
+    */
+   int getPosition() {
+      return decoder.getPosition();
+   }
+
+   /**
+    * Moves to a position previously obtained by {@link #getPosition}, which must be within the current limit. Can only
+    * be used if the input is seekable.
+    */
+   void seek(int position) {
+      decoder.seek(position);
    }
 
    @Override
@@ -209,11 +358,44 @@ public final class TagReaderImpl implements TagReader, ProtobufTagMarshaller.Rea
       decoder.popLimit(oldLimit);
    }
 
+   /**
+    * Indicates whether the size of the input is known in advance, so {@link #pushLimit} rejects the lengths going
+    * beyond its end. This is the case for byte array and ByteBuffer input, but not for streams.
+    */
+   public boolean isInputSizeKnown() {
+      return !(decoder instanceof InputStreamDecoder);
+   }
+
    @Override
    public SerializationContextImpl getSerializationContext() {
       return serCtx;
    }
 
+   private DescriptorGeneration getDescriptorGeneration() {
+      if (parent != null) {
+         return parent.getDescriptorGeneration();
+      }
+      if (descriptors == null) {
+         descriptors = serCtx.getDescriptorGeneration();
+      }
+      return descriptors;
+   }
+
+   /**
+    * Returns a view of the serialization context that looks up descriptors in the ones that were registered when this
+    * top-level read started. All lookups of a read made through it see the same descriptors, even if files are
+    * registered or unregistered concurrently.
+    */
+   public ImmutableSerializationContext getPinnedSerializationContext() {
+      if (parent != null) {
+         return parent.getPinnedSerializationContext();
+      }
+      if (pinnedContext == null) {
+         pinnedContext = new PinnedSerializationContext(serCtx, getDescriptorGeneration());
+      }
+      return pinnedContext;
+   }
+
    @Override
    public Object getParam(Object key) {
       if (parent != null) {
@@ -266,7 +448,31 @@ public final class TagReaderImpl implements TagReader, ProtobufTagMarshaller.Rea
 
       abstract boolean isAtEnd() throws IOException;
 
-      final int readTag() throws IOException {
+      boolean isSeekable() {
+         return false;
+      }
+
+      int getPosition() {
+         throw new UnsupportedOperationException(getClass().getName() + " does not support random access");
+      }
+
+      void seek(int position) {
+         throw new UnsupportedOperationException(getClass().getName() + " does not support random access");
+      }
+
+      /**
+       * Reads and validates a tag. Decoders override this with a fast path for the very common tags that are encoded in
+       * a single byte.
+       */
+      int readTag() throws IOException {
+         return readTagSlow();
+      }
+
+      /**
+       * The general case of {@link #readTag}, for tags that need more than one byte or for when the input is near its
+       * end.
+       */
+      final int readTagSlow() throws IOException {
          if (isAtEnd()) {
             lastTag = 0;
             return 0;
@@ -286,6 +492,14 @@ public final class TagReaderImpl implements TagReader, ProtobufTagMarshaller.Rea
          throw new MalformedProtobufException("Found an invalid protobuf tag (" + lastTag + ") having a field number smaller than 1");
       }
 
+      /**
+       * Checks if a single byte is a complete and valid tag, ie. it does not have the continuation bit set, it has a field
+       * number greater than 0 and a valid wire type. Such a byte can be returned as a tag without further processing.
+       */
+      static boolean isValidSingleByteTag(byte b) {
+         return b >= 1 << WireType.TAG_TYPE_NUM_BITS && (b & WireType.TAG_TYPE_BIT_MASK) <= WireType.WIRETYPE_FIXED32;
+      }
+
       final void checkLastTagWas(int expectedTag) throws IOException {
          if (lastTag == expectedTag || expectedTag == 0 && isAtEnd()) {
             return;
@@ -346,14 +560,99 @@ public final class TagReaderImpl implements TagReader, ProtobufTagMarshaller.Rea
       abstract ByteBuffer readRawByteBuffer(int length) throws IOException;
 
       /**
-       * Reads a Varint (possibly 64 bits wide) and silently discards the upper bits if larger than 32 bits.
+       * Points the view to the next {@code length} bytes. This generic implementation copies them. Decoders that are
+       * able to expose a backing array should override it.
        */
-      final int readVarint32() throws IOException {
-         return (int) readVarint64();
+      void readRawBytes(int length, BytesViewImpl view) throws IOException {
+         view.set(readRawByteArray(length), 0, length);
       }
 
+      /**
+       * Reads a Varint (possibly 64 bits wide) and silently discards the upper bits if larger than 32 bits.
+       */
+      abstract int readVarint32() throws IOException;
+
       abstract long readVarint64() throws IOException;
 
+      /**
+       * Reads a Varint byte by byte. This is the slow path of {@link #readVarint32} and {@link #readVarint64}, used when
+       * the buffer might end in the middle of the Varint.
+       */
+      final long readVarint64Slow() throws IOException {
+         long value = 0;
+         for (int i = 0; i < 64; i += 7) {
+            byte b = readRawByte();
+            value |= (long) (b & 0x7F) << i;
+            if (b >= 0) {
+               return value;
+            }
+         }
+         throw log.malformedVarint();
+      }
+
+      /**
+       * The position following the last Varint decoded by {@link #decodeVarint32} or {@link #decodeVarint64}.
+       */
+      int varintEnd;
+
+      /**
+       * Unrolled decoding of a Varint of at least two bytes, starting at position {@code p} of the array, shared by all
+       * decoders. The array must have at least {@link WireType#MAX_VARINT_SIZE} bytes starting at {@code p}. Returns the
+       * value, truncated to 32 bits, and stores the position following it in {@link #varintEnd}.
+       */
+      final int decodeVarint32(byte[] a, int p) throws IOException {
+         int x = a[p++];
+         // the continuation bits are cleared by xor-ing with the sign extended bytes accumulated so far
+         if ((x ^= a[p++] << 7) < 0) {
+            x ^= ~0 << 7;
+         } else if ((x ^= a[p++] << 14) >= 0) {
+            x ^= (~0 << 7) ^ (~0 << 14);
+         } else if ((x ^= a[p++] << 21) < 0) {
+            x ^= (~0 << 7) ^ (~0 << 14) ^ (~0 << 21);
+         } else {
+            int y = a[p++];
+            x ^= y << 28;
+            x ^= (~0 << 7) ^ (~0 << 14) ^ (~0 << 21) ^ (~0 << 28);
+            // skip the upper bits of a 64 bit Varint
+            if (y < 0 && a[p++] < 0 && a[p++] < 0 && a[p++] < 0 && a[p++] < 0 && a[p++] < 0) {
+               throw log.malformedVarint();
+            }
+         }
+         varintEnd = p;
+         return x;
+      }
+
+      /**
+       * Unrolled decoding of a 64 bit Varint, same as {@link #decodeVarint32}.
+       */
+      final long decodeVarint64(byte[] a, int p) throws IOException {
+         int y = a[p++];
+         long x;
+         if ((y ^= a[p++] << 7) < 0) {
+            x = y ^ (~0 << 7);
+         } else if ((y ^= a[p++] << 14) >= 0) {
+            x = y ^ ((~0 << 7) ^ (~0 << 14));
+         } else if ((y ^= a[p++] << 21) < 0) {
+            x = y ^ ((~0 << 7) ^ (~0 << 14) ^ (~0 << 21));
+         } else if ((x = y ^ ((long) a[p++] << 28)) >= 0L) {
+            x ^= (~0L << 7) ^ (~0L << 14) ^ (~0L << 21) ^ (~0L << 28);
+         } else if ((x ^= (long) a[p++] << 35) < 0L) {
+            x ^= (~0L << 7) ^ (~0L << 14) ^ (~0L << 21) ^ (~0L << 28) ^ (~0L << 35);
+         } else if ((x ^= (long) a[p++] << 42) >= 0L) {
+            x ^= (~0L << 7) ^ (~0L << 14) ^ (~0L << 21) ^ (~0L << 28) ^ (~0L << 35) ^ (~0L << 42);
+         } else if ((x ^= (long) a[p++] << 49) < 0L) {
+            x ^= (~0L << 7) ^ (~0L << 14) ^ (~0L << 21) ^ (~0L << 28) ^ (~0L << 35) ^ (~0L << 42) ^ (~0L << 49);
+         } else {
+            x ^= (long) a[p++] << 56;
+            x ^= (~0L << 7) ^ (~0L << 14) ^ (~0L << 21) ^ (~0L << 28) ^ (~0L << 35) ^ (~0L << 42) ^ (~0L << 49) ^ (~0L << 56);
+            if (x < 0L && a[p++] < 0) {
+               throw log.malformedVarint();
+            }
+         }
+         varintEnd = p;
+         return x;
+      }
+
       abstract int readFixed32() throws IOException;
 
       abstract long readFixed64() throws IOException;
@@ -374,11 +673,11 @@ public final class TagReaderImpl implements TagReader, ProtobufTagMarshaller.Rea
 
    private static final class ByteArrayDecoder extends Decoder {
 
-      private final byte[] array;
+      private byte[] array;
 
       // all positions are absolute
-      private final int start;
-      private final int stop;
+      private int start;
+      private int stop;
       private int pos;
       private int end; // limit adjusted
 
@@ -386,6 +685,13 @@ public final class TagReaderImpl implements TagReader, ProtobufTagMarshaller.Rea
       private int limit;
 
       private ByteArrayDecoder(byte[] array, int offset, int length) {
+         reset(array, offset, length);
+      }
+
+      /**
+       * Starts over, reading from the given array.
+       */
+      void reset(byte[] array, int offset, int length) {
          if (array == null) {
             throw new IllegalArgumentException("array cannot be null");
          }
@@ -405,6 +711,8 @@ public final class TagReaderImpl implements TagReader, ProtobufTagMarshaller.Rea
          this.start = this.pos = offset;
          this.limit = length;
          this.stop = this.end = offset + length;
+         this.globalLimit = Integer.MAX_VALUE;
+         this.lastTag = 0;
          adjustEnd();
       }
 
@@ -439,6 +747,24 @@ public final class TagReaderImpl implements TagReader, ProtobufTagMarshaller.Rea
          return pos == end;
       }
 
+      @Override
+      boolean isSeekable() {
+         return true;
+      }
+
+      @Override
+      int getPosition() {
+         return pos;
+      }
+
+      @Override
+      void seek(int position) {
+         if (position < start || position > end) {
+            throw new IllegalArgumentException("Position is outside the current limit : " + position);
+         }
+         pos = position;
+      }
+
       @Override
       String readString() throws IOException {
          int length = readVarint32();
@@ -491,26 +817,56 @@ public final class TagReaderImpl implements TagReader, ProtobufTagMarshaller.Rea
       }
 
       @Override
-      long readVarint64() throws IOException {
-         long value = 0;
-         if (end - pos >= MAX_VARINT_SIZE) {
-            for (int i = 0; i < 64; i += 7) {
-               byte b = array[pos++];
-               value |= (long) (b & 0x7F) << i;
-               if (b >= 0) {
-                  return value;
-               }
-            }
-         } else {
-            for (int i = 0; i < 64; i += 7) {
-               byte b = readRawByte();
-               value |= (long) (b & 0x7F) << i;
-               if (b >= 0) {
-                  return value;
-               }
+      int readTag() throws IOException {
+         if (pos < end) {
+            byte b = array[pos];
+            if (isValidSingleByteTag(b)) {
+               pos++;
+               lastTag = b;
+               return b;
             }
          }
-         throw log.malformedVarint();
+         return readTagSlow();
+      }
+
+      @Override
+      int readVarint32() throws IOException {
+         int p = pos;
+         if (p == end) {
+            return (int) readVarint64Slow();
+         }
+         int x;
+         if ((x = array[p]) >= 0) {
+            pos = p + 1;
+            return x;
+         }
+         if (end - p < MAX_VARINT_SIZE) {
+            // the Varint might be truncated, start over byte by byte
+            return (int) readVarint64Slow();
+         }
+         x = decodeVarint32(array, p);
+         pos = varintEnd;
+         return x;
+      }
+
+      @Override
+      long readVarint64() throws IOException {
+         int p = pos;
+         if (p == end) {
+            return readVarint64Slow();
+         }
+         int y;
+         if ((y = array[p]) >= 0) {
+            pos = p + 1;
+            return y;
+         }
+         if (end - p < MAX_VARINT_SIZE) {
+            // the Varint might be truncated, start over byte by byte
+            return readVarint64Slow();
+         }
+         long x = decodeVarint64(array, p);
+         pos = varintEnd;
+         return x;
       }
 
       @Override
@@ -554,6 +910,19 @@ public final class TagReaderImpl implements TagReader, ProtobufTagMarshaller.Rea
          }
       }
 
+      @Override
+      void readRawBytes(int length, BytesViewImpl view) throws IOException {
+         if (length >= 0 && length <= end - pos) {
+            view.set(array, pos, length);
+            pos += length;
+            return;
+         }
+         if (length < 0) {
+            throw log.negativeLength();
+         }
+         throw log.messageTruncated();
+      }
+
       @Override
       byte[] readRawByteArray(int length) throws IOException {
          if (length > 0 && length <= end - pos) {
@@ -592,6 +961,11 @@ public final class TagReaderImpl implements TagReader, ProtobufTagMarshaller.Rea
 
       private final ByteBuffer buf;
 
+      /**
+       * The bytes of the Varint being decoded, copied from the buffer.
+       */
+      private final byte[] varintBytes = new byte[MAX_VARINT_SIZE];
+
       // all positions are absolute
       private final int start;
       private final int stop;
@@ -691,26 +1065,60 @@ public final class TagReaderImpl implements TagReader, ProtobufTagMarshaller.Rea
       }
 
       @Override
-      long readVarint64() throws IOException {
-         long value = 0;
-         if (end - buf.position() >= MAX_VARINT_SIZE) {
-            for (int i = 0; i < 64; i += 7) {
-               byte b = buf.get();
-               value |= (long) (b & 0x7F) << i;
-               if (b >= 0) {
-                  return value;
-               }
-            }
-         } else {
-            for (int i = 0; i < 64; i += 7) {
-               byte b = readRawByte();
-               value |= (long) (b & 0x7F) << i;
-               if (b >= 0) {
-                  return value;
-               }
+      int readTag() throws IOException {
+         if (buf.position() < end) {
+            byte b = buf.get(buf.position());
+            if (isValidSingleByteTag(b)) {
+               buf.position(buf.position() + 1);
+               lastTag = b;
+               return b;
             }
          }
-         throw log.malformedVarint();
+         return readTagSlow();
+      }
+
+      @Override
+      int readVarint32() throws IOException {
+         int p = buf.position();
+         if (p == end) {
+            return (int) readVarint64Slow();
+         }
+         int x;
+         if ((x = buf.get(p)) >= 0) {
+            buf.position(p + 1);
+            return x;
+         }
+         if (end - p < MAX_VARINT_SIZE) {
+            // the Varint might be truncated, start over byte by byte
+            return (int) readVarint64Slow();
+         }
+         // a direct buffer, copy the bytes in bulk to decode them from an array
+         buf.get(varintBytes);
+         x = decodeVarint32(varintBytes, 0);
+         buf.position(p + varintEnd);
+         return x;
+      }
+
+      @Override
+      long readVarint64() throws IOException {
+         int p = buf.position();
+         if (p == end) {
+            return readVarint64Slow();
+         }
+         int y;
+         if ((y = buf.get(p)) >= 0) {
+            buf.position(p + 1);
+            return y;
+         }
+         if (end - p < MAX_VARINT_SIZE) {
+            // the Varint might be truncated, start over byte by byte
+            return readVarint64Slow();
+         }
+         // a direct buffer, copy the bytes in bulk to decode them from an array
+         buf.get(varintBytes);
+         long x = decodeVarint64(varintBytes, 0);
+         buf.position(p + varintEnd);
+         return x;
       }
 
       @Override
@@ -740,6 +1148,16 @@ public final class TagReaderImpl implements TagReader, ProtobufTagMarshaller.Rea
          }
       }
 
+      @Override
+      void readRawBytes(int length, BytesViewImpl view) throws IOException {
+         if (buf.hasArray() && length >= 0 && length <= end - buf.position()) {
+            view.set(buf.array(), buf.arrayOffset() + buf.position(), length);
+            buf.position(buf.position() + length);
+         } else {
+            super.readRawBytes(length, view);
+         }
+      }
+
       @Override
       byte[] readRawByteArray(int length) throws IOException {
          if (length > 0 && length <= end - buf.position()) {
@@ -776,7 +1194,7 @@ public final class TagReaderImpl implements TagReader, ProtobufTagMarshaller.Rea
 
    private static final class InputStreamDecoder extends Decoder {
 
-      private final InputStream in;
+      private InputStream in;
 
       private final byte[] buf;
 
@@ -816,6 +1234,23 @@ public final class TagReaderImpl implements TagReader, ProtobufTagMarshaller.Rea
          this.pos = 0;
       }
 
+      /**
+       * Starts over, reading from another stream with the same buffer.
+       */
+      void reset(InputStream in) {
+         if (in == null) {
+            throw new IllegalArgumentException("input stream cannot be null");
+         }
+         this.in = in;
+         this.end = 0;
+         this.pos = 0;
+         this.bytesBeforeStart = 0;
+         this.bytesAfterLimit = 0;
+         this.limit = Integer.MAX_VALUE;
+         this.globalLimit = Integer.MAX_VALUE;
+         this.lastTag = 0;
+      }
+
       @Override
       String readString() throws IOException {
          int length = readVarint32();
@@ -881,26 +1316,56 @@ public final class TagReaderImpl implements TagReader, ProtobufTagMarshaller.Rea
       }
 
       @Override
-      long readVarint64() throws IOException {
-         long value = 0;
-         if (end - pos >= MAX_VARINT_SIZE) {
-            for (int i = 0; i < 64; i += 7) {
-               byte b = buf[pos++];
-               value |= (long) (b & 0x7F) << i;
-               if (b >= 0) {
-                  return value;
-               }
-            }
-         } else {
-            for (int i = 0; i < 64; i += 7) {
-               byte b = readRawByte();
-               value |= (long) (b & 0x7F) << i;
-               if (b >= 0) {
-                  return value;
-               }
+      int readTag() throws IOException {
+         if (pos < end) {
+            byte b = buf[pos];
+            if (isValidSingleByteTag(b)) {
+               pos++;
+               lastTag = b;
+               return b;
             }
          }
-         throw log.malformedVarint();
+         return readTagSlow();
+      }
+
+      @Override
+      int readVarint32() throws IOException {
+         int p = pos;
+         if (p == end) {
+            return (int) readVarint64Slow();
+         }
+         int x;
+         if ((x = buf[p]) >= 0) {
+            pos = p + 1;
+            return x;
+         }
+         if (end - p < MAX_VARINT_SIZE) {
+            // the Varint might be truncated, start over byte by byte
+            return (int) readVarint64Slow();
+         }
+         x = decodeVarint32(buf, p);
+         pos = varintEnd;
+         return x;
+      }
+
+      @Override
+      long readVarint64() throws IOException {
+         int p = pos;
+         if (p == end) {
+            return readVarint64Slow();
+         }
+         int y;
+         if ((y = buf[p]) >= 0) {
+            pos = p + 1;
+            return y;
+         }
+         if (end - p < MAX_VARINT_SIZE) {
+            // the Varint might be truncated, start over byte by byte
+            return readVarint64Slow();
+         }
+         long x = decodeVarint64(buf, p);
+         pos = varintEnd;
+         return x;
       }
 
       @Override
@@ -1041,6 +1506,19 @@ public final class TagReaderImpl implements TagReader, ProtobufTagMarshaller.Rea
          return buf[pos++];
       }
 
+      @Override
+      void readRawBytes(int length, BytesViewImpl view) throws IOException {
+         if (length >= 0 && length <= buf.length) {
+            if (length > end - pos) {
+               fillBuffer(length);
+            }
+            view.set(buf, pos, length);
+            pos += length;
+         } else {
+            super.readRawBytes(length, view);
+         }
+      }
+
       @Override
       byte[] readRawByteArray(int length) throws IOException {
          if (length > 0 && length <= end - pos) {
@@ -5,8 +5,7 @@ import java.io.OutputStream;
 import java.nio.BufferOverflowException;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
-import java.nio.charset.Charset;
-import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -14,6 +13,8 @@ import org.infinispan.protostream.ImmutableSerializationContext;
 import org.infinispan.protostream.ProtobufTagMarshaller;
 import org.infinispan.protostream.ProtobufUtil;
 import org.infinispan.protostream.TagWriter;
+import org.infinispan.protostream.descriptors.FieldDescriptor;
+import org.infinispan.protostream.descriptors.Type;
 import org.infinispan.protostream.descriptors.WireType;
 
 import static org.infinispan.protostream.descriptors.WireType.FIXED_32_SIZE;
@@ -28,12 +29,23 @@ public final class TagWriterImpl implements TagWriter, ProtobufTagMarshaller.Wri
 
    private static final Log log = Log.LogFactory.getLog(TagWriterImpl.class);
 
-   private static final Charset UTF8 = StandardCharsets.UTF_8;
+   /**
+    * The byte used by the JDK's UTF-8 encoder as a replacement for malformed input (unpaired surrogates).
+    */
+   private static final byte UTF8_REPLACEMENT = '?';
+
+   private static final byte[] EMPTY = new byte[0];
+
+   /**
+    * The biggest growable array kept by a writer that is released, so a single big message does not pin a lot of
+    * memory.
+    */
+   private static final int MAX_RETAINED_GROWABLE_CAPACITY = 64 * 1024;
 
-   private final SerializationContextImpl serCtx;
+   private SerializationContextImpl serCtx;
 
    // all writes are delegated to a lower level protocol encoder
-   private final Encoder encoder;
+   private Encoder encoder;
 
    private final TagWriterImpl parent;
 
@@ -44,6 +56,21 @@ public final class TagWriterImpl implements TagWriter, ProtobufTagMarshaller.Wri
    @Deprecated
    private ProtoStreamWriterImpl writer = null;
 
+   // the descriptors used by this top-level writer, pinned by the first lookup
+   private DescriptorGeneration descriptors = null;
+
+   // the view of serCtx using the pinned descriptors, created on demand
+   private PinnedSerializationContext pinnedContext = null;
+
+   // lazily initialized, shared with all writers that write in place to the same encoder and with their sizing writers
+   private NestedSizes nestedSizes = null;
+
+   // the encoders of a top-level writer that is being reset, kept for reuse
+   private NoOpEncoder noOpEncoder = null;
+   private ByteArrayEncoder byteArrayEncoder = null;
+   private OutputStreamEncoder outputStreamEncoder = null;
+   private GrowableByteArrayEncoder growableByteArrayEncoder = null;
+
    private TagWriterImpl(TagWriterImpl parent, Encoder encoder) {
       this.parent = parent;
       this.serCtx = parent.serCtx;
@@ -56,6 +83,16 @@ public final class TagWriterImpl implements TagWriter, ProtobufTagMarshaller.Wri
       this.encoder = encoder;
    }
 
+   private TagWriterImpl(TagWriterImpl parent, Encoder encoder, NestedSizes nestedSizes) {
+      this(parent, encoder);
+      this.nestedSizes = nestedSizes;
+   }
+
+   private TagWriterImpl(SerializationContextImpl serCtx, Encoder encoder, NestedSizes nestedSizes) {
+      this(serCtx, encoder);
+      this.nestedSizes = nestedSizes;
+   }
+
    public static TagWriterImpl newNestedInstance(ProtobufTagMarshaller.WriteContext parent, OutputStream output) {
       return new TagWriterImpl((TagWriterImpl) parent, new OutputStreamEncoder(output, ProtobufUtil.DEFAULT_STREAM_BUFFER_SIZE));
    }
@@ -85,13 +122,258 @@ public final class TagWriterImpl implements TagWriter, ProtobufTagMarshaller.Wri
       return new TagWriterImpl((SerializationContextImpl) serCtx, encoder);
    }
 
+   /**
+    * Creates a writer that appends to a chain of pooled chunks, growing it as needed.
+    */
+   public static TagWriterImpl newInstance(ImmutableSerializationContext serCtx, ByteBufferChunks chunks) {
+      return new TagWriterImpl((SerializationContextImpl) serCtx, new ChunkedByteBufferEncoder(chunks));
+   }
+
    public static TagWriterImpl newInstance(ImmutableSerializationContext serCtx) {
       return new TagWriterImpl((SerializationContextImpl) serCtx, new NoOpEncoder());
    }
 
+   /**
+    * Creates a writer that appends to an internal byte array, growing it as needed. Length delimited fields of
+    * unknown length can be written in place using {@link #startLengthDelimitedField} and {@link
+    * #endLengthDelimitedField}. The result is obtained with {@link #toByteArray()}.
+    */
+   public static TagWriterImpl newGrowableInstance(ImmutableSerializationContext serCtx, int initialCapacity) {
+      return new TagWriterImpl((SerializationContextImpl) serCtx, new GrowableByteArrayEncoder(initialCapacity));
+   }
+
+   /**
+    * Resets this top-level writer so it can be reused for a sizing pass, as if it was just created by {@link
+    * #newInstance(ImmutableSerializationContext)}. Any params and nested message sizes are discarded. Encoders are
+    * reused.
+    */
+   public void reset(ImmutableSerializationContext serCtx) {
+      resetState(serCtx);
+      if (noOpEncoder == null) {
+         noOpEncoder = new NoOpEncoder();
+      } else {
+         noOpEncoder.reset();
+      }
+      encoder = noOpEncoder;
+   }
+
+   /**
+    * Resets this top-level writer so it can be reused to write to a byte array, as if it was just created by {@link
+    * #newInstance(ImmutableSerializationContext, byte[], int, int)}.
+    */
+   public void reset(ImmutableSerializationContext serCtx, byte[] buf, int offset, int length) {
+      resetState(serCtx);
+      encoder = resetByteArrayEncoder(buf, offset, length);
+   }
+
+   /**
+    * Resets this top-level writer so it can be reused to write to a stream, as if it was just created by {@link
+    * #newInstance(ImmutableSerializationContext, OutputStream, int)}. The buffer of the previous stream is reused if it
+    * has the same size.
+    */
+   public void reset(ImmutableSerializationContext serCtx, OutputStream output, int bufferSize) {
+      resetState(serCtx);
+      if (outputStreamEncoder == null || !outputStreamEncoder.reset(output, bufferSize)) {
+         outputStreamEncoder = new OutputStreamEncoder(output, bufferSize);
+      }
+      encoder = outputStreamEncoder;
+   }
+
+   /**
+    * Resets this top-level writer so it can be reused to write to a byte array that grows as needed, as if it was just
+    * created by {@link #newGrowableInstance}. The array of the previous growable writer is reused.
+    */
+   public void resetGrowable(ImmutableSerializationContext serCtx, int initialCapacity) {
+      resetState(serCtx);
+      if (growableByteArrayEncoder == null) {
+         growableByteArrayEncoder = new GrowableByteArrayEncoder(initialCapacity);
+      } else {
+         growableByteArrayEncoder.reset();
+      }
+      encoder = growableByteArrayEncoder;
+   }
+
+   private void resetState(ImmutableSerializationContext serCtx) {
+      if (parent != null) {
+         throw new IllegalStateException("Only top-level writers can be reset");
+      }
+      this.serCtx = (SerializationContextImpl) serCtx;
+      if (params != null) {
+         params.clear();
+      }
+      writer = null;
+      descriptors = null;
+      pinnedContext = null;
+      if (nestedSizes != null) {
+         nestedSizes.index = nestedSizes.count = 0;
+      }
+   }
+
+   private ByteArrayEncoder resetByteArrayEncoder(byte[] buf, int offset, int length) {
+      if (byteArrayEncoder == null) {
+         byteArrayEncoder = new ByteArrayEncoder(buf, offset, length);
+      } else {
+         byteArrayEncoder.reset(buf, offset, length);
+      }
+      return byteArrayEncoder;
+   }
+
+   /**
+    * Drops all references to the serialization context and to the user's objects, arrays and streams, but keeps the
+    * encoders and buffers for a future reset.
+    */
+   void release() {
+      resetState(null);
+      params = null;
+      if (byteArrayEncoder != null) {
+         byteArrayEncoder.reset(EMPTY, 0, 0);
+      }
+      if (outputStreamEncoder != null) {
+         outputStreamEncoder.out = null;
+      }
+      if (growableByteArrayEncoder != null && growableByteArrayEncoder.capacity() > MAX_RETAINED_GROWABLE_CAPACITY) {
+         growableByteArrayEncoder = null;
+      }
+      encoder = noOpEncoder != null ? noOpEncoder : new NoOpEncoder();
+   }
+
+   /**
+    * Returns the number of bytes written so far, including the ones that were already flushed.
+    */
    public int getWrittenBytes() {
-      // the CCE here will signal misuse; let it happen
-      return ((NoOpEncoder) encoder).getWrittenBytes();
+      return encoder.getWrittenBytes();
+   }
+
+   /**
+    * Starts a length delimited field whose length is not known yet. The contents of the field must be written next,
+    * with this same writer, and must be followed by a call to {@link #endLengthDelimitedField} with the returned
+    * handle. Fields can be nested. Only supported by writers created with {@link #newGrowableInstance}.
+    *
+    * @return the handle of the field
+    */
+   public int startLengthDelimitedField(int fieldNumber) throws IOException {
+      return growableEncoder().startLengthDelimitedField(fieldNumber);
+   }
+
+   /**
+    * Ends a length delimited field started by {@link #startLengthDelimitedField}, writing its length.
+    *
+    * @param handle the handle returned by {@link #startLengthDelimitedField}
+    */
+   public void endLengthDelimitedField(int handle) {
+      growableEncoder().endLengthDelimitedField(handle);
+   }
+
+   /**
+    * Returns a copy of the bytes written so far. All the fields started with {@link #startLengthDelimitedField} must
+    * have been ended. Only supported by writers created with {@link #newGrowableInstance}.
+    */
+   public byte[] toByteArray() {
+      return growableEncoder().toByteArray();
+   }
+
+   private GrowableByteArrayEncoder growableEncoder() {
+      if (!(encoder instanceof GrowableByteArrayEncoder)) {
+         throw new IllegalStateException("The writer is not backed by a growable byte array");
+      }
+      return (GrowableByteArrayEncoder) encoder;
+   }
+
+   /**
+    * Writes a nested message as a length delimited field. The message is marshalled by this same writer, in place,
+    * without going through a temporary buffer. The length of the message must be known before writing it so a sizing
+    * pass is performed first. The sizing pass records the sizes of all messages nested at any depth, so it is performed
+    * just once for the outermost nested message. Encoders that cannot take back what they wrote, like the stream one,
+    * write the message through a temporary buffer instead, without a sizing pass.
+    */
+   public <T> void writeNestedMessage(int fieldNumber, BaseMarshallerDelegate<T> marshallerDelegate, FieldDescriptor fieldDescriptor, T message) throws IOException {
+      if (nestedSizes == null) {
+         nestedSizes = new NestedSizes();
+      }
+      writeMessage(this, fieldNumber, marshallerDelegate, fieldDescriptor, message);
+   }
+
+   /**
+    * Writes a message as a length delimited field, in place, similarly to {@link #writeNestedMessage}, but the message
+    * is marshalled by a separate top-level writer (having its own params and message contexts) that shares our
+    * encoder. This is needed for messages that are not really nested in the current message, but are just embedded
+    * as opaque payload, like the ones wrapped in a {@link org.infinispan.protostream.WrappedMessage}.
+    */
+   public <T> void writeEmbeddedMessage(int fieldNumber, BaseMarshallerDelegate<T> marshallerDelegate, T message) throws IOException {
+      if (nestedSizes == null) {
+         nestedSizes = new NestedSizes();
+      }
+      TagWriterImpl writer = new TagWriterImpl(serCtx, encoder, nestedSizes);
+      writer.descriptors = getDescriptorGeneration();
+      writeMessage(writer, fieldNumber, marshallerDelegate, null, message);
+   }
+
+   /**
+    * Performs the sizing or the actual writing of a message, using the given writer for the marshaller. The writer
+    * shares our encoder and our nested sizes.
+    */
+   private <T> void writeMessage(TagWriterImpl writer, int fieldNumber, BaseMarshallerDelegate<T> marshallerDelegate, FieldDescriptor fieldDescriptor, T message) throws IOException {
+      if (encoder instanceof NoOpEncoder) {
+         // This is a sizing pass. Reserve a slot for the size of this message before processing its own nested
+         // messages so the sizes are recorded in the exact order the writing pass will need them.
+         int slot = nestedSizes.reserve();
+         int start = encoder.getWrittenBytes();
+         marshallerDelegate.marshall(writer, fieldDescriptor, message);
+         int size = encoder.getWrittenBytes() - start;
+         nestedSizes.sizes[slot] = size;
+         encoder.writeLengthDelimitedField(fieldNumber, size);
+         return;
+      }
+
+      if (!encoder.canDiscard()) {
+         // the message could not be written again if its size turns out wrong, so it is written through a buffer
+         writeBuffered(writer, fieldNumber, marshallerDelegate, fieldDescriptor, message);
+         return;
+      }
+
+      if (nestedSizes.index == nestedSizes.count) {
+         // no sizes were computed for this message, so this is an outermost nested message; size it and its descendants
+         nestedSizes.index = nestedSizes.count = 0;
+         TagWriterImpl sizingWriter = new TagWriterImpl(writer, new NoOpEncoder(), nestedSizes);
+         sizingWriter.writeMessage(sizingWriter, fieldNumber, marshallerDelegate, fieldDescriptor, message);
+      }
+      int size = nestedSizes.sizes[nestedSizes.index++];
+      int fieldStart = encoder.getWrittenBytes();
+      encoder.writeLengthDelimitedField(fieldNumber, size);
+      int start = encoder.getWrittenBytes();
+      marshallerDelegate.marshall(writer, fieldDescriptor, message);
+      int writtenSize = encoder.getWrittenBytes() - start;
+      if (writtenSize != size) {
+         // The marshaller did not write the same thing as in the sizing pass. Discard the field and write it again
+         // through a temporary buffer. The remaining sizes cannot be trusted either, so they will be computed again.
+         if (!encoder.discard(encoder.getWrittenBytes() - fieldStart)) {
+            throw new IllegalStateException("Failed to discard the nested message written in field " + fieldNumber);
+         }
+         log.debugf("The size of the nested message written in field %d differs from the size computed in the sizing pass. Marshaller %s is not deterministic.",
+               fieldNumber, marshallerDelegate.getMarshaller().getClass().getName());
+         nestedSizes.index = nestedSizes.count = 0;
+         writeBuffered(writer, fieldNumber, marshallerDelegate, fieldDescriptor, message);
+      }
+   }
+
+   /**
+    * Writes a message as a length delimited field by marshalling it into a temporary buffer first, using a writer that
+    * has the same parent as the given one.
+    */
+   private <T> void writeBuffered(TagWriterImpl writer, int fieldNumber, BaseMarshallerDelegate<T> marshallerDelegate, FieldDescriptor fieldDescriptor, T message) throws IOException {
+      ByteArrayOutputStreamEx buffer = new ByteArrayOutputStreamEx();
+      Encoder bufferEncoder = new OutputStreamEncoder(buffer, ProtobufUtil.DEFAULT_STREAM_BUFFER_SIZE);
+      TagWriterImpl bufferWriter;
+      if (writer == this) {
+         bufferWriter = new TagWriterImpl(this, bufferEncoder);
+      } else {
+         bufferWriter = new TagWriterImpl(serCtx, bufferEncoder);
+         bufferWriter.descriptors = getDescriptorGeneration();
+      }
+      marshallerDelegate.marshall(bufferWriter, fieldDescriptor, message);
+      bufferWriter.flush();
+      encoder.writeLengthDelimitedField(fieldNumber, buffer.size());
+      encoder.writeBytes(buffer.getByteBuffer());
    }
 
    @Override
@@ -121,14 +403,11 @@ public final class TagWriterImpl implements TagWriter, ProtobufTagMarshaller.Wri
 
    @Override
    public void writeString(int number, String value) throws IOException {
-      // TODO [anistor] This is expensive! What can we do to make it more efficient?
-      // Also, when just count bytes for message size we do a useless first conversion, and another one will follow later.
-
-      // Charset.encode is not able to encode directly into our own buffers!
-      ByteBuffer utf8buffer = UTF8.encode(value);
-
-      encoder.writeLengthDelimitedField(number, utf8buffer.remaining());
-      encoder.writeBytes(utf8buffer);
+      // Charset.encode is not able to encode directly into our own buffers, so we do our own encoding, in two passes:
+      // first compute the exact length, then encode directly into the encoder's backing store, without any allocation
+      int utf8Length = utf8Length(value);
+      encoder.writeLengthDelimitedField(number, utf8Length);
+      encoder.writeUtf8(value, utf8Length);
    }
 
    @Override
@@ -224,6 +503,137 @@ public final class TagWriterImpl implements TagWriter, ProtobufTagMarshaller.Wri
       encoder.writeBytes(value, offset, length);
    }
 
+   @Override
+   public void writePackedInts(int number, Type type, int[] values, int offset, int length) throws IOException {
+      if (length == 0) {
+         return;
+      }
+      final int end = offset + length;
+      int size = 0;
+      switch (type) {
+         case INT32:
+         case ENUM:
+            for (int i = offset; i < end; i++) {
+               int value = values[i];
+               // negative values are always sign extended to 64 bits
+               size += value >= 0 ? varint32Size(value) : MAX_VARINT_SIZE;
+            }
+            encoder.writeLengthDelimitedField(number, size);
+            for (int i = offset; i < end; i++) {
+               int value = values[i];
+               if (value >= 0) {
+                  encoder.writeVarint32(value);
+               } else {
+                  encoder.writeVarint64(value);
+               }
+            }
+            break;
+         case UINT32:
+            for (int i = offset; i < end; i++) {
+               size += varint32Size(values[i]);
+            }
+            encoder.writeLengthDelimitedField(number, size);
+            for (int i = offset; i < end; i++) {
+               encoder.writeVarint32(values[i]);
+            }
+            break;
+         case SINT32:
+            for (int i = offset; i < end; i++) {
+               int value = values[i];
+               size += varint32Size((value << 1) ^ (value >> 31));
+            }
+            encoder.writeLengthDelimitedField(number, size);
+            for (int i = offset; i < end; i++) {
+               int value = values[i];
+               encoder.writeVarint32((value << 1) ^ (value >> 31));
+            }
+            break;
+         case FIXED32:
+         case SFIXED32:
+            encoder.writeLengthDelimitedField(number, length * FIXED_32_SIZE);
+            for (int i = offset; i < end; i++) {
+               encoder.writeFixed32(values[i]);
+            }
+            break;
+         default:
+            throw new IllegalArgumentException("Type " + type + " cannot be written as a packed 32 bit integral field");
+      }
+   }
+
+   @Override
+   public void writePackedLongs(int number, Type type, long[] values, int offset, int length) throws IOException {
+      if (length == 0) {
+         return;
+      }
+      final int end = offset + length;
+      int size = 0;
+      switch (type) {
+         case INT64:
+         case UINT64:
+            for (int i = offset; i < end; i++) {
+               size += varint64Size(values[i]);
+            }
+            encoder.writeLengthDelimitedField(number, size);
+            for (int i = offset; i < end; i++) {
+               encoder.writeVarint64(values[i]);
+            }
+            break;
+         case SINT64:
+            for (int i = offset; i < end; i++) {
+               long value = values[i];
+               size += varint64Size((value << 1) ^ (value >> 63));
+            }
+            encoder.writeLengthDelimitedField(number, size);
+            for (int i = offset; i < end; i++) {
+               long value = values[i];
+               encoder.writeVarint64((value << 1) ^ (value >> 63));
+            }
+            break;
+         case FIXED64:
+         case SFIXED64:
+            encoder.writeLengthDelimitedField(number, length * FIXED_64_SIZE);
+            for (int i = offset; i < end; i++) {
+               encoder.writeFixed64(values[i]);
+            }
+            break;
+         default:
+            throw new IllegalArgumentException("Type " + type + " cannot be written as a packed 64 bit integral field");
+      }
+   }
+
+   @Override
+   public void writePackedDoubles(int number, double[] values, int offset, int length) throws IOException {
+      if (length == 0) {
+         return;
+      }
+      encoder.writeLengthDelimitedField(number, length * FIXED_64_SIZE);
+      for (int i = offset, end = offset + length; i < end; i++) {
+         encoder.writeFixed64(Double.doubleToRawLongBits(values[i]));
+      }
+   }
+
+   @Override
+   public void writePackedFloats(int number, float[] values, int offset, int length) throws IOException {
+      if (length == 0) {
+         return;
+      }
+      encoder.writeLengthDelimitedField(number, length * FIXED_32_SIZE);
+      for (int i = offset, end = offset + length; i < end; i++) {
+         encoder.writeFixed32(Float.floatToRawIntBits(values[i]));
+      }
+   }
+
+   @Override
+   public void writePackedBools(int number, boolean[] values, int offset, int length) throws IOException {
+      if (length == 0) {
+         return;
+      }
+      encoder.writeLengthDelimitedField(number, length);
+      for (int i = offset, end = offset + length; i < end; i++) {
+         encoder.writeByte((byte) (values[i] ? 1 : 0));
+      }
+   }
+
    @Override
    public void writeRawByte(byte value) throws IOException {
       encoder.writeByte(value);
@@ -244,6 +654,31 @@ public final class TagWriterImpl implements TagWriter, ProtobufTagMarshaller.Wri
       return serCtx;
    }
 
+   private DescriptorGeneration getDescriptorGeneration() {
+      if (parent != null) {
+         return parent.getDescriptorGeneration();
+      }
+      if (descriptors == null) {
+         descriptors = serCtx.getDescriptorGeneration();
+      }
+      return descriptors;
+   }
+
+   /**
+    * Returns a view of the serialization context that looks up descriptors in the ones that were registered when this
+    * top-level write started. All lookups of a write made through it see the same descriptors, even if files are
+    * registered or unregistered concurrently.
+    */
+   public ImmutableSerializationContext getPinnedSerializationContext() {
+      if (parent != null) {
+         return parent.getPinnedSerializationContext();
+      }
+      if (pinnedContext == null) {
+         pinnedContext = new PinnedSerializationContext(serCtx, getDescriptorGeneration());
+      }
+      return pinnedContext;
+   }
+
    @Override
    public Object getParam(Object key) {
       if (parent != null) {
@@ -287,9 +722,166 @@ public final class TagWriterImpl implements TagWriter, ProtobufTagMarshaller.Wri
       return writer;
    }
 
+   /**
+    * Computes the encoded size of an unsigned varint.
+    */
+   static int varint32Size(int value) {
+      // every 7 significant bits take one byte; zero still takes one byte
+      return (38 - Integer.numberOfLeadingZeros(value | 1)) / 7;
+   }
+
+   /**
+    * Computes the encoded size of an unsigned 64 bit varint.
+    */
+   static int varint64Size(long value) {
+      return (70 - Long.numberOfLeadingZeros(value | 1)) / 7;
+   }
+
+   /**
+    * Computes the length of the UTF-8 encoding of a String, in a single pass and without allocating. Unpaired surrogates
+    * are counted as one byte because they get replaced with {@link #UTF8_REPLACEMENT}, just like the JDK encoder does.
+    */
+   static int utf8Length(String value) {
+      int length = value.length();
+      int i = 0;
+
+      // fast path for the leading ASCII chars, which is very often the whole string
+      while (i < length && value.charAt(i) < 0x80) {
+         i++;
+      }
+
+      int utf8Length = length;
+      for (; i < length; i++) {
+         char c = value.charAt(i);
+         if (c < 0x80) {
+            // ASCII, 1 byte
+         } else if (c < 0x800) {
+            utf8Length += 1;
+         } else if (!Character.isSurrogate(c)) {
+            utf8Length += 2;
+         } else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(value.charAt(i + 1))) {
+            // a surrogate pair, 2 chars that encode to 4 bytes
+            utf8Length += 2;
+            i++;
+         }
+         // else an unpaired surrogate, 1 byte
+      }
+      return utf8Length;
+   }
+
+   /**
+    * Encodes a String to UTF-8 directly into a byte array, starting at the given position. The caller must ensure there
+    * is enough space, as computed by {@link #utf8Length(String)}. Returns the position after the last written byte.
+    *
+    * @throws IndexOutOfBoundsException if the array is not large enough
+    */
+   static int encodeUtf8(String value, byte[] array, int pos) {
+      return encodeUtf8(value, 0, value.length(), array, pos);
+   }
+
+   /**
+    * Encodes the chars of a String between {@code start} (inclusive) and {@code end} (exclusive) to UTF-8 directly into
+    * a byte array, starting at the given position. A surrogate pair must not be split by {@code end}. This is the only
+    * UTF-8 encoding loop, all encoders use it either directly on their backing array or through a scratch array.
+    * Returns the position after the last written byte.
+    *
+    * @throws IndexOutOfBoundsException if the array is not large enough
+    */
+   static int encodeUtf8(String value, int start, int end, byte[] array, int pos) {
+      int i = start;
+
+      // fast path for the leading ASCII chars
+      for (char c; i < end && (c = value.charAt(i)) < 0x80; i++) {
+         array[pos++] = (byte) c;
+      }
+
+      for (; i < end; i++) {
+         char c = value.charAt(i);
+         if (c < 0x80) {
+            array[pos++] = (byte) c;
+         } else if (c < 0x800) {
+            array[pos++] = (byte) (0xC0 | (c >>> 6));
+            array[pos++] = (byte) (0x80 | (c & 0x3F));
+         } else if (!Character.isSurrogate(c)) {
+            array[pos++] = (byte) (0xE0 | (c >>> 12));
+            array[pos++] = (byte) (0x80 | ((c >>> 6) & 0x3F));
+            array[pos++] = (byte) (0x80 | (c & 0x3F));
+         } else if (Character.isHighSurrogate(c) && i + 1 < end && Character.isLowSurrogate(value.charAt(i + 1))) {
+            int codePoint = Character.toCodePoint(c, value.charAt(++i));
+            array[pos++] = (byte) (0xF0 | (codePoint >>> 18));
+            array[pos++] = (byte) (0x80 | ((codePoint >>> 12) & 0x3F));
+            array[pos++] = (byte) (0x80 | ((codePoint >>> 6) & 0x3F));
+            array[pos++] = (byte) (0x80 | (codePoint & 0x3F));
+         } else {
+            array[pos++] = UTF8_REPLACEMENT;
+         }
+      }
+      return pos;
+   }
+
+   /**
+    * Encodes an unsigned varint directly into a byte array, starting at the given position. Returns the position after
+    * the last written byte.
+    *
+    * @throws IndexOutOfBoundsException if the array is not large enough
+    */
+   static int encodeVarint32(int value, byte[] array, int pos) {
+      while ((value & 0xFFFFFF80) != 0) {
+         array[pos++] = (byte) (value & 0x7F | 0x80);
+         value >>>= 7;
+      }
+      array[pos++] = (byte) value;
+      return pos;
+   }
+
+   /**
+    * Encodes an unsigned 64 bit varint directly into a byte array, starting at the given position. Returns the position
+    * after the last written byte.
+    *
+    * @throws IndexOutOfBoundsException if the array is not large enough
+    */
+   static int encodeVarint64(long value, byte[] array, int pos) {
+      while ((value & 0xFFFFFFFFFFFFFF80L) != 0) {
+         array[pos++] = (byte) ((int) value & 0x7F | 0x80);
+         value >>>= 7;
+      }
+      array[pos++] = (byte) value;
+      return pos;
+   }
+
+   /**
+    * The sizes of nested messages, recorded by a sizing pass in pre-order, which is the order in which the writing pass
+    * will consume them.
+    */
+   private static final class NestedSizes {
+
+      int[] sizes = new int[8];
+
+      /**
+       * Number of recorded sizes.
+       */
+      int count;
+
+      /**
+       * Index of the next size to be consumed.
+       */
+      int index;
+
+      int reserve() {
+         if (count == sizes.length) {
+            sizes = Arrays.copyOf(sizes, count * 2);
+         }
+         return count++;
+      }
+   }
+
    //todo [anistor] need to provide a safety mechanism to limit message size in bytes and message nesting depth on write ops
    private abstract static class Encoder {
 
+      private static final int SCRATCH_SIZE = 256;
+
+      private byte[] scratch;
+
       /**
        * Commits the witten bytes after several write operations were performed. Updates counters, positions, whatever.
        */
@@ -328,11 +920,43 @@ public final class TagWriterImpl implements TagWriter, ProtobufTagMarshaller.Wri
          writeVarint32(length);
       }
 
+      /**
+       * The number of bytes written so far, including the ones already flushed.
+       */
+      abstract int getWrittenBytes();
+
+      /**
+       * Discards the given number of bytes written last, if they were not flushed yet.
+       *
+       * @return {@code true} if the bytes were discarded, {@code false} if they can no longer be discarded
+       */
+      boolean discard(int count) {
+         return false;
+      }
+
+      /**
+       * Whether all the bytes written from now on can be {@link #discard discarded}, no matter how many. Encoders that
+       * hand over the bytes to their destination while writing cannot promise that.
+       */
+      boolean canDiscard() {
+         return false;
+      }
+
       // low level ops, writing values without tag
 
-      abstract void writeVarint32(int value) throws IOException;
+      /**
+       * Writes a varint. This generic implementation encodes it into the scratch array and writes the bytes in bulk.
+       * Encoders having direct access to a backing array should override it.
+       */
+      void writeVarint32(int value) throws IOException {
+         byte[] scratch = scratch();
+         writeBytes(scratch, 0, encodeVarint32(value, scratch, 0));
+      }
 
-      abstract void writeVarint64(long value) throws IOException;
+      void writeVarint64(long value) throws IOException {
+         byte[] scratch = scratch();
+         writeBytes(scratch, 0, encodeVarint64(value, scratch, 0));
+      }
 
       abstract void writeFixed32(int value) throws IOException;
 
@@ -343,6 +967,38 @@ public final class TagWriterImpl implements TagWriter, ProtobufTagMarshaller.Wri
       abstract void writeBytes(byte[] value, int offset, int length) throws IOException;
 
       abstract void writeBytes(ByteBuffer value) throws IOException;
+
+      /**
+       * Writes the UTF-8 encoding of a String. The {@code utf8Length} must be computed beforehand with {@link
+       * #utf8Length(String)}. This generic implementation encodes slices of the String into the scratch array and
+       * writes them in bulk. Encoders having direct access to a backing array should override it.
+       */
+      void writeUtf8(String value, int utf8Length) throws IOException {
+         byte[] scratch = scratch();
+         int length = value.length();
+         int start = 0;
+         while (start < length) {
+            // a char takes at most 3 bytes, a surrogate pair takes 4 bytes for 2 chars
+            int end = Math.min(length, start + SCRATCH_SIZE / 3);
+            if (end < length && Character.isHighSurrogate(value.charAt(end - 1))) {
+               // do not split a surrogate pair
+               end--;
+            }
+            writeBytes(scratch, 0, encodeUtf8(value, start, end, scratch, 0));
+            start = end;
+         }
+      }
+
+      /**
+       * Returns the array used by the generic implementations to encode a value before writing it in bulk. It is
+       * allocated on first use, once per encoder.
+       */
+      final byte[] scratch() {
+         if (scratch == null) {
+            scratch = new byte[SCRATCH_SIZE];
+         }
+         return scratch;
+      }
    }
 
    /**
@@ -353,6 +1009,7 @@ public final class TagWriterImpl implements TagWriter, ProtobufTagMarshaller.Wri
 
       private int count = 0;
 
+      @Override
       int getWrittenBytes() {
          return count;
       }
@@ -379,26 +1036,19 @@ public final class TagWriterImpl implements TagWriter, ProtobufTagMarshaller.Wri
          count += value.remaining();
       }
 
+      @Override
+      void writeUtf8(String value, int utf8Length) {
+         count += utf8Length;
+      }
+
       @Override
       void writeVarint32(int value) {
-         while (true) {
-            count++;
-            if ((value & 0xFFFFFF80) == 0) {
-               break;
-            }
-            value >>>= 7;
-         }
+         count += varint32Size(value);
       }
 
       @Override
       void writeVarint64(long value) {
-         while (true) {
-            count++;
-            if ((value & 0xFFFFFFFFFFFFFF80L) == 0) {
-               break;
-            }
-            value >>>= 7;
-         }
+         count += varint64Size(value);
       }
 
       @Override
@@ -417,15 +1067,27 @@ public final class TagWriterImpl implements TagWriter, ProtobufTagMarshaller.Wri
     */
    private static class ByteArrayEncoder extends Encoder {
 
-      private final byte[] array;
+      private byte[] array;
 
-      protected final int offset;
+      protected int offset;
 
-      protected final int limit;
+      protected int limit;
 
       protected int pos;
 
+      /**
+       * Number of bytes flushed to a stream. Only used when this serves as the buffer of an {@link OutputStreamEncoder}.
+       */
+      private int flushedBytes = 0;
+
       private ByteArrayEncoder(byte[] array, int offset, int length) {
+         reset(array, offset, length);
+      }
+
+      /**
+       * Starts over, writing to the given array.
+       */
+      final void reset(byte[] array, int offset, int length) {
          if (array == null) {
             throw new IllegalArgumentException("array cannot be null");
          }
@@ -435,7 +1097,7 @@ public final class TagWriterImpl implements TagWriter, ProtobufTagMarshaller.Wri
          if (length < 0) {
             throw new IllegalArgumentException("length cannot be negative");
          }
-         if (offset >= array.length) {
+         if (offset > array.length) {
             throw new IllegalArgumentException("start position is outside array bounds");
          }
          if (offset + length > array.length) {
@@ -445,6 +1107,26 @@ public final class TagWriterImpl implements TagWriter, ProtobufTagMarshaller.Wri
          this.offset = offset;
          this.limit = offset + length;
          this.pos = offset;
+         this.flushedBytes = 0;
+      }
+
+      @Override
+      int getWrittenBytes() {
+         return flushedBytes + pos - offset;
+      }
+
+      @Override
+      boolean discard(int count) {
+         if (count > pos - offset) {
+            return false;
+         }
+         pos -= count;
+         return true;
+      }
+
+      @Override
+      boolean canDiscard() {
+         return true;
       }
 
       protected final int remainingSpace() {
@@ -457,6 +1139,7 @@ public final class TagWriterImpl implements TagWriter, ProtobufTagMarshaller.Wri
       protected final void flushToStream(OutputStream out, int requiredSpace) throws IOException {
          if (requiredSpace > limit - pos) {
             out.write(array, 0, pos);
+            flushedBytes += pos;
             pos = 0;
          }
       }
@@ -467,6 +1150,7 @@ public final class TagWriterImpl implements TagWriter, ProtobufTagMarshaller.Wri
       protected final void flushToStream(OutputStream out) throws IOException {
          if (pos > 0) {
             out.write(array, 0, pos);
+            flushedBytes += pos;
             pos = 0;
          }
       }
@@ -523,18 +1207,19 @@ public final class TagWriterImpl implements TagWriter, ProtobufTagMarshaller.Wri
          }
       }
 
+      @Override
+      final void writeUtf8(String value, int utf8Length) throws IOException {
+         try {
+            pos = encodeUtf8(value, array, pos);
+         } catch (IndexOutOfBoundsException e) {
+            throw log.outOfWriteBufferSpace(e);
+         }
+      }
+
       @Override
       final void writeVarint32(int value) throws IOException {
          try {
-            while (true) {
-               if ((value & 0xFFFFFF80) == 0) {
-                  array[pos++] = (byte) value;
-                  break;
-               } else {
-                  array[pos++] = (byte) (value & 0x7F | 0x80);
-                  value >>>= 7;
-               }
-            }
+            pos = encodeVarint32(value, array, pos);
          } catch (IndexOutOfBoundsException e) {
             throw log.outOfWriteBufferSpace(e);
          }
@@ -543,15 +1228,7 @@ public final class TagWriterImpl implements TagWriter, ProtobufTagMarshaller.Wri
       @Override
       final void writeVarint64(long value) throws IOException {
          try {
-            while (true) {
-               if ((value & 0xFFFFFFFFFFFFFF80L) == 0) {
-                  array[pos++] = (byte) value;
-                  break;
-               } else {
-                  array[pos++] = (byte) ((int) value & 0x7F | 0x80);
-                  value >>>= 7;
-               }
-            }
+            pos = encodeVarint64(value, array, pos);
          } catch (IndexOutOfBoundsException e) {
             throw log.outOfWriteBufferSpace(e);
          }
@@ -621,31 +1298,35 @@ public final class TagWriterImpl implements TagWriter, ProtobufTagMarshaller.Wri
        */
       private final boolean reverse;
 
+      private final int startPos;
+
       private ByteBufferEncoder(ByteBuffer buffer) {
          this.buffer = buffer;
          this.reverse = buffer.order() == ByteOrder.BIG_ENDIAN;
+         this.startPos = buffer.position();
       }
 
       @Override
-      void writeByte(byte value) throws IOException {
-         try {
-            buffer.put(value);
-         } catch (BufferOverflowException e) {
-            throw log.outOfWriteBufferSpace(e);
-         }
+      int getWrittenBytes() {
+         return buffer.position() - startPos;
       }
 
       @Override
-      void writeBytes(byte[] value, int offset, int length) throws IOException {
-         try {
-            buffer.put(value, offset, length);
-         } catch (IndexOutOfBoundsException | BufferOverflowException e) {
-            throw log.outOfWriteBufferSpace(e);
+      boolean discard(int count) {
+         if (count > buffer.position() - startPos) {
+            return false;
          }
+         buffer.position(buffer.position() - count);
+         return true;
       }
 
       @Override
-      void writeBytes(ByteBuffer value) throws IOException {
+      boolean canDiscard() {
+         return true;
+      }
+
+      @Override
+      void writeByte(byte value) throws IOException {
          try {
             buffer.put(value);
          } catch (BufferOverflowException e) {
@@ -654,34 +1335,18 @@ public final class TagWriterImpl implements TagWriter, ProtobufTagMarshaller.Wri
       }
 
       @Override
-      void writeVarint32(int value) throws IOException {
+      void writeBytes(byte[] value, int offset, int length) throws IOException {
          try {
-            while (true) {
-               if ((value & 0xFFFFFF80) == 0) {
-                  buffer.put((byte) value);
-                  break;
-               } else {
-                  buffer.put((byte) (value & 0x7F | 0x80));
-                  value >>>= 7;
-               }
-            }
-         } catch (BufferOverflowException e) {
+            buffer.put(value, offset, length);
+         } catch (IndexOutOfBoundsException | BufferOverflowException e) {
             throw log.outOfWriteBufferSpace(e);
          }
       }
 
       @Override
-      void writeVarint64(long value) throws IOException {
+      void writeBytes(ByteBuffer value) throws IOException {
          try {
-            while (true) {
-               if ((value & 0xFFFFFFFFFFFFFF80L) == 0) {
-                  buffer.put((byte) value);
-                  break;
-               } else {
-                  buffer.put((byte) ((int) value & 0x7F | 0x80));
-                  value >>>= 7;
-               }
-            }
+            buffer.put(value);
          } catch (BufferOverflowException e) {
             throw log.outOfWriteBufferSpace(e);
          }
@@ -712,6 +1377,188 @@ public final class TagWriterImpl implements TagWriter, ProtobufTagMarshaller.Wri
       }
    }
 
+   /**
+    * Writes to a chain of {@link ByteBuffer} chunks, acquiring a new chunk from the pool whenever the current one is
+    * full. Values that do not fit in the remaining space of the current chunk are split across chunks. The chunks are
+    * not handed over before the write completes, so discarding bytes can give back whole chunks to the pool.
+    */
+   private static final class ChunkedByteBufferEncoder extends Encoder {
+
+      private final ByteBufferChunks chunks;
+
+      private ByteBuffer buffer;
+
+      /**
+       * If the byte order of the current chunk is not LITTLE_ENDIAN as expected by Protobuf binary format then we need
+       * to reverse bytes whenever we write a fixed32 or fixed64 value.
+       */
+      private boolean reverse;
+
+      private int startPos;
+
+      /**
+       * The chunk this encoder started writing to, which might have been partially written before.
+       */
+      private final ByteBuffer firstBuffer;
+
+      private final int firstStartPos;
+
+      /**
+       * Number of bytes written to the chunks preceding the current one.
+       */
+      private int previousChunksBytes = 0;
+
+      private ChunkedByteBufferEncoder(ByteBufferChunks chunks) {
+         this.chunks = chunks;
+         ByteBuffer current = chunks.currentChunk();
+         if (current == null) {
+            current = chunks.nextChunk();
+         }
+         setBuffer(current, current.position());
+         firstBuffer = buffer;
+         firstStartPos = startPos;
+      }
+
+      private void setBuffer(ByteBuffer buffer, int startPos) {
+         this.buffer = buffer;
+         this.reverse = buffer.order() == ByteOrder.BIG_ENDIAN;
+         this.startPos = startPos;
+      }
+
+      private void nextChunk() {
+         previousChunksBytes += buffer.position() - startPos;
+         ByteBuffer next = chunks.nextChunk();
+         setBuffer(next, next.position());
+      }
+
+      private void previousChunk() {
+         ByteBuffer previous = chunks.discardLastChunk();
+         setBuffer(previous, previous == firstBuffer ? firstStartPos : 0);
+         previousChunksBytes -= previous.position() - startPos;
+      }
+
+      @Override
+      int getWrittenBytes() {
+         return previousChunksBytes + buffer.position() - startPos;
+      }
+
+      @Override
+      boolean discard(int count) {
+         if (count > getWrittenBytes()) {
+            return false;
+         }
+         while (count > buffer.position() - startPos) {
+            count -= buffer.position() - startPos;
+            previousChunk();
+         }
+         buffer.position(buffer.position() - count);
+         return true;
+      }
+
+      @Override
+      boolean canDiscard() {
+         return true;
+      }
+
+      @Override
+      void writeByte(byte value) {
+         if (!buffer.hasRemaining()) {
+            nextChunk();
+         }
+         buffer.put(value);
+      }
+
+      @Override
+      void writeBytes(byte[] value, int offset, int length) {
+         while (length > 0) {
+            if (!buffer.hasRemaining()) {
+               nextChunk();
+            }
+            int n = Math.min(length, buffer.remaining());
+            buffer.put(value, offset, n);
+            offset += n;
+            length -= n;
+         }
+      }
+
+      @Override
+      void writeBytes(ByteBuffer value) {
+         while (value.hasRemaining()) {
+            if (!buffer.hasRemaining()) {
+               nextChunk();
+            }
+            if (value.remaining() <= buffer.remaining()) {
+               buffer.put(value);
+            } else {
+               int n = buffer.remaining();
+               ByteBuffer part = value.duplicate();
+               part.limit(part.position() + n);
+               buffer.put(part);
+               value.position(value.position() + n);
+            }
+         }
+      }
+
+      @Override
+      void writeVarint32(int value) throws IOException {
+         if (buffer.hasArray() && buffer.remaining() >= MAX_VARINT_SIZE) {
+            int offset = buffer.arrayOffset();
+            buffer.position(encodeVarint32(value, buffer.array(), offset + buffer.position()) - offset);
+         } else {
+            // might span two chunks, or the chunk is direct
+            super.writeVarint32(value);
+         }
+      }
+
+      @Override
+      void writeVarint64(long value) throws IOException {
+         if (buffer.hasArray() && buffer.remaining() >= MAX_VARINT_SIZE) {
+            int offset = buffer.arrayOffset();
+            buffer.position(encodeVarint64(value, buffer.array(), offset + buffer.position()) - offset);
+         } else {
+            // might span two chunks, or the chunk is direct
+            super.writeVarint64(value);
+         }
+      }
+
+      @Override
+      void writeUtf8(String value, int utf8Length) throws IOException {
+         if (buffer.hasArray() && buffer.remaining() >= utf8Length) {
+            int offset = buffer.arrayOffset();
+            buffer.position(encodeUtf8(value, buffer.array(), offset + buffer.position()) - offset);
+         } else {
+            // might span several chunks, or the chunk is direct
+            super.writeUtf8(value, utf8Length);
+         }
+      }
+
+      @Override
+      void writeFixed32(int value) {
+         if (buffer.remaining() < FIXED_32_SIZE) {
+            // might span two chunks
+            for (int i = 0; i < FIXED_32_SIZE; i++) {
+               writeByte((byte) value);
+               value >>>= 8;
+            }
+            return;
+         }
+         buffer.putInt(reverse ? Integer.reverseBytes(value) : value);
+      }
+
+      @Override
+      void writeFixed64(long value) {
+         if (buffer.remaining() < FIXED_64_SIZE) {
+            // might span two chunks
+            for (int i = 0; i < FIXED_64_SIZE; i++) {
+               writeByte((byte) value);
+               value >>>= 8;
+            }
+            return;
+         }
+         buffer.putLong(reverse ? Long.reverseBytes(value) : value);
+      }
+   }
+
    /**
     * Writes to an {@link OutputStream} and performs internal buffering to minimize the number of stream writes.
     */
@@ -719,15 +1566,50 @@ public final class TagWriterImpl implements TagWriter, ProtobufTagMarshaller.Wri
 
       private final ByteArrayEncoder buffer;
 
-      private final OutputStream out;
+      private OutputStream out;
+
+      /**
+       * Number of bytes written directly to the stream, bypassing our buffer.
+       */
+      private int directBytes = 0;
 
       OutputStreamEncoder(OutputStream out, int bufferSize) {
+         bufferSize = adjustBufferSize(bufferSize);
+         buffer = new ByteArrayEncoder(new byte[bufferSize], 0, bufferSize);
+         this.out = out;
+      }
+
+      private static int adjustBufferSize(int bufferSize) {
          // Must fit at least 2 varints without having to flush, so we can write the biggest possible tag and also
          // the biggest possible field value, except for length delimited fields which can be arbitrarily big, but at
          // least their length varint should fit.
-         bufferSize = Math.max(bufferSize, MAX_VARINT_SIZE * 2);
-         buffer = new ByteArrayEncoder(new byte[bufferSize], 0, bufferSize);
+         return Math.max(bufferSize, MAX_VARINT_SIZE * 2);
+      }
+
+      /**
+       * Starts over, writing to another stream. The buffer is reused only if it has the requested size.
+       *
+       * @return {@code true} if the reset was successful, {@code false} if the buffer size does not match
+       */
+      boolean reset(OutputStream out, int bufferSize) {
+         bufferSize = adjustBufferSize(bufferSize);
+         if (buffer.array.length != bufferSize) {
+            return false;
+         }
+         buffer.reset(buffer.array, 0, bufferSize);
          this.out = out;
+         directBytes = 0;
+         return true;
+      }
+
+      @Override
+      int getWrittenBytes() {
+         return buffer.getWrittenBytes() + directBytes;
+      }
+
+      @Override
+      boolean discard(int count) {
+         return buffer.discard(count);
       }
 
       @Override
@@ -803,6 +1685,7 @@ public final class TagWriterImpl implements TagWriter, ProtobufTagMarshaller.Wri
          } else {
             buffer.flushToStream(out);
             out.write(value, offset, length);
+            directBytes += length;
          }
       }
 
@@ -816,9 +1699,189 @@ public final class TagWriterImpl implements TagWriter, ProtobufTagMarshaller.Wri
          }
       }
 
+      @Override
+      void writeUtf8(String value, int utf8Length) throws IOException {
+         buffer.flushToStream(out, utf8Length);
+         if (buffer.remainingSpace() >= utf8Length) {
+            buffer.writeUtf8(value, utf8Length);
+         } else {
+            // too large for our buffer, encode it in slices and let writeBytes flush as needed
+            super.writeUtf8(value, utf8Length);
+         }
+      }
+
       @Override
       void flush() throws IOException {
          buffer.flushToStream(out);
       }
    }
+
+   /**
+    * Appends to a byte array, growing it as needed. A length delimited field of unknown length reserves room for the
+    * longest varint length prefix, and once its length is known the prefix is written at the end of the reserved room,
+    * right before the contents. The unused part of the room is left as a gap, which is never moved around while the
+    * fields are written: the gaps are all removed at once when the result is copied out by {@link #toByteArray}.
+    */
+   private static final class GrowableByteArrayEncoder extends Encoder {
+
+      private final ByteArrayEncoder buffer;
+
+      /**
+       * The position of the room reserved by each started field, in the order they were started, which is also their
+       * order in the array.
+       */
+      private int[] gapPositions = new int[8];
+
+      /**
+       * The size of the gap left by each ended field. For a field not ended yet, the value of {@link #gapTotal} when
+       * it was started, encoded as {@code -gapTotal - 1} so it can be told apart.
+       */
+      private int[] gapSizes = new int[8];
+
+      private int gapCount;
+
+      /**
+       * The sum of the sizes of the gaps of the ended fields.
+       */
+      private int gapTotal;
+
+      GrowableByteArrayEncoder(int initialCapacity) {
+         initialCapacity = Math.max(initialCapacity, MAX_VARINT_SIZE * 2);
+         buffer = new ByteArrayEncoder(new byte[initialCapacity], 0, initialCapacity);
+      }
+
+      private void ensureSpace(int requiredSpace) {
+         if (buffer.remainingSpace() < requiredSpace) {
+            int pos = buffer.pos;
+            int newCapacity = Math.max(buffer.array.length << 1, pos + requiredSpace);
+            buffer.reset(Arrays.copyOf(buffer.array, newCapacity), 0, newCapacity);
+            buffer.pos = pos;
+         }
+      }
+
+      int startLengthDelimitedField(int fieldNumber) throws IOException {
+         ensureSpace(MAX_VARINT_SIZE * 2);
+         buffer.writeVarint32(WireType.makeTag(fieldNumber, WireType.WIRETYPE_LENGTH_DELIMITED));
+         if (gapCount == gapPositions.length) {
+            gapPositions = Arrays.copyOf(gapPositions, gapCount << 1);
+            gapSizes = Arrays.copyOf(gapSizes, gapCount << 1);
+         }
+         gapPositions[gapCount] = buffer.pos;
+         gapSizes[gapCount] = -gapTotal - 1;
+         buffer.pos += MAX_VARINT_SIZE;
+         return gapCount++;
+      }
+
+      void endLengthDelimitedField(int handle) {
+         int start = gapPositions[handle] + MAX_VARINT_SIZE;
+         // the gaps of the nested fields are not part of the contents
+         int length = buffer.pos - start - (gapTotal + gapSizes[handle] + 1);
+         int pos = start - varint32Size(length);
+         int gapSize = pos - gapPositions[handle];
+         encodeVarint32(length, buffer.array, pos);
+         gapSizes[handle] = gapSize;
+         gapTotal += gapSize;
+      }
+
+      void reset() {
+         buffer.reset(buffer.array, 0, buffer.array.length);
+         gapCount = 0;
+         gapTotal = 0;
+      }
+
+      int capacity() {
+         return buffer.array.length;
+      }
+
+      byte[] toByteArray() {
+         if (gapCount == 0) {
+            return Arrays.copyOf(buffer.array, buffer.pos);
+         }
+         byte[] result = new byte[buffer.pos - gapTotal];
+         int from = 0;
+         int to = 0;
+         for (int i = 0; i < gapCount; i++) {
+            int length = gapPositions[i] - from;
+            System.arraycopy(buffer.array, from, result, to, length);
+            to += length;
+            from = gapPositions[i] + gapSizes[i];
+         }
+         System.arraycopy(buffer.array, from, result, to, buffer.pos - from);
+         return result;
+      }
+
+      @Override
+      int getWrittenBytes() {
+         return buffer.getWrittenBytes() - gapTotal;
+      }
+
+      @Override
+      boolean discard(int count) {
+         // the rooms reserved by the fields started within the discarded bytes are discarded too
+         int end = getWrittenBytes() - count;
+         while (gapCount > 0) {
+            int gapSize = gapSizes[gapCount - 1];
+            int gapsBefore = gapSize >= 0 ? gapTotal - gapSize : gapTotal;
+            if (gapPositions[gapCount - 1] - gapsBefore < end) {
+               break;
+            }
+            gapTotal = gapsBefore;
+            gapCount--;
+         }
+         return buffer.discard(buffer.pos - (end + gapTotal));
+      }
+
+      @Override
+      boolean canDiscard() {
+         return true;
+      }
+
+      @Override
+      void writeVarint32(int value) throws IOException {
+         ensureSpace(MAX_VARINT_SIZE);
+         buffer.writeVarint32(value);
+      }
+
+      @Override
+      void writeVarint64(long value) throws IOException {
+         ensureSpace(MAX_VARINT_SIZE);
+         buffer.writeVarint64(value);
+      }
+
+      @Override
+      void writeFixed32(int value) throws IOException {
+         ensureSpace(FIXED_32_SIZE);
+         buffer.writeFixed32(value);
+      }
+
+      @Override
+      void writeFixed64(long value) throws IOException {
+         ensureSpace(FIXED_64_SIZE);
+         buffer.writeFixed64(value);
+      }
+
+      @Override
+      void writeByte(byte value) throws IOException {
+         ensureSpace(1);
+         buffer.writeByte(value);
+      }
+
+      @Override
+      void writeBytes(byte[] value, int offset, int length) throws IOException {
+         ensureSpace(length);
+         buffer.writeBytes(value, offset, length);
+      }
+
+      @Override
+      void writeBytes(ByteBuffer value) throws IOException {
+         ensureSpace(value.remaining());
+         buffer.writeBytes(value);
+      }
+
+      @Override
+      void writeUtf8(String value, int utf8Length) throws IOException {
+         ensureSpace(utf8Length);
+         buffer.writeUtf8(value, utf8Length);
+      }
+   }
 }
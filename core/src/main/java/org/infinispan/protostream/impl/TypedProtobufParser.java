@@ -0,0 +1,166 @@
+package org.infinispan.protostream.impl;
+
+import java.io.IOException;
+
+import org.infinispan.protostream.TypedTagHandler;
+import org.infinispan.protostream.descriptors.Descriptor;
+import org.infinispan.protostream.descriptors.FieldDescriptor;
+import org.infinispan.protostream.descriptors.Type;
+import org.infinispan.protostream.descriptors.WireType;
+
+/**
+ * Parses a message and reports its fields to a {@link TypedTagHandler}, without boxing the values and without copying
+ * the length delimited ones. This is the implementation of the {@code TypedTagHandler} variants of {@link
+ * org.infinispan.protostream.ProtobufParser}.
+ *
+ * @since 4.4
+ */
+public final class TypedProtobufParser {
+
+   private TypedProtobufParser() {
+   }
+
+   public static void parse(TypedTagHandler tagHandler, Descriptor messageDescriptor, TagReaderImpl in) throws IOException {
+      if (messageDescriptor == null) {
+         throw new IllegalArgumentException("messageDescriptor cannot be null");
+      }
+      BytesViewImpl view = new BytesViewImpl();
+      tagHandler.onStart(messageDescriptor);
+      parseMessage(tagHandler, messageDescriptor, in, view);
+      tagHandler.onEnd();
+      view.clear();
+   }
+
+   private static void parseMessage(TypedTagHandler tagHandler, Descriptor messageDescriptor, TagReaderImpl in, BytesViewImpl view) throws IOException {
+      int tag;
+      while ((tag = in.readTag()) != 0) {
+         final int fieldNumber = WireType.getTagFieldNumber(tag);
+         final FieldDescriptor fd = messageDescriptor != null ? messageDescriptor.findFieldByNumber(fieldNumber) : null;
+
+         switch (WireType.getTagWireType(tag)) {
+            case WireType.WIRETYPE_LENGTH_DELIMITED: {
+               if (fd == null) {
+                  in.readBytesView(view);
+                  tagHandler.onBytes(fieldNumber, null, view);
+               } else if (fd.getType() == Type.STRING) {
+                  in.readBytesView(view);
+                  tagHandler.onString(fieldNumber, fd, view);
+               } else if (fd.getType() == Type.BYTES) {
+                  in.readBytesView(view);
+                  tagHandler.onBytes(fieldNumber, fd, view);
+               } else if (fd.getType() == Type.MESSAGE) {
+                  if (tagHandler.onStartNested(fieldNumber, fd)) {
+                     int length = in.readUInt32();
+                     int oldLimit = in.pushLimit(length);
+                     parseMessage(tagHandler, fd.getMessageType(), in, view);
+                     in.checkLastTagWas(0);
+                     in.popLimit(oldLimit);
+                     tagHandler.onEndNested(fieldNumber, fd);
+                  } else {
+                     in.skipField(tag);
+                  }
+               } else if (fd.isRepeated() && fd.getType().isPackable()) {
+                  // packed repeated field, each element is reported separately as if it was not packed
+                  int length = in.readUInt32();
+                  int oldLimit = in.pushLimit(length);
+                  while (!in.isAtEnd()) {
+                     readScalar(tagHandler, fieldNumber, fd, in);
+                  }
+                  in.popLimit(oldLimit);
+               } else {
+                  in.skipField(tag);
+               }
+               break;
+            }
+
+            case WireType.WIRETYPE_START_GROUP: {
+               // groups are not supported by our schemas, so they are always unknown
+               if (tagHandler.onStartNested(fieldNumber, null)) {
+                  parseMessage(tagHandler, null, in, view);
+                  in.checkLastTagWas(WireType.makeTag(fieldNumber, WireType.WIRETYPE_END_GROUP));
+                  tagHandler.onEndNested(fieldNumber, null);
+               } else {
+                  in.skipField(tag);
+               }
+               break;
+            }
+
+            case WireType.WIRETYPE_VARINT:
+               if (fd == null) {
+                  tagHandler.onInt64(fieldNumber, null, in.readUInt64());
+               } else {
+                  readScalar(tagHandler, fieldNumber, fd, in);
+               }
+               break;
+
+            case WireType.WIRETYPE_FIXED32:
+               if (fd == null) {
+                  tagHandler.onFixed32(fieldNumber, null, in.readFixed32());
+               } else {
+                  readScalar(tagHandler, fieldNumber, fd, in);
+               }
+               break;
+
+            case WireType.WIRETYPE_FIXED64:
+               if (fd == null) {
+                  tagHandler.onFixed64(fieldNumber, null, in.readFixed64());
+               } else {
+                  readScalar(tagHandler, fieldNumber, fd, in);
+               }
+               break;
+
+            default:
+               throw new IOException("Found tag with invalid wire type : tag=" + tag + ", wireType=" + WireType.getTagWireType(tag));
+         }
+      }
+   }
+
+   private static void readScalar(TypedTagHandler tagHandler, int fieldNumber, FieldDescriptor fd, TagReaderImpl in) throws IOException {
+      switch (fd.getType()) {
+         case DOUBLE:
+            tagHandler.onDouble(fieldNumber, fd, in.readDouble());
+            break;
+         case FLOAT:
+            tagHandler.onFloat(fieldNumber, fd, in.readFloat());
+            break;
+         case BOOL:
+            tagHandler.onBool(fieldNumber, fd, in.readBool());
+            break;
+         case INT32:
+            tagHandler.onInt32(fieldNumber, fd, in.readInt32());
+            break;
+         case UINT32:
+            tagHandler.onInt32(fieldNumber, fd, in.readUInt32());
+            break;
+         case SINT32:
+            tagHandler.onInt32(fieldNumber, fd, in.readSInt32());
+            break;
+         case FIXED32:
+            tagHandler.onFixed32(fieldNumber, fd, in.readFixed32());
+            break;
+         case SFIXED32:
+            tagHandler.onFixed32(fieldNumber, fd, in.readSFixed32());
+            break;
+         case INT64:
+            tagHandler.onInt64(fieldNumber, fd, in.readInt64());
+            break;
+         case UINT64:
+            tagHandler.onInt64(fieldNumber, fd, in.readUInt64());
+            break;
+         case SINT64:
+            tagHandler.onInt64(fieldNumber, fd, in.readSInt64());
+            break;
+         case FIXED64:
+            tagHandler.onFixed64(fieldNumber, fd, in.readFixed64());
+            break;
+         case SFIXED64:
+            tagHandler.onFixed64(fieldNumber, fd, in.readSFixed64());
+            break;
+         case ENUM:
+            tagHandler.onEnum(fieldNumber, fd, in.readEnum());
+            break;
+         default:
+            throw new IOException("Unexpected field type " + fd.getType() + " for field " + fd.getNumber());
+      }
+   }
+}
@@ -5,12 +5,7 @@ import java.io.IOException;
 import java.io.ObjectInput;
 import java.io.ObjectOutput;
 import java.nio.ByteBuffer;
-import java.util.ArrayDeque;
-import java.util.Deque;
-import java.util.HashMap;
-import java.util.Map;
-import java.util.SortedMap;
-import java.util.TreeMap;
+import java.util.Arrays;
 
 import org.infinispan.protostream.TagReader;
 import org.infinispan.protostream.TagWriter;
@@ -20,43 +15,42 @@ import org.infinispan.protostream.descriptors.WireType;
 /**
  * {@link UnknownFieldSet} implementation. This is not thread-safe. This class should never be directly instantiated by
  * users even though it is marked {@code public}.
+ * <p>
+ * The fields are kept in their encoded form, in the order they were read, in a single contiguous byte array. An index
+ * of (tag, offset, length) triples locates each of them. Values are decoded (and boxed) only when consumed, and
+ * writing the set back is a raw copy of the fields that were not consumed.
  *
  * @author anistor@redhat.com
  * @since 1.0
  */
 public final class UnknownFieldSetImpl implements UnknownFieldSet, Externalizable {
 
-   // elements of the Deque can be one of : varint, fixed32, fixed64, byte[] or UnknownFieldSetImpl
-   // this is created lazily
-   private Map<Integer, Deque<Object>> fields;
+   private static final int INDEX_ENTRY_SIZE = 3;
+
+   // the encoded fields, including their tags; this is created lazily
+   private byte[] data;
+
+   private int dataLength;
+
+   // (tag, offset, length) of each field in data; the tag is 0 if the field was consumed
+   private int[] index;
+
+   // number of entries in the index, including the consumed ones
+   private int numEntries;
+
+   // number of entries not yet consumed
+   private int numFields;
+
+   // all entries before this one were consumed
+   private int firstEntry;
 
    public UnknownFieldSetImpl() {
       // needs to be public to be Serializable/Externalizable
    }
 
-   /**
-    * Get a Deque of values for the given tag. A new Deque is created and added if it does not exist already.
-    */
-   private Deque<Object> getField(int tag) {
-      if (tag == 0) {
-         throw new IllegalArgumentException("0 is not a valid tag number");
-      }
-      Deque<Object> field = null;
-      if (fields == null) {
-         fields = new HashMap<>();
-      } else {
-         field = fields.get(tag);
-      }
-      if (field == null) {
-         field = new ArrayDeque<>();
-         fields.put(tag, field);
-      }
-      return field;
-   }
-
    @Override
    public boolean isEmpty() {
-      return fields == null || fields.isEmpty();
+      return numFields == 0;
    }
 
    @Override
@@ -71,37 +65,59 @@ public final class UnknownFieldSetImpl implements UnknownFieldSet, Externalizabl
 
    @Override
    public boolean readSingleField(int tag, TagReader input) throws IOException {
-      WireType wireType = WireType.fromTag(tag);
+      int wireType = WireType.getTagWireType(tag);
+      if (wireType == WireType.WIRETYPE_END_GROUP) {
+         return false;
+      }
+      if (tag == 0) {
+         throw new IllegalArgumentException("0 is not a valid tag number");
+      }
+      int offset = dataLength;
       switch (wireType) {
-         case VARINT:
-            getField(tag).addLast(input.readInt64());
-            return true;
-
-         case FIXED64:
-            getField(tag).addLast(input.readFixed64());
-            return true;
+         case WireType.WIRETYPE_VARINT:
+            putVarint32(tag);
+            putVarint64(input.readInt64());
+            break;
 
-         case LENGTH_DELIMITED:
-            getField(tag).addLast(input.readByteArray());
-            return true;
+         case WireType.WIRETYPE_FIXED64:
+            putVarint32(tag);
+            putFixed64(input.readFixed64());
+            break;
 
-         case START_GROUP:
-            UnknownFieldSetImpl unknownFieldSet = new UnknownFieldSetImpl();
-            unknownFieldSet.readAllFields(input);
-            input.checkLastTagWas(WireType.makeTag(WireType.getTagFieldNumber(tag), WireType.WIRETYPE_END_GROUP));
-            getField(tag).addLast(unknownFieldSet);
-            return true;
+         case WireType.WIRETYPE_LENGTH_DELIMITED: {
+            // a slice of the input if possible, which is copied only once, into data
+            ByteBuffer value = input.readByteBuffer();
+            putVarint32(tag);
+            putVarint32(value.remaining());
+            putBytes(value);
+            break;
+         }
 
-         case END_GROUP:
-            return false;
+         case WireType.WIRETYPE_START_GROUP: {
+            UnknownFieldSetImpl group = new UnknownFieldSetImpl();
+            group.readAllFields(input);
+            int endTag = WireType.makeTag(WireType.getTagFieldNumber(tag), WireType.WIRETYPE_END_GROUP);
+            input.checkLastTagWas(endTag);
+            putVarint32(tag);
+            if (group.dataLength > 0) {
+               ensureCapacity(group.dataLength);
+               System.arraycopy(group.data, 0, data, dataLength, group.dataLength);
+               dataLength += group.dataLength;
+            }
+            putVarint32(endTag);
+            break;
+         }
 
-         case FIXED32:
-            getField(tag).addLast(input.readFixed32());
-            return true;
+         case WireType.WIRETYPE_FIXED32:
+            putVarint32(tag);
+            putFixed32(input.readFixed32());
+            break;
 
          default:
             throw new IOException("Protocol message tag " + tag + " has invalid wire type " + wireType);
       }
+      addEntry(tag, offset, dataLength - offset);
+      return true;
    }
 
    @Override
@@ -112,88 +128,218 @@ public final class UnknownFieldSetImpl implements UnknownFieldSet, Externalizabl
       if (WireType.getTagWireType(tag) != WireType.WIRETYPE_VARINT) {
          throw new IllegalArgumentException("The tag is not a VARINT: " + tag);
       }
-      getField(tag).addLast(value);
+      int offset = dataLength;
+      putVarint32(tag);
+      putVarint64(value);
+      addEntry(tag, offset, dataLength - offset);
    }
 
    @Override
    public void writeTo(TagWriter output) throws IOException {
-      if (fields != null) {
-         // we sort by tag to ensure we always have a predictable output order
-         SortedMap<Integer, Deque> sorted = new TreeMap<>(fields);
-         for (Map.Entry<Integer, Deque> entry : sorted.entrySet()) {
-            writeField(entry.getKey(), entry.getValue(), output);
+      if (numFields == 0) {
+         return;
+      }
+      if (numFields == numEntries) {
+         output.writeRawBytes(data, 0, dataLength);
+      } else {
+         // write runs of adjacent fields that were not consumed
+         int runStart = -1;
+         int runEnd = -1;
+         for (int i = firstEntry; i < numEntries; i++) {
+            int e = i * INDEX_ENTRY_SIZE;
+            if (index[e] == 0) {
+               continue;
+            }
+            int offset = index[e + 1];
+            if (offset != runEnd) {
+               if (runStart >= 0) {
+                  output.writeRawBytes(data, runStart, runEnd - runStart);
+               }
+               runStart = offset;
+            }
+            runEnd = offset + index[e + 2];
          }
-         output.flush();
+         output.writeRawBytes(data, runStart, runEnd - runStart);
       }
+      output.flush();
    }
 
-   /**
-    * Serializes a field, including field number, and writes it to {@code output}.
-    */
-   private void writeField(int tag, Deque<?> values, TagWriter output) throws IOException {
-      final WireType wireType = WireType.fromTag(tag);
-      final int fieldNumber = WireType.getTagFieldNumber(tag);
-      switch (wireType) {
-         case VARINT:
-            for (long value : (Deque<Long>) values) {
-               output.writeUInt64(fieldNumber, value);
-            }
-            break;
-         case FIXED32:
-            for (int value : (Deque<Integer>) values) {
-               output.writeFixed32(fieldNumber, value);
-            }
-            break;
-         case FIXED64:
-            for (long value : (Deque<Long>) values) {
-               output.writeFixed64(fieldNumber, value);
-            }
-            break;
-         case LENGTH_DELIMITED:
-            for (byte[] value : (Deque<byte[]>) values) {
-               output.writeBytes(fieldNumber, value);
-            }
-            break;
-         case START_GROUP:
-            for (UnknownFieldSetImpl value : (Deque<UnknownFieldSetImpl>) values) {
-               output.writeVarint32(tag);
-               value.writeTo(output);
-               output.writeTag(fieldNumber, WireType.WIRETYPE_END_GROUP);
+   @Override
+   public <A> A consumeTag(int tag) {
+      int e = consumeEntry(tag);
+      if (e < 0) {
+         return null;
+      }
+
+      int pos = index[e + 1] + TagWriterImpl.varint32Size(tag);
+      switch (WireType.getTagWireType(tag)) {
+         case WireType.WIRETYPE_VARINT:
+            return (A) Long.valueOf(readVarint64(pos));
+         case WireType.WIRETYPE_FIXED32:
+            return (A) Integer.valueOf(readFixed32(pos));
+         case WireType.WIRETYPE_FIXED64:
+            return (A) Long.valueOf(readFixed64(pos));
+         case WireType.WIRETYPE_LENGTH_DELIMITED: {
+            int length = (int) readVarint64(pos);
+            pos += TagWriterImpl.varint32Size(length);
+            return (A) Arrays.copyOfRange(data, pos, pos + length);
+         }
+         case WireType.WIRETYPE_START_GROUP: {
+            int endTagSize = TagWriterImpl.varint32Size(WireType.makeTag(WireType.getTagFieldNumber(tag), WireType.WIRETYPE_END_GROUP));
+            int length = index[e + 1] + index[e + 2] - endTagSize - pos;
+            UnknownFieldSetImpl group = new UnknownFieldSetImpl();
+            try {
+               group.readAllFields(TagReaderImpl.newInstance(null, ByteBuffer.wrap(data, pos, length)));
+            } catch (IOException ex) {
+               // cannot happen, the group was encoded by us
+               throw new IllegalStateException(ex);
             }
-            break;
+            return (A) group;
+         }
          default:
-            throw new IllegalArgumentException("Tag " + tag + " has invalid wire type " + wireType);
+            throw new IllegalArgumentException("Tag " + tag + " has invalid wire type " + WireType.getTagWireType(tag));
+      }
+   }
+
+   /**
+    * Same as {@link #consumeTag} for a length delimited field, but returns a view of the value instead of a copy. The
+    * data is append-only, so the view remains valid. Callers must not modify it.
+    */
+   ByteBuffer consumeLengthDelimited(int tag) {
+      int e = consumeEntry(tag);
+      if (e < 0) {
+         return null;
+      }
+      int pos = index[e + 1] + TagWriterImpl.varint32Size(tag);
+      int length = (int) readVarint64(pos);
+      pos += TagWriterImpl.varint32Size(length);
+      return ByteBuffer.wrap(data, pos, length).slice();
+   }
+
+   /**
+    * Finds the first field having the given tag that was not consumed yet and marks it as consumed.
+    *
+    * @return its position in the index, or -1 if not found
+    */
+   private int consumeEntry(int tag) {
+      int e = findEntry(tag);
+      if (e < 0) {
+         return -1;
+      }
+      index[e] = 0;
+      numFields--;
+      while (firstEntry < numEntries && index[firstEntry * INDEX_ENTRY_SIZE] == 0) {
+         firstEntry++;
       }
+      return e;
    }
 
    @Override
-   public <A> A consumeTag(int tag) {
+   public boolean hasTag(int tag) {
+      return findEntry(tag) >= 0;
+   }
+
+   /**
+    * Returns the position in the index of the first field having the given tag that was not consumed yet, or -1.
+    */
+   private int findEntry(int tag) {
       if (tag == 0) {
          throw new IllegalArgumentException("0 is not a valid tag number");
       }
       if (WireType.getTagWireType(tag) == WireType.WIRETYPE_END_GROUP) {
          throw new IllegalArgumentException("Tag " + tag + " is an end group tag");
       }
-      if (fields == null) {
-         return null;
+      if (numFields != 0) {
+         for (int i = firstEntry; i < numEntries; i++) {
+            int e = i * INDEX_ENTRY_SIZE;
+            if (index[e] == tag) {
+               return e;
+            }
+         }
       }
-      Deque<A> values = (Deque<A>) fields.get(tag);
-      if (values == null) {
-         return null;
+      return -1;
+   }
+
+   private void addEntry(int tag, int offset, int length) {
+      if (index == null) {
+         index = new int[8 * INDEX_ENTRY_SIZE];
+      } else if (numEntries * INDEX_ENTRY_SIZE == index.length) {
+         index = Arrays.copyOf(index, index.length * 2);
       }
-      A value = values.pollFirst();
-      if (values.isEmpty()) {
-         fields.remove(tag);
+      int e = numEntries * INDEX_ENTRY_SIZE;
+      index[e] = tag;
+      index[e + 1] = offset;
+      index[e + 2] = length;
+      numEntries++;
+      numFields++;
+   }
+
+   private void ensureCapacity(int length) {
+      if (data == null) {
+         data = new byte[Math.max(64, length)];
+      } else if (data.length - dataLength < length) {
+         data = Arrays.copyOf(data, Math.max(data.length * 2, dataLength + length));
       }
-      return value;
    }
 
-   @Override
-   public boolean hasTag(int tag) {
-      if (tag == 0) {
-         throw new IllegalArgumentException("0 is not a valid tag number");
+   private void putVarint32(int value) {
+      ensureCapacity(5);
+      while ((value & 0xFFFFFF80) != 0) {
+         data[dataLength++] = (byte) ((value & 0x7F) | 0x80);
+         value >>>= 7;
       }
-      return fields != null && fields.containsKey(tag);
+      data[dataLength++] = (byte) value;
+   }
+
+   private void putVarint64(long value) {
+      ensureCapacity(10);
+      while ((value & 0xFFFFFFFFFFFFFF80L) != 0) {
+         data[dataLength++] = (byte) ((value & 0x7F) | 0x80);
+         value >>>= 7;
+      }
+      data[dataLength++] = (byte) value;
+   }
+
+   private void putFixed32(int value) {
+      ensureCapacity(4);
+      data[dataLength++] = (byte) value;
+      data[dataLength++] = (byte) (value >> 8);
+      data[dataLength++] = (byte) (value >> 16);
+      data[dataLength++] = (byte) (value >> 24);
+   }
+
+   private void putFixed64(long value) {
+      putFixed32((int) value);
+      putFixed32((int) (value >> 32));
+   }
+
+   private void putBytes(ByteBuffer value) {
+      int length = value.remaining();
+      ensureCapacity(length);
+      value.duplicate().get(data, dataLength, length);
+      dataLength += length;
+   }
+
+   private long readVarint64(int pos) {
+      long value = 0;
+      for (int shift = 0; ; shift += 7) {
+         byte b = data[pos++];
+         value |= (long) (b & 0x7F) << shift;
+         if (b >= 0) {
+            return value;
+         }
+      }
+   }
+
+   private int readFixed32(int pos) {
+      return (data[pos] & 0xFF)
+            | (data[pos + 1] & 0xFF) << 8
+            | (data[pos + 2] & 0xFF) << 16
+            | (data[pos + 3] & 0xFF) << 24;
+   }
+
+   private long readFixed64(int pos) {
+      return (readFixed32(pos) & 0xFFFFFFFFL) | (long) readFixed32(pos + 4) << 32;
    }
 
    @Override
@@ -219,6 +365,18 @@ public final class UnknownFieldSetImpl implements UnknownFieldSet, Externalizabl
 
    @Override
    public String toString() {
-      return "UnknownFieldSetImpl{fields=" + fields + '}';
+      StringBuilder sb = new StringBuilder("UnknownFieldSetImpl{tags=[");
+      boolean first = true;
+      for (int i = firstEntry; i < numEntries; i++) {
+         int tag = index[i * INDEX_ENTRY_SIZE];
+         if (tag != 0) {
+            if (!first) {
+               sb.append(", ");
+            }
+            sb.append(tag);
+            first = false;
+         }
+      }
+      return sb.append("], length=").append(dataLength).append('}').toString();
    }
 }
@@ -0,0 +1,369 @@
+package org.infinispan.protostream.impl.parser;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.infinispan.protostream.DescriptorParserException;
+import org.infinispan.protostream.annotations.impl.IndentWriter;
+
+import com.squareup.protoparser.EnumConstantElement;
+import com.squareup.protoparser.EnumElement;
+import com.squareup.protoparser.ExtendElement;
+import com.squareup.protoparser.FieldElement;
+import com.squareup.protoparser.MessageElement;
+import com.squareup.protoparser.OneOfElement;
+import com.squareup.protoparser.OptionElement;
+import com.squareup.protoparser.ProtoFile;
+import com.squareup.protoparser.ProtoParser;
+import com.squareup.protoparser.TypeElement;
+
+/**
+ * Generates the Java source code of static methods that build the (unresolved) {@link
+ * org.infinispan.protostream.descriptors.FileDescriptor} of a proto file directly, using the descriptor builders the
+ * same way the {@link org.infinispan.protostream.impl.parser.mappers.ProtofileMapper} does after parsing. The
+ * generated code is meant to be supplied to {@link org.infinispan.protostream.FileDescriptorSource#addProtoFile(String,
+ * String, java.util.function.Supplier)} so registration of the schema can skip lexing and parsing the text. Files
+ * using options whose values are aggregates (maps, lists or nested options) are not supported and are left to be
+ * parsed at runtime.
+ *
+ * @since 4.4
+ */
+public final class DescriptorSourceCodeGenerator {
+
+   private static final String DESCRIPTORS_PKG = "org.infinispan.protostream.descriptors.";
+
+   private final IndentWriter iw = new IndentWriter();
+
+   private final String methodName;
+
+   private DescriptorSourceCodeGenerator(String methodName) {
+      this.methodName = methodName;
+   }
+
+   /**
+    * Generates a private static method having the given name and no parameters, that returns a new {@code
+    * FileDescriptor} for the given proto file, plus its private static helper methods, which are prefixed with the
+    * same name.
+    *
+    * @param fileName   the name of the proto file
+    * @param fileSource the contents of the proto file
+    * @param methodName the name of the generated method
+    * @return the source code of the methods or {@code null} if the file cannot be represented in code
+    * @throws DescriptorParserException if the file cannot be parsed
+    */
+   public static String generate(String fileName, String fileSource, String methodName) throws DescriptorParserException {
+      ProtoFile protoFile;
+      try {
+         protoFile = ProtoParser.parse(fileName, new StringReader(fileSource));
+      } catch (IOException | RuntimeException e) {
+         throw new DescriptorParserException(e);
+      }
+      if (!isSupported(protoFile)) {
+         return null;
+      }
+      DescriptorSourceCodeGenerator generator = new DescriptorSourceCodeGenerator(methodName);
+      generator.generateFile(protoFile);
+      return generator.iw.toString();
+   }
+
+   private static boolean isSupported(ProtoFile protoFile) {
+      if (!isSupported(protoFile.options())) {
+         return false;
+      }
+      for (ExtendElement extendElement : protoFile.extendDeclarations()) {
+         if (!areFieldsSupported(extendElement.fields())) {
+            return false;
+         }
+      }
+      return areTypesSupported(protoFile.typeElements());
+   }
+
+   private static boolean areTypesSupported(List<TypeElement> types) {
+      for (TypeElement type : types) {
+         if (!isSupported(type.options()) || !areTypesSupported(type.nestedElements())) {
+            return false;
+         }
+         if (type instanceof MessageElement) {
+            MessageElement messageElement = (MessageElement) type;
+            if (!areFieldsSupported(messageElement.fields())) {
+               return false;
+            }
+            for (OneOfElement oneOfElement : messageElement.oneOfs()) {
+               if (!areFieldsSupported(oneOfElement.fields())) {
+                  return false;
+               }
+            }
+         } else if (type instanceof EnumElement) {
+            for (EnumConstantElement constant : ((EnumElement) type).constants()) {
+               if (!isSupported(constant.options())) {
+                  return false;
+               }
+            }
+         }
+      }
+      return true;
+   }
+
+   private static boolean areFieldsSupported(List<FieldElement> fields) {
+      for (FieldElement field : fields) {
+         if (!isSupported(field.options())) {
+            return false;
+         }
+      }
+      return true;
+   }
+
+   private static boolean isSupported(List<OptionElement> options) {
+      for (OptionElement option : options) {
+         if (!(option.value() instanceof String)) {
+            return false;
+         }
+      }
+      return true;
+   }
+
+   private void generateFile(ProtoFile protoFile) {
+      List<TypeElement> types = protoFile.typeElements();
+
+      iw.append("private static ").append(DESCRIPTORS_PKG).append("FileDescriptor ").append(methodName).append("() {\n");
+      iw.inc();
+      iw.append("return new ").append(DESCRIPTORS_PKG).append("FileDescriptor.Builder()\n");
+      iw.inc().inc();
+      if (protoFile.syntax() != null) {
+         iw.append(".withSyntax(").append(DESCRIPTORS_PKG).append("FileDescriptor.Syntax.")
+               .append(protoFile.syntax() == ProtoFile.Syntax.PROTO_3 ? "PROTO3" : "PROTO2").append(")\n");
+      }
+      iw.append(".withName(").append(stringLiteral(protoFile.filePath())).append(")\n");
+      iw.append(".withPackageName(").append(stringLiteral(protoFile.packageName())).append(")\n");
+      // each top level type gets its own method to keep clear of the method size limit
+      iw.append(".withMessageTypes(");
+      int count = 0;
+      for (int i = 0; i < types.size(); i++) {
+         if (types.get(i) instanceof MessageElement) {
+            iw.append(count++ == 0 ? "java.util.Arrays.asList(" : ", ").append(methodName).append('$').append(String.valueOf(i)).append("()");
+         }
+      }
+      iw.append(count == 0 ? "java.util.Collections.emptyList())\n" : "))\n");
+      iw.append(".withEnumTypes(");
+      count = 0;
+      for (int i = 0; i < types.size(); i++) {
+         if (types.get(i) instanceof EnumElement) {
+            iw.append(count++ == 0 ? "java.util.Arrays.asList(" : ", ").append(methodName).append('$').append(String.valueOf(i)).append("()");
+         }
+      }
+      iw.append(count == 0 ? "java.util.Collections.emptyList())\n" : "))\n");
+      iw.append(".withExtendDescriptors(");
+      generateList(protoFile.extendDeclarations(), this::generateExtend);
+      iw.append(")\n");
+      iw.append(".withOptions(");
+      generateList(protoFile.options(), this::generateOption);
+      iw.append(")\n");
+      iw.append(".withDependencies(");
+      generateList(protoFile.dependencies(), s -> iw.append(stringLiteral(s)));
+      iw.append(")\n");
+      iw.append(".withPublicDependencies(");
+      generateList(protoFile.publicDependencies(), s -> iw.append(stringLiteral(s)));
+      iw.append(")\n");
+      iw.append(".build();\n");
+      iw.dec().dec();
+      iw.dec();
+      iw.append("}\n");
+
+      for (int i = 0; i < types.size(); i++) {
+         TypeElement type = types.get(i);
+         String className = type instanceof MessageElement ? "Descriptor" : "EnumDescriptor";
+         iw.append('\n');
+         iw.append("private static ").append(DESCRIPTORS_PKG).append(className).append(' ')
+               .append(methodName).append('$').append(String.valueOf(i)).append("() {\n");
+         iw.inc();
+         iw.append("return ");
+         generateType(type);
+         iw.append(";\n");
+         iw.dec();
+         iw.append("}\n");
+      }
+   }
+
+   private void generateType(TypeElement type) {
+      if (type instanceof MessageElement) {
+         generateMessage((MessageElement) type);
+      } else if (type instanceof EnumElement) {
+         generateEnum((EnumElement) type);
+      } else {
+         throw new IllegalStateException("Unexpected type element : " + type);
+      }
+   }
+
+   private void generateMessage(MessageElement message) {
+      iw.append("new ").append(DESCRIPTORS_PKG).append("Descriptor.Builder()\n");
+      iw.inc().inc();
+      iw.append(".withFullName(").append(stringLiteral(message.qualifiedName())).append(")\n");
+      iw.append(".withName(").append(stringLiteral(message.name())).append(")\n");
+      iw.append(".withFields(");
+      generateList(message.fields(), this::generateField);
+      iw.append(")\n");
+      iw.append(".withOneOfs(");
+      generateList(message.oneOfs(), this::generateOneOf);
+      iw.append(")\n");
+      iw.append(".withEnumTypes(");
+      generateList(filter(message.nestedElements(), EnumElement.class), this::generateType);
+      iw.append(")\n");
+      iw.append(".withNestedTypes(");
+      generateList(filter(message.nestedElements(), MessageElement.class), this::generateType);
+      iw.append(")\n");
+      iw.append(".withOptions(");
+      generateList(message.options(), this::generateOption);
+      iw.append(")\n");
+      iw.append(".withDocumentation(").append(stringLiteral(message.documentation())).append(")\n");
+      iw.append(".build()");
+      iw.dec().dec();
+   }
+
+   private void generateEnum(EnumElement enumElement) {
+      iw.append("new ").append(DESCRIPTORS_PKG).append("EnumDescriptor.Builder()\n");
+      iw.inc().inc();
+      iw.append(".withName(").append(stringLiteral(enumElement.name())).append(")\n");
+      iw.append(".withFullName(").append(stringLiteral(enumElement.qualifiedName())).append(")\n");
+      iw.append(".withValues(");
+      generateList(enumElement.constants(), this::generateEnumConstant);
+      iw.append(")\n");
+      iw.append(".withOptions(");
+      generateList(enumElement.options(), this::generateOption);
+      iw.append(")\n");
+      iw.append(".withDocumentation(").append(stringLiteral(enumElement.documentation())).append(")\n");
+      iw.append(".build()");
+      iw.dec().dec();
+   }
+
+   private void generateEnumConstant(EnumConstantElement constant) {
+      iw.append("new ").append(DESCRIPTORS_PKG).append("EnumValueDescriptor.Builder()\n");
+      iw.inc().inc();
+      iw.append(".withName(").append(stringLiteral(constant.name())).append(")\n");
+      iw.append(".withTag(").append(String.valueOf(constant.tag())).append(")\n");
+      iw.append(".withDocumentation(").append(stringLiteral(constant.documentation())).append(")\n");
+      iw.append(".withOptions(");
+      generateList(constant.options(), this::generateOption);
+      iw.append(")\n");
+      iw.append(".build()");
+      iw.dec().dec();
+   }
+
+   private void generateField(FieldElement field) {
+      iw.append("new ").append(DESCRIPTORS_PKG).append("FieldDescriptor.Builder()\n");
+      iw.inc().inc();
+      iw.append(".withName(").append(stringLiteral(field.name())).append(")\n");
+      iw.append(".withNumber(").append(String.valueOf(field.tag())).append(")\n");
+      iw.append(".withTypeName(").append(stringLiteral(field.type().toString())).append(")\n");
+      if (field.getDefault() != null) {
+         iw.append(".withDefaultValue(").append(stringLiteral((String) field.getDefault().value())).append(")\n");
+      }
+      iw.append(".withLabel(").append(DESCRIPTORS_PKG).append("Label.").append(field.label().name()).append(")\n");
+      iw.append(".withOptions(");
+      generateList(field.options(), this::generateOption);
+      iw.append(")\n");
+      iw.append(".withDocumentation(").append(stringLiteral(field.documentation())).append(")\n");
+      iw.append(".build()");
+      iw.dec().dec();
+   }
+
+   private void generateOneOf(OneOfElement oneOf) {
+      iw.append("new ").append(DESCRIPTORS_PKG).append("OneOfDescriptor.Builder()\n");
+      iw.inc().inc();
+      iw.append(".withName(").append(stringLiteral(oneOf.name())).append(")\n");
+      iw.append(".withDocumentation(").append(stringLiteral(oneOf.documentation())).append(")\n");
+      iw.append(".withFields(");
+      generateList(oneOf.fields(), this::generateField);
+      iw.append(")\n");
+      iw.append(".build()");
+      iw.dec().dec();
+   }
+
+   private void generateExtend(ExtendElement extend) {
+      iw.append("new ").append(DESCRIPTORS_PKG).append("ExtendDescriptor.Builder()\n");
+      iw.inc().inc();
+      iw.append(".withName(").append(stringLiteral(extend.name())).append(")\n");
+      iw.append(".withFullName(").append(stringLiteral(extend.qualifiedName())).append(")\n");
+      iw.append(".withFields(");
+      generateList(extend.fields(), this::generateField);
+      iw.append(")\n");
+      iw.append(".build()");
+      iw.dec().dec();
+   }
+
+   private void generateOption(OptionElement option) {
+      iw.append("new ").append(DESCRIPTORS_PKG).append("Option(").append(stringLiteral(option.name()))
+            .append(", ").append(stringLiteral((String) option.value())).append(')');
+   }
+
+   private <T> void generateList(List<T> elements, ElementGenerator<T> elementGenerator) {
+      if (elements.isEmpty()) {
+         iw.append("java.util.Collections.emptyList()");
+         return;
+      }
+      iw.append("java.util.Arrays.asList(");
+      iw.inc().inc();
+      for (int i = 0; i < elements.size(); i++) {
+         if (i != 0) {
+            iw.append(',');
+         }
+         iw.append('\n');
+         elementGenerator.generate(elements.get(i));
+      }
+      iw.append(')');
+      iw.dec().dec();
+   }
+
+   @FunctionalInterface
+   private interface ElementGenerator<T> {
+      void generate(T element);
+   }
+
+   private static <T extends TypeElement> List<TypeElement> filter(List<TypeElement> types, Class<T> kind) {
+      List<TypeElement> filtered = new ArrayList<>(types.size());
+      for (TypeElement type : types) {
+         if (kind.isInstance(type)) {
+            filtered.add(type);
+         }
+      }
+      return filtered;
+   }
+
+   private static String stringLiteral(String s) {
+      if (s == null) {
+         return "null";
+      }
+      StringBuilder sb = new StringBuilder(s.length() + 2);
+      sb.append('\"');
+      for (int i = 0; i < s.length(); i++) {
+         char ch = s.charAt(i);
+         switch (ch) {
+            case '\n':
+               sb.append("\\n");
+               break;
+            case '\r':
+               sb.append("\\r");
+               break;
+            case '\t':
+               sb.append("\\t");
+               break;
+            case '\"':
+               sb.append("\\\"");
+               break;
+            case '\\':
+               sb.append("\\\\");
+               break;
+            default:
+               if (ch < 0x20 || ch > 0x7e) {
+                  // CR and LF were handled above because their unicode escapes would end the literal
+                  sb.append(String.format("\\u%04x", (int) ch));
+               } else {
+                  sb.append(ch);
+               }
+         }
+      }
+      sb.append('\"');
+      return sb.toString();
+   }
+}
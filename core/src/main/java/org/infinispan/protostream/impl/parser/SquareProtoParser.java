@@ -2,15 +2,20 @@ package org.infinispan.protostream.impl.parser;
 
 import java.io.IOException;
 import java.io.StringReader;
+import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.function.Supplier;
+import java.util.stream.IntStream;
 
 import org.infinispan.protostream.DescriptorParserException;
 import org.infinispan.protostream.FileDescriptorSource;
 import org.infinispan.protostream.config.Configuration;
 import org.infinispan.protostream.descriptors.FileDescriptor;
+import org.infinispan.protostream.impl.Log;
 import org.infinispan.protostream.impl.parser.mappers.ProtofileMapper;
 
 import com.squareup.protoparser.OptionElement;
@@ -26,8 +31,15 @@ import com.squareup.protoparser.ProtoParser;
  */
 public final class SquareProtoParser {
 
+   private static final Log log = Log.LogFactory.getLog(SquareProtoParser.class);
+
    private static final ProtofileMapper PROTOFILE_MAPPER = new ProtofileMapper();
 
+   /**
+    * The minimum number of files to be parsed in parallel. Parsing fewer files is not worth the overhead.
+    */
+   private static final int PARALLEL_THRESHOLD = 8;
+
    private final Configuration configuration;
 
    public SquareProtoParser(Configuration configuration) {
@@ -38,7 +50,9 @@ public final class SquareProtoParser {
     * Parses a set of .proto files but does not resolve type dependencies and does not detect semantic errors like
     * duplicate type definitions. If the {@link FileDescriptorSource} parameter does not include a progress callback
     * parsing will stop on first encountered error. If a callback exists all files will be processed; only one error per
-    * file is reported and parsing will continue with the next file.
+    * file is reported and parsing will continue with the next file. Files having a precompiled form are not parsed,
+    * unless instantiating the precompiled form fails. Larger sets of files are parsed in parallel, in which case all
+    * files are parsed before the first error is reported.
     *
     * @param fileDescriptorSource the set of descriptors to parse
     * @return a map of successfully parsed {@link FileDescriptor} objects keyed by with their names
@@ -48,23 +62,84 @@ public final class SquareProtoParser {
    public Map<String, FileDescriptor> parse(FileDescriptorSource fileDescriptorSource) throws DescriptorParserException {
       Map<String, String> input = fileDescriptorSource.getFiles();
       Map<String, FileDescriptor> fileDescriptorMap = new LinkedHashMap<>(input.size());
+      if (input.size() >= PARALLEL_THRESHOLD) {
+         parseInParallel(fileDescriptorSource, fileDescriptorMap);
+         return fileDescriptorMap;
+      }
       for (Map.Entry<String, String> entry : input.entrySet()) {
          String fileName = entry.getKey();
          try {
-            ProtoFile protoFile = ProtoParser.parse(fileName, new StringReader(entry.getValue()));
-            checkUniqueFileOptions(protoFile);
-            FileDescriptor fileDescriptor = PROTOFILE_MAPPER.map(protoFile);
-            fileDescriptor.setConfiguration(configuration);
-            fileDescriptorMap.put(fileName, fileDescriptor);
+            fileDescriptorMap.put(fileName, parseFile(fileDescriptorSource, fileName, entry.getValue()));
          } catch (DescriptorParserException e) {
             reportParsingError(fileDescriptorSource, fileDescriptorMap, fileName, e);
-         } catch (IOException | RuntimeException e) {
-            reportParsingError(fileDescriptorSource, fileDescriptorMap, fileName, new DescriptorParserException(e));
          }
       }
       return fileDescriptorMap;
    }
 
+   /**
+    * Parses the files concurrently in the common fork-join pool, then collects the results and reports the errors in
+    * the original order of the files, exactly as the sequential parsing would.
+    */
+   private void parseInParallel(FileDescriptorSource fileDescriptorSource, Map<String, FileDescriptor> fileDescriptorMap) {
+      List<Map.Entry<String, String>> entries = new ArrayList<>(fileDescriptorSource.getFiles().entrySet());
+      FileDescriptor[] fileDescriptors = new FileDescriptor[entries.size()];
+      DescriptorParserException[] errors = new DescriptorParserException[entries.size()];
+      IntStream.range(0, entries.size()).parallel().forEach(i -> {
+         Map.Entry<String, String> entry = entries.get(i);
+         try {
+            fileDescriptors[i] = parseFile(fileDescriptorSource, entry.getKey(), entry.getValue());
+         } catch (DescriptorParserException e) {
+            errors[i] = e;
+         }
+      });
+      for (int i = 0; i < fileDescriptors.length; i++) {
+         String fileName = entries.get(i).getKey();
+         if (errors[i] != null) {
+            reportParsingError(fileDescriptorSource, fileDescriptorMap, fileName, errors[i]);
+         } else {
+            fileDescriptorMap.put(fileName, fileDescriptors[i]);
+         }
+      }
+   }
+
+   private FileDescriptor parseFile(FileDescriptorSource fileDescriptorSource, String fileName, String contents) throws DescriptorParserException {
+      try {
+         FileDescriptor fileDescriptor = instantiatePrecompiled(fileName, fileDescriptorSource.getPrecompiledFile(fileName));
+         if (fileDescriptor == null) {
+            ProtoFile protoFile = ProtoParser.parse(fileName, new StringReader(contents));
+            checkUniqueFileOptions(protoFile);
+            fileDescriptor = PROTOFILE_MAPPER.map(protoFile);
+         }
+         fileDescriptor.setConfiguration(configuration);
+         return fileDescriptor;
+      } catch (DescriptorParserException e) {
+         throw e;
+      } catch (IOException | RuntimeException e) {
+         throw new DescriptorParserException(e);
+      }
+   }
+
+   /**
+    * Obtains the descriptor from the precompiled form of the file, if any. Returns {@code null} if there is no usable
+    * precompiled form, so the file gets parsed instead.
+    */
+   private FileDescriptor instantiatePrecompiled(String fileName, Supplier<FileDescriptor> precompiledFile) {
+      if (precompiledFile == null) {
+         return null;
+      }
+      try {
+         FileDescriptor fileDescriptor = precompiledFile.get();
+         if (fileDescriptor != null && fileName.equals(fileDescriptor.getName()) && !fileDescriptor.isResolved()) {
+            return fileDescriptor;
+         }
+         log.debugf("The precompiled form of %s is not usable, parsing it instead", fileName);
+      } catch (RuntimeException e) {
+         log.debugf(e, "Failed to instantiate the precompiled form of %s, parsing it instead", fileName);
+      }
+      return null;
+   }
+
    private void checkUniqueFileOptions(ProtoFile protoFile) {
       Set<String> optionNames = new HashSet<>(protoFile.options().size());
       for (OptionElement optionElement : protoFile.options()) {
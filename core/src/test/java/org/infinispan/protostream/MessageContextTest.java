@@ -0,0 +1,50 @@
+package org.infinispan.protostream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.infinispan.protostream.config.Configuration;
+import org.infinispan.protostream.descriptors.Descriptor;
+import org.junit.Test;
+
+public class MessageContextTest {
+
+   private static final class TestMessageContext extends MessageContext<TestMessageContext> {
+
+      TestMessageContext(Descriptor messageDescriptor) {
+         super(null, null, messageDescriptor);
+      }
+   }
+
+   @Test
+   public void testMarkSparseFields() {
+      // 100 fields with large gaps in numbering, the last ones in a oneof
+      StringBuilder schema = new StringBuilder("package test_ctx;\nmessage M {\n");
+      for (int i = 0; i < 90; i++) {
+         schema.append("   optional int32 f").append(i).append(" = ").append(1 + i * 100).append(";\n");
+      }
+      schema.append("   oneof choice {\n");
+      for (int i = 90; i < 100; i++) {
+         schema.append("      int32 f").append(i).append(" = ").append(1 + i * 100).append(";\n");
+      }
+      schema.append("   }\n}\n");
+      SerializationContext ctx = ProtobufUtil.newSerializationContext(Configuration.builder().build());
+      ctx.registerProtoFiles(FileDescriptorSource.fromString("test_ctx.proto", schema.toString()));
+      Descriptor descriptor = ctx.getMessageDescriptor("test_ctx.M");
+      assertEquals(100, descriptor.getFieldCount());
+      assertEquals(99, descriptor.getFieldOrdinal(9901));
+      assertEquals(-1, descriptor.getFieldOrdinal(2));
+
+      TestMessageContext messageContext = new TestMessageContext(descriptor);
+      for (int number : new int[]{9901, 1, 6401, 6301, 2}) {
+         assertFalse(messageContext.isFieldMarked(number));
+         assertTrue(messageContext.markField(number));
+         assertTrue(messageContext.isFieldMarked(number));
+         assertFalse(messageContext.markField(number));
+      }
+      assertFalse(messageContext.isFieldMarked(6501));
+      assertFalse(messageContext.isFieldMarked(3));
+      assertEquals(9901, messageContext.getMaxSeenFieldNumber());
+   }
+}
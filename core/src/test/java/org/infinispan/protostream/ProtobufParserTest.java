@@ -1,8 +1,14 @@
 package org.infinispan.protostream;
 
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashSet;
+import java.util.List;
 
 import org.infinispan.protostream.descriptors.Descriptor;
 import org.infinispan.protostream.descriptors.EnumDescriptor;
@@ -156,4 +162,210 @@ public class ProtobufParserTest extends AbstractProtoStreamTest {
 
       ProtobufParser.INSTANCE.parse(wrapperHandler, wrapperDescriptor, userBytes);
    }
+
+   static final class Samples {
+      int[] ints;
+      List<Double> doubles;
+      long[] longs;
+   }
+
+   static final class SamplesMarshaller implements MessageMarshaller<Samples> {
+
+      @Override
+      public Samples readFrom(ProtoStreamReader reader) throws IOException {
+         Samples samples = new Samples();
+         samples.ints = reader.readInts("ints");
+         samples.doubles = reader.readCollection("doubles", new ArrayList<>(), Double.class);
+         samples.longs = reader.readLongs("longs");
+         return samples;
+      }
+
+      @Override
+      public void writeTo(ProtoStreamWriter writer, Samples samples) throws IOException {
+         writer.writeInts("ints", samples.ints);
+         writer.writeCollection("doubles", samples.doubles, Double.class);
+         writer.writeLongs("longs", samples.longs);
+      }
+
+      @Override
+      public Class<? extends Samples> getJavaClass() {
+         return Samples.class;
+      }
+
+      @Override
+      public String getTypeName() {
+         return "test_packed.Samples";
+      }
+   }
+
+   @Test
+   public void testPackedRepeatedFields() throws Exception {
+      String file = "package test_packed;\n" +
+            "message Samples {\n" +
+            "   repeated sint32 ints = 1 [packed = true];\n" +
+            "   repeated double doubles = 2 [packed = true];\n" +
+            "   repeated int64 longs = 3;\n" +
+            "}\n";
+      SerializationContext ctx = createContext();
+      ctx.registerProtoFiles(FileDescriptorSource.fromString("test_packed.proto", file));
+      ctx.registerMarshaller(new SamplesMarshaller());
+
+      Samples samples = new Samples();
+      samples.ints = new int[]{1, -1, 1000, Integer.MIN_VALUE};
+      samples.doubles = Arrays.asList(0.5, -2.25);
+      samples.longs = new long[]{7, 8};
+
+      byte[] bytes = ProtobufUtil.toByteArray(ctx, samples);
+
+      // packed fields are length delimited: tag, payload length, then the values without tags
+      assertEquals(1 << 3 | 2, bytes[0]);
+      assertEquals(1 + 1 + 2 + 5, bytes[1]);
+
+      Samples decoded = ProtobufUtil.fromByteArray(ctx, bytes, Samples.class);
+      assertArrayEquals(samples.ints, decoded.ints);
+      assertEquals(samples.doubles, decoded.doubles);
+      assertArrayEquals(samples.longs, decoded.longs);
+
+      List<Object> values = new ArrayList<>();
+      ProtobufParser.INSTANCE.parse(new TagHandler() {
+         @Override
+         public void onTag(int fieldNumber, FieldDescriptor fieldDescriptor, Object tagValue) {
+            values.add(tagValue);
+         }
+      }, ctx.getMessageDescriptor("test_packed.Samples"), bytes);
+      assertEquals(Arrays.asList(1, -1, 1000, Integer.MIN_VALUE, 0.5, -2.25, 7L, 8L), values);
+   }
+
+   @Test
+   public void testTypedTagHandler() throws Exception {
+      ImmutableSerializationContext ctx = createContext();
+
+      User user = new User();
+      user.setId(1);
+      user.setName("John");
+      user.setSurname("B\u00e4tman");
+      user.setGender(User.Gender.MALE);
+      user.setAccountIds(new HashSet<>(Arrays.asList(1, 3)));
+      user.setAddresses(Arrays.asList(new Address("Old Street", "XYZ42", -12), new Address("Bond Street", "W23", 2)));
+      user.setQrCode(-5L);
+      byte[] bytes = ProtobufUtil.toByteArray(ctx, user);
+      Descriptor userDescriptor = ctx.getMessageDescriptor("sample_bank_account.User");
+
+      // the events of the boxing TagHandler are the reference
+      List<String> expected = new ArrayList<>();
+      ProtobufParser.INSTANCE.parse(new TagHandler() {
+         @Override
+         public void onTag(int fieldNumber, FieldDescriptor fieldDescriptor, Object tagValue) {
+            expected.add(fieldNumber + "=" + (tagValue instanceof byte[] ? Arrays.toString((byte[]) tagValue) : tagValue));
+         }
+
+         @Override
+         public void onStartNested(int fieldNumber, FieldDescriptor fieldDescriptor) {
+            expected.add("start " + fieldNumber);
+         }
+
+         @Override
+         public void onEndNested(int fieldNumber, FieldDescriptor fieldDescriptor) {
+            expected.add("end " + fieldNumber);
+         }
+      }, userDescriptor, bytes);
+
+      final class RecordingHandler implements TypedTagHandler {
+
+         final List<String> events = new ArrayList<>();
+
+         final boolean visitNested;
+
+         RecordingHandler(boolean visitNested) {
+            this.visitNested = visitNested;
+         }
+
+         @Override
+         public void onInt32(int fieldNumber, FieldDescriptor fieldDescriptor, int value) {
+            events.add(fieldNumber + "=" + value);
+         }
+
+         @Override
+         public void onInt64(int fieldNumber, FieldDescriptor fieldDescriptor, long value) {
+            events.add(fieldNumber + "=" + value);
+         }
+
+         @Override
+         public void onFixed32(int fieldNumber, FieldDescriptor fieldDescriptor, int value) {
+            events.add(fieldNumber + "=" + value);
+         }
+
+         @Override
+         public void onFixed64(int fieldNumber, FieldDescriptor fieldDescriptor, long value) {
+            events.add(fieldNumber + "=" + value);
+         }
+
+         @Override
+         public void onFloat(int fieldNumber, FieldDescriptor fieldDescriptor, float value) {
+            events.add(fieldNumber + "=" + value);
+         }
+
+         @Override
+         public void onDouble(int fieldNumber, FieldDescriptor fieldDescriptor, double value) {
+            events.add(fieldNumber + "=" + value);
+         }
+
+         @Override
+         public void onBool(int fieldNumber, FieldDescriptor fieldDescriptor, boolean value) {
+            events.add(fieldNumber + "=" + value);
+         }
+
+         @Override
+         public void onEnum(int fieldNumber, FieldDescriptor fieldDescriptor, int value) {
+            events.add(fieldNumber + "=" + value);
+         }
+
+         @Override
+         public void onString(int fieldNumber, FieldDescriptor fieldDescriptor, TypedTagHandler.BytesView value) {
+            events.add(fieldNumber + "=" + value.toUtf8String());
+         }
+
+         @Override
+         public void onBytes(int fieldNumber, FieldDescriptor fieldDescriptor, TypedTagHandler.BytesView value) {
+            events.add(fieldNumber + "=" + Arrays.toString(value.toByteArray()));
+         }
+
+         @Override
+         public boolean onStartNested(int fieldNumber, FieldDescriptor fieldDescriptor) {
+            if (visitNested) {
+               events.add("start " + fieldNumber);
+            }
+            return visitNested;
+         }
+
+         @Override
+         public void onEndNested(int fieldNumber, FieldDescriptor fieldDescriptor) {
+            events.add("end " + fieldNumber);
+         }
+      }
+
+      RecordingHandler fromArray = new RecordingHandler(true);
+      ProtobufParser.INSTANCE.parse(fromArray, userDescriptor, bytes);
+      assertEquals(expected, fromArray.events);
+
+      RecordingHandler fromStream = new RecordingHandler(true);
+      ProtobufParser.INSTANCE.parse(fromStream, userDescriptor, new ByteArrayInputStream(bytes));
+      assertEquals(expected, fromStream.events);
+
+      // skipping the nested messages
+      RecordingHandler topLevelOnly = new RecordingHandler(false);
+      ProtobufParser.INSTANCE.parse(topLevelOnly, userDescriptor, bytes);
+      List<String> expectedTopLevel = new ArrayList<>();
+      int depth = 0;
+      for (String event : expected) {
+         if (event.startsWith("start ")) {
+            depth++;
+         } else if (event.startsWith("end ")) {
+            depth--;
+         } else if (depth == 0) {
+            expectedTopLevel.add(event);
+         }
+      }
+      assertEquals(expectedTopLevel, topLevelOnly.events);
+   }
 }
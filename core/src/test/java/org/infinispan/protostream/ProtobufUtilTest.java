@@ -6,15 +6,22 @@ import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDate;
 import java.time.ZoneOffset;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashSet;
 import java.util.List;
@@ -25,6 +32,7 @@ import org.infinispan.protostream.descriptors.FieldDescriptor;
 import org.infinispan.protostream.domain.Account;
 import org.infinispan.protostream.domain.Address;
 import org.infinispan.protostream.domain.User;
+import org.infinispan.protostream.impl.TagWriterImpl;
 import org.infinispan.protostream.test.AbstractProtoStreamTest;
 import org.junit.Test;
 
@@ -61,6 +69,369 @@ public class ProtobufUtilTest extends AbstractProtoStreamTest {
       assertEquals(expectedMessageSize, messageSize);
    }
 
+   static final class Outer {
+      Inner inner;
+      int after;
+   }
+
+   static final class Inner {
+      String text;
+   }
+
+   /**
+    * Writes a longer text each time, so the sizing and the writing pass never agree.
+    */
+   static final class GrowingInnerMarshaller implements MessageMarshaller<Inner> {
+
+      private int calls;
+
+      @Override
+      public Inner readFrom(ProtoStreamReader reader) throws IOException {
+         Inner inner = new Inner();
+         inner.text = reader.readString("text");
+         return inner;
+      }
+
+      @Override
+      public void writeTo(ProtoStreamWriter writer, Inner inner) throws IOException {
+         calls++;
+         writer.writeString("text", inner.text + String.join("", Collections.nCopies(calls, "!")));
+      }
+
+      @Override
+      public Class<? extends Inner> getJavaClass() {
+         return Inner.class;
+      }
+
+      @Override
+      public String getTypeName() {
+         return "test_growing.Inner";
+      }
+   }
+
+   static final class OuterMarshaller implements MessageMarshaller<Outer> {
+
+      @Override
+      public Outer readFrom(ProtoStreamReader reader) throws IOException {
+         Outer outer = new Outer();
+         outer.inner = reader.readObject("inner", Inner.class);
+         outer.after = reader.readInt("after");
+         return outer;
+      }
+
+      @Override
+      public void writeTo(ProtoStreamWriter writer, Outer outer) throws IOException {
+         writer.writeObject("inner", outer.inner, Inner.class);
+         writer.writeInt("after", outer.after);
+      }
+
+      @Override
+      public Class<? extends Outer> getJavaClass() {
+         return Outer.class;
+      }
+
+      @Override
+      public String getTypeName() {
+         return "test_growing.Outer";
+      }
+   }
+
+   @Test
+   public void testNonDeterministicMarshallerFallsBackToBuffer() throws Exception {
+      String file = "package test_growing;\n" +
+            "message Inner { optional string text = 1; }\n" +
+            "/**@TypeId(1000123)*/\n" +
+            "message Outer { optional Inner inner = 1; optional int32 after = 2; }\n";
+      SerializationContext ctx = createContext();
+      ctx.registerProtoFiles(FileDescriptorSource.fromString("test_growing.proto", file));
+      ctx.registerMarshaller(new GrowingInnerMarshaller());
+      ctx.registerMarshaller(new OuterMarshaller());
+
+      Outer outer = new Outer();
+      outer.inner = new Inner();
+      outer.inner.text = "text";
+      outer.after = 7;
+
+      // the nested message is written through a buffer after its size turned out wrong, the result is well formed
+      Outer decoded = ProtobufUtil.fromByteArray(ctx, ProtobufUtil.toByteArray(ctx, outer), Outer.class);
+      assertTrue(decoded.inner.text.startsWith("text"));
+      assertEquals(7, decoded.after);
+
+      ByteArrayOutputStream baos = new ByteArrayOutputStream();
+      ProtobufUtil.writeTo(ctx, baos, outer);
+      decoded = ProtobufUtil.fromByteArray(ctx, baos.toByteArray(), Outer.class);
+      assertTrue(decoded.inner.text.startsWith("text"));
+      assertEquals(7, decoded.after);
+
+      // the wrapped message is embedded, so both the embedded and the nested message need to be written again
+      decoded = ProtobufUtil.fromWrappedByteArray(ctx, ProtobufUtil.toWrappedByteArray(ctx, outer));
+      assertTrue(decoded.inner.text.startsWith("text"));
+      assertEquals(7, decoded.after);
+   }
+
+   @Test
+   public void testNonDeterministicMarshallerToStreamAndChunks() throws Exception {
+      String file = "package test_growing;\n" +
+            "message Inner { optional string text = 1; }\n" +
+            "/**@TypeId(1000123)*/\n" +
+            "message Outer { optional Inner inner = 1; optional int32 after = 2; }\n";
+      SerializationContext ctx = createContext();
+      ctx.registerProtoFiles(FileDescriptorSource.fromString("test_growing.proto", file));
+      ctx.registerMarshaller(new GrowingInnerMarshaller());
+      ctx.registerMarshaller(new OuterMarshaller());
+
+      // the nested message does not fit in the stream buffer, so it is flushed before its size is known to be wrong
+      Outer outer = new Outer();
+      outer.inner = new Inner();
+      outer.inner.text = String.join("", Collections.nCopies(3 * ProtobufUtil.DEFAULT_STREAM_BUFFER_SIZE, "x"));
+      outer.after = 7;
+
+      ByteArrayOutputStream baos = new ByteArrayOutputStream();
+      ProtobufUtil.writeTo(ctx, baos, outer);
+      Outer decoded = ProtobufUtil.fromByteArray(ctx, baos.toByteArray(), Outer.class);
+      assertTrue(decoded.inner.text.startsWith(outer.inner.text));
+      assertEquals(7, decoded.after);
+
+      baos = new ByteArrayOutputStream();
+      ProtobufUtil.toWrappedStream(ctx, baos, outer);
+      decoded = ProtobufUtil.fromWrappedByteArray(ctx, baos.toByteArray());
+      assertTrue(decoded.inner.text.startsWith(outer.inner.text));
+      assertEquals(7, decoded.after);
+
+      // tiny chunks, so the nested message spans several of them
+      outer.inner.text = "text";
+      DirectByteBufferPool pool = new DirectByteBufferPool(3, 100);
+
+      ByteBuffer[] buffers = ProtobufUtil.toByteBuffers(ctx, outer, pool);
+      decoded = ProtobufUtil.fromByteArray(ctx, concat(buffers), Outer.class);
+      assertTrue(decoded.inner.text.startsWith("text"));
+      assertEquals(7, decoded.after);
+      release(pool, buffers);
+
+      buffers = ProtobufUtil.toWrappedByteBuffers(ctx, outer, pool);
+      decoded = ProtobufUtil.fromWrappedByteArray(ctx, concat(buffers));
+      assertTrue(decoded.inner.text.startsWith("text"));
+      assertEquals(7, decoded.after);
+      release(pool, buffers);
+   }
+
+   @Test
+   public void testNestedMessagesWrittenInPlace() throws Exception {
+      ImmutableSerializationContext ctx = createContext();
+
+      User user = new User();
+      user.setId(1);
+      user.setName("John");
+      user.setSurname("Batman");
+      user.setGender(User.Gender.MALE);
+      user.setAccountIds(new HashSet<>(Arrays.asList(1, 3)));
+      user.setAddresses(Arrays.asList(new Address("Old Street", "XYZ42", -12), new Address("Bond Street", "W23", 2)));
+
+      // the array is written in place after a sizing pass, the stream is written with a different encoder
+      byte[] bytes = ProtobufUtil.toByteArray(ctx, user);
+      ByteArrayOutputStream baos = new ByteArrayOutputStream();
+      ProtobufUtil.writeTo(ctx, baos, user);
+      assertArrayEquals(baos.toByteArray(), bytes);
+
+      User decoded = ProtobufUtil.fromByteArray(ctx, bytes, User.class);
+      assertEquals(2, decoded.getAddresses().size());
+      assertEquals("Bond Street", decoded.getAddresses().get(1).getStreet());
+
+      bytes = ProtobufUtil.toWrappedByteArray(ctx, user);
+      baos = new ByteArrayOutputStream();
+      ProtobufUtil.toWrappedStream(ctx, baos, user);
+      assertArrayEquals(baos.toByteArray(), bytes);
+      decoded = ProtobufUtil.fromWrappedByteArray(ctx, bytes);
+      assertEquals("Old Street", decoded.getAddresses().get(0).getStreet());
+   }
+
+   @Test
+   public void testReuseReadersAndWriters() throws Exception {
+      SerializationContext ctx = createContext(Configuration.builder().setReuseReadersAndWriters(true));
+
+      User user = new User();
+      user.setId(1);
+      user.setName("John");
+      user.setSurname("Batman");
+      user.setGender(User.Gender.MALE);
+      user.setAccountIds(new HashSet<>(Arrays.asList(1, 3)));
+      user.setAddresses(Arrays.asList(new Address("Old Street", "XYZ42", -12), new Address("Bond Street", "W23", 2)));
+
+      byte[] expected = ProtobufUtil.toWrappedByteArray(createContext(), user);
+      for (int i = 0; i < 3; i++) {
+         assertArrayEquals(expected, ProtobufUtil.toWrappedByteArray(ctx, user));
+         assertEquals(expected.length, ProtobufUtil.computeWrappedMessageSize(ctx, user));
+         ByteArrayOutputStream baos = new ByteArrayOutputStream();
+         ProtobufUtil.toWrappedStream(ctx, baos, user);
+         assertArrayEquals(expected, baos.toByteArray());
+
+         assertEquals(user, ProtobufUtil.fromWrappedByteArray(ctx, expected));
+         assertEquals(user, ProtobufUtil.fromWrappedByteBuffer(ctx, ByteBuffer.wrap(expected)));
+         assertEquals(user, ProtobufUtil.fromWrappedStream(ctx, new ByteArrayInputStream(expected)));
+      }
+
+      // a marshaller that makes nested calls while the cached reader and writer are in use
+      class Holder {
+         final User user;
+
+         Holder(User user) {
+            this.user = user;
+         }
+      }
+      ctx.registerProtoFiles(FileDescriptorSource.fromString("holder.proto", "package test;\nmessage Holder { optional bytes user = 1; }"));
+      ctx.registerMarshaller(new ProtobufTagMarshaller<Holder>() {
+         @Override
+         public Holder read(ReadContext rc) throws IOException {
+            TagReader in = rc.getReader();
+            in.readTag();
+            return new Holder(ProtobufUtil.fromWrappedByteArray(ctx, in.readByteArray()));
+         }
+
+         @Override
+         public void write(WriteContext wc, Holder holder) throws IOException {
+            wc.getWriter().writeBytes(1, ProtobufUtil.toWrappedByteArray(ctx, holder.user));
+         }
+
+         @Override
+         public Class<Holder> getJavaClass() {
+            return Holder.class;
+         }
+
+         @Override
+         public String getTypeName() {
+            return "test.Holder";
+         }
+      });
+      byte[] bytes = ProtobufUtil.toWrappedByteArray(ctx, new Holder(user));
+      Holder holder = ProtobufUtil.fromWrappedByteArray(ctx, bytes);
+      assertEquals(user, holder.user);
+      assertArrayEquals(expected, ProtobufUtil.toWrappedByteArray(ctx, user));
+   }
+
+   @Test
+   public void testToByteBuffers() throws Exception {
+      SerializationContext ctx = createContext();
+
+      User user = new User();
+      user.setId(1);
+      user.setName("John");
+      user.setSurname("Batman");
+      user.setGender(User.Gender.MALE);
+      user.setAccountIds(new HashSet<>(Arrays.asList(1, 3)));
+      user.setAddresses(Arrays.asList(new Address("Old Street", "XYZ42", -12), new Address("Bond Street", "W23", 2)));
+
+      // tiny chunks, so most values are split across chunks
+      DirectByteBufferPool pool = new DirectByteBufferPool(3, 100);
+
+      ByteBuffer[] buffers = ProtobufUtil.toByteBuffers(ctx, user, pool);
+      assertTrue(buffers.length > 1);
+      for (ByteBuffer buffer : buffers) {
+         assertTrue(buffer.isDirect());
+      }
+      assertArrayEquals(ProtobufUtil.toByteArray(ctx, user), concat(buffers));
+      release(pool, buffers);
+      assertEquals(buffers.length, pool.getPooledChunks());
+
+      // the released chunks are reused
+      buffers = ProtobufUtil.toWrappedByteBuffers(ctx, user, pool);
+      assertEquals(0, pool.getPooledChunks());
+      byte[] bytes = concat(buffers);
+      assertArrayEquals(ProtobufUtil.toWrappedByteArray(ctx, user), bytes);
+      assertEquals(user, ProtobufUtil.fromWrappedByteArray(ctx, bytes));
+      release(pool, buffers);
+
+      // a write failing after some fields were written gives back the chunks it acquired
+      int pooledChunks = pool.getPooledChunks();
+      user.setName(null);
+      try {
+         ProtobufUtil.toByteBuffers(ctx, user, pool);
+         fail("IllegalArgumentException expected");
+      } catch (IllegalArgumentException e) {
+         // expected
+      }
+      assertEquals(pooledChunks, pool.getPooledChunks());
+   }
+
+   @Test
+   public void testLargeWrappedMessageWrittenInPlaceToByteBuffers() throws Exception {
+      SerializationContext ctx = createContext();
+
+      class Lines {
+         final List<String> lines;
+
+         Lines(List<String> lines) {
+            this.lines = lines;
+         }
+      }
+      // records the position of the writer each time the message is marshalled
+      List<Integer> positions = new ArrayList<>();
+      ctx.registerProtoFiles(FileDescriptorSource.fromString("lines.proto", "package test;\n/**@TypeId(1000124)*/\nmessage Lines { repeated string lines = 1; }"));
+      ctx.registerMarshaller(new ProtobufTagMarshaller<Lines>() {
+         @Override
+         public Lines read(ReadContext rc) throws IOException {
+            TagReader in = rc.getReader();
+            List<String> lines = new ArrayList<>();
+            while (in.readTag() != 0) {
+               lines.add(in.readString());
+            }
+            return new Lines(lines);
+         }
+
+         @Override
+         public void write(WriteContext wc, Lines lines) throws IOException {
+            TagWriterImpl out = (TagWriterImpl) wc.getWriter();
+            positions.add(out.getWrittenBytes());
+            for (String line : lines.lines) {
+               out.writeString(1, line);
+            }
+         }
+
+         @Override
+         public Class<Lines> getJavaClass() {
+            return Lines.class;
+         }
+
+         @Override
+         public String getTypeName() {
+            return "test.Lines";
+         }
+      });
+
+      List<String> lines = new ArrayList<>();
+      for (int i = 0; i < 1000; i++) {
+         lines.add(i + String.join("", Collections.nCopies(100, "x")));
+      }
+      DirectByteBufferPool pool = new DirectByteBufferPool(256, 1000);
+      ByteBuffer[] buffers = ProtobufUtil.toWrappedByteBuffers(ctx, new Lines(lines), pool);
+      assertTrue(buffers.length > 100);
+
+      // a sizing pass starting from scratch, then the writing pass continuing after the wrapper fields in the chunks,
+      // while a temporary heap buffer would have been written from scratch, without a sizing pass
+      assertEquals(2, positions.size());
+      assertEquals(0, positions.get(0).intValue());
+      assertTrue(positions.get(1) > 0);
+
+      Lines decoded = ProtobufUtil.fromWrappedByteArray(ctx, concat(buffers));
+      assertEquals(lines, decoded.lines);
+      release(pool, buffers);
+   }
+
+   private static void release(ByteBufferPool pool, ByteBuffer[] buffers) {
+      for (ByteBuffer buffer : buffers) {
+         pool.release(buffer);
+      }
+   }
+
+   private static byte[] concat(ByteBuffer[] buffers) {
+      ByteArrayOutputStream baos = new ByteArrayOutputStream();
+      for (ByteBuffer buffer : buffers) {
+         while (buffer.hasRemaining()) {
+            baos.write(buffer.get());
+         }
+      }
+      return baos.toByteArray();
+   }
+
    @Test(expected = MalformedProtobufException.class)
    public void testFromByteArrayWithExtraPadding() throws Exception {
       ImmutableSerializationContext ctx = createContext();
@@ -346,6 +717,54 @@ public class ProtobufUtilTest extends AbstractProtoStreamTest {
       assertEquals("{\"_type\":\"string\",\"_value\":\"This is a line.\\nThis is another line.\\tA tab later in the same line\"}", json);
    }
 
+   @Test
+   public void testStreamingJson() throws Exception {
+      ImmutableSerializationContext ctx = createContext();
+      for (Object object : new Object[]{createAccount(), "\u00dcn\u00efcode <text> \u2028 \"quoted\""}) {
+         byte[] marshalled = ProtobufUtil.toWrappedByteArray(ctx, object);
+         for (boolean prettyPrint : new boolean[]{true, false}) {
+            String json = ProtobufUtil.toCanonicalJSON(ctx, marshalled, prettyPrint);
+
+            StringWriter writer = new StringWriter();
+            ProtobufUtil.toCanonicalJSON(ctx, marshalled, writer, prettyPrint);
+            assertEquals(json, writer.toString());
+
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            ProtobufUtil.toCanonicalJSON(ctx, marshalled, out, prettyPrint);
+            assertEquals(json, new String(out.toByteArray(), StandardCharsets.UTF_8));
+         }
+      }
+   }
+
+   @Test
+   public void testStreamingJsonPropagatesIOException() throws Exception {
+      ImmutableSerializationContext ctx = createContext();
+      byte[] marshalled = ProtobufUtil.toWrappedByteArray(ctx, createAccount());
+      IOException failure = new IOException("Disk full");
+      Appendable failing = new Appendable() {
+         @Override
+         public Appendable append(CharSequence csq) throws IOException {
+            throw failure;
+         }
+
+         @Override
+         public Appendable append(CharSequence csq, int start, int end) throws IOException {
+            throw failure;
+         }
+
+         @Override
+         public Appendable append(char c) throws IOException {
+            throw failure;
+         }
+      };
+      try {
+         ProtobufUtil.toCanonicalJSON(ctx, marshalled, failing, false);
+         fail("IOException expected");
+      } catch (IOException e) {
+         assertSame(failure, e);
+      }
+   }
+
    @Test
    public void testArrayOfEnum() throws Exception {
       Account account = createAccount();
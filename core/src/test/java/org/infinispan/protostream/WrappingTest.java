@@ -6,7 +6,9 @@ import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.time.Instant;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -15,8 +17,14 @@ import java.util.Date;
 import java.util.HashSet;
 import java.util.List;
 
+import org.infinispan.protostream.annotations.ProtoSchemaBuilder;
+import org.infinispan.protostream.config.Configuration;
+import org.infinispan.protostream.descriptors.Type;
+import org.infinispan.protostream.descriptors.WireType;
 import org.infinispan.protostream.domain.Address;
 import org.infinispan.protostream.domain.User;
+import org.infinispan.protostream.impl.ElementContainerTest;
+import org.infinispan.protostream.impl.TagWriterImpl;
 import org.infinispan.protostream.test.AbstractProtoStreamTest;
 import org.junit.Test;
 
@@ -201,6 +209,195 @@ public class WrappingTest extends AbstractProtoStreamTest {
       roundtrip(null);
    }
 
+   @Test
+   public void testPackedContainerWrittenByOtherTagWriter() throws Exception {
+      SerializationContext ctx = ProtobufUtil.newSerializationContext(Configuration.builder()
+            .wrappingConfig().packedContainers(true).build());
+      new ProtoSchemaBuilder()
+            .fileName("test_container.proto")
+            .packageName("myTestPackage")
+            .addClass(ElementContainerTest.PackedLongArrayAdapter.class)
+            .build(ctx);
+
+      long[] dataIn = {-7, 0, 1, 300, Long.MAX_VALUE, Long.MIN_VALUE};
+      ByteArrayOutputStream baos = new ByteArrayOutputStream();
+      TagWriterImpl out = TagWriterImpl.newInstance(ctx, baos);
+      // the packed elements are written by the default methods of TagWriter
+      WrappedMessage.write(ctx, new DelegatingTagWriter(out), dataIn);
+      out.flush();
+      byte[] bytes = baos.toByteArray();
+
+      assertArrayEquals(ProtobufUtil.toWrappedByteArray(ctx, dataIn), bytes);
+      assertArrayEquals(dataIn, (long[]) ProtobufUtil.fromWrappedByteArray(ctx, bytes));
+
+      // the default implementations write the same bytes as TagWriterImpl
+      int[] ints = {-7, 0, 1, 300, Integer.MAX_VALUE, Integer.MIN_VALUE};
+      for (boolean delegating : new boolean[]{false, true}) {
+         ByteArrayOutputStream packed = new ByteArrayOutputStream();
+         TagWriterImpl impl = TagWriterImpl.newInstance(ctx, packed);
+         TagWriter writer = delegating ? new DelegatingTagWriter(impl) : impl;
+         for (Type type : new Type[]{Type.INT32, Type.UINT32, Type.SINT32, Type.FIXED32, Type.SFIXED32, Type.ENUM}) {
+            writer.writePackedInts(1, type, ints, 1, ints.length - 1);
+         }
+         for (Type type : new Type[]{Type.INT64, Type.UINT64, Type.SINT64, Type.FIXED64, Type.SFIXED64}) {
+            writer.writePackedLongs(2, type, dataIn, 0, dataIn.length);
+         }
+         writer.writePackedDoubles(3, new double[]{-1.5, 0, Double.NaN}, 0, 3);
+         writer.writePackedFloats(4, new float[]{-1.5f, 0, Float.NaN}, 0, 3);
+         writer.writePackedBools(5, new boolean[]{true, false, true}, 0, 3);
+         writer.writePackedInts(6, Type.INT32, ints, 0, 0);
+         impl.flush();
+         if (delegating) {
+            assertArrayEquals(bytes, packed.toByteArray());
+         } else {
+            bytes = packed.toByteArray();
+         }
+      }
+   }
+
+   /**
+    * A writer that is not a {@link TagWriterImpl}, relying on the default implementations of the {@link TagWriter}
+    * methods.
+    */
+   private static final class DelegatingTagWriter implements TagWriter {
+
+      private final TagWriter delegate;
+
+      DelegatingTagWriter(TagWriter delegate) {
+         this.delegate = delegate;
+      }
+
+      @Override
+      public void flush() throws IOException {
+         delegate.flush();
+      }
+
+      @Override
+      public void writeTag(int number, int wireType) throws IOException {
+         delegate.writeTag(number, wireType);
+      }
+
+      @Override
+      public void writeTag(int number, WireType wireType) throws IOException {
+         delegate.writeTag(number, wireType);
+      }
+
+      @Override
+      public void writeVarint32(int value) throws IOException {
+         delegate.writeVarint32(value);
+      }
+
+      @Override
+      public void writeVarint64(long value) throws IOException {
+         delegate.writeVarint64(value);
+      }
+
+      @Override
+      public void writeRawByte(byte value) throws IOException {
+         delegate.writeRawByte(value);
+      }
+
+      @Override
+      public void writeRawBytes(byte[] value, int offset, int length) throws IOException {
+         delegate.writeRawBytes(value, offset, length);
+      }
+
+      @Override
+      public void writeRawBytes(ByteBuffer value) throws IOException {
+         delegate.writeRawBytes(value);
+      }
+
+      @Override
+      public void writeString(int number, String value) throws IOException {
+         delegate.writeString(number, value);
+      }
+
+      @Override
+      public void writeInt32(int number, int value) throws IOException {
+         delegate.writeInt32(number, value);
+      }
+
+      @Override
+      public void writeUInt32(int number, int value) throws IOException {
+         delegate.writeUInt32(number, value);
+      }
+
+      @Override
+      public void writeSInt32(int number, int value) throws IOException {
+         delegate.writeSInt32(number, value);
+      }
+
+      @Override
+      public void writeFixed32(int number, int value) throws IOException {
+         delegate.writeFixed32(number, value);
+      }
+
+      @Override
+      public void writeSFixed32(int number, int value) throws IOException {
+         delegate.writeSFixed32(number, value);
+      }
+
+      @Override
+      public void writeInt64(int number, long value) throws IOException {
+         delegate.writeInt64(number, value);
+      }
+
+      @Override
+      public void writeUInt64(int number, long value) throws IOException {
+         delegate.writeUInt64(number, value);
+      }
+
+      @Override
+      public void writeSInt64(int number, long value) throws IOException {
+         delegate.writeSInt64(number, value);
+      }
+
+      @Override
+      public void writeFixed64(int number, long value) throws IOException {
+         delegate.writeFixed64(number, value);
+      }
+
+      @Override
+      public void writeSFixed64(int number, long value) throws IOException {
+         delegate.writeSFixed64(number, value);
+      }
+
+      @Override
+      public void writeEnum(int number, int value) throws IOException {
+         delegate.writeEnum(number, value);
+      }
+
+      @Override
+      public void writeBool(int number, boolean value) throws IOException {
+         delegate.writeBool(number, value);
+      }
+
+      @Override
+      public void writeDouble(int number, double value) throws IOException {
+         delegate.writeDouble(number, value);
+      }
+
+      @Override
+      public void writeFloat(int number, float value) throws IOException {
+         delegate.writeFloat(number, value);
+      }
+
+      @Override
+      public void writeBytes(int number, ByteBuffer value) throws IOException {
+         delegate.writeBytes(number, value);
+      }
+
+      @Override
+      public void writeBytes(int number, byte[] value) throws IOException {
+         delegate.writeBytes(number, value);
+      }
+
+      @Override
+      public void writeBytes(int number, byte[] value, int offset, int length) throws IOException {
+         delegate.writeBytes(number, value, offset, length);
+      }
+   }
+
    private Object roundtrip(Object in, BaseMarshaller... marshallers) throws Exception {
       SerializationContext ctx = createContext();
       for (BaseMarshaller m : marshallers) {
@@ -3,17 +3,27 @@ package org.infinispan.protostream.annotations.impl;
 import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
+import static org.junit.Assume.assumeTrue;
 
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.IOException;
+import java.net.URL;
+import java.net.URLClassLoader;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.nio.file.attribute.UserPrincipal;
 import java.time.Instant;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
@@ -23,6 +33,7 @@ import java.util.Optional;
 import java.util.UUID;
 
 import org.apache.logging.log4j.Level;
+import org.infinispan.protostream.BaseMarshaller;
 import org.infinispan.protostream.EnumMarshaller;
 import org.infinispan.protostream.FileDescriptorSource;
 import org.infinispan.protostream.MessageMarshaller;
@@ -40,6 +51,7 @@ import org.infinispan.protostream.annotations.ProtoReserved;
 import org.infinispan.protostream.annotations.ProtoReserved.Range;
 import org.infinispan.protostream.annotations.ProtoSchemaBuilder;
 import org.infinispan.protostream.annotations.ProtoSchemaBuilderException;
+import org.infinispan.protostream.annotations.impl.testdomain.CachedMessage;
 import org.infinispan.protostream.annotations.impl.testdomain.Simple;
 import org.infinispan.protostream.annotations.impl.testdomain.TestArraysAndCollectionsClass;
 import org.infinispan.protostream.annotations.impl.testdomain.TestArraysAndCollectionsClass2;
@@ -51,6 +63,8 @@ import org.infinispan.protostream.annotations.impl.testdomain.subpackage.TestCla
 import org.infinispan.protostream.descriptors.Descriptor;
 import org.infinispan.protostream.descriptors.EnumDescriptor;
 import org.infinispan.protostream.descriptors.FileDescriptor;
+import org.infinispan.protostream.descriptors.Type;
+import org.infinispan.protostream.descriptors.WireType;
 import org.infinispan.protostream.domain.Address;
 import org.infinispan.protostream.domain.User;
 import org.infinispan.protostream.annotations.impl.testdomain.AddressAdapter;
@@ -60,6 +74,7 @@ import org.infinispan.protostream.test.ExpectedLogMessage;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.ExpectedException;
+import org.junit.rules.TemporaryFolder;
 
 /**
  * @author anistor@redhat.com
@@ -73,6 +88,9 @@ public class ProtoSchemaBuilderTest extends AbstractProtoStreamTest {
    @Rule
    public ExpectedLogMessage expectedLogMessage = ExpectedLogMessage.any();
 
+   @Rule
+   public TemporaryFolder tmpFolder = new TemporaryFolder();
+
    @Test
    public void testMain() throws Exception {
       File tmpdir = new File(System.getProperty("java.io.tmpdir"));
@@ -1756,6 +1774,343 @@ public class ProtoSchemaBuilderTest extends AbstractProtoStreamTest {
       assertArrayEquals(new byte[]{1, 2, 3}, listOfBytes.theListOfBytes.get(0));
    }
 
+   static final class PackedFields {
+
+      @ProtoField(number = 1, packed = true)
+      int[] ints;
+
+      @ProtoField(number = 2, type = Type.SINT64, packed = true)
+      List<Long> longs;
+
+      @ProtoField(number = 3, packed = true)
+      double[] doubles;
+
+      @ProtoField(number = 4, packed = true)
+      Boolean[] booleans;
+
+      @ProtoField(number = 5, packed = true)
+      List<TestEnum> enums;
+   }
+
+   @ProtoName("PackedFields")
+   static final class UnpackedFields {
+
+      @ProtoField(number = 1)
+      int[] ints;
+
+      @ProtoField(number = 2, type = Type.SINT64)
+      List<Long> longs;
+
+      @ProtoField(number = 3)
+      double[] doubles;
+
+      @ProtoField(number = 4)
+      Boolean[] booleans;
+
+      @ProtoField(number = 5)
+      List<TestEnum> enums;
+   }
+
+   @Test
+   public void testPackedFields() throws Exception {
+      SerializationContext ctx = createContext();
+      String schema = new ProtoSchemaBuilder()
+            .fileName("test_packed.proto")
+            .packageName("test_packed")
+            .addClass(PackedFields.class)
+            .addClass(TestEnum.class)
+            .build(ctx);
+
+      assertTrue(schema.contains("repeated int32 ints = 1 [packed = true];"));
+      assertTrue(schema.contains("repeated sint64 longs = 2 [packed = true];"));
+      assertTrue(ctx.getMessageDescriptor("test_packed.PackedFields").findFieldByNumber(1).isPacked());
+
+      SerializationContext ctx2 = createContext();
+      new ProtoSchemaBuilder()
+            .fileName("test_unpacked.proto")
+            .packageName("test_packed")
+            .addClass(UnpackedFields.class)
+            .addClass(TestEnum.class)
+            .build(ctx2);
+      assertFalse(ctx2.getMessageDescriptor("test_packed.PackedFields").findFieldByNumber(1).isPacked());
+
+      PackedFields packed = new PackedFields();
+      packed.ints = new int[]{0, 1, -1, 300, Integer.MAX_VALUE, Integer.MIN_VALUE};
+      packed.longs = Arrays.asList(0L, -1L, Long.MAX_VALUE, Long.MIN_VALUE);
+      packed.doubles = new double[]{3.14, -0.5};
+      packed.booleans = new Boolean[]{true, false, true};
+      packed.enums = Arrays.asList(TestEnum.A, TestEnum.C);
+
+      UnpackedFields unpacked = new UnpackedFields();
+      unpacked.ints = packed.ints;
+      unpacked.longs = packed.longs;
+      unpacked.doubles = packed.doubles;
+      unpacked.booleans = packed.booleans;
+      unpacked.enums = packed.enums;
+
+      byte[] packedBytes = ProtobufUtil.toByteArray(ctx, packed);
+      byte[] unpackedBytes = ProtobufUtil.toByteArray(ctx2, unpacked);
+      assertTrue(packedBytes.length < unpackedBytes.length);
+
+      // each side must be able to read both forms
+      for (byte[] bytes : new byte[][]{packedBytes, unpackedBytes}) {
+         PackedFields p = ProtobufUtil.fromByteArray(ctx, bytes, PackedFields.class);
+         assertArrayEquals(packed.ints, p.ints);
+         assertEquals(packed.longs, p.longs);
+         assertArrayEquals(packed.doubles, p.doubles, 0);
+         assertArrayEquals(packed.booleans, p.booleans);
+         assertEquals(packed.enums, p.enums);
+
+         UnpackedFields u = ProtobufUtil.fromByteArray(ctx2, bytes, UnpackedFields.class);
+         assertArrayEquals(packed.ints, u.ints);
+         assertEquals(packed.longs, u.longs);
+         assertArrayEquals(packed.doubles, u.doubles, 0);
+         assertArrayEquals(packed.booleans, u.booleans);
+         assertEquals(packed.enums, u.enums);
+      }
+   }
+
+   enum Color {
+      RED, GREEN, BLUE
+   }
+
+   static final class Palette {
+
+      List<Color> colors;
+
+      Color[] moreColors;
+   }
+
+   /**
+    * Registers a hand written {@link MessageMarshaller} for {@link Palette}, whose enum fields are packed or not.
+    */
+   private SerializationContext createPaletteContext(boolean packed) throws Exception {
+      SerializationContext ctx = createContext();
+      String packedOption = packed ? " [packed = true]" : "";
+      ctx.registerProtoFiles(FileDescriptorSource.fromString("test_packed_enums.proto",
+            "package test_packed_enums;\n" +
+                  "enum Color { RED = 0; GREEN = 1; BLUE = 2; }\n" +
+                  "message Palette {\n" +
+                  "   repeated Color colors = 1" + packedOption + ";\n" +
+                  "   repeated Color moreColors = 2" + packedOption + ";\n" +
+                  "}\n"));
+      ctx.registerMarshaller(new EnumMarshaller<Color>() {
+         @Override
+         public Class<Color> getJavaClass() {
+            return Color.class;
+         }
+
+         @Override
+         public String getTypeName() {
+            return "test_packed_enums.Color";
+         }
+
+         @Override
+         public Color decode(int enumValue) {
+            return enumValue >= 0 && enumValue < Color.values().length ? Color.values()[enumValue] : null;
+         }
+
+         @Override
+         public int encode(Color color) {
+            return color.ordinal();
+         }
+      });
+      ctx.registerMarshaller(new MessageMarshaller<Palette>() {
+         @Override
+         public Palette readFrom(ProtoStreamReader reader) throws IOException {
+            Palette palette = new Palette();
+            palette.colors = reader.readCollection("colors", new ArrayList<>(), Color.class);
+            palette.moreColors = reader.readArray("moreColors", Color.class);
+            return palette;
+         }
+
+         @Override
+         public void writeTo(ProtoStreamWriter writer, Palette palette) throws IOException {
+            writer.writeCollection("colors", palette.colors, Color.class);
+            writer.writeArray("moreColors", palette.moreColors, Color.class);
+         }
+
+         @Override
+         public Class<Palette> getJavaClass() {
+            return Palette.class;
+         }
+
+         @Override
+         public String getTypeName() {
+            return "test_packed_enums.Palette";
+         }
+      });
+      return ctx;
+   }
+
+   @Test
+   public void testPackedEnumsWithMessageMarshaller() throws Exception {
+      SerializationContext packedCtx = createPaletteContext(true);
+      SerializationContext unpackedCtx = createPaletteContext(false);
+
+      Palette palette = new Palette();
+      palette.colors = Arrays.asList(Color.BLUE, Color.RED, Color.GREEN, Color.BLUE);
+      palette.moreColors = new Color[]{Color.GREEN, Color.GREEN, Color.RED};
+
+      byte[] packedBytes = ProtobufUtil.toByteArray(packedCtx, palette);
+      byte[] unpackedBytes = ProtobufUtil.toByteArray(unpackedCtx, palette);
+      // packed: a single length delimited field 1 holding all the values
+      assertEquals(WireType.makeTag(1, WireType.WIRETYPE_LENGTH_DELIMITED), packedBytes[0]);
+      assertEquals(palette.colors.size(), packedBytes[1]);
+      assertEquals(WireType.makeTag(1, WireType.WIRETYPE_VARINT), unpackedBytes[0]);
+      assertTrue(packedBytes.length < unpackedBytes.length);
+
+      // each side must be able to read both forms
+      for (SerializationContext ctx : Arrays.asList(packedCtx, unpackedCtx)) {
+         for (byte[] bytes : new byte[][]{packedBytes, unpackedBytes}) {
+            Palette p = ProtobufUtil.fromByteArray(ctx, bytes, Palette.class);
+            assertEquals(palette.colors, p.colors);
+            assertArrayEquals(palette.moreColors, p.moreColors);
+         }
+      }
+   }
+
+   @Test
+   public void testPackedFieldWithNullElement() throws Exception {
+      exception.expect(IllegalStateException.class);
+      exception.expectMessage("Packed repeated field must not contain null elements : longs");
+
+      SerializationContext ctx = createContext();
+      new ProtoSchemaBuilder()
+            .fileName("test_packed.proto")
+            .packageName("test_packed")
+            .addClass(PackedFields.class)
+            .addClass(TestEnum.class)
+            .build(ctx);
+
+      PackedFields packed = new PackedFields();
+      packed.longs = Arrays.asList(1L, null, 2L);
+      ProtobufUtil.toByteArray(ctx, packed);
+   }
+
+   static final class LargeArrays {
+
+      @ProtoField(number = 1, packed = true)
+      long[] longs;
+
+      @ProtoField(number = 2)
+      float[] floats;
+
+      @ProtoField(number = 3, type = Type.SFIXED64, packed = true)
+      long[] fixedLongs;
+   }
+
+   @Test
+   public void testLargePrimitiveArrays() throws Exception {
+      SerializationContext ctx = createContext();
+      new ProtoSchemaBuilder()
+            .fileName("test_large_arrays.proto")
+            .packageName("test_large_arrays")
+            .addClass(LargeArrays.class)
+            .build(ctx);
+
+      LargeArrays arrays = new LargeArrays();
+      arrays.longs = new long[100000];
+      arrays.fixedLongs = new long[100000];
+      arrays.floats = new float[1001];
+      for (int i = 0; i < arrays.longs.length; i++) {
+         arrays.longs[i] = (long) i * i - 5000;
+         arrays.fixedLongs[i] = -i;
+      }
+      for (int i = 0; i < arrays.floats.length; i++) {
+         arrays.floats[i] = i / 3f;
+      }
+
+      LargeArrays decoded = ProtobufUtil.fromByteArray(ctx, ProtobufUtil.toByteArray(ctx, arrays), LargeArrays.class);
+      assertArrayEquals(arrays.longs, decoded.longs);
+      assertArrayEquals(arrays.fixedLongs, decoded.fixedLongs);
+      assertArrayEquals(arrays.floats, decoded.floats, 0);
+
+      decoded = ProtobufUtil.fromByteArray(ctx, ProtobufUtil.toByteArray(ctx, new LargeArrays()), LargeArrays.class);
+      assertEquals(0, decoded.longs.length);
+      assertEquals(0, decoded.floats.length);
+   }
+
+   @Test
+   public void testPackedFieldWithBogusLength() throws Exception {
+      SerializationContext ctx = createContext();
+      new ProtoSchemaBuilder()
+            .fileName("test_large_arrays.proto")
+            .packageName("test_large_arrays")
+            .addClass(LargeArrays.class)
+            .build(ctx);
+
+      // field 3 (packed sfixed64) claims to be almost 2 GB long but only one element follows
+      byte[] bytes = {26, (byte) 0xF0, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 0x07, 1, 0, 0, 0, 0, 0, 0, 0};
+      // a stream ends the field when the data ends, only a bounded part of the claimed length is allocated ahead
+      LargeArrays decoded = ProtobufUtil.readFrom(ctx, new ByteArrayInputStream(bytes), LargeArrays.class);
+      assertArrayEquals(new long[]{1}, decoded.fixedLongs);
+
+      // an array is checked against the claimed length
+      try {
+         ProtobufUtil.fromByteArray(ctx, bytes, LargeArrays.class);
+         fail("IOException expected");
+      } catch (IOException e) {
+         // expected
+      }
+   }
+
+   @Test
+   public void testLargePackedArrayAllocatedOnce() throws Exception {
+      java.lang.management.ThreadMXBean threadMXBean = java.lang.management.ManagementFactory.getThreadMXBean();
+      assumeTrue(threadMXBean instanceof com.sun.management.ThreadMXBean);
+      com.sun.management.ThreadMXBean allocations = (com.sun.management.ThreadMXBean) threadMXBean;
+      assumeTrue(allocations.isThreadAllocatedMemorySupported() && allocations.isThreadAllocatedMemoryEnabled());
+
+      SerializationContext ctx = createContext();
+      new ProtoSchemaBuilder()
+            .fileName("test_large_arrays.proto")
+            .packageName("test_large_arrays")
+            .addClass(LargeArrays.class)
+            .build(ctx);
+
+      LargeArrays arrays = new LargeArrays();
+      arrays.fixedLongs = new long[100000];
+      for (int i = 0; i < arrays.fixedLongs.length; i++) {
+         arrays.fixedLongs[i] = i;
+      }
+      byte[] bytes = ProtobufUtil.toByteArray(ctx, arrays);
+      // warm up, so the measurement does not include the loading of the marshaller
+      ProtobufUtil.fromByteArray(ctx, bytes, LargeArrays.class);
+
+      // the length of the field was checked against the end of the array, so all elements are allocated at once
+      // rather than growing an array from a bounded reservation and trimming it at the end
+      long arraySize = 8L * arrays.fixedLongs.length;
+      long threadId = Thread.currentThread().getId();
+      long before = allocations.getThreadAllocatedBytes(threadId);
+      LargeArrays decoded = ProtobufUtil.fromByteArray(ctx, bytes, LargeArrays.class);
+      long allocated = allocations.getThreadAllocatedBytes(threadId) - before;
+      assertArrayEquals(arrays.fixedLongs, decoded.fixedLongs);
+      assertTrue("Allocated " + allocated + " bytes", allocated < arraySize + arraySize / 2);
+
+      // a stream grows the array from a bounded reservation
+      decoded = ProtobufUtil.readFrom(ctx, new ByteArrayInputStream(bytes), LargeArrays.class);
+      assertArrayEquals(arrays.fixedLongs, decoded.fixedLongs);
+   }
+
+   static final class BadPackedField {
+
+      @ProtoField(number = 1, packed = true)
+      String[] strings;
+   }
+
+   @Test
+   public void testBadPackedField() throws Exception {
+      exception.expect(ProtoSchemaBuilderException.class);
+      exception.expectMessage("Field 'strings' of org.infinispan.protostream.annotations.impl.ProtoSchemaBuilderTest.BadPackedField cannot be marked packed.");
+
+      SerializationContext ctx = createContext();
+      new ProtoSchemaBuilder()
+            .fileName("test_bad_packed.proto")
+            .addClass(BadPackedField.class)
+            .build(ctx);
+   }
+
    /**
     * Demonstrates an entity that has a field of type Map<CustomKey, String>.
     */
@@ -2020,4 +2375,140 @@ public class ProtoSchemaBuilderTest extends AbstractProtoStreamTest {
       assertFalse(schema.contains("message InnerMessage3"));  // InnerMessage3 is a nested class but still not included
       assertFalse(schema.contains("baseField1"));
    }
+
+   /**
+    * Loads the class again in a new ClassLoader, to simulate a restart: the marshaller generated for it is not defined
+    * yet.
+    */
+   private static Class<?> loadInNewClassLoader(Class<?> clazz) throws Exception {
+      URL location = clazz.getProtectionDomain().getCodeSource().getLocation();
+      ClassLoader classLoader = new URLClassLoader(new URL[]{location}, clazz.getClassLoader()) {
+         @Override
+         protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+            if (name.equals(clazz.getName())) {
+               synchronized (getClassLoadingLock(name)) {
+                  Class<?> c = findLoadedClass(name);
+                  return c != null ? c : findClass(name);
+               }
+            }
+            return super.loadClass(name, resolve);
+         }
+      };
+      return classLoader.loadClass(clazz.getName());
+   }
+
+   private File getCacheSecretFile() {
+      return new File(tmpFolder.getRoot(), "secret" + File.separator + "marshaller-cache.secret");
+   }
+
+   private Class<?> buildAndCheckCachedMarshaller(Class<?> clazz, File cacheDir) throws Exception {
+      return buildAndCheckCachedMarshaller(clazz, cacheDir, getCacheSecretFile());
+   }
+
+   private Class<?> buildAndCheckCachedMarshaller(Class<?> clazz, File cacheDir, File secretFile) throws Exception {
+      SerializationContext ctx = createContext();
+      new ProtoSchemaBuilder()
+            .fileName("cached_marshaller.proto")
+            .addClass(clazz)
+            .marshallerCacheDir(cacheDir)
+            .marshallerCacheSecretFile(secretFile)
+            .build(ctx, clazz.getClassLoader());
+
+      Object message = clazz.newInstance();
+      clazz.getField("name").set(message, "abc");
+      clazz.getField("count").setInt(message, 7);
+      Object messageOut = ProtobufUtil.fromWrappedByteArray(ctx, ProtobufUtil.toWrappedByteArray(ctx, message));
+      assertEquals("abc", clazz.getField("name").get(messageOut));
+      assertEquals(7, clazz.getField("count").getInt(messageOut));
+
+      BaseMarshaller<?> marshaller = ctx.getMarshaller(clazz);
+      assertTrue(marshaller.getClass().getName().startsWith(clazz.getName() + "$___ProtostreamCachedMarshaller_"));
+      assertEquals(clazz.getClassLoader(), marshaller.getClass().getClassLoader());
+      return marshaller.getClass();
+   }
+
+   private static File[] listCachedMarshallers(File cacheDir) {
+      return cacheDir.listFiles((dir, name) -> name.endsWith(".class"));
+   }
+
+   private static boolean isPosix(File file) {
+      return file.toPath().getFileSystem().supportedFileAttributeViews().contains("posix");
+   }
+
+   @Test
+   public void testMarshallerCache() throws Exception {
+      File cacheDir = new File(tmpFolder.getRoot(), "marshallers");
+      assumeTrue(isPosix(tmpFolder.getRoot()));
+
+      Class<?> clazz = loadInNewClassLoader(CachedMessage.class);
+      Class<?> marshallerClass = buildAndCheckCachedMarshaller(clazz, cacheDir);
+      File[] cachedFiles = listCachedMarshallers(cacheDir);
+      assertNotNull(cachedFiles);
+      assertEquals(1, cachedFiles.length);
+      // the secret is not in the cache directory
+      assertEquals(1, cacheDir.listFiles().length);
+      Path cachedFile = cachedFiles[0].toPath();
+      assertTrue(marshallerClass.getName().endsWith(cachedFiles[0].getName().replace(".class", "")));
+      assertEquals(PosixFilePermissions.fromString("rwx------"), Files.getPosixFilePermissions(cacheDir.toPath()));
+      assertEquals(PosixFilePermissions.fromString("rw-------"), Files.getPosixFilePermissions(getCacheSecretFile().toPath()));
+
+      // a second build in the same ClassLoader reuses the class
+      assertEquals(marshallerClass, buildAndCheckCachedMarshaller(clazz, cacheDir));
+
+      // after a 'restart' the class is loaded from the cache, the file is not written again
+      FileTime oldTime = FileTime.fromMillis(0);
+      Files.setLastModifiedTime(cachedFile, oldTime);
+      Class<?> reloadedMarshallerClass = buildAndCheckCachedMarshaller(loadInNewClassLoader(CachedMessage.class), cacheDir);
+      assertEquals(marshallerClass.getName(), reloadedMarshallerClass.getName());
+      assertEquals(oldTime, Files.getLastModifiedTime(cachedFile));
+
+      // a corrupt file is replaced
+      Files.write(cachedFile, new byte[]{1, 2, 3});
+      buildAndCheckCachedMarshaller(loadInNewClassLoader(CachedMessage.class), cacheDir);
+      assertEquals(1, listCachedMarshallers(cacheDir).length);
+      assertTrue(Files.size(cachedFile) > 3);
+
+      // a tampered file is not loaded, but replaced
+      byte[] content = Files.readAllBytes(cachedFile);
+      content[content.length - 1] ^= 1;
+      Files.write(cachedFile, content);
+      Files.setLastModifiedTime(cachedFile, oldTime);
+      buildAndCheckCachedMarshaller(loadInNewClassLoader(CachedMessage.class), cacheDir);
+      assertNotEquals(oldTime, Files.getLastModifiedTime(cachedFile));
+      assertFalse(Arrays.equals(content, Files.readAllBytes(cachedFile)));
+   }
+
+   @Test
+   public void testMarshallerCacheWithSecretInsideIsNotUsed() throws Exception {
+      File cacheDir = new File(tmpFolder.getRoot(), "marshallers");
+
+      buildAndCheckCachedMarshaller(loadInNewClassLoader(CachedMessage.class), cacheDir, new File(cacheDir, "cache.secret"));
+      assertFalse(cacheDir.exists());
+   }
+
+   @Test
+   public void testMarshallerCacheOwnedByOthersIsNotUsed() throws Exception {
+      File cacheDir = tmpFolder.newFolder("foreign");
+      assumeTrue(isPosix(cacheDir));
+      // only possible when running as a privileged user
+      try {
+         UserPrincipal nobody = cacheDir.toPath().getFileSystem().getUserPrincipalLookupService().lookupPrincipalByName("nobody");
+         Files.setOwner(cacheDir.toPath(), nobody);
+      } catch (IOException e) {
+         assumeTrue(false);
+      }
+
+      buildAndCheckCachedMarshaller(loadInNewClassLoader(CachedMessage.class), cacheDir);
+      assertEquals(0, cacheDir.listFiles().length);
+   }
+
+   @Test
+   public void testMarshallerCacheWritableByOthersIsNotUsed() throws Exception {
+      File cacheDir = tmpFolder.newFolder("shared");
+      assumeTrue(isPosix(cacheDir));
+      Files.setPosixFilePermissions(cacheDir.toPath(), PosixFilePermissions.fromString("rwxrwxrwx"));
+
+      buildAndCheckCachedMarshaller(loadInNewClassLoader(CachedMessage.class), cacheDir);
+      assertEquals(0, cacheDir.listFiles().length);
+   }
 }
@@ -0,0 +1,17 @@
+package org.infinispan.protostream.annotations.impl.testdomain;
+
+import org.infinispan.protostream.annotations.ProtoField;
+
+/**
+ * A top level class, so that it can be loaded again in a separate ClassLoader.
+ *
+ * @since 4.4
+ */
+public class CachedMessage {
+
+   @ProtoField(number = 1)
+   public String name;
+
+   @ProtoField(number = 2, defaultValue = "0")
+   public int count;
+}
@@ -1,22 +1,34 @@
 package org.infinispan.protostream.impl;
 
+import java.io.IOException;
+import java.time.Instant;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.Iterator;
+import java.util.Objects;
 
 import org.infinispan.protostream.ProtobufUtil;
 import org.infinispan.protostream.SerializationContext;
+import org.infinispan.protostream.TagReader;
+import org.infinispan.protostream.TagWriter;
 import org.infinispan.protostream.annotations.ProtoAdapter;
 import org.infinispan.protostream.annotations.ProtoFactory;
+import org.infinispan.protostream.annotations.ProtoField;
 import org.infinispan.protostream.annotations.ProtoName;
 import org.infinispan.protostream.annotations.ProtoSchemaBuilder;
+import org.infinispan.protostream.annotations.ProtoTypeId;
 import org.infinispan.protostream.containers.IndexedElementContainerAdapter;
+import org.infinispan.protostream.config.Configuration;
 import org.infinispan.protostream.containers.IterableElementContainerAdapter;
+import org.infinispan.protostream.containers.PackedElementContainerAdapter;
+import org.infinispan.protostream.descriptors.Type;
 import org.junit.Test;
 
 import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 /**
  * @author anistor@redhat.com
@@ -70,6 +82,74 @@ public class ElementContainerTest {
       assertArrayEquals(dataIn, (int[]) dataOut);
    }
 
+   @ProtoAdapter(long[].class)
+   @ProtoName("LongArray")
+   public static final class PackedLongArrayAdapter implements PackedElementContainerAdapter<long[], Long> {
+
+      @ProtoFactory
+      public long[] create(int theSize) {
+         return new long[theSize];
+      }
+
+      @Override
+      public int getNumElements(long[] container) {
+         return container.length;
+      }
+
+      @Override
+      public Long getElement(long[] container, int index) {
+         return container[index];
+      }
+
+      @Override
+      public void setElement(long[] container, int index, Long element) {
+         container[index] = element;
+      }
+
+      @Override
+      public void writePackedElements(TagWriter out, int fieldNumber, long[] container) throws IOException {
+         out.writePackedLongs(fieldNumber, Type.INT64, container, 0, container.length);
+      }
+
+      @Override
+      public void readPackedElements(TagReader in, long[] container) throws IOException {
+         for (int i = 0; i < container.length; i++) {
+            container[i] = in.readInt64();
+         }
+      }
+   }
+
+   @Test
+   public void testPackedLongArrayMarshallingWithAdapter() throws Exception {
+      long[] dataIn = new long[100];
+      for (int i = 0; i < dataIn.length; i++) {
+         dataIn[i] = i * 31L - 7;
+      }
+
+      SerializationContext packedCtx = ProtobufUtil.newSerializationContext(Configuration.builder()
+            .wrappingConfig().packedContainers(true).build());
+      SerializationContext unpackedCtx = ProtobufUtil.newSerializationContext();
+      for (SerializationContext ctx : Arrays.asList(packedCtx, unpackedCtx)) {
+         new ProtoSchemaBuilder()
+               .fileName("test_container.proto")
+               .packageName("myTestPackage")
+               .addClass(PackedLongArrayAdapter.class)
+               .build(ctx);
+      }
+
+      byte[] packedBytes = ProtobufUtil.toWrappedByteArray(packedCtx, dataIn);
+      byte[] unpackedBytes = ProtobufUtil.toWrappedByteArray(unpackedCtx, dataIn);
+      assertTrue(packedBytes.length < unpackedBytes.length);
+
+      // both encodings are readable regardless of the configuration
+      for (SerializationContext ctx : Arrays.asList(packedCtx, unpackedCtx)) {
+         assertArrayEquals(dataIn, (long[]) ProtobufUtil.fromWrappedByteArray(ctx, packedBytes));
+         assertArrayEquals(dataIn, (long[]) ProtobufUtil.fromWrappedByteArray(ctx, unpackedBytes));
+      }
+
+      assertArrayEquals(new long[0], (long[]) ProtobufUtil.fromWrappedByteArray(packedCtx, ProtobufUtil.toWrappedByteArray(packedCtx, new long[0])));
+   }
+
    @ProtoAdapter(ArrayList.class)
    public static final class ArrayListAdapter1<T> implements IndexedElementContainerAdapter<ArrayList<T>, T> {
 
@@ -164,4 +244,112 @@ public class ElementContainerTest {
       assertTrue(dataOut instanceof ArrayList);
       assertEquals(dataIn, dataOut);
    }
+
+   @ProtoTypeId(75100)
+   static final class Item {
+
+      @ProtoField(number = 1, defaultValue = "0")
+      int id;
+
+      @ProtoField(2)
+      String name;
+
+      @ProtoFactory
+      Item(int id, String name) {
+         this.id = id;
+         this.name = name;
+      }
+
+      @Override
+      public boolean equals(Object o) {
+         if (this == o) return true;
+         if (o == null || getClass() != o.getClass()) return false;
+         Item item = (Item) o;
+         return id == item.id && Objects.equals(name, item.name);
+      }
+
+      @Override
+      public int hashCode() {
+         return Objects.hash(id, name);
+      }
+   }
+
+   @Test
+   public void testHomogeneousArrayListMarshalling() throws Exception {
+      SerializationContext homogeneousCtx = ProtobufUtil.newSerializationContext(Configuration.builder()
+            .wrappingConfig().homogeneousContainers(true).build());
+      SerializationContext defaultCtx = ProtobufUtil.newSerializationContext();
+      for (SerializationContext ctx : Arrays.asList(homogeneousCtx, defaultCtx)) {
+         new ProtoSchemaBuilder()
+               .fileName("test_container.proto")
+               .packageName("myTestPackage")
+               .addClass(Item.class)
+               .addClass(ArrayListAdapter2.class)
+               .build(ctx);
+      }
+
+      ArrayList<Item> dataIn = new ArrayList<>();
+      for (int i = 0; i < 100; i++) {
+         dataIn.add(new Item(i, "item" + i));
+      }
+
+      byte[] homogeneousBytes = ProtobufUtil.toWrappedByteArray(homogeneousCtx, dataIn);
+      byte[] defaultBytes = ProtobufUtil.toWrappedByteArray(defaultCtx, dataIn);
+      assertTrue(homogeneousBytes.length < defaultBytes.length);
+
+      // both encodings are readable regardless of the configuration
+      for (SerializationContext ctx : Arrays.asList(homogeneousCtx, defaultCtx)) {
+         assertEquals(dataIn, ProtobufUtil.fromWrappedByteArray(ctx, homogeneousBytes));
+         assertEquals(dataIn, ProtobufUtil.fromWrappedByteArray(ctx, defaultBytes));
+      }
+
+      // the elements not having the type of the first one, including nulls, are wrapped individually
+      ArrayList<Object> mixed = new ArrayList<>(Arrays.asList(new Item(1, "one"), null, 7, new Item(2, "two")));
+      for (SerializationContext ctx : Arrays.asList(homogeneousCtx, defaultCtx)) {
+         assertEquals(mixed, ProtobufUtil.fromWrappedByteArray(ctx, ProtobufUtil.toWrappedByteArray(homogeneousCtx, mixed)));
+      }
+      ArrayList<Object> nullFirst = new ArrayList<>(Arrays.asList(null, new Item(1, "one"), new Item(2, "two")));
+      assertEquals(nullFirst, ProtobufUtil.fromWrappedByteArray(homogeneousCtx, ProtobufUtil.toWrappedByteArray(homogeneousCtx, nullFirst)));
+   }
+
+   @Test
+   public void testTruncatedHomogeneousContainer() throws Exception {
+      SerializationContext ctx = ProtobufUtil.newSerializationContext(Configuration.builder()
+            .wrappingConfig().homogeneousContainers(true).build());
+      new ProtoSchemaBuilder()
+            .fileName("test_container.proto")
+            .packageName("myTestPackage")
+            .addClass(Item.class)
+            .addClass(ArrayListAdapter2.class)
+            .build(ctx);
+
+      Item item = new Item(1, "one");
+      byte[] bytes = ProtobufUtil.toWrappedByteArray(ctx, new ArrayList<>(Collections.singletonList(item)));
+      // drop the only element: its tag (2 bytes), its length (1 byte) and the message
+      int elementLength = ProtobufUtil.toByteArray(ctx, item).length;
+      byte[] truncated = Arrays.copyOf(bytes, bytes.length - 3 - elementLength);
+
+      try {
+         ProtobufUtil.fromWrappedByteArray(ctx, truncated);
+         fail("IOException expected");
+      } catch (IOException e) {
+         assertEquals("Invalid WrappedMessage encoding.", e.getMessage());
+      }
+   }
+
+   @Test
+   public void testIndividuallyWrappedElements() throws Exception {
+      SerializationContext ctx = ProtobufUtil.newSerializationContext();
+      new ProtoSchemaBuilder()
+            .fileName("test_container.proto")
+            .packageName("myTestPackage")
+            .addClass(Item.class)
+            .addClass(ArrayListAdapter2.class)
+            .build(ctx);
+
+      // each element is read from the same stream as the next one, it must stop after its own fields
+      ArrayList<Object> dataIn = new ArrayList<>(Arrays.asList(new Item(1, "one"), Instant.ofEpochSecond(1, 2),
+            new Item(2, "two"), null, "three", new Item(3, null)));
+      assertEquals(dataIn, ProtobufUtil.fromWrappedByteArray(ctx, ProtobufUtil.toWrappedByteArray(ctx, dataIn)));
+   }
 }
@@ -0,0 +1,59 @@
+package org.infinispan.protostream.impl;
+
+import org.infinispan.protostream.FileDescriptorSource;
+import org.infinispan.protostream.ProtobufUtil;
+import org.infinispan.protostream.SerializationContext;
+import org.infinispan.protostream.descriptors.Descriptor;
+import org.infinispan.protostream.descriptors.FieldDescriptor;
+import org.junit.Test;
+
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class FieldLookupCacheTest {
+
+   private static Descriptor createDescriptor() {
+      SerializationContext ctx = ProtobufUtil.newSerializationContext();
+      ctx.registerProtoFiles(FileDescriptorSource.fromString("test.proto",
+            "package test;\nmessage M { optional int32 a = 1; optional int32 b = 2; }"));
+      return ctx.getMessageDescriptor("test.M");
+   }
+
+   @Test
+   public void testPredictsRecordedSequence() {
+      Descriptor descriptor = createDescriptor();
+      FieldDescriptor a = descriptor.findFieldByName("a");
+      FieldDescriptor b = descriptor.findFieldByName("b");
+      FieldLookupCache cache = new FieldLookupCache(descriptor);
+
+      assertNull(cache.predict(0, "a"));
+      cache.record(0, a);
+      cache.record(1, b);
+      // names are compared by value, not by identity
+      assertSame(a, cache.predict(0, new String("a")));
+      assertSame(b, cache.predict(1, "b"));
+      assertNull(cache.predict(1, "a"));
+      // positions beyond the number of fields are never recorded
+      cache.record(2, a);
+      assertNull(cache.predict(2, "a"));
+   }
+
+   @Test
+   public void testStopsRecordingAfterTooManyMismatches() {
+      Descriptor descriptor = createDescriptor();
+      FieldDescriptor a = descriptor.findFieldByName("a");
+      FieldDescriptor b = descriptor.findFieldByName("b");
+      FieldLookupCache cache = new FieldLookupCache(descriptor);
+
+      // a marshaller alternating the order of the fields
+      for (int i = 0; i < 100; i++) {
+         FieldDescriptor first = i % 2 == 0 ? a : b;
+         if (cache.predict(0, first.getName()) == null) {
+            cache.record(0, first);
+         }
+      }
+      FieldDescriptor frozen = cache.predict(0, "a") != null ? a : b;
+      cache.record(0, frozen == a ? b : a);
+      assertSame(frozen, cache.predict(0, frozen.getName()));
+   }
+}
@@ -0,0 +1,249 @@
+package org.infinispan.protostream.impl;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+
+import org.infinispan.protostream.FileDescriptorSource;
+import org.infinispan.protostream.MessageMarshaller;
+import org.infinispan.protostream.ProtobufUtil;
+import org.infinispan.protostream.SerializationContext;
+import org.infinispan.protostream.UnknownFieldSet;
+import org.infinispan.protostream.UnknownFieldSetHandler;
+import org.infinispan.protostream.config.Configuration;
+import org.infinispan.protostream.descriptors.WireType;
+import org.junit.Test;
+
+public class ProtoStreamReaderImplTest {
+
+   private static final String SCHEMA = "package test_reader;\n" +
+         "message Item {\n" +
+         "   optional string name = 1;\n" +
+         "   optional int32 count = 2;\n" +
+         "}\n" +
+         "message Order {\n" +
+         "   optional int64 id = 1;\n" +
+         "   repeated int32 codes = 2;\n" +
+         "   optional Item item = 3;\n" +
+         "   optional string note = 4;\n" +
+         "   optional string extra = 5;\n" +
+         "}\n";
+
+   /**
+    * An older version of the schema, not having the field 'extra'.
+    */
+   private static final String OLD_SCHEMA = SCHEMA.replace("   optional string extra = 5;\n", "");
+
+   static final class Item {
+      String name;
+      Integer count;
+   }
+
+   static final class Order {
+      Long id;
+      int[] codes;
+      Item item;
+      String note;
+      // written but never read, so it ends up in the unknown fields
+      String extra;
+      UnknownFieldSet unknownFieldSet;
+   }
+
+   private static final class OrderMarshaller implements MessageMarshaller<Order>, UnknownFieldSetHandler<Order> {
+
+      private final boolean hasExtra;
+
+      OrderMarshaller(boolean hasExtra) {
+         this.hasExtra = hasExtra;
+      }
+
+      @Override
+      public Order readFrom(ProtoStreamReader reader) throws IOException {
+         Order order = new Order();
+         // reverse order, and field 'extra' is never read
+         order.note = reader.readString("note");
+         order.item = reader.readObject("item", Item.class);
+         order.codes = reader.readInts("codes");
+         order.id = reader.readLong("id");
+         return order;
+      }
+
+      @Override
+      public void writeTo(ProtoStreamWriter writer, Order order) throws IOException {
+         writer.writeLong("id", order.id);
+         writer.writeInts("codes", order.codes);
+         writer.writeObject("item", order.item, Item.class);
+         writer.writeString("note", order.note);
+         if (hasExtra) {
+            writer.writeString("extra", order.extra);
+         }
+      }
+
+      @Override
+      public UnknownFieldSet getUnknownFieldSet(Order order) {
+         return order.unknownFieldSet;
+      }
+
+      @Override
+      public void setUnknownFieldSet(Order order, UnknownFieldSet unknownFieldSet) {
+         order.unknownFieldSet = unknownFieldSet;
+      }
+
+      @Override
+      public Class<? extends Order> getJavaClass() {
+         return Order.class;
+      }
+
+      @Override
+      public String getTypeName() {
+         return "test_reader.Order";
+      }
+   }
+
+   private static SerializationContext createContext() {
+      return createContext(true);
+   }
+
+   private static SerializationContext createContext(boolean hasExtra) {
+      SerializationContext ctx = ProtobufUtil.newSerializationContext(Configuration.builder().setLogOutOfSequenceReads(false).build());
+      ctx.registerProtoFiles(FileDescriptorSource.fromString("test_reader.proto", hasExtra ? SCHEMA : OLD_SCHEMA));
+      ctx.registerMarshaller(new MessageMarshaller<Item>() {
+         @Override
+         public Item readFrom(ProtoStreamReader reader) throws IOException {
+            Item item = new Item();
+            // reverse order
+            item.count = reader.readInt("count");
+            item.name = reader.readString("name");
+            return item;
+         }
+
+         @Override
+         public void writeTo(ProtoStreamWriter writer, Item item) throws IOException {
+            writer.writeString("name", item.name);
+            writer.writeInt("count", item.count);
+         }
+
+         @Override
+         public Class<? extends Item> getJavaClass() {
+            return Item.class;
+         }
+
+         @Override
+         public String getTypeName() {
+            return "test_reader.Item";
+         }
+      });
+      ctx.registerMarshaller(new OrderMarshaller(hasExtra));
+      return ctx;
+   }
+
+   @Test
+   public void testOutOfOrderReads() throws Exception {
+      SerializationContext ctx = createContext();
+
+      Order order = new Order();
+      order.id = 42L;
+      order.codes = new int[]{3, 1, 4};
+      order.item = new Item();
+      order.item.name = "pen";
+      order.item.count = 7;
+      order.note = "urgent";
+      order.extra = "ignored";
+      byte[] bytes = ProtobufUtil.toByteArray(ctx, order);
+
+      int extraTag = WireType.makeTag(5, WireType.WIRETYPE_LENGTH_DELIMITED);
+
+      // an array input is read using a field index, a stream is read sequentially; both must agree
+      Order fromArray = ProtobufUtil.fromByteArray(ctx, bytes, Order.class);
+      Order fromStream = ProtobufUtil.readFrom(ctx, new ByteArrayInputStream(bytes), Order.class);
+      for (Order decoded : new Order[]{fromArray, fromStream}) {
+         assertEquals(42L, (long) decoded.id);
+         assertArrayEquals(new int[]{3, 1, 4}, decoded.codes);
+         assertEquals("pen", decoded.item.name);
+         assertEquals(7, (int) decoded.item.count);
+         assertEquals("urgent", decoded.note);
+         // the field that was not read is kept
+         assertNull(decoded.extra);
+         assertTrue(decoded.unknownFieldSet.hasTag(extraTag));
+      }
+
+      // a reader having an older schema keeps the field it does not know about and writes it back in its place
+      SerializationContext oldCtx = createContext(false);
+      fromArray = ProtobufUtil.fromByteArray(oldCtx, bytes, Order.class);
+      fromStream = ProtobufUtil.readFrom(oldCtx, new ByteArrayInputStream(bytes), Order.class);
+      for (Order decoded : new Order[]{fromArray, fromStream}) {
+         assertEquals(42L, (long) decoded.id);
+         assertArrayEquals(new int[]{3, 1, 4}, decoded.codes);
+         assertEquals("urgent", decoded.note);
+         assertTrue(decoded.unknownFieldSet.hasTag(extraTag));
+         assertArrayEquals(bytes, ProtobufUtil.toByteArray(oldCtx, decoded));
+      }
+
+      // missing fields
+      Order empty = new Order();
+      empty.codes = new int[0];
+      Order decoded = ProtobufUtil.fromByteArray(ctx, ProtobufUtil.toByteArray(ctx, empty), Order.class);
+      assertNull(decoded.id);
+      assertEquals(0, decoded.codes.length);
+      assertNull(decoded.item);
+      assertNull(decoded.note);
+   }
+
+   @Test
+   public void testFieldLookupWithVaryingOrder() throws Exception {
+      SerializationContext ctx = ProtobufUtil.newSerializationContext(Configuration.builder().setLogOutOfSequenceReads(false).build());
+      ctx.registerProtoFiles(FileDescriptorSource.fromString("test_reader.proto", SCHEMA));
+      ctx.registerMarshaller(new MessageMarshaller<Item>() {
+
+         private int invocations;
+
+         @Override
+         public Item readFrom(ProtoStreamReader reader) throws IOException {
+            // the order of the field lookups changes at each invocation
+            Item item = new Item();
+            if (invocations++ % 2 == 0) {
+               item.name = reader.readString("name");
+               item.count = reader.readInt("count");
+            } else {
+               item.count = reader.readInt("count");
+               item.name = reader.readString("name");
+            }
+            return item;
+         }
+
+         @Override
+         public void writeTo(ProtoStreamWriter writer, Item item) throws IOException {
+            if (invocations++ % 2 == 0) {
+               writer.writeString("name", item.name);
+               writer.writeInt("count", item.count);
+            } else {
+               writer.writeInt("count", item.count);
+               writer.writeString("name", item.name);
+            }
+         }
+
+         @Override
+         public Class<? extends Item> getJavaClass() {
+            return Item.class;
+         }
+
+         @Override
+         public String getTypeName() {
+            return "test_reader.Item";
+         }
+      });
+
+      for (int i = 0; i < 5; i++) {
+         Item item = new Item();
+         item.name = "item" + i;
+         item.count = i;
+         Item decoded = ProtobufUtil.fromByteArray(ctx, ProtobufUtil.toByteArray(ctx, item), Item.class);
+         assertEquals(item.name, decoded.name);
+         assertEquals(item.count, decoded.count);
+      }
+   }
+}
@@ -2,9 +2,13 @@ package org.infinispan.protostream.impl;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
 import org.infinispan.protostream.BaseMarshaller;
 import org.infinispan.protostream.DescriptorParserException;
@@ -14,6 +18,7 @@ import org.infinispan.protostream.ProtobufTagMarshaller;
 import org.infinispan.protostream.ProtobufUtil;
 import org.infinispan.protostream.SerializationContext;
 import org.infinispan.protostream.TagReader;
+import org.infinispan.protostream.descriptors.Descriptor;
 import org.infinispan.protostream.descriptors.FileDescriptor;
 import org.infinispan.protostream.descriptors.WireType;
 import org.junit.Test;
@@ -22,7 +27,9 @@ import org.junit.rules.ExpectedException;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
@@ -540,4 +547,351 @@ public class SerializationContextImplTest {
       ctx.registerProtoFiles(FileDescriptorSource.fromString("test_proto_path/file1.proto", file1));
       ctx.registerProtoFiles(FileDescriptorSource.fromString("test_proto_path/file2.proto", file2));
    }
+
+   @Test
+   public void testLookupsDuringReRegistration() throws Exception {
+      String file = "package test1;\n" +
+            "message M1 {\n" +
+            "  required string a = 1;\n" +
+            "}";
+      SerializationContext ctx = createContext();
+      ctx.registerProtoFiles(FileDescriptorSource.fromString("test1.proto", file));
+      Map<String, ?> before = ctx.getGenericDescriptors();
+
+      // overwriting a file unregisters and registers its types again, but lookups must never observe it missing
+      AtomicBoolean done = new AtomicBoolean();
+      AtomicReference<Throwable> failure = new AtomicReference<>();
+      Thread reader = new Thread(() -> {
+         try {
+            while (!done.get()) {
+               assertNotNull(ctx.getMessageDescriptor("test1.M1"));
+            }
+         } catch (Throwable t) {
+            failure.set(t);
+         }
+      });
+      reader.start();
+      try {
+         for (int i = 0; i < 200 && failure.get() == null; i++) {
+            ctx.registerProtoFiles(FileDescriptorSource.fromString("test1.proto", file));
+         }
+      } finally {
+         done.set(true);
+         reader.join();
+      }
+      assertNull(failure.get());
+
+      ctx.registerProtoFiles(FileDescriptorSource.fromString("test2.proto", "package test2;\nmessage M2 {}"));
+      assertFalse(before.containsKey("test2.M2"));
+      assertTrue(ctx.getGenericDescriptors().containsKey("test2.M2"));
+   }
+
+   @Test
+   public void testClassLookupCacheIsInvalidated() {
+      class Y {
+      }
+
+      ProtobufTagMarshaller<Y> marshaller = new ProtobufTagMarshaller<Y>() {
+         @Override
+         public Y read(ReadContext ctx) {
+            return new Y();
+         }
+
+         @Override
+         public void write(WriteContext ctx, Y y) {
+         }
+
+         @Override
+         public Class<Y> getJavaClass() {
+            return Y.class;
+         }
+
+         @Override
+         public String getTypeName() {
+            return "test.Y";
+         }
+      };
+
+      SerializationContext ctx = createContext();
+      ctx.registerProtoFiles(FileDescriptorSource.fromString("file.proto", "package test;\nmessage Y {}"));
+
+      // the misses are cached too, so each lookup below must see the latest registration
+      assertFalse(ctx.canMarshall(Y.class));
+      assertFalse(ctx.canMarshall(new Y()));
+      ctx.registerMarshaller(marshaller);
+      assertTrue(ctx.canMarshall(Y.class));
+      assertTrue(ctx.canMarshall(new Y()));
+      assertEquals(marshaller, ctx.getMarshaller(Y.class));
+      ctx.unregisterMarshaller(marshaller);
+      assertFalse(ctx.canMarshall(Y.class));
+      assertFalse(ctx.canMarshall(new Y()));
+   }
+
+   @Test
+   public void testLegacyProviderLookupsAreCached() {
+      class Z {
+      }
+
+      ProtobufTagMarshaller<Z> marshaller = new ProtobufTagMarshaller<Z>() {
+         @Override
+         public Z read(ReadContext ctx) {
+            return new Z();
+         }
+
+         @Override
+         public void write(WriteContext ctx, Z z) {
+         }
+
+         @Override
+         public Class<Z> getJavaClass() {
+            return Z.class;
+         }
+
+         @Override
+         public String getTypeName() {
+            return "test.Z";
+         }
+      };
+
+      AtomicInteger calls = new AtomicInteger();
+      SerializationContext.MarshallerProvider provider = new SerializationContext.MarshallerProvider() {
+         @Override
+         public BaseMarshaller<?> getMarshaller(String typeName) {
+            calls.incrementAndGet();
+            return typeName.equals("test.Z") ? marshaller : null;
+         }
+
+         @Override
+         public BaseMarshaller<?> getMarshaller(Class<?> javaClass) {
+            calls.incrementAndGet();
+            return javaClass == Z.class ? marshaller : null;
+         }
+      };
+
+      SerializationContextImpl ctx = (SerializationContextImpl) createContext();
+      ctx.registerProtoFiles(FileDescriptorSource.fromString("file.proto", "package test;\nmessage Z {}"));
+      ctx.registerMarshallerProvider(provider);
+
+      BaseMarshallerDelegate<Z> delegate = ctx.getMarshallerDelegate(Z.class);
+      for (int i = 0; i < 3; i++) {
+         assertSame(delegate, ctx.getMarshallerDelegate(Z.class));
+         assertSame(delegate, ctx.getMarshallerDelegate(new Z()));
+         assertSame(marshaller, ctx.getMarshaller("test.Z"));
+         assertFalse(ctx.canMarshall(String.class));
+         assertFalse(ctx.canMarshall("test.Missing"));
+      }
+      // one call for each distinct class or type name, hit or miss
+      assertEquals(4, calls.get());
+
+      // the cached lookups are dropped when the providers change
+      ctx.unregisterMarshallerProvider(provider);
+      assertFalse(ctx.canMarshall(Z.class));
+      ctx.registerMarshallerProvider(provider);
+      assertTrue(ctx.canMarshall(Z.class));
+
+      // and when the descriptors change, because the delegates hold them
+      ctx.registerProtoFiles(FileDescriptorSource.fromString("file.proto", "package test;\nmessage Z { optional int32 f = 1; }"));
+      assertNotSame(delegate, ctx.getMarshallerDelegate(Z.class));
+   }
+
+   @Test
+   public void testResolveOnlyUnresolvedFiles() {
+      SerializationContext ctx = createContext();
+      List<String> resolved = new ArrayList<>();
+      FileDescriptorSource.ProgressCallback callback = new FileDescriptorSource.ProgressCallback() {
+         @Override
+         public void handleError(String fileName, DescriptorParserException ex) {
+         }
+
+         @Override
+         public void handleSuccess(String fileName) {
+            resolved.add(fileName);
+         }
+      };
+
+      ctx.registerProtoFiles(FileDescriptorSource.fromString("a.proto", "package test;\nmessage A {}").withProgressCallback(callback));
+      ctx.registerProtoFiles(FileDescriptorSource.fromString("c.proto", "package test;\nimport \"b.proto\";\nmessage C { optional B b = 1; }").withProgressCallback(callback));
+      assertFalse(ctx.getFileDescriptors().get("c.proto").isResolved());
+
+      // the missing import now exists, so the file that failed earlier is resolved along with it, but not the others
+      resolved.clear();
+      ctx.registerProtoFiles(FileDescriptorSource.fromString("b.proto", "package test;\nmessage B {}").withProgressCallback(callback));
+      assertEquals(2, resolved.size());
+      assertTrue(resolved.contains("b.proto"));
+      assertTrue(resolved.contains("c.proto"));
+      assertTrue(ctx.getFileDescriptors().get("c.proto").isResolved());
+
+      // replacing an imported file resolves its dependants again
+      resolved.clear();
+      ctx.registerProtoFiles(FileDescriptorSource.fromString("b.proto", "package test;\nmessage B { optional int32 x = 1; }").withProgressCallback(callback));
+      assertEquals(2, resolved.size());
+      assertTrue(ctx.getFileDescriptors().get("c.proto").isResolved());
+      assertTrue(ctx.getGenericDescriptors().containsKey("test.C"));
+
+      // removing it makes them unresolved until it is registered again
+      ctx.unregisterProtoFile("b.proto");
+      assertFalse(ctx.getFileDescriptors().get("c.proto").isResolved());
+      assertFalse(ctx.getGenericDescriptors().containsKey("test.C"));
+      ctx.registerProtoFiles(FileDescriptorSource.fromString("b.proto", "package test;\nmessage B {}"));
+      assertTrue(ctx.getFileDescriptors().get("c.proto").isResolved());
+      assertTrue(ctx.getGenericDescriptors().containsKey("test.C"));
+   }
+
+   @Test
+   public void testRegisterManyFiles() {
+      SerializationContext ctx = createContext();
+      Map<String, Throwable> errors = new HashMap<>();
+      List<String> successful = new ArrayList<>();
+      FileDescriptorSource source = new FileDescriptorSource()
+            .withProgressCallback(new FileDescriptorSource.ProgressCallback() {
+               @Override
+               public void handleError(String fileName, DescriptorParserException ex) {
+                  errors.put(fileName, ex);
+               }
+
+               @Override
+               public void handleSuccess(String fileName) {
+                  successful.add(fileName);
+               }
+            });
+      // enough files to be parsed in parallel, each one importing the previous one
+      for (int i = 0; i < 50; i++) {
+         String file = "package test;\n" +
+               (i > 0 ? "import \"file" + (i - 1) + ".proto\";\n" : "") +
+               "message M" + i + " {\n" +
+               (i > 0 ? "   optional M" + (i - 1) + " prev = 1;\n" : "") +
+               "}\n";
+         source.addProtoFile("file" + i + ".proto", i == 40 ? "kabooom" : file);
+      }
+      ctx.registerProtoFiles(source);
+
+      assertEquals(40, successful.size());
+      for (int i = 0; i < 40; i++) {
+         assertEquals("file" + i + ".proto", successful.get(i));
+         assertTrue(ctx.getGenericDescriptors().containsKey("test.M" + i));
+      }
+      assertEquals(10, errors.size());
+      assertEquals("java.lang.IllegalStateException: Syntax error in file40.proto at 1:8: unexpected label: kabooom", errors.get("file40.proto").getMessage());
+      assertEquals("File file41.proto imports a file (file40.proto) that has errors", errors.get("file41.proto").getMessage());
+   }
+
+   @Test
+   public void testImportersAreTrackedAcrossChanges() {
+      SerializationContext ctx = createContext();
+      List<String> resolved = new ArrayList<>();
+      FileDescriptorSource.ProgressCallback callback = new FileDescriptorSource.ProgressCallback() {
+         @Override
+         public void handleError(String fileName, DescriptorParserException ex) {
+         }
+
+         @Override
+         public void handleSuccess(String fileName) {
+            resolved.add(fileName);
+         }
+      };
+
+      ctx.registerProtoFiles(FileDescriptorSource.fromString("a.proto", "package test;\nmessage A {}"));
+      ctx.registerProtoFiles(FileDescriptorSource.fromString("b.proto", "package test;\nimport \"a.proto\";\nmessage B { optional A a = 1; }"));
+      ctx.registerProtoFiles(FileDescriptorSource.fromString("c.proto", "package test;\nimport \"a.proto\";\nmessage C { optional A a = 1; }"));
+
+      // b.proto no longer imports a.proto and c.proto is gone, so replacing a.proto resolves nothing else
+      ctx.registerProtoFiles(FileDescriptorSource.fromString("b.proto", "package test;\nmessage B {}"));
+      ctx.unregisterProtoFile("c.proto");
+      ctx.registerProtoFiles(FileDescriptorSource.fromString("a.proto", "package test;\nmessage A { optional int32 x = 1; }").withProgressCallback(callback));
+      assertEquals(Collections.singletonList("a.proto"), resolved);
+
+      // a file importing it again is resolved along with it
+      ctx.registerProtoFiles(FileDescriptorSource.fromString("d.proto", "package test;\nimport \"a.proto\";\nmessage D { optional A a = 1; }"));
+      resolved.clear();
+      ctx.registerProtoFiles(FileDescriptorSource.fromString("a.proto", "package test;\nmessage A {}").withProgressCallback(callback));
+      assertEquals(2, resolved.size());
+      assertTrue(resolved.contains("d.proto"));
+      assertTrue(ctx.getFileDescriptors().get("d.proto").isResolved());
+   }
+
+   @Test
+   public void testReplacedDescriptorsAreNotModified() {
+      SerializationContext ctx = createContext();
+      ctx.registerProtoFiles(FileDescriptorSource.fromString("a.proto", "package test;\nmessage A { optional int32 x = 1; }"));
+      ctx.registerProtoFiles(FileDescriptorSource.fromString("c.proto", "package test;\nimport \"a.proto\";\nmessage C { optional A a = 1; }"));
+      Map<String, FileDescriptor> filesBefore = ctx.getFileDescriptors();
+      Descriptor aBefore = ctx.getMessageDescriptor("test.A");
+      Descriptor cBefore = ctx.getMessageDescriptor("test.C");
+
+      ctx.registerProtoFiles(FileDescriptorSource.fromString("a.proto", "package test;\nmessage A { optional string y = 2; }"));
+
+      // the previous generation is still intact, for the readers that are still using it
+      assertSame(aBefore, filesBefore.get("a.proto").getMessageTypes().get(0));
+      assertSame(cBefore, filesBefore.get("c.proto").getMessageTypes().get(0));
+      assertTrue(filesBefore.get("c.proto").isResolved());
+      assertSame(aBefore, cBefore.findFieldByName("a").getMessageType());
+
+      // while the new one has a new copy of the dependant file, resolved against the new file
+      Descriptor aAfter = ctx.getMessageDescriptor("test.A");
+      Descriptor cAfter = ctx.getMessageDescriptor("test.C");
+      assertNotSame(aBefore, aAfter);
+      assertNotSame(cBefore, cAfter);
+      assertSame(aAfter, cAfter.findFieldByName("a").getMessageType());
+      assertNotNull(aAfter.findFieldByName("y"));
+      assertNotSame(filesBefore, ctx.getFileDescriptors());
+   }
+
+   @Test
+   public void testDependantWithErrorsAfterReplacement() {
+      SerializationContext ctx = createContext();
+      ctx.registerProtoFiles(FileDescriptorSource.fromString("a.proto", "package test;\nmessage A { optional int32 x = 1; }"));
+      ctx.registerProtoFiles(FileDescriptorSource.fromString("c.proto", "package test;\nimport \"a.proto\";\nmessage C { optional A a = 1; }"));
+      FileDescriptor cBefore = ctx.getFileDescriptors().get("c.proto");
+
+      Map<String, DescriptorParserException> errors = new HashMap<>();
+      List<String> successful = new ArrayList<>();
+      ctx.registerProtoFiles(FileDescriptorSource.fromString("a.proto", "package test;\nmessage B { optional int32 x = 1; }")
+            .withProgressCallback(new FileDescriptorSource.ProgressCallback() {
+               @Override
+               public void handleError(String fileName, DescriptorParserException ex) {
+                  errors.put(fileName, ex);
+               }
+
+               @Override
+               public void handleSuccess(String fileName) {
+                  successful.add(fileName);
+               }
+            }));
+
+      assertEquals(1, errors.size());
+      assertTrue(errors.containsKey("c.proto"));
+      assertTrue(successful.contains("a.proto"));
+      FileDescriptor cAfter = ctx.getFileDescriptors().get("c.proto");
+      assertNotNull(cAfter);
+      assertNotSame(cBefore, cAfter);
+      assertFalse(cAfter.isResolved());
+      assertTrue(cBefore.isResolved());
+      assertNull(ctx.getGenericDescriptors().get("test.C"));
+
+      // fixing the imported file resolves the dependant again
+      ctx.registerProtoFiles(FileDescriptorSource.fromString("a.proto", "package test;\nmessage A { optional int32 x = 1; }"));
+      assertTrue(ctx.getFileDescriptors().get("c.proto").isResolved());
+      assertNotNull(ctx.getMessageDescriptor("test.C"));
+   }
+
+   @Test
+   public void testReaderUsesDescriptorsOfItsStart() {
+      SerializationContext ctx = createContext();
+      ctx.registerProtoFiles(FileDescriptorSource.fromString("a.proto", "package test;\n/**@TypeId(1000)*/\nmessage A { optional int32 x = 1; }"));
+      Descriptor aBefore = ctx.getMessageDescriptor("test.A");
+
+      TagReaderImpl reader = TagReaderImpl.newInstance(ctx, new byte[0]);
+      assertSame(aBefore, reader.getPinnedSerializationContext().getDescriptorByTypeId(1000));
+
+      ctx.unregisterProtoFile("a.proto");
+      assertNull(ctx.getGenericDescriptors().get("test.A"));
+      assertSame(aBefore, reader.getPinnedSerializationContext().getDescriptorByName("test.A"));
+      assertSame(aBefore, reader.getPinnedSerializationContext().getMessageDescriptor("test.A"));
+      assertSame(aBefore, TagReaderImpl.newNestedInstance(reader, new byte[0]).getPinnedSerializationContext().getDescriptorByTypeId(1000));
+
+      reader.reset(ctx, new byte[0], 0, 0);
+      exception.expect(IllegalArgumentException.class);
+      exception.expectMessage("Unknown type id : 1000");
+      reader.getPinnedSerializationContext().getDescriptorByTypeId(1000);
+   }
 }
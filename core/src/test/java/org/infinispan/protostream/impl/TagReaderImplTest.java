@@ -0,0 +1,192 @@
+package org.infinispan.protostream.impl;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.infinispan.protostream.MalformedProtobufException;
+import org.infinispan.protostream.ProtobufUtil;
+import org.infinispan.protostream.SerializationContext;
+import org.infinispan.protostream.config.Configuration;
+import org.infinispan.protostream.descriptors.WireType;
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class TagReaderImplTest {
+
+   private static final long[] LONG_VALUES = {0, 1, 127, 128, 300, 16383, 16384, 2097151, 2097152, 268435455, 268435456,
+         Integer.MAX_VALUE, Integer.MIN_VALUE, -1, -127, -128, 34359738367L, 34359738368L, 4398046511103L, 562949953421311L,
+         72057594037927935L, 72057594037927936L, Long.MAX_VALUE, Long.MIN_VALUE};
+
+   private final SerializationContext ctx = ProtobufUtil.newSerializationContext();
+
+   @Test
+   public void testReadVarints() throws Exception {
+      // the field number grows so the tags take 1, 2 and 3 bytes
+      int[] fieldNumbers = {1, 15, 16, 2047, 2048};
+      ByteArrayOutputStream baos = new ByteArrayOutputStream();
+      TagWriterImpl out = TagWriterImpl.newInstance(ctx, baos, 16);
+      for (int fieldNumber : fieldNumbers) {
+         for (long v : LONG_VALUES) {
+            out.writeInt64(fieldNumber, v);
+            out.writeInt32(fieldNumber, (int) v);
+            out.writeSInt64(fieldNumber, v);
+            out.writeSInt32(fieldNumber, (int) v);
+            out.writeUInt32(fieldNumber, (int) v);
+         }
+      }
+      out.flush();
+      byte[] bytes = baos.toByteArray();
+
+      for (TagReaderImpl in : readers(bytes)) {
+         for (int fieldNumber : fieldNumbers) {
+            int tag = WireType.makeTag(fieldNumber, WireType.VARINT);
+            for (long v : LONG_VALUES) {
+               assertEquals(tag, in.readTag());
+               assertEquals(v, in.readInt64());
+               assertEquals(tag, in.readTag());
+               assertEquals((int) v, in.readInt32());
+               assertEquals(tag, in.readTag());
+               assertEquals(v, in.readSInt64());
+               assertEquals(tag, in.readTag());
+               assertEquals((int) v, in.readSInt32());
+               assertEquals(tag, in.readTag());
+               assertEquals((int) v, in.readUInt32());
+            }
+         }
+         assertEquals(0, in.readTag());
+      }
+   }
+
+   @Test
+   public void testReadVarintAtEndOfBuffer() throws Exception {
+      // each value is the last thing in the buffer so there are fewer than 10 bytes left when decoding starts
+      for (long v : LONG_VALUES) {
+         ByteArrayOutputStream baos = new ByteArrayOutputStream();
+         TagWriterImpl out = TagWriterImpl.newInstance(ctx, baos, 16);
+         out.writeUInt64(1, v);
+         out.flush();
+         for (TagReaderImpl in : readers(baos.toByteArray())) {
+            assertEquals(WireType.makeTag(1, WireType.VARINT), in.readTag());
+            assertEquals(v, in.readUInt64());
+            assertEquals(0, in.readTag());
+         }
+         for (TagReaderImpl in : readers(baos.toByteArray())) {
+            in.readTag();
+            assertEquals((int) v, in.readUInt32());
+         }
+      }
+   }
+
+   @Test
+   public void testMalformedVarint() throws Exception {
+      byte[] tooLong = new byte[12];
+      tooLong[0] = (byte) WireType.makeTag(1, WireType.VARINT);
+      for (int i = 1; i < tooLong.length; i++) {
+         tooLong[i] = (byte) 0x80;
+      }
+      for (TagReaderImpl in : readers(tooLong)) {
+         in.readTag();
+         try {
+            in.readInt64();
+            fail("MalformedProtobufException expected");
+         } catch (MalformedProtobufException e) {
+            // expected
+         }
+      }
+      for (TagReaderImpl in : readers(tooLong)) {
+         in.readTag();
+         try {
+            in.readInt32();
+            fail("MalformedProtobufException expected");
+         } catch (MalformedProtobufException e) {
+            // expected
+         }
+      }
+   }
+
+   @Test
+   public void testInvalidSingleByteTags() throws Exception {
+      // field number 0, and the unused wire types 6 and 7, must not be accepted by the single byte fast path
+      byte[][] invalidTags = {{0x02}, {0x0E}, {0x0F}};
+      for (byte[] bytes : invalidTags) {
+         for (TagReaderImpl in : readers(bytes)) {
+            try {
+               in.readTag();
+               fail("MalformedProtobufException expected");
+            } catch (MalformedProtobufException e) {
+               // expected
+            }
+         }
+      }
+   }
+
+   @Test
+   public void testZeroCopyReads() throws Exception {
+      SerializationContext zeroCopyCtx = ProtobufUtil.newSerializationContext(Configuration.builder().setZeroCopyReads(true).build());
+      ByteArrayOutputStream baos = new ByteArrayOutputStream();
+      TagWriterImpl out = TagWriterImpl.newInstance(ctx, baos);
+      out.writeBytes(1, new byte[]{1, 2, 3});
+      out.writeString(2, "abc");
+      out.writeInt32(3, 7);
+      out.flush();
+      byte[] bytes = baos.toByteArray();
+
+      TagReaderImpl in = TagReaderImpl.newInstance(zeroCopyCtx, bytes);
+      assertTrue(in.isZeroCopy());
+      in.readTag();
+      ByteBuffer slice = in.readByteBuffer();
+      assertTrue(slice.isReadOnly());
+      assertEquals(3, slice.remaining());
+      // the slice is a view of the input, not a copy
+      bytes[2] = 42;
+      assertEquals(42, slice.get(0));
+      bytes[2] = 1;
+
+      // unknown fields read from slices are written back unchanged, any number of times
+      UnknownFieldSetImpl unknownFieldSet = new UnknownFieldSetImpl();
+      unknownFieldSet.readAllFields(TagReaderImpl.newInstance(zeroCopyCtx, bytes));
+      for (int i = 0; i < 2; i++) {
+         ByteArrayOutputStream copy = new ByteArrayOutputStream();
+         TagWriterImpl copyOut = TagWriterImpl.newInstance(ctx, copy);
+         unknownFieldSet.writeTo(copyOut);
+         copyOut.flush();
+         assertArrayEquals(bytes, copy.toByteArray());
+      }
+      // and are still consumed as byte arrays
+      assertArrayEquals(new byte[]{1, 2, 3}, unknownFieldSet.consumeTag(WireType.makeTag(1, WireType.WIRETYPE_LENGTH_DELIMITED)));
+
+      // not enabled by default
+      in = TagReaderImpl.newInstance(ctx, bytes);
+      assertFalse(in.isZeroCopy());
+      in.readTag();
+      assertFalse(in.readByteBuffer().isReadOnly());
+   }
+
+   private List<TagReaderImpl> readers(byte[] bytes) {
+      List<TagReaderImpl> readers = new ArrayList<>();
+      readers.add(TagReaderImpl.newInstance(ctx, bytes));
+      byte[] padded = new byte[bytes.length + 6];
+      System.arraycopy(bytes, 0, padded, 3, bytes.length);
+      readers.add(TagReaderImpl.newInstance(ctx, padded, 3, bytes.length));
+      ByteBuffer direct = ByteBuffer.allocateDirect(bytes.length);
+      direct.put(bytes).flip();
+      readers.add(TagReaderImpl.newInstance(ctx, direct));
+      readers.add(TagReaderImpl.newInstance(ctx, new ByteArrayInputStream(bytes)));
+      // a stream that returns one byte at a time, so the varints span several refills of the buffer
+      readers.add(TagReaderImpl.newInstance(ctx, new ByteArrayInputStream(bytes) {
+         @Override
+         public synchronized int read(byte[] b, int off, int len) {
+            return super.read(b, off, Math.min(len, 1));
+         }
+      }));
+      return readers;
+   }
+}
@@ -1,12 +1,17 @@
 package org.infinispan.protostream.impl;
 
 import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 
+import org.infinispan.protostream.ByteBufferPool;
+import org.infinispan.protostream.DirectByteBufferPool;
 import org.infinispan.protostream.ProtobufUtil;
 import org.infinispan.protostream.SerializationContext;
 import org.infinispan.protostream.descriptors.WireType;
 import org.junit.Test;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 
 /**
@@ -28,4 +33,177 @@ public class TagWriterImplTest {
       assertEquals(WireType.makeTag(5, WireType.VARINT), bytes[0]);
       assertEquals(1, bytes[1]);
    }
+
+   @Test
+   public void testWriteString() throws Exception {
+      StringBuilder large = new StringBuilder();
+      for (int i = 0; i < 500; i++) {
+         large.append("x\u00e9\u20ac\uD83D\uDE00");
+      }
+      String[] values = {"", "ascii only", "caf\u00e9", "\u20ac uro", "smile \uD83D\uDE00", "unpaired \uD800 x \uDC00",
+            "trailing high \uD83D", large.toString()};
+
+      SerializationContext ctx = ProtobufUtil.newSerializationContext();
+      for (String value : values) {
+         byte[] utf8 = value.getBytes(StandardCharsets.UTF_8);
+         assertEquals(utf8.length, TagWriterImpl.utf8Length(value));
+
+         // the expected encoding, produced by the JDK encoder
+         ByteArrayOutputStream expected = new ByteArrayOutputStream();
+         TagWriterImpl tagWriter = TagWriterImpl.newInstance(ctx, expected, 100);
+         tagWriter.writeBytes(1, utf8);
+         tagWriter.flush();
+         byte[] expectedBytes = expected.toByteArray();
+
+         TagWriterImpl sizeCounter = TagWriterImpl.newInstance(ctx);
+         sizeCounter.writeString(1, value);
+         assertEquals(expectedBytes.length, sizeCounter.getWrittenBytes());
+
+         ByteArrayOutputStream baos = new ByteArrayOutputStream();
+         tagWriter = TagWriterImpl.newInstance(ctx, baos, 100);
+         tagWriter.writeString(1, value);
+         tagWriter.flush();
+         assertArrayEquals(expectedBytes, baos.toByteArray());
+
+         byte[] array = new byte[expectedBytes.length];
+         tagWriter = TagWriterImpl.newInstance(ctx, array);
+         tagWriter.writeString(1, value);
+         tagWriter.flush();
+         assertArrayEquals(expectedBytes, array);
+
+         for (ByteBuffer buffer : new ByteBuffer[]{ByteBuffer.allocate(expectedBytes.length), ByteBuffer.allocateDirect(expectedBytes.length)}) {
+            tagWriter = TagWriterImpl.newInstance(ctx, buffer);
+            tagWriter.writeString(1, value);
+            tagWriter.flush();
+            assertEquals(expectedBytes.length, buffer.position());
+            buffer.flip();
+            byte[] bytes = new byte[buffer.remaining()];
+            buffer.get(bytes);
+            assertArrayEquals(expectedBytes, bytes);
+         }
+
+         // small chunks, so the string spans several of them
+         for (ByteBufferPool pool : new ByteBufferPool[]{new HeapPool(16), new DirectByteBufferPool(16, 0)}) {
+            try (ByteBufferChunks chunks = new ByteBufferChunks(pool)) {
+               tagWriter = TagWriterImpl.newInstance(ctx, chunks);
+               tagWriter.writeString(1, value);
+               tagWriter.flush();
+               ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+               for (ByteBuffer chunk : chunks.getByteBuffers()) {
+                  byte[] chunkBytes = new byte[chunk.remaining()];
+                  chunk.get(chunkBytes);
+                  bytes.write(chunkBytes);
+               }
+               assertArrayEquals(expectedBytes, bytes.toByteArray());
+            }
+         }
+      }
+   }
+
+   private static final class HeapPool implements ByteBufferPool {
+
+      private final int chunkSize;
+
+      HeapPool(int chunkSize) {
+         this.chunkSize = chunkSize;
+      }
+
+      @Override
+      public ByteBuffer acquire() {
+         return ByteBuffer.allocate(chunkSize);
+      }
+
+      @Override
+      public void release(ByteBuffer chunk) {
+      }
+   }
+
+   @Test
+   public void testWriteLengthDelimitedFieldOfUnknownLength() throws Exception {
+      SerializationContext ctx = ProtobufUtil.newSerializationContext();
+
+      // the inner field sizes require length varints of 1, 2 and 3 bytes
+      for (int innerSize : new int[]{0, 100, 1000, 20000}) {
+         byte[] inner = new byte[innerSize];
+         for (int i = 0; i < innerSize; i++) {
+            inner[i] = (byte) i;
+         }
+
+         // the expected encoding, built from nested writers
+         ByteArrayOutputStream innerBaos = new ByteArrayOutputStream();
+         TagWriterImpl innerWriter = TagWriterImpl.newInstance(ctx, innerBaos);
+         innerWriter.writeBytes(3, inner);
+         innerWriter.writeInt32(4, 42);
+         innerWriter.flush();
+         ByteArrayOutputStream baos = new ByteArrayOutputStream();
+         TagWriterImpl outerWriter = TagWriterImpl.newInstance(ctx, baos);
+         outerWriter.writeString(1, "start");
+         outerWriter.writeBytes(2, innerBaos.toByteArray());
+         outerWriter.writeBool(5, true);
+         outerWriter.flush();
+         byte[] expectedBytes = baos.toByteArray();
+
+         TagWriterImpl tagWriter = TagWriterImpl.newGrowableInstance(ctx, 8);
+         tagWriter.writeString(1, "start");
+         int start = tagWriter.startLengthDelimitedField(2);
+         tagWriter.writeBytes(3, inner);
+         tagWriter.writeInt32(4, 42);
+         tagWriter.endLengthDelimitedField(start);
+         tagWriter.writeBool(5, true);
+         tagWriter.flush();
+         assertEquals(expectedBytes.length, tagWriter.getWrittenBytes());
+         assertArrayEquals(expectedBytes, tagWriter.toByteArray());
+      }
+   }
+
+   /**
+    * Encodes, with nested writers, a field 1 holding a field of the given size, followed at each level by a field 2
+    * holding the encoding of the next level.
+    */
+   private static byte[] encodeNested(SerializationContext ctx, int[] sizes, int level) throws Exception {
+      ByteArrayOutputStream baos = new ByteArrayOutputStream();
+      TagWriterImpl writer = TagWriterImpl.newInstance(ctx, baos);
+      writer.writeBytes(1, new byte[sizes[level]]);
+      if (level + 1 < sizes.length) {
+         writer.writeBytes(2, encodeNested(ctx, sizes, level + 1));
+      }
+      writer.writeInt32(3, level);
+      writer.flush();
+      return baos.toByteArray();
+   }
+
+   private static void writeNested(TagWriterImpl writer, int[] sizes, int level) throws Exception {
+      writer.writeBytes(1, new byte[sizes[level]]);
+      if (level + 1 < sizes.length) {
+         int handle = writer.startLengthDelimitedField(2);
+         writeNested(writer, sizes, level + 1);
+         writer.endLengthDelimitedField(handle);
+      }
+      writer.writeInt32(3, level);
+   }
+
+   @Test
+   public void testWriteNestedLengthDelimitedFieldsOfUnknownLength() throws Exception {
+      SerializationContext ctx = ProtobufUtil.newSerializationContext();
+
+      // the nested fields have lengths needing varints of various sizes, and leave gaps of various sizes
+      int[][] cases = {{0, 0, 0}, {1, 200, 3}, {20000, 5, 300, 0}, {10, 70000, 10}, {100, 100, 100, 100, 100}};
+      TagWriterImpl writer = TagWriterImpl.newGrowableInstance(ctx, 8);
+      for (int[] sizes : cases) {
+         byte[] expectedBytes = encodeNested(ctx, sizes, 0);
+
+         writer.resetGrowable(ctx, 8);
+         int handle = writer.startLengthDelimitedField(7);
+         writeNested(writer, sizes, 0);
+         writer.endLengthDelimitedField(handle);
+         writer.flush();
+
+         ByteArrayOutputStream baos = new ByteArrayOutputStream();
+         TagWriterImpl outerWriter = TagWriterImpl.newInstance(ctx, baos);
+         outerWriter.writeBytes(7, expectedBytes);
+         outerWriter.flush();
+         assertEquals(baos.size(), writer.getWrittenBytes());
+         assertArrayEquals(baos.toByteArray(), writer.toByteArray());
+      }
+   }
 }
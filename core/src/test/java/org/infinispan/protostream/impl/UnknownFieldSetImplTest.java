@@ -5,6 +5,7 @@ import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
+import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashSet;
@@ -13,12 +14,17 @@ import org.infinispan.protostream.ImmutableSerializationContext;
 import org.infinispan.protostream.ProtobufUtil;
 import org.infinispan.protostream.TagReader;
 import org.infinispan.protostream.TagWriter;
+import org.infinispan.protostream.descriptors.WireType;
 import org.infinispan.protostream.domain.Address;
 import org.infinispan.protostream.domain.User;
 import org.infinispan.protostream.test.AbstractProtoStreamTest;
 import org.junit.Test;
 
 import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 
 /**
  * @author anistor@redhat.com
@@ -82,4 +88,45 @@ public class UnknownFieldSetImplTest extends AbstractProtoStreamTest {
 
       assertArrayEquals(bytes, bytes3);
    }
+
+   @Test
+   public void testConsumeAndWriteRemainingFields() throws Exception {
+      ByteArrayOutputStream baos = new ByteArrayOutputStream();
+      TagWriter out = TagWriterImpl.newInstance(null, baos);
+      out.writeInt64(1, -5);
+      out.writeString(2, "two");
+      out.writeFixed32(3, 3);
+      out.writeTag(4, WireType.WIRETYPE_START_GROUP);
+      out.writeUInt32(1, 41);
+      out.writeTag(4, WireType.WIRETYPE_END_GROUP);
+      out.writeFixed64(5, 5L);
+      out.writeString(2, "again");
+      out.flush();
+
+      UnknownFieldSetImpl unknownFieldSet = unmarshall(baos.toByteArray());
+
+      int stringTag = WireType.makeTag(2, WireType.WIRETYPE_LENGTH_DELIMITED);
+      assertEquals(-5L, (long) unknownFieldSet.<Long>consumeTag(WireType.makeTag(1, WireType.WIRETYPE_VARINT)));
+      assertArrayEquals("two".getBytes(StandardCharsets.UTF_8), unknownFieldSet.consumeTag(stringTag));
+      assertEquals(5L, (long) unknownFieldSet.<Long>consumeTag(WireType.makeTag(5, WireType.WIRETYPE_FIXED64)));
+      UnknownFieldSetImpl group = unknownFieldSet.consumeTag(WireType.makeTag(4, WireType.WIRETYPE_START_GROUP));
+      assertEquals(41L, (long) group.<Long>consumeTag(WireType.makeTag(1, WireType.WIRETYPE_VARINT)));
+      assertTrue(group.isEmpty());
+      assertNull(unknownFieldSet.consumeTag(WireType.makeTag(6, WireType.WIRETYPE_VARINT)));
+      assertTrue(unknownFieldSet.hasTag(stringTag));
+      assertFalse(unknownFieldSet.isEmpty());
+
+      // only the remaining fields are written, in their original order
+      baos = new ByteArrayOutputStream();
+      out = TagWriterImpl.newInstance(null, baos);
+      out.writeFixed32(3, 3);
+      out.writeString(2, "again");
+      out.flush();
+      assertArrayEquals(baos.toByteArray(), marshall(unknownFieldSet));
+
+      assertEquals(3, (int) unknownFieldSet.<Integer>consumeTag(WireType.makeTag(3, WireType.WIRETYPE_FIXED32)));
+      assertArrayEquals("again".getBytes(StandardCharsets.UTF_8), unknownFieldSet.consumeTag(stringTag));
+      assertTrue(unknownFieldSet.isEmpty());
+      assertArrayEquals(new byte[0], marshall(unknownFieldSet));
+   }
 }
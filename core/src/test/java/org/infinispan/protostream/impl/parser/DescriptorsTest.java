@@ -9,9 +9,11 @@ import static org.junit.Assert.assertTrue;
 
 import java.io.File;
 import java.net.URL;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.function.Supplier;
 
 import org.infinispan.protostream.AnnotationParserException;
 import org.infinispan.protostream.DescriptorParserException;
@@ -1014,6 +1016,127 @@ public class DescriptorsTest {
       parseAndResolve(fileDescriptorSource);
    }
 
+   @Test
+   public void testFindFieldByNumber() {
+      String file = "package test;\n" +
+            "message Compact {\n" +
+            "   optional int32 a = 1;\n" +
+            "   optional int32 b = 3;\n" +
+            "   oneof choice {\n" +
+            "      string c = 2;\n" +
+            "   }\n" +
+            "}\n" +
+            "message Sparse {\n" +
+            "   optional int32 a = 5;\n" +
+            "   optional int32 b = 1000;\n" +
+            "   optional int32 c = 536870911;\n" +
+            "}\n" +
+            "message Empty {\n" +
+            "}\n";
+
+      Map<String, FileDescriptor> descriptors = parseAndResolve(FileDescriptorSource.fromString("file.proto", file));
+      FileDescriptor fileDescriptor = descriptors.get("file.proto");
+      Descriptor compact = fileDescriptor.getMessageTypes().get(0);
+      Descriptor sparse = fileDescriptor.getMessageTypes().get(1);
+      Descriptor empty = fileDescriptor.getMessageTypes().get(2);
+      for (Descriptor d : new Descriptor[]{compact, sparse}) {
+         for (FieldDescriptor fd : d.getFields()) {
+            assertEquals(fd, d.findFieldByNumber(fd.getNumber()));
+         }
+         assertNull(d.findFieldByNumber(0));
+         assertNull(d.findFieldByNumber(-1));
+         assertNull(d.findFieldByNumber(4));
+         assertNull(d.findFieldByNumber(1001));
+      }
+      assertEquals("c", compact.findFieldByNumber(2).getName());
+      assertEquals(3, compact.getFieldCount());
+      assertEquals(2, sparse.getFieldOrdinal(536870911));
+      assertNull(empty.findFieldByNumber(1));
+      assertEquals(-1, empty.getFieldOrdinal(1));
+   }
+
+   @Test
+   public void testPrecompiledFileDescriptor() {
+      String file = "package test;\n" +
+            "message Parsed {\n" +
+            "   optional int32 a = 1;\n" +
+            "}\n";
+      Supplier<FileDescriptor> precompiled = () -> new FileDescriptor.Builder()
+            .withName("file.proto")
+            .withPackageName("test")
+            .withMessageTypes(Collections.singletonList(new Descriptor.Builder()
+                  .withName("Precompiled")
+                  .withFullName("test.Precompiled")
+                  .withFields(Collections.singletonList(new FieldDescriptor.Builder()
+                        .withName("a")
+                        .withNumber(1)
+                        .withTypeName("int32")
+                        .withLabel(Label.OPTIONAL)
+                        .withOptions(Collections.emptyList())
+                        .build()))
+                  .withOneOfs(Collections.emptyList())
+                  .withNestedTypes(Collections.emptyList())
+                  .withEnumTypes(Collections.emptyList())
+                  .withOptions(Collections.emptyList())
+                  .build()))
+            .build();
+
+      // the precompiled form is used instead of parsing the contents
+      Map<String, FileDescriptor> descriptors = parseAndResolve(new FileDescriptorSource().addProtoFile("file.proto", file, precompiled));
+      assertEquals("test.Precompiled", descriptors.get("file.proto").getMessageTypes().get(0).getFullName());
+
+      // the contents are parsed if the precompiled form fails
+      descriptors = parseAndResolve(new FileDescriptorSource().addProtoFile("file.proto", file, () -> {
+         throw new IllegalStateException();
+      }));
+      assertEquals("test.Parsed", descriptors.get("file.proto").getMessageTypes().get(0).getFullName());
+
+      // or belongs to another file
+      descriptors = parseAndResolve(new FileDescriptorSource().addProtoFile("other.proto", file, precompiled));
+      assertEquals("test.Parsed", descriptors.get("other.proto").getMessageTypes().get(0).getFullName());
+
+      // replacing the contents discards the precompiled form
+      descriptors = parseAndResolve(new FileDescriptorSource().addProtoFile("file.proto", file, precompiled).addProtoFile("file.proto", file));
+      assertEquals("test.Parsed", descriptors.get("file.proto").getMessageTypes().get(0).getFullName());
+   }
+
+   @Test
+   public void testGenerateDescriptorSourceCode() {
+      String file = "syntax = \"proto2\";\n" +
+            "package test;\n" +
+            "import \"other.proto\";\n" +
+            "option java_package = \"org.test\";\n" +
+            "/**\n" +
+            " * @Indexed\n" +
+            " * \"quoted\" \\ \u00e9\n" +
+            " */\n" +
+            "message M {\n" +
+            "   optional int32 a = 1 [default = 5, deprecated = true];\n" +
+            "   oneof choice {\n" +
+            "      string b = 2;\n" +
+            "   }\n" +
+            "   enum E {\n" +
+            "      V = 0;\n" +
+            "   }\n" +
+            "   message N {\n" +
+            "   }\n" +
+            "}\n";
+      String source = DescriptorSourceCodeGenerator.generate("file.proto", file, "build");
+      assertNotNull(source);
+      assertTrue(source.contains("private static org.infinispan.protostream.descriptors.FileDescriptor build() {"));
+      assertTrue(source.contains("private static org.infinispan.protostream.descriptors.Descriptor build$0() {"));
+      assertTrue(source.contains(".withDefaultValue(\"5\")"));
+      assertTrue(source.contains(".withDependencies(java.util.Arrays.asList("));
+      assertTrue(source.contains("\\\"quoted\\\" \\\\ \\u00e9"));
+
+      // aggregate option values are not supported
+      String fileWithAggregateOption = "package test;\n" +
+            "message M {\n" +
+            "   option (custom) = { a: 1 };\n" +
+            "}\n";
+      assertNull(DescriptorSourceCodeGenerator.generate("file.proto", fileWithAggregateOption, "build"));
+   }
+
    private Map<String, FileDescriptor> parseAndResolve(FileDescriptorSource fileDescriptorSource, Configuration config) {
       // parse the input
       SquareProtoParser protoParser = new SquareProtoParser(config);
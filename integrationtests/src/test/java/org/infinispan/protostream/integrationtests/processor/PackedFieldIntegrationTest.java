@@ -0,0 +1,52 @@
+package org.infinispan.protostream.integrationtests.processor;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ServiceLoader;
+
+import org.infinispan.protostream.ProtobufUtil;
+import org.infinispan.protostream.SerializationContext;
+import org.infinispan.protostream.SerializationContextInitializer;
+import org.infinispan.protostream.annotations.AutoProtoSchemaBuilder;
+import org.infinispan.protostream.annotations.ProtoField;
+import org.junit.Test;
+
+/**
+ * Round trips a packed repeated field through a marshaller generated by the annotation processor.
+ */
+public class PackedFieldIntegrationTest {
+
+   @AutoProtoSchemaBuilder(schemaFileName = "packed_field.proto", includeClasses = PackedInitializer.PackedMessage.class, service = true)
+   interface PackedInitializer extends SerializationContextInitializer {
+      class PackedMessage {
+         @ProtoField(number = 1, packed = true)
+         int[] samples;
+      }
+   }
+
+   @Test
+   public void testPackedField() throws Exception {
+      PackedInitializer initializer = null;
+      for (SerializationContextInitializer sci : ServiceLoader.load(SerializationContextInitializer.class)) {
+         if (sci instanceof PackedInitializer) {
+            initializer = (PackedInitializer) sci;
+            break;
+         }
+      }
+
+      assertNotNull("PackedInitializer implementation not found by ServiceLoader", initializer);
+
+      SerializationContext ctx = ProtobufUtil.newSerializationContext();
+      initializer.registerSchema(ctx);
+      initializer.registerMarshallers(ctx);
+      assertTrue(ctx.canMarshall(PackedInitializer.PackedMessage.class));
+
+      PackedInitializer.PackedMessage message = new PackedInitializer.PackedMessage();
+      message.samples = new int[]{1, -2, 300};
+      byte[] bytes = ProtobufUtil.toByteArray(ctx, message);
+      PackedInitializer.PackedMessage decoded = ProtobufUtil.fromByteArray(ctx, bytes, PackedInitializer.PackedMessage.class);
+      assertArrayEquals(message.samples, decoded.samples);
+   }
+}
@@ -0,0 +1,171 @@
+package org.infinispan.protostream.integrationtests.processor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.ServiceLoader;
+
+import org.infinispan.protostream.FileDescriptorSource;
+import org.infinispan.protostream.SerializationContextInitializer;
+import org.infinispan.protostream.annotations.impl.processor.tests.AllFieldTypesInitializerImpl;
+import org.infinispan.protostream.config.Configuration;
+import org.infinispan.protostream.descriptors.Descriptor;
+import org.infinispan.protostream.descriptors.EnumDescriptor;
+import org.infinispan.protostream.descriptors.EnumValueDescriptor;
+import org.infinispan.protostream.descriptors.ExtendDescriptor;
+import org.infinispan.protostream.descriptors.FieldDescriptor;
+import org.infinispan.protostream.descriptors.FileDescriptor;
+import org.infinispan.protostream.descriptors.OneOfDescriptor;
+import org.infinispan.protostream.impl.parser.SquareProtoParser;
+import org.infinispan.protostream.types.java.CommonContainerTypesSchema;
+import org.infinispan.protostream.types.java.CommonTypesSchema;
+import org.junit.Test;
+
+/**
+ * Checks that the {@link FileDescriptor} precompiled by the annotation processor into a generated initializer is the
+ * same as the one obtained by parsing the schema of the initializer at runtime. Covers the initializers of the types
+ * module, of the annotation processor test domain and any other one found on the class path.
+ */
+public class PrecompiledSchemaTest {
+
+   /**
+    * The name of the static method of the generated initializers that builds the precompiled descriptor.
+    */
+   private static final String PRECOMPILED_SCHEMA_METHOD = "___fileDescriptor";
+
+   @Test
+   public void testPrecompiledDescriptorsMatchParsedDescriptors() throws Exception {
+      Map<Class<?>, SerializationContextInitializer> initializers = new LinkedHashMap<>();
+      initializers.put(CommonTypesSchema.class, new CommonTypesSchema());
+      initializers.put(CommonContainerTypesSchema.class, new CommonContainerTypesSchema());
+      initializers.put(AllFieldTypesInitializerImpl.class, new AllFieldTypesInitializerImpl());
+      for (SerializationContextInitializer initializer : ServiceLoader.load(SerializationContextInitializer.class)) {
+         initializers.putIfAbsent(initializer.getClass(), initializer);
+      }
+
+      List<String> checked = new ArrayList<>();
+      for (SerializationContextInitializer initializer : initializers.values()) {
+         Method method;
+         try {
+            method = initializer.getClass().getDeclaredMethod(PRECOMPILED_SCHEMA_METHOD);
+         } catch (NoSuchMethodException e) {
+            // an initializer without a schema of its own
+            continue;
+         }
+         method.setAccessible(true);
+         FileDescriptor precompiled = (FileDescriptor) method.invoke(null);
+
+         String fileName = initializer.getProtoFileName();
+         Map<String, FileDescriptor> parsed = new SquareProtoParser(Configuration.builder().build())
+               .parse(FileDescriptorSource.fromString(fileName, initializer.getProtoFile()));
+         assertEquals(1, parsed.size());
+         assertFileEquals(parsed.values().iterator().next(), precompiled);
+         checked.add(initializer.getClass().getName());
+      }
+
+      assertTrue(checked.toString(), checked.contains(CommonTypesSchema.class.getName()));
+      assertTrue(checked.toString(), checked.contains(CommonContainerTypesSchema.class.getName()));
+      assertTrue(checked.toString(), checked.contains(AllFieldTypesInitializerImpl.class.getName()));
+   }
+
+   private static void assertFileEquals(FileDescriptor expected, FileDescriptor actual) throws Exception {
+      String path = expected.getName();
+      assertEquals(path, expected.getName(), actual.getName());
+      assertEquals(path, expected.getSyntax(), actual.getSyntax());
+      assertEquals(path, expected.getPackage(), actual.getPackage());
+      assertEquals(path, expected.getOptions(), actual.getOptions());
+      assertEquals(path, expected.getDependencies(), actual.getDependencies());
+      assertEquals(path, expected.getPublicDependencies(), actual.getPublicDependencies());
+
+      assertEquals(path, expected.getMessageTypes().size(), actual.getMessageTypes().size());
+      for (int i = 0; i < expected.getMessageTypes().size(); i++) {
+         assertMessageEquals(expected.getMessageTypes().get(i), actual.getMessageTypes().get(i));
+      }
+      assertEquals(path, expected.getEnumTypes().size(), actual.getEnumTypes().size());
+      for (int i = 0; i < expected.getEnumTypes().size(); i++) {
+         assertEnumEquals(expected.getEnumTypes().get(i), actual.getEnumTypes().get(i));
+      }
+      assertEquals(path, expected.getExtensionsTypes().size(), actual.getExtensionsTypes().size());
+      for (int i = 0; i < expected.getExtensionsTypes().size(); i++) {
+         ExtendDescriptor e = expected.getExtensionsTypes().get(i);
+         ExtendDescriptor a = actual.getExtensionsTypes().get(i);
+         assertEquals(path, e.getName(), a.getName());
+         assertEquals(path, e.getFullName(), a.getFullName());
+         assertFieldsEqual(e.getFullName(), e.getFields(), a.getFields());
+      }
+   }
+
+   private static void assertMessageEquals(Descriptor expected, Descriptor actual) throws Exception {
+      String path = expected.getFullName();
+      assertEquals(path, expected.getName(), actual.getName());
+      assertEquals(path, expected.getFullName(), actual.getFullName());
+      assertEquals(path, expected.getDocumentation(), actual.getDocumentation());
+      assertEquals(path, expected.getOptions(), actual.getOptions());
+      assertFieldsEqual(path, expected.getFields(), actual.getFields());
+
+      assertEquals(path, expected.getOneOfs().size(), actual.getOneOfs().size());
+      for (int i = 0; i < expected.getOneOfs().size(); i++) {
+         OneOfDescriptor e = expected.getOneOfs().get(i);
+         OneOfDescriptor a = actual.getOneOfs().get(i);
+         assertEquals(path, e.getName(), a.getName());
+         assertEquals(path, e.getDocumentation(), a.getDocumentation());
+         assertFieldsEqual(path + '.' + e.getName(), e.getFields(), a.getFields());
+      }
+      assertEquals(path, expected.getNestedTypes().size(), actual.getNestedTypes().size());
+      for (int i = 0; i < expected.getNestedTypes().size(); i++) {
+         assertMessageEquals(expected.getNestedTypes().get(i), actual.getNestedTypes().get(i));
+      }
+      assertEquals(path, expected.getEnumTypes().size(), actual.getEnumTypes().size());
+      for (int i = 0; i < expected.getEnumTypes().size(); i++) {
+         assertEnumEquals(expected.getEnumTypes().get(i), actual.getEnumTypes().get(i));
+      }
+   }
+
+   private static void assertFieldsEqual(String path, List<FieldDescriptor> expected, List<FieldDescriptor> actual) throws Exception {
+      assertEquals(path, expected.size(), actual.size());
+      for (int i = 0; i < expected.size(); i++) {
+         FieldDescriptor e = expected.get(i);
+         FieldDescriptor a = actual.get(i);
+         String fieldPath = path + '.' + e.getName();
+         assertEquals(fieldPath, e.getName(), a.getName());
+         assertEquals(fieldPath, e.getNumber(), a.getNumber());
+         assertEquals(fieldPath, e.getLabel(), a.getLabel());
+         assertEquals(fieldPath, e.getTypeName(), a.getTypeName());
+         assertEquals(fieldPath, e.isExtension(), a.isExtension());
+         assertEquals(fieldPath, e.getDocumentation(), a.getDocumentation());
+         assertEquals(fieldPath, e.getOptions(), a.getOptions());
+         // the default value is converted to its Java type only after resolution, so compare its source text
+         assertEquals(fieldPath, getRawDefaultValue(e), getRawDefaultValue(a));
+      }
+   }
+
+   private static void assertEnumEquals(EnumDescriptor expected, EnumDescriptor actual) {
+      String path = expected.getFullName();
+      assertEquals(path, expected.getName(), actual.getName());
+      assertEquals(path, expected.getFullName(), actual.getFullName());
+      assertEquals(path, expected.getDocumentation(), actual.getDocumentation());
+      assertEquals(path, expected.getOptions(), actual.getOptions());
+      assertEquals(path, expected.getValues().size(), actual.getValues().size());
+      for (int i = 0; i < expected.getValues().size(); i++) {
+         EnumValueDescriptor e = expected.getValues().get(i);
+         EnumValueDescriptor a = actual.getValues().get(i);
+         String valuePath = path + '.' + e.getName();
+         assertEquals(valuePath, e.getName(), a.getName());
+         assertEquals(valuePath, e.getNumber(), a.getNumber());
+         assertEquals(valuePath, e.getDocumentation(), a.getDocumentation());
+         assertEquals(valuePath, e.getOptions(), a.getOptions());
+      }
+   }
+
+   private static Object getRawDefaultValue(FieldDescriptor fieldDescriptor) throws Exception {
+      Field field = FieldDescriptor.class.getDeclaredField("defaultValue");
+      field.setAccessible(true);
+      return field.get(fieldDescriptor);
+   }
+}
@@ -50,6 +50,7 @@ import org.infinispan.protostream.annotations.impl.processor.types.HasModelEleme
 import org.infinispan.protostream.annotations.impl.processor.types.MirrorTypeFactory;
 import org.infinispan.protostream.annotations.impl.types.XClass;
 import org.infinispan.protostream.annotations.impl.types.XMethod;
+import org.infinispan.protostream.impl.parser.DescriptorSourceCodeGenerator;
 
 import com.google.auto.service.AutoService;
 
@@ -68,6 +69,11 @@ public final class AutoProtoSchemaBuilderAnnotationProcessor extends AbstractPro
     */
    static final String ANNOTATION_NAME = "org.infinispan.protostream.annotations.AutoProtoSchemaBuilder";
 
+   /**
+    * The name of the generated method that creates the precompiled {@code FileDescriptor} of the schema.
+    */
+   private static final String PRECOMPILED_SCHEMA_METHOD = "___fileDescriptor";
+
    private final ServiceLoaderFileGenerator serviceLoaderFileGenerator = new ServiceLoaderFileGenerator(SerializationContextInitializer.class);
 
    private GeneratedFilesWriter generatedFilesWriter;
@@ -548,7 +554,12 @@ public final class AutoProtoSchemaBuilderAnnotationProcessor extends AbstractPro
       for (int j = 0; j < serCtxInitDeps.size(); j++) {
          iw.append("dep").append(String.valueOf(j)).append(".registerSchema(serCtx);\n");
       }
-      if (schemaSrc != null) {
+      // the precompiled descriptors spare the parsing of the schema at runtime
+      String precompiledSchema = schemaSrc != null ? DescriptorSourceCodeGenerator.generate(fileName, schemaSrc, PRECOMPILED_SCHEMA_METHOD) : null;
+      if (precompiledSchema != null) {
+         iw.append("serCtx.registerProtoFiles(new org.infinispan.protostream.FileDescriptorSource().addProtoFile(getProtoFileName(), getProtoFile(), ")
+               .append(initializerClassName).append("::").append(PRECOMPILED_SCHEMA_METHOD).append("));\n");
+      } else if (schemaSrc != null) {
          iw.append("serCtx.registerProtoFiles(org.infinispan.protostream.FileDescriptorSource.fromString(getProtoFileName(), getProtoFile()));\n");
       }
       iw.dec();
@@ -566,6 +577,10 @@ public final class AutoProtoSchemaBuilderAnnotationProcessor extends AbstractPro
       iw.dec();
       iw.append("}\n");
 
+      if (precompiledSchema != null) {
+         iw.append('\n').append(precompiledSchema);
+      }
+
       iw.dec();
       iw.append("}\n");
       return iw.toString();
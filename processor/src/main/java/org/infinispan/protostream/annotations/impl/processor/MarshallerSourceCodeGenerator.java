@@ -14,6 +14,8 @@ import javax.lang.model.element.Element;
 import org.infinispan.protostream.EnumMarshaller;
 import org.infinispan.protostream.ProtobufTagMarshaller;
 import org.infinispan.protostream.SerializationContext;
+import org.infinispan.protostream.TagReader;
+import org.infinispan.protostream.TagWriter;
 import org.infinispan.protostream.annotations.impl.AbstractMarshallerCodeGenerator;
 import org.infinispan.protostream.annotations.impl.GeneratedMarshallerBase;
 import org.infinispan.protostream.annotations.impl.IndentWriter;
@@ -26,6 +28,7 @@ import org.infinispan.protostream.annotations.impl.types.XClass;
 import org.infinispan.protostream.annotations.impl.types.XTypeFactory;
 import org.infinispan.protostream.containers.IndexedElementContainerAdapter;
 import org.infinispan.protostream.containers.IterableElementContainerAdapter;
+import org.infinispan.protostream.containers.PackedElementContainerAdapter;
 import org.infinispan.protostream.impl.BaseMarshallerDelegate;
 import org.infinispan.protostream.impl.EnumMarshallerDelegate;
 import org.infinispan.protostream.impl.Log;
@@ -175,7 +178,8 @@ final class MarshallerSourceCodeGenerator extends AbstractMarshallerCodeGenerato
       String elementType = null;
       if (pmtm.isIndexedContainer()) {
          elementType = pmtm.getAnnotatedClass().getGenericInterfaceParameterTypes(IndexedElementContainerAdapter.class)[1];
-         iw.append(", ").append(IndexedElementContainerAdapter.class.getName()).append('<').append(pmtm.getJavaClassName()).append(", ").append(elementType).append(">");
+         Class<?> containerInterface = pmtm.isPackedContainer() ? PackedElementContainerAdapter.class : IndexedElementContainerAdapter.class;
+         iw.append(", ").append(containerInterface.getName()).append('<').append(pmtm.getJavaClassName()).append(", ").append(elementType).append(">");
       } else if (pmtm.isIterableContainer()) {
          elementType = pmtm.getAnnotatedClass().getGenericInterfaceParameterTypes(IterableElementContainerAdapter.class)[1];
          iw.append(", ").append(IterableElementContainerAdapter.class.getName()).append('<').append(pmtm.getJavaClassName()).append(", ").append(elementType).append(">");
@@ -198,6 +202,10 @@ final class MarshallerSourceCodeGenerator extends AbstractMarshallerCodeGenerato
             iw.append("@Override\npublic int getNumElements(").append(pmtm.getJavaClassName()).append(" container) { return ").append(ADAPTER_FIELD_NAME).append(".getNumElements(container); }\n");
             iw.append("@Override\npublic ").append(elementType).append(" getElement(").append(pmtm.getJavaClassName()).append(" container, int index) { return ").append(ADAPTER_FIELD_NAME).append(".getElement(container, index); }\n");
             iw.append("@Override\npublic void setElement(").append(pmtm.getJavaClassName()).append(" container, int index, ").append(elementType).append(" element) { ").append(ADAPTER_FIELD_NAME).append(".setElement(container, index, element); }\n");
+            if (pmtm.isPackedContainer()) {
+               iw.append("@Override\npublic void writePackedElements(").append(TagWriter.class.getName()).append(" out, int fieldNumber, ").append(pmtm.getJavaClassName()).append(" container) throws java.io.IOException { ").append(ADAPTER_FIELD_NAME).append(".writePackedElements(out, fieldNumber, container); }\n");
+               iw.append("@Override\npublic void readPackedElements(").append(TagReader.class.getName()).append(" in, ").append(pmtm.getJavaClassName()).append(" container) throws java.io.IOException { ").append(ADAPTER_FIELD_NAME).append(".readPackedElements(in, container); }\n");
+            }
          } else {
             iw.append("@Override\npublic int getNumElements(").append(pmtm.getJavaClassName()).append(" container) { return ((").append(IndexedElementContainerAdapter.class.getName()).append(") container).getNumElements(); }\n");
             iw.append("@Override\npublic ").append(elementType).append(" getElement(").append(pmtm.getJavaClassName()).append(" container, int index) { return ((").append(IndexedElementContainerAdapter.class.getName()).append(") container).getElement(index); }\n");
@@ -1,9 +1,13 @@
 package org.infinispan.protostream.types.java.arrays;
 
+import java.io.IOException;
+
+import org.infinispan.protostream.TagReader;
+import org.infinispan.protostream.TagWriter;
 import org.infinispan.protostream.annotations.ProtoAdapter;
 import org.infinispan.protostream.annotations.ProtoFactory;
 import org.infinispan.protostream.annotations.ProtoName;
-import org.infinispan.protostream.containers.IndexedElementContainerAdapter;
+import org.infinispan.protostream.containers.PackedElementContainerAdapter;
 
 /**
  * @author anistor@redhat.com
@@ -11,7 +15,7 @@ import org.infinispan.protostream.containers.IndexedElementContainerAdapter;
  */
 @ProtoAdapter(boolean[].class)
 @ProtoName("BooleanArray")
-public final class BooleanArrayAdapter implements IndexedElementContainerAdapter<boolean[], Boolean> {
+public final class BooleanArrayAdapter implements PackedElementContainerAdapter<boolean[], Boolean> {
 
    @ProtoFactory
    public boolean[] create(int size) {
@@ -32,4 +36,16 @@ public final class BooleanArrayAdapter implements IndexedElementContainerAdapter
    public void setElement(boolean[] array, int index, Boolean element) {
       array[index] = element;
    }
+
+   @Override
+   public void writePackedElements(TagWriter out, int fieldNumber, boolean[] array) throws IOException {
+      out.writePackedBools(fieldNumber, array, 0, array.length);
+   }
+
+   @Override
+   public void readPackedElements(TagReader in, boolean[] array) throws IOException {
+      for (int i = 0; i < array.length; i++) {
+         array[i] = in.readBool();
+      }
+   }
 }
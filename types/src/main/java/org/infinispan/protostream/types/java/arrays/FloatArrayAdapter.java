@@ -1,9 +1,13 @@
 package org.infinispan.protostream.types.java.arrays;
 
+import java.io.IOException;
+
+import org.infinispan.protostream.TagReader;
+import org.infinispan.protostream.TagWriter;
 import org.infinispan.protostream.annotations.ProtoAdapter;
 import org.infinispan.protostream.annotations.ProtoFactory;
 import org.infinispan.protostream.annotations.ProtoName;
-import org.infinispan.protostream.containers.IndexedElementContainerAdapter;
+import org.infinispan.protostream.containers.PackedElementContainerAdapter;
 
 /**
  * @author anistor@redhat.com
@@ -11,7 +15,7 @@ import org.infinispan.protostream.containers.IndexedElementContainerAdapter;
  */
 @ProtoAdapter(float[].class)
 @ProtoName("FloatArray")
-public final class FloatArrayAdapter implements IndexedElementContainerAdapter<float[], Float> {
+public final class FloatArrayAdapter implements PackedElementContainerAdapter<float[], Float> {
 
    @ProtoFactory
    public float[] create(int size) {
@@ -32,4 +36,16 @@ public final class FloatArrayAdapter implements IndexedElementContainerAdapter<f
    public void setElement(float[] array, int index, Float element) {
       array[index] = element;
    }
+
+   @Override
+   public void writePackedElements(TagWriter out, int fieldNumber, float[] array) throws IOException {
+      out.writePackedFloats(fieldNumber, array, 0, array.length);
+   }
+
+   @Override
+   public void readPackedElements(TagReader in, float[] array) throws IOException {
+      for (int i = 0; i < array.length; i++) {
+         array[i] = in.readFloat();
+      }
+   }
 }
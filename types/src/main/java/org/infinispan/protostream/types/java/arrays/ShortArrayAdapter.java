@@ -1,9 +1,14 @@
 package org.infinispan.protostream.types.java.arrays;
 
+import java.io.IOException;
+
+import org.infinispan.protostream.TagReader;
+import org.infinispan.protostream.TagWriter;
 import org.infinispan.protostream.annotations.ProtoAdapter;
 import org.infinispan.protostream.annotations.ProtoFactory;
 import org.infinispan.protostream.annotations.ProtoName;
-import org.infinispan.protostream.containers.IndexedElementContainerAdapter;
+import org.infinispan.protostream.containers.PackedElementContainerAdapter;
+import org.infinispan.protostream.descriptors.WireType;
 
 /**
  * @author anistor@redhat.com
@@ -11,7 +16,7 @@ import org.infinispan.protostream.containers.IndexedElementContainerAdapter;
  */
 @ProtoAdapter(short[].class)
 @ProtoName("ShortArray")
-public final class ShortArrayAdapter implements IndexedElementContainerAdapter<short[], Short> {
+public final class ShortArrayAdapter implements PackedElementContainerAdapter<short[], Short> {
 
    @ProtoFactory
    public short[] create(int size) {
@@ -32,4 +37,32 @@ public final class ShortArrayAdapter implements IndexedElementContainerAdapter<s
    public void setElement(short[] array, int index, Short element) {
       array[index] = element;
    }
+
+   @Override
+   public void writePackedElements(TagWriter out, int fieldNumber, short[] array) throws IOException {
+      if (array.length == 0) {
+         return;
+      }
+      // the elements are INT32 values, negative ones being sign extended to 64 bits
+      int size = 0;
+      for (short value : array) {
+         size += value < 0 ? WireType.MAX_VARINT_SIZE : value < 1 << 7 ? 1 : value < 1 << 14 ? 2 : 3;
+      }
+      out.writeTag(fieldNumber, WireType.WIRETYPE_LENGTH_DELIMITED);
+      out.writeVarint32(size);
+      for (short value : array) {
+         if (value >= 0) {
+            out.writeVarint32(value);
+         } else {
+            out.writeVarint64(value);
+         }
+      }
+   }
+
+   @Override
+   public void readPackedElements(TagReader in, short[] array) throws IOException {
+      for (int i = 0; i < array.length; i++) {
+         array[i] = (short) in.readInt32();
+      }
+   }
 }
@@ -0,0 +1,97 @@
+package org.infinispan.protostream.types.java.arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.Array;
+import java.util.Arrays;
+import java.util.Objects;
+
+import org.infinispan.protostream.ProtobufUtil;
+import org.infinispan.protostream.SerializationContext;
+import org.infinispan.protostream.config.Configuration;
+import org.infinispan.protostream.types.java.CommonContainerTypesSchema;
+import org.junit.Test;
+
+/**
+ * Round trips of the arrays of primitives having a {@link org.infinispan.protostream.containers.PackedElementContainerAdapter},
+ * written both packed and unpacked.
+ */
+public class PackedArrayAdapterTest {
+
+   private final SerializationContext packedCtx = createContext(true);
+
+   private final SerializationContext unpackedCtx = createContext(false);
+
+   private static SerializationContext createContext(boolean packedContainers) {
+      SerializationContext ctx = ProtobufUtil.newSerializationContext(Configuration.builder()
+            .wrappingConfig().packedContainers(packedContainers).build());
+      CommonContainerTypesSchema schema = new CommonContainerTypesSchema();
+      schema.registerSchema(ctx);
+      schema.registerMarshallers(ctx);
+      return ctx;
+   }
+
+   /**
+    * Writes the array with both configurations and checks that each encoding is read back by both.
+    */
+   private void assertRoundTrip(Object array) throws Exception {
+      byte[] packedBytes = ProtobufUtil.toWrappedByteArray(packedCtx, array);
+      byte[] unpackedBytes = ProtobufUtil.toWrappedByteArray(unpackedCtx, array);
+      if (Array.getLength(array) > 1) {
+         assertTrue(packedBytes.length < unpackedBytes.length);
+      }
+      for (SerializationContext ctx : Arrays.asList(packedCtx, unpackedCtx)) {
+         for (byte[] bytes : Arrays.asList(packedBytes, unpackedBytes)) {
+            Object decoded = ProtobufUtil.fromWrappedByteArray(ctx, bytes);
+            assertEquals(array.getClass(), decoded.getClass());
+            assertTrue(Objects.deepEquals(array, decoded));
+         }
+      }
+   }
+
+   @Test
+   public void testBooleanArray() throws Exception {
+      assertRoundTrip(new boolean[0]);
+      assertRoundTrip(new boolean[]{true, false, false, true});
+   }
+
+   @Test
+   public void testShortArray() throws Exception {
+      assertRoundTrip(new short[0]);
+      assertRoundTrip(new short[]{0, 1, -1, 127, 128, -129, Short.MAX_VALUE, Short.MIN_VALUE});
+   }
+
+   @Test
+   public void testIntArray() throws Exception {
+      assertRoundTrip(new int[0]);
+      assertRoundTrip(new int[]{0, 1, -1, 300, -300, Integer.MAX_VALUE, Integer.MIN_VALUE});
+   }
+
+   @Test
+   public void testLongArray() throws Exception {
+      assertRoundTrip(new long[0]);
+      assertRoundTrip(new long[]{0, 1, -1, 1L << 40, -(1L << 40), Long.MAX_VALUE, Long.MIN_VALUE});
+   }
+
+   @Test
+   public void testFloatArray() throws Exception {
+      assertRoundTrip(new float[0]);
+      assertRoundTrip(new float[]{0f, -0f, 1.5f, -2.25f, Float.MAX_VALUE, -Float.MIN_VALUE, Float.NaN, Float.NEGATIVE_INFINITY});
+   }
+
+   @Test
+   public void testDoubleArray() throws Exception {
+      assertRoundTrip(new double[0]);
+      assertRoundTrip(new double[]{0d, -0d, 1.5d, -2.25d, Double.MAX_VALUE, -Double.MIN_VALUE, Double.NaN, Double.NEGATIVE_INFINITY});
+   }
+
+   @Test
+   public void testLargeArray() throws Exception {
+      int[] array = new int[10000];
+      for (int i = 0; i < array.length; i++) {
+         array[i] = i % 2 == 0 ? i * 31 : -i;
+      }
+      assertRoundTrip(array);
+   }
+}